@@ -646,7 +646,9 @@ public abstract class AbstractBlockChain {
                     }
                 });
             }
-            first = false;
+            // Listeners that don't keep the transactions leave the originals to the next one.
+            if (!(registration.listener instanceof ReadOnlyTransactionsReceivedInBlockListener))
+                first = false;
         }
 
         for (final ListenerRegistration<NewBestBlockListener> registration : newBestBlockListeners) {
@@ -682,7 +684,10 @@ public abstract class AbstractBlockChain {
                                                          StoredBlock newStoredBlock, boolean first,
                                                          TransactionReceivedInBlockListener listener,
                                                          Set<Sha256Hash> falsePositives) throws VerificationException {
-        if (block.transactions != null) {
+        if (listener instanceof TransactionsReceivedInBlockListener) {
+            informListenerForNewTransactions(block, newBlockType, filteredTxHashList, filteredTxn, newStoredBlock,
+                    first, (TransactionsReceivedInBlockListener) listener, falsePositives);
+        } else if (block.transactions != null) {
             // If this is not the first wallet, ask for the transactions to be duplicated before being given
             // to the wallet when relevant. This ensures that if we have two connected wallets and a tx that
             // is relevant to both of them, they don't end up accidentally sharing the same object (which can
@@ -711,6 +716,45 @@ public abstract class AbstractBlockChain {
         }
     }
 
+    private static void informListenerForNewTransactions(Block block, NewBlockType newBlockType,
+                                                         @Nullable List<Sha256Hash> filteredTxHashList,
+                                                         @Nullable Map<Sha256Hash, Transaction> filteredTxn,
+                                                         StoredBlock newStoredBlock, boolean first,
+                                                         TransactionsReceivedInBlockListener listener,
+                                                         Set<Sha256Hash> falsePositives) throws VerificationException {
+        List<Sha256Hash> txHashes;
+        Map<Sha256Hash, Transaction> txns;
+        if (block.transactions != null) {
+            txHashes = new ArrayList<Sha256Hash>(block.transactions.size());
+            txns = new HashMap<Sha256Hash, Transaction>();
+            for (Transaction tx : block.transactions) {
+                txHashes.add(tx.getHash());
+                txns.put(tx.getHash(), tx);
+            }
+        } else if (filteredTxHashList != null) {
+            txHashes = filteredTxHashList;
+            txns = checkNotNull(filteredTxn);
+        } else {
+            return;
+        }
+        falsePositives.removeAll(txns.keySet());
+        if (!first && !(listener instanceof ReadOnlyTransactionsReceivedInBlockListener)) {
+            // See the comment in the method above about duplicating transactions for all but the first wallet.
+            Map<Sha256Hash, Transaction> copies = new HashMap<Sha256Hash, Transaction>();
+            for (Map.Entry<Sha256Hash, Transaction> entry : txns.entrySet()) {
+                try {
+                    Transaction tx = entry.getValue();
+                    copies.put(entry.getKey(), tx.params.getDefaultSerializer().makeTransaction(tx.bitcoinSerialize()));
+                } catch (ProtocolException e) {
+                    // Failed to duplicate tx, should never happen.
+                    throw new RuntimeException(e);
+                }
+            }
+            txns = copies;
+        }
+        falsePositives.removeAll(listener.receiveFromBlock(txHashes, txns, newStoredBlock, newBlockType));
+    }
+
     /**
      * Gets the median timestamp of the last 11 blocks
      */
@@ -21,6 +21,8 @@ package org.bitcoinj.core;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.bitcoinj.params.Networks;
 import org.bitcoinj.script.Script;
@@ -108,24 +110,51 @@ public class Address extends VersionedChecksummedBytes {
     @Deprecated
     public Address(@Nullable NetworkParameters params, String address) throws AddressFormatException {
         super(address);
+        this.params = findParameters(params, version, address);
+    }
+
+    private Address(@Nullable NetworkParameters params, byte[] versionAndDataBytes, String address)
+            throws AddressFormatException {
+        super(versionAndDataBytes, address);
+        this.params = findParameters(params, version, address);
+    }
+
+    /**
+     * Parses many addresses at once like {@link #fromBase58(NetworkParameters, String)}, reusing the same buffers for
+     * all of them. This is meant for validating addresses in bulk.
+     *
+     * @throws AddressFormatException if any of the addresses doesn't parse, its checksum is invalid or it's for a
+     * different chain; the message says which one
+     */
+    public static List<Address> fromBase58(@Nullable NetworkParameters params, List<String> base58)
+            throws AddressFormatException {
+        List<byte[]> decoded = Base58.decodeChecked(base58);
+        List<Address> addresses = new ArrayList<Address>(decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            byte[] versionAndDataBytes = decoded.get(i);
+            if (versionAndDataBytes.length != 1 + LENGTH)
+                throw new AddressFormatException("Address " + i + " has the wrong length: " + base58.get(i));
+            addresses.add(new Address(params, versionAndDataBytes, base58.get(i)));
+        }
+        return addresses;
+    }
+
+    // Returns the given parameters if the version is acceptable for them, or the parameters of the first known network
+    // that accepts the version if none are given.
+    private static NetworkParameters findParameters(@Nullable NetworkParameters params, int version, String address)
+            throws AddressFormatException {
         if (params != null) {
             if (!isAcceptableVersion(params, version)) {
                 throw new WrongNetworkException(version, params.getAcceptableAddressCodes());
             }
-            this.params = params;
-        } else {
-            NetworkParameters paramsFound = null;
-            for (NetworkParameters p : Networks.get()) {
-                if (isAcceptableVersion(p, version)) {
-                    paramsFound = p;
-                    break;
-                }
+            return params;
+        }
+        for (NetworkParameters p : Networks.get()) {
+            if (isAcceptableVersion(p, version)) {
+                return p;
             }
-            if (paramsFound == null)
-                throw new AddressFormatException("No network found for " + address);
-
-            this.params = paramsFound;
         }
+        throw new AddressFormatException("No network found for " + address);
     }
 
     /** The (big endian) 20 byte hash that is the core of a Bitcoin address. */
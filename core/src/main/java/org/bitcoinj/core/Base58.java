@@ -17,7 +17,12 @@
 package org.bitcoinj.core;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Base58 is a way to encode Bitcoin addresses (or arbitrary data) as alphanumeric strings.
@@ -36,7 +41,8 @@ import java.util.Arrays;
  * <li>Doubleclicking selects the whole number as one word if it's all alphanumeric.</li>
  * </ul>
  * <p>
- * However, note that the encoding/decoding runs in O(n&sup2;) time, so it is not useful for large data.
+ * However, note that the encoding/decoding runs in O(n&sup2;) time, so it is not useful for large data. The digits are
+ * converted five at a time on 32 bit limbs, which makes it fast enough for the short strings of addresses and keys.
  * <p>
  * The basic idea of the encoding is to treat the data bytes as a large number represented using
  * base-256 digits, convert the number to be represented using base-58 digits, preserve the exact
@@ -54,6 +60,12 @@ public class Base58 {
         }
     }
 
+    // The digits are converted five at a time: 58^5 fits in 30 bits, so a 32 bit limb of the number times 58^5 plus a
+    // carry, or a 30 bit remainder shifted up by 32 bits plus a limb, always fits in a long.
+    private static final int DIGITS_PER_LIMB = 5;
+    private static final long[] POWERS = { 1, 58, 58 * 58, 58 * 58 * 58, 58 * 58 * 58 * 58, 58L * 58 * 58 * 58 * 58 };
+    private static final long LIMB_DIVISOR = POWERS[DIGITS_PER_LIMB];
+
     /**
      * Encodes the given bytes as a base58 string (no checksum is appended).
      *
@@ -61,22 +73,65 @@ public class Base58 {
      * @return the base58-encoded string
      */
     public static String encode(byte[] input) {
-        if (input.length == 0) {
-            return "";
-        }       
+        return encode(input, 0, input.length);
+    }
+
+    /**
+     * Encodes the given byte range as a base58 string (no checksum is appended).
+     *
+     * @param input the array containing the bytes to encode
+     * @param offset the offset within the array of the bytes to encode
+     * @param length the number of bytes to encode
+     * @return the base58-encoded string
+     */
+    public static String encode(byte[] input, int offset, int length) {
+        char[] encoded = new char[maxEncodedLength(length)];
+        int start = encode(input, offset, length, new int[(length + 3) / 4], encoded);
+        return new String(encoded, start, encoded.length - start);
+    }
+
+    private static int maxEncodedLength(int length) {
+        // log(256) / log(58) is about 1.37, plus room for the last group of five digits.
+        return length * 138 / 100 + 1 + DIGITS_PER_LIMB;
+    }
+
+    // Encodes the bytes into the end of the given char array and returns the index of the first char. The limbs are
+    // scratch space for at least (length + 3) / 4 ints and the char array must have room for
+    // maxEncodedLength(length) chars, so that both can be reused between calls.
+    private static int encode(byte[] input, int offset, int length, int[] limbs, char[] encoded) {
         // Count leading zeros.
         int zeros = 0;
-        while (zeros < input.length && input[zeros] == 0) {
+        while (zeros < length && input[offset + zeros] == 0) {
             ++zeros;
         }
-        // Convert base-256 digits to base-58 digits (plus conversion to ASCII characters)
-        input = Arrays.copyOf(input, input.length); // since we modify it in-place
-        char[] encoded = new char[input.length * 2]; // upper bound
+        // Pack the remaining base-256 digits into 32 bit limbs, most significant first, so that each division by 58^5
+        // below handles four bytes at once and yields five base-58 digits.
+        int limbCount = (length - zeros + 3) / 4;
+        int firstByte = offset + length - limbCount * 4;
+        for (int i = 0; i < limbCount; i++) {
+            int limb = 0;
+            for (int j = 0; j < 4; j++) {
+                int index = firstByte + i * 4 + j;
+                limb = (limb << 8) | (index >= offset + zeros ? input[index] & 0xFF : 0);
+            }
+            limbs[i] = limb;
+        }
         int outputStart = encoded.length;
-        for (int inputStart = zeros; inputStart < input.length; ) {
-            encoded[--outputStart] = ALPHABET[divmod(input, inputStart, 256, 58)];
-            if (input[inputStart] == 0) {
-                ++inputStart; // optimization - skip leading zeros
+        for (int firstLimb = 0; firstLimb < limbCount; ) {
+            // Divide the number by 58^5 in place.
+            long remainder = 0;
+            for (int i = firstLimb; i < limbCount; i++) {
+                long temp = (remainder << 32) | (limbs[i] & 0xFFFFFFFFL);
+                limbs[i] = (int) (temp / LIMB_DIVISOR);
+                remainder = temp % LIMB_DIVISOR;
+            }
+            while (firstLimb < limbCount && limbs[firstLimb] == 0) {
+                ++firstLimb; // optimization - skip leading zeros
+            }
+            // The remainder holds the next five base-58 digits.
+            for (int i = 0; i < DIGITS_PER_LIMB; i++) {
+                encoded[--outputStart] = ALPHABET[(int) (remainder % 58)];
+                remainder /= 58;
             }
         }
         // Preserve exactly as many leading encoded zeros in output as there were leading zeros in input.
@@ -86,8 +141,7 @@ public class Base58 {
         while (--zeros >= 0) {
             encoded[--outputStart] = ENCODED_ZERO;
         }
-        // Return encoded string (including encoded leading zeros).
-        return new String(encoded, outputStart, encoded.length - outputStart);
+        return outputStart;
     }
 
     /**
@@ -101,36 +155,68 @@ public class Base58 {
         if (input.length() == 0) {
             return new byte[0];
         }
-        // Convert the base58-encoded ASCII chars to a base58 byte sequence (base58 digits).
-        byte[] input58 = new byte[input.length()];
-        for (int i = 0; i < input.length(); ++i) {
-            char c = input.charAt(i);
-            int digit = c < 128 ? INDEXES[c] : -1;
-            if (digit < 0) {
-                throw new AddressFormatException("Illegal character " + c + " at position " + i);
-            }
-            input58[i] = (byte) digit;
-        }
-        // Count leading zeros.
+        return decode(input, new int[maxDecodedLimbs(input.length())]);
+    }
+
+    private static int maxDecodedLimbs(int length) {
+        // log(58) / log(256) is about 0.733.
+        return (length * 733 / 1000 + 1) / 4 + 1;
+    }
+
+    // Decodes the string using the given limbs, of which there must be at least maxDecodedLimbs(input.length()), as
+    // scratch space.
+    private static byte[] decode(String input, int[] limbs) throws AddressFormatException {
+        int length = input.length();
+        // Count leading zeros, checking the characters along the way.
         int zeros = 0;
-        while (zeros < input58.length && input58[zeros] == 0) {
+        while (zeros < length && input.charAt(zeros) == ENCODED_ZERO) {
             ++zeros;
         }
-        // Convert base-58 digits to base-256 digits.
-        byte[] decoded = new byte[input.length()];
-        int outputStart = decoded.length;
-        for (int inputStart = zeros; inputStart < input58.length; ) {
-            decoded[--outputStart] = divmod(input58, inputStart, 58, 256);
-            if (input58[inputStart] == 0) {
-                ++inputStart; // optimization - skip leading zeros
+        // Convert base-58 digits to base-256 digits, five at a time: the number held in the limbs, least significant
+        // limb last, is multiplied by 58^5 and the value of the next five digits is added to it.
+        int limbCount = limbs.length;
+        Arrays.fill(limbs, 0);
+        int firstLimb = limbCount - 1;
+        int i = zeros;
+        int groupSize = (length - zeros) % DIGITS_PER_LIMB;
+        if (groupSize == 0)
+            groupSize = DIGITS_PER_LIMB;
+        while (i < length) {
+            long carry = 0;
+            for (int end = i + groupSize; i < end; ++i) {
+                char c = input.charAt(i);
+                int digit = c < 128 ? INDEXES[c] : -1;
+                if (digit < 0) {
+                    throw new AddressFormatException("Illegal character " + c + " at position " + i);
+                }
+                carry = carry * 58 + digit;
             }
+            long multiplier = POWERS[groupSize];
+            for (int j = limbCount - 1; j >= firstLimb || carry != 0; j--) {
+                long temp = (limbs[j] & 0xFFFFFFFFL) * multiplier + carry;
+                limbs[j] = (int) temp;
+                carry = temp >>> 32;
+                if (j < firstLimb)
+                    firstLimb = j;
+            }
+            groupSize = DIGITS_PER_LIMB;
         }
-        // Ignore extra leading zeroes that were added during the calculation.
-        while (outputStart < decoded.length && decoded[outputStart] == 0) {
-            ++outputStart;
+        // Unpack the limbs, ignoring the leading zeroes of the number.
+        int byteCount = (limbCount - firstLimb) * 4;
+        int skip = 0;
+        while (skip < byteCount && byteAt(limbs, firstLimb, skip) == 0) {
+            ++skip;
         }
         // Return decoded data (including original number of leading zeros).
-        return Arrays.copyOfRange(decoded, outputStart - zeros, decoded.length);
+        byte[] decoded = new byte[zeros + byteCount - skip];
+        for (int j = skip; j < byteCount; j++)
+            decoded[zeros + j - skip] = byteAt(limbs, firstLimb, j);
+        return decoded;
+    }
+
+    // Returns the given byte of the limbs from the given one on, most significant first.
+    private static byte byteAt(int[] limbs, int firstLimb, int index) {
+        return (byte) (limbs[firstLimb + index / 4] >>> (24 - (index % 4) * 8));
     }
     
     public static BigInteger decodeToBigInteger(String input) throws AddressFormatException {
@@ -146,39 +232,78 @@ public class Base58 {
      * @throws AddressFormatException if the input is not base 58 or the checksum does not validate.
      */
     public static byte[] decodeChecked(String input) throws AddressFormatException {
-        byte[] decoded  = decode(input);
+        return checkChecksum(decode(input), new byte[Sha256Hash.LENGTH]);
+    }
+
+    // Verifies the checksum of the decoded data and returns the data without it, hashing into the given scratch space.
+    private static byte[] checkChecksum(byte[] decoded, byte[] hash) throws AddressFormatException {
         if (decoded.length < 4)
             throw new AddressFormatException("Input too short");
-        byte[] data = Arrays.copyOfRange(decoded, 0, decoded.length - 4);
-        byte[] checksum = Arrays.copyOfRange(decoded, decoded.length - 4, decoded.length);
-        byte[] actualChecksum = Arrays.copyOfRange(Sha256Hash.hashTwice(data), 0, 4);
-        if (!Arrays.equals(checksum, actualChecksum))
-            throw new AddressFormatException("Checksum does not validate");
-        return data;
+        int dataLength = decoded.length - 4;
+        Sha256Hash.hashTwiceInto(decoded, 0, dataLength, hash, 0);
+        for (int i = 0; i < 4; i++)
+            if (decoded[dataLength + i] != hash[i])
+                throw new AddressFormatException("Checksum does not validate");
+        return Arrays.copyOf(decoded, dataLength);
     }
 
     /**
-     * Divides a number, represented as an array of bytes each containing a single digit
-     * in the specified base, by the given divisor. The given number is modified in-place
-     * to contain the quotient, and the return value is the remainder.
+     * Decodes each of the given base58 strings like {@link #decodeChecked(String)}, reusing the same buffers for all of
+     * them.
      *
-     * @param number the number to divide
-     * @param firstDigit the index within the array of the first non-zero digit
-     *        (this is used for optimization by skipping the leading zeros)
-     * @param base the base in which the number's digits are represented (up to 256)
-     * @param divisor the number to divide by (up to 256)
-     * @return the remainder of the division operation
+     * @throws AddressFormatException if any of the inputs is not base 58 or its checksum does not validate; the
+     * message says which one
      */
-    private static byte divmod(byte[] number, int firstDigit, int base, int divisor) {
-        // this is just long division which accounts for the base of the input digits
-        int remainder = 0;
-        for (int i = firstDigit; i < number.length; i++) {
-            int digit = (int) number[i] & 0xFF;
-            int temp = remainder * base + digit;
-            number[i] = (byte) (temp / divisor);
-            remainder = temp % divisor;
+    public static List<byte[]> decodeChecked(List<String> inputs) throws AddressFormatException {
+        List<byte[]> decoded = new ArrayList<byte[]>(inputs.size());
+        int[] limbs = new int[0];
+        byte[] hash = new byte[Sha256Hash.LENGTH];
+        for (int i = 0; i < inputs.size(); i++) {
+            String input = inputs.get(i);
+            if (limbs.length < maxDecodedLimbs(input.length()))
+                limbs = new int[maxDecodedLimbs(input.length())];
+            try {
+                decoded.add(checkChecksum(decode(input, limbs), hash));
+            } catch (AddressFormatException e) {
+                throw new AddressFormatException("Input " + i + ": " + e.getMessage());
+            }
         }
-        return (byte) remainder;
+        return decoded;
     }
 
+    /**
+     * Encodes a version byte followed by the given data and a 4 byte checksum as a base58 string. This is the format
+     * of addresses and dumped private keys, see {@link VersionedChecksummedBytes}.
+     */
+    public static String encodeChecked(int version, byte[] payload) {
+        return encodeChecked(version, Collections.singletonList(payload)).get(0);
+    }
+
+    /**
+     * Encodes each of the given payloads like {@link #encodeChecked(int, byte[])}, reusing the same buffers for all of
+     * them. For addresses that's 25 bytes a time, which take up seven limbs of 32 bits.
+     */
+    public static List<String> encodeChecked(int version, List<byte[]> payloads) {
+        checkArgument(version >= 0 && version < 256);
+        List<String> encoded = new ArrayList<String>(payloads.size());
+        byte[] buffer = new byte[0];
+        int[] limbs = new int[0];
+        char[] chars = new char[0];
+        for (byte[] payload : payloads) {
+            int length = 1 + payload.length + 4;
+            // Room for the whole hash after the payload, of which only the first four bytes are encoded.
+            if (buffer.length < 1 + payload.length + Sha256Hash.LENGTH) {
+                buffer = new byte[1 + payload.length + Sha256Hash.LENGTH];
+                limbs = new int[(length + 3) / 4];
+                chars = new char[maxEncodedLength(length)];
+            }
+            buffer[0] = (byte) version;
+            System.arraycopy(payload, 0, buffer, 1, payload.length);
+            Sha256Hash.hashTwiceInto(buffer, 0, 1 + payload.length, buffer, 1 + payload.length);
+            // Encode into the end of the char array, as long as this payload needs.
+            int start = encode(buffer, 0, length, limbs, chars);
+            encoded.add(new String(chars, start, chars.length - start));
+        }
+        return encoded;
+    }
 }
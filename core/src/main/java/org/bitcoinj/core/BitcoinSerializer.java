@@ -65,6 +65,8 @@ public class BitcoinSerializer extends MessageSerializer {
         names.put(GetAddrMessage.class, "getaddr");
         names.put(HeadersMessage.class, "headers");
         names.put(BloomFilter.class, "filterload");
+        names.put(FilterAddMessage.class, "filteradd");
+        names.put(FilterClearMessage.class, "filterclear");
         names.put(FilteredBlock.class, "merkleblock");
         names.put(NotFoundMessage.class, "notfound");
         names.put(MemoryPoolMessage.class, "mempool");
@@ -72,6 +74,10 @@ public class BitcoinSerializer extends MessageSerializer {
         names.put(GetUTXOsMessage.class, "getutxos");
         names.put(UTXOsMessage.class, "utxos");
         names.put(CheckpointMessage.class, "checkpoint");
+        names.put(SendCompactBlocksMessage.class, "sendcmpct");
+        names.put(CompactBlockMessage.class, "cmpctblock");
+        names.put(GetBlockTransactionsMessage.class, "getblocktxn");
+        names.put(BlockTransactionsMessage.class, "blocktxn");
     }
 
     /**
@@ -220,6 +226,10 @@ public class BitcoinSerializer extends MessageSerializer {
             return makeAlertMessage(payloadBytes);
         } else if (command.equals("filterload")) {
             return makeBloomFilter(payloadBytes);
+        } else if (command.equals("filteradd")) {
+            return new FilterAddMessage(params, payloadBytes, 0);
+        } else if (command.equals("filterclear")) {
+            return new FilterClearMessage(params, payloadBytes);
         } else if (command.equals("notfound")) {
             return new NotFoundMessage(params, payloadBytes);
         } else if (command.equals("mempool")) {
@@ -232,6 +242,14 @@ public class BitcoinSerializer extends MessageSerializer {
             return new GetUTXOsMessage(params, payloadBytes);
         } else if (command.equals("checkpoint")) {
             return new CheckpointMessage(params, payloadBytes);
+        } else if (command.equals("sendcmpct")) {
+            return new SendCompactBlocksMessage(params, payloadBytes);
+        } else if (command.equals("cmpctblock")) {
+            return new CompactBlockMessage(params, payloadBytes);
+        } else if (command.equals("getblocktxn")) {
+            return new GetBlockTransactionsMessage(params, payloadBytes);
+        } else if (command.equals("blocktxn")) {
+            return new BlockTransactionsMessage(params, payloadBytes);
         } else {
             log.warn("No support for deserializing message with name {}", command);
             return new UnknownMessage(params, command, payloadBytes);
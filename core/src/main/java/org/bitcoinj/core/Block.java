@@ -260,7 +260,7 @@ public class Block extends Message {
         time = readUint32();
         difficultyTarget = readUint32();
         nonce = readUint32();
-        hash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(payload, offset, cursor - offset));
+        hash = Sha256Hash.twiceOfReversed(payload, offset, cursor - offset);
         headerBytesValid = serializer.isParseRetainMode();
 
         // transactions
@@ -398,32 +398,31 @@ public class Block extends Message {
         merkleRoot = null;
     }
 
-    /**
-     * Calculates the block hash by serializing the block and hashing the
-     * resulting bytes.
-     */
-    private Sha256Hash calculateHash() {
+    /** Returns the serialized header, which is exactly {@link #HEADER_SIZE} bytes long. */
+    byte[] serializeHeader() {
         try {
             ByteArrayOutputStream bos = new UnsafeByteArrayOutputStream(HEADER_SIZE);
             writeHeader(bos);
-            return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(bos.toByteArray()));
+            return bos.toByteArray();
         } catch (IOException e) {
             throw new RuntimeException(e); // Cannot happen.
         }
     }
 
+    /**
+     * Calculates the block hash by serializing the block and hashing the
+     * resulting bytes.
+     */
+    private Sha256Hash calculateHash() {
+        return Sha256Hash.twiceOfReversed(serializeHeader(), 0, HEADER_SIZE);
+    }
+
     /**
      * Calculates the block POW hash by serializing the block and hashing the
      * resulting bytes.
      */
     private Sha256Hash calculatePowHash() {
-        try {
-            ByteArrayOutputStream bos = new UnsafeByteArrayOutputStream(HEADER_SIZE);
-            writeHeader(bos);
-            return Sha256Hash.wrapReversed(Sha256Hash.hashScrypt(bos.toByteArray()));
-        } catch (IOException e) {
-            throw new RuntimeException(e); // Cannot happen.
-        }
+        return Sha256Hash.wrapReversed(Sha256Hash.hashScrypt(serializeHeader()));
     }
 
     /**
@@ -607,12 +606,7 @@ public class Block extends Message {
         }
     }
 
-    private Sha256Hash calculateMerkleRoot() {
-        List<byte[]> tree = buildMerkleTree();
-        return Sha256Hash.wrap(tree.get(tree.size() - 1));
-    }
-
-    private List<byte[]> buildMerkleTree() {
+    Sha256Hash calculateMerkleRoot() {
         // The Merkle root is based on a tree of hashes calculated from the transactions:
         //
         //     root
@@ -621,8 +615,7 @@ public class Block extends Message {
         //  / \    / \
         // t1 t2 t3 t4
         //
-        // The tree is represented as a list: t1,t2,t3,t4,A,B,root where each
-        // entry is a hash.
+        // The tree is laid out as t1,t2,t3,t4,A,B,root where each entry is a hash, see MerkleTree.
         //
         // The hashing algorithm is double SHA-256. The leaves are a hash of the serialized contents of the transaction.
         // The interior nodes are hashes of the concenation of the two child hashes.
@@ -643,27 +636,12 @@ public class Block extends Message {
         //    2     3    4  4
         //  / \   / \   / \
         // t1 t2 t3 t4 t5 t5
-        ArrayList<byte[]> tree = new ArrayList<byte[]>();
-        // Start by adding all the hashes of the transactions as leaves of the tree.
-        for (Transaction t : transactions) {
-            tree.add(t.getHash().getBytes());
-        }
-        int levelOffset = 0; // Offset in the list where the currently processed level starts.
-        // Step through each level, stopping when we reach the root (levelSize == 1).
-        for (int levelSize = transactions.size(); levelSize > 1; levelSize = (levelSize + 1) / 2) {
-            // For each pair of nodes on that level:
-            for (int left = 0; left < levelSize; left += 2) {
-                // The right hand node can be the same as the left hand, in the case where we don't have enough
-                // transactions.
-                int right = Math.min(left + 1, levelSize - 1);
-                byte[] leftBytes = Utils.reverseBytes(tree.get(levelOffset + left));
-                byte[] rightBytes = Utils.reverseBytes(tree.get(levelOffset + right));
-                tree.add(Utils.reverseBytes(hashTwice(leftBytes, 0, 32, rightBytes, 0, 32)));
-            }
-            // Move to the next level.
-            levelOffset += levelSize;
-        }
-        return tree;
+        //
+        // The leaves are the transaction hashes, which are cached by the transactions.
+        List<Sha256Hash> leaves = new ArrayList<Sha256Hash>(transactions.size());
+        for (Transaction t : transactions)
+            leaves.add(t.getHash());
+        return MerkleTree.computeRoot(leaves);
     }
 
     /**
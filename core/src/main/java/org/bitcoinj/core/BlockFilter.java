@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.script.ScriptOpCodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>A compact filter of a block, in the style of
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0158.mediawiki">BIP 158</a>. Instead of giving a peer a
+ * Bloom filter of what it's interested in and receiving filtered blocks, a client matches the filters of blocks against
+ * its own elements locally, see {@link org.bitcoinj.wallet.Wallet#getBlockFilterElements()}, and only downloads the
+ * blocks that match. Filters are the same for every client, so they can be computed once and served to anyone, and a
+ * client can match them again whenever its set of elements grows.</p>
+ *
+ * <p>A filter is a {@link GolombCodedSet} with the parameters of the BIP 158 basic filter type, keyed with the first
+ * 16 bytes of the block hash. It contains the program of every output script in the block, except empty and
+ * OP_RETURN scripts. Where the basic filter type contains the output scripts spent by the inputs of the block, which
+ * can't be known without the spent transactions, this filter contains the serialized outpoints the inputs spend, so
+ * that it can be built from the block alone.</p>
+ *
+ * <p>Instances of this class are immutable and safe for use by multiple threads.</p>
+ */
+public class BlockFilter {
+    private final Sha256Hash blockHash;
+    private final GolombCodedSet set;
+
+    private BlockFilter(Sha256Hash blockHash, GolombCodedSet set) {
+        this.blockHash = blockHash;
+        this.set = set;
+    }
+
+    /** Parses a filter of the block with the given hash from its serialized form. */
+    public BlockFilter(Sha256Hash blockHash, byte[] encoded) throws ProtocolException {
+        this(blockHash, new GolombCodedSet(key(blockHash), GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, encoded));
+    }
+
+    /** Builds the filter of a block, which must include its transactions. */
+    public static BlockFilter build(Block block) {
+        List<Transaction> transactions = checkNotNull(block.getTransactions(), "Block has no transactions");
+        List<byte[]> elements = new ArrayList<byte[]>();
+        for (Transaction tx : transactions) {
+            if (!tx.isCoinBase()) {
+                for (TransactionInput input : tx.getInputs())
+                    elements.add(input.getOutpoint().unsafeBitcoinSerialize());
+            }
+            for (TransactionOutput output : tx.getOutputs()) {
+                byte[] script = output.getScriptBytes();
+                if (script.length > 0 && (script[0] & 0xff) != ScriptOpCodes.OP_RETURN)
+                    elements.add(script);
+            }
+        }
+        Sha256Hash hash = block.getHash();
+        return new BlockFilter(hash, GolombCodedSet.build(key(hash), GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M,
+                elements));
+    }
+
+    private static byte[] key(Sha256Hash blockHash) {
+        return Arrays.copyOf(blockHash.getReversedBytes(), 16);
+    }
+
+    /** Returns the hash of the block this is the filter of. */
+    public Sha256Hash getBlockHash() {
+        return blockHash;
+    }
+
+    /** Returns the serialized filter. The returned array must not be modified. */
+    public byte[] getEncoded() {
+        return set.getEncoded();
+    }
+
+    /** Returns the double SHA-256 hash of the serialized filter. */
+    public Sha256Hash getFilterHash() {
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(set.getEncoded()));
+    }
+
+    /**
+     * Returns the filter header, which commits to this filter and, through the previous block's filter header, to the
+     * filters of all blocks before it. The previous header of the genesis block is all zeros.
+     */
+    public Sha256Hash getHeader(Sha256Hash previousHeader) {
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(getFilterHash().getReversedBytes(), 0, 32,
+                previousHeader.getReversedBytes(), 0, 32));
+    }
+
+    /** Returns the number of distinct elements in the filter. */
+    public int size() {
+        return set.size();
+    }
+
+    /** Returns whether the block may contain any of the given output script programs or outpoints. */
+    public boolean matchesAny(Collection<byte[]> elements) {
+        return set.matchAny(elements);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BlockFilter other = (BlockFilter) o;
+        return blockHash.equals(other.blockHash) && set.equals(other.set);
+    }
+
+    @Override
+    public int hashCode() {
+        return blockHash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Block filter of " + blockHash + ": " + set;
+    }
+}
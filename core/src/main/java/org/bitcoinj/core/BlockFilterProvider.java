@@ -0,0 +1,30 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * A source of {@link BlockFilter}s, for example {@link org.bitcoinj.utils.BlockFilterIndex}. Implementations must be
+ * safe to call from several threads at once.
+ */
+public interface BlockFilterProvider {
+    /** Returns the filter of the block with the given hash, or null if it isn't available. */
+    @Nullable
+    BlockFilter getBlockFilter(Sha256Hash blockHash) throws IOException;
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.wallet.Wallet;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>Finds the blocks that are relevant to a wallet by matching {@link BlockFilter}s against the wallet's elements
+ * locally, and downloads only those blocks. Each filter is matched on its own, so ranges of blocks are matched in
+ * parallel on the given executor.</p>
+ *
+ * <p>This is meant for rescanning parts of the chain the wallet hasn't seen, for example after restoring it from a
+ * seed. Whenever a downloaded block turns out to contain transactions for the wallet, which may have grown its key
+ * lookahead or gained outputs whose spends must be found, the remaining filters are simply matched again against the
+ * wallet's new elements. Nothing has to be sent to peers for that, unlike a Bloom filter.</p>
+ */
+public class BlockFilterScanner {
+    private static final Logger log = LoggerFactory.getLogger(BlockFilterScanner.class);
+
+    // Number of consecutive blocks whose filters are matched by a single task.
+    private static final int BLOCKS_PER_TASK = 500;
+    // Number of matching blocks requested ahead of the one being processed.
+    private static final int PREFETCH_BLOCKS = 16;
+    private static final long BLOCK_DOWNLOAD_TIMEOUT_SECS = 60;
+
+    private final BlockStore blockStore;
+    private final BlockFilterProvider filters;
+    private final ExecutorService executor;
+
+    public BlockFilterScanner(BlockStore blockStore, BlockFilterProvider filters, ExecutorService executor) {
+        this.blockStore = checkNotNull(blockStore);
+        this.filters = checkNotNull(filters);
+        this.executor = checkNotNull(executor);
+    }
+
+    /**
+     * Returns the blocks after {@code from} up to and including {@code to} whose filters match any of the given
+     * elements, in chain order. Blocks without a filter are returned as well, as they can't be ruled out.
+     *
+     * @throws IllegalArgumentException if {@code from} isn't an ancestor of {@code to}
+     */
+    public List<StoredBlock> findMatchingBlocks(StoredBlock from, StoredBlock to, Collection<byte[]> elements)
+            throws BlockStoreException, IOException, InterruptedException {
+        List<StoredBlock> blocks = getBlocks(from, to);
+        List<StoredBlock> matching = matchBlocks(blocks, elements);
+        log.info("{} of {} block filters matched", matching.size(), blocks.size());
+        return matching;
+    }
+
+    // Returns the blocks after from up to and including to, in chain order.
+    private List<StoredBlock> getBlocks(StoredBlock from, StoredBlock to) throws BlockStoreException {
+        List<StoredBlock> blocks = new ArrayList<StoredBlock>(Math.max(0, to.getHeight() - from.getHeight()));
+        for (StoredBlock cursor = to; !cursor.equals(from); cursor = cursor.getPrev(blockStore)) {
+            checkArgument(cursor.getHeight() > from.getHeight(), "Block %s is not an ancestor of %s", from, to);
+            blocks.add(cursor);
+        }
+        return Lists.reverse(blocks);
+    }
+
+    private List<StoredBlock> matchBlocks(List<StoredBlock> blocks, final Collection<byte[]> elements)
+            throws IOException, InterruptedException {
+        List<Callable<List<StoredBlock>>> tasks = new ArrayList<Callable<List<StoredBlock>>>();
+        for (final List<StoredBlock> range : Lists.partition(blocks, BLOCKS_PER_TASK)) {
+            tasks.add(new Callable<List<StoredBlock>>() {
+                @Override
+                public List<StoredBlock> call() throws IOException {
+                    List<StoredBlock> matching = new ArrayList<StoredBlock>();
+                    for (StoredBlock block : range) {
+                        BlockFilter filter = filters.getBlockFilter(block.getHeader().getHash());
+                        if (filter == null || filter.matchesAny(elements))
+                            matching.add(block);
+                    }
+                    return matching;
+                }
+            });
+        }
+        List<StoredBlock> matching = new ArrayList<StoredBlock>();
+        for (Future<List<StoredBlock>> result : executor.invokeAll(tasks)) {
+            try {
+                matching.addAll(result.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Downloads the blocks after {@code from} up to the current chain head whose filters match the wallet from the
+     * given peer, and gives their transactions to the wallet.
+     *
+     * @return the number of blocks that were downloaded
+     */
+    public int rescan(Wallet wallet, StoredBlock from, final Peer peer) throws BlockStoreException, IOException,
+            InterruptedException, ExecutionException, TimeoutException {
+        return rescan(wallet, from, new Function<Sha256Hash, ListenableFuture<Block>>() {
+            @Override
+            public ListenableFuture<Block> apply(Sha256Hash hash) {
+                return peer.getBlock(hash);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    int rescan(Wallet wallet, StoredBlock from, Function<Sha256Hash, ListenableFuture<Block>> download)
+            throws BlockStoreException, IOException, InterruptedException, ExecutionException, TimeoutException {
+        StoredBlock to = blockStore.getChainHead();
+        List<StoredBlock> blocks = getBlocks(from, to);
+        Set<ByteBuffer> matched = new HashSet<ByteBuffer>();
+        List<byte[]> elements = newElements(wallet, matched);
+        List<StoredBlock> matching = matchBlocks(blocks, elements);
+        log.info("{} of {} block filters matched", matching.size(), blocks.size());
+        // The next few matching blocks are requested ahead, so that the download is pipelined.
+        Map<Sha256Hash, ListenableFuture<Block>> requested = new HashMap<Sha256Hash, ListenableFuture<Block>>();
+        List<Sha256Hash> received = new ArrayList<Sha256Hash>();
+        int downloaded = 0;
+        int i = 0;
+        while (i < matching.size()) {
+            for (int j = i; j < Math.min(i + PREFETCH_BLOCKS, matching.size()); j++) {
+                Sha256Hash hash = matching.get(j).getHeader().getHash();
+                if (!requested.containsKey(hash)) {
+                    requested.put(hash, download.apply(hash));
+                    downloaded++;
+                }
+            }
+            StoredBlock stored = matching.get(i++);
+            Sha256Hash hash = stored.getHeader().getHash();
+            Block block = requested.remove(hash).get(BLOCK_DOWNLOAD_TIMEOUT_SECS, TimeUnit.SECONDS);
+            if (!block.getHash().equals(hash))
+                throw new VerificationException("Asked for block " + hash + " but got " + block.getHash());
+            block.verifyTransactions(stored.getHeight(), EnumSet.noneOf(Block.VerifyFlag.class));
+            boolean relevant = false;
+            int relativityOffset = 0;
+            for (Transaction tx : block.getTransactions()) {
+                if (wallet.isTransactionRelevant(tx)) {
+                    wallet.receiveFromBlock(tx, stored, AbstractBlockChain.NewBlockType.BEST_CHAIN, relativityOffset);
+                    received.add(tx.getHash());
+                    relevant = true;
+                }
+                relativityOffset++;
+            }
+            if (relevant) {
+                // The wallet may have gained elements, match the rest of the chain against just those.
+                elements = newElements(wallet, matched);
+                if (!elements.isEmpty()) {
+                    List<StoredBlock> rest = blocks.subList(stored.getHeight() - from.getHeight(), blocks.size());
+                    matching = merge(matching.subList(i, matching.size()), matchBlocks(rest, elements));
+                    i = 0;
+                }
+            }
+        }
+        // The blocks were already buried, so no new best block notification follows them.
+        wallet.notifyTransactionsRescanned(received, to);
+        log.info("Rescanned {} blocks after {}, downloaded {}", blocks.size(), from.getHeight(), downloaded);
+        return downloaded;
+    }
+
+    // Returns the elements of the wallet that weren't matched yet, and adds them to the matched ones.
+    private static List<byte[]> newElements(Wallet wallet, Set<ByteBuffer> matched) {
+        List<byte[]> elements = new ArrayList<byte[]>();
+        for (byte[] element : wallet.getBlockFilterElements())
+            if (matched.add(ByteBuffer.wrap(element)))
+                elements.add(element);
+        return elements;
+    }
+
+    // Merges two lists of blocks in chain order, dropping duplicates.
+    private static List<StoredBlock> merge(List<StoredBlock> a, List<StoredBlock> b) {
+        List<StoredBlock> merged = new ArrayList<StoredBlock>(a.size() + b.size());
+        int i = 0, j = 0;
+        while (i < a.size() || j < b.size()) {
+            if (j == b.size() || (i < a.size() && a.get(i).getHeight() < b.get(j).getHeight())) {
+                merged.add(a.get(i++));
+            } else {
+                if (i < a.size() && a.get(i).getHeight() == b.get(j).getHeight())
+                    i++;
+                merged.add(b.get(j++));
+            }
+        }
+        return merged;
+    }
+}
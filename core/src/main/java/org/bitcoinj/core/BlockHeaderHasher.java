@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import java.security.MessageDigest;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>Calculates the hashes of a block header whose time and nonce change, for example while searching for a nonce.
+ * SHA-256 processes its input in 64 byte chunks, and the first chunk of the 80 byte header only covers the version,
+ * the previous block hash and most of the merkle root. The state of the digest after that chunk, the midstate, is
+ * computed once and every hash after that only has to process the last 16 bytes, which saves a third of the work.</p>
+ *
+ * <p>Instances of this class are not thread safe.</p>
+ */
+public class BlockHeaderHasher {
+    private static final int CHUNK_SIZE = 64;
+    private static final int TIME_OFFSET = Block.HEADER_SIZE - 12 - CHUNK_SIZE;
+    private static final int NONCE_OFFSET = Block.HEADER_SIZE - 4 - CHUNK_SIZE;
+
+    private final MessageDigest midstate;
+    private final byte[] tail = new byte[Block.HEADER_SIZE - CHUNK_SIZE];
+    private final byte[] hash = new byte[Sha256Hash.LENGTH];
+
+    /** Creates a hasher for the serialized header at the given offset of the array. */
+    public BlockHeaderHasher(byte[] header, int offset) {
+        checkPositionIndexes(offset, offset + Block.HEADER_SIZE, header.length);
+        midstate = Sha256Hash.newDigest();
+        midstate.update(header, offset, CHUNK_SIZE);
+        System.arraycopy(header, offset + CHUNK_SIZE, tail, 0, tail.length);
+    }
+
+    /** Creates a hasher for the header of the given block. */
+    public BlockHeaderHasher(Block block) {
+        this(block.serializeHeader(), 0);
+    }
+
+    /** Sets the time field of the header, in seconds since the epoch. */
+    public void setTime(long time) {
+        Utils.uint32ToByteArrayLE(time, tail, TIME_OFFSET);
+    }
+
+    /** Sets the nonce field of the header. */
+    public void setNonce(long nonce) {
+        Utils.uint32ToByteArrayLE(nonce, tail, NONCE_OFFSET);
+    }
+
+    /**
+     * Writes the double SHA-256 hash of the header to the output array, in the byte order it is serialized in, which
+     * is the reverse of {@link Block#getHash()}.
+     */
+    public void hashInto(byte[] output, int outputOffset) {
+        checkPositionIndexes(outputOffset, outputOffset + Sha256Hash.LENGTH, output.length);
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest) midstate.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);  // Can't happen, the JDK's digests can be cloned.
+        }
+        digest.update(tail, 0, tail.length);
+        Sha256Hash.digestInto(digest, output, outputOffset);
+        digest.update(output, outputOffset, Sha256Hash.LENGTH);
+        Sha256Hash.digestInto(digest, output, outputOffset);
+    }
+
+    /** Returns the hash of the header, as {@link Block#getHash()} would. */
+    public Sha256Hash getHash() {
+        hashInto(hash, 0);
+        return Sha256Hash.wrapReversed(hash);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The transactions of a block asked for with a {@link GetBlockTransactionsMessage} ("blocktxn"), in the order they
+ * were asked for.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple threads.</p>
+ */
+public class BlockTransactionsMessage extends Message {
+    // No transaction can be smaller than this, which bounds how many there can be.
+    private static final int MIN_TRANSACTION_SIZE = 60;
+
+    private Sha256Hash blockHash;
+    private List<Transaction> transactions;
+
+    public BlockTransactionsMessage(NetworkParameters params, Sha256Hash blockHash, List<Transaction> transactions) {
+        super(params);
+        this.blockHash = blockHash;
+        this.transactions = new ArrayList<Transaction>(transactions);
+    }
+
+    public BlockTransactionsMessage(NetworkParameters params, byte[] payloadBytes) throws ProtocolException {
+        super(params, payloadBytes, 0);
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        blockHash = readHash();
+        long numTransactions = readVarInt();
+        if (numTransactions < 0 || numTransactions > Block.MAX_BLOCK_SIZE / MIN_TRANSACTION_SIZE)
+            throw new ProtocolException("Too many transactions: " + numTransactions);
+        transactions = new ArrayList<Transaction>((int) numTransactions);
+        for (int i = 0; i < numTransactions; i++) {
+            Transaction tx = new Transaction(params, payload, cursor);
+            cursor += tx.getMessageSize();
+            transactions.add(tx);
+        }
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(OutputStream stream) throws IOException {
+        stream.write(blockHash.getReversedBytes());
+        stream.write(new VarInt(transactions.size()).encode());
+        for (Transaction tx : transactions)
+            tx.bitcoinSerialize(stream);
+    }
+
+    public Sha256Hash getBlockHash() {
+        return blockHash;
+    }
+
+    public List<Transaction> getTransactions() {
+        return Collections.unmodifiableList(transactions);
+    }
+
+    @Override
+    public String toString() {
+        return "blocktxn " + blockHash + ": " + transactions.size() + " transactions";
+    }
+}
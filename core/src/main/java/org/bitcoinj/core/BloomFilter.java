@@ -27,6 +27,7 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Math.*;
@@ -41,7 +42,9 @@ import static java.lang.Math.*;
  * a useful privacy feature - if you have spare bandwidth the false positive rate can be increased so the remote peer
  * gets a noisy picture of what transactions are relevant to your wallet.</p>
  * 
- * <p>Instances of this class are not safe for use by multiple threads.</p>
+ * <p>Instances of this class are safe for use by multiple threads. Lookups never lock: they probe a snapshot of the
+ * filter bits, which are only ever set and never cleared while the filter is in use, so a lookup sees every element
+ * inserted before it started. Inserts set bits atomically, so concurrent inserts don't lose each other's bits.</p>
  */
 public class BloomFilter extends Message {
     /** The BLOOM_UPDATE_* constants control when the bloom filter is auto-updated by the peer using
@@ -53,7 +56,9 @@ public class BloomFilter extends Message {
         UPDATE_P2PUBKEY_ONLY //2
     }
     
-    private byte[] data;
+    // The filter bits, packed little endian into words so that bit i of the serialized form is bit (i & 63) of word
+    // (i >>> 6). Replaced wholesale when the filter is parsed, merged into a match-all filter or set to match all.
+    private volatile Bits bits;
     private long hashFuncs;
     private long nTweak;
     private byte nFlags;
@@ -64,6 +69,58 @@ public class BloomFilter extends Message {
     // There is little reason to ever have more hash functions than 50 given a limit of 36,000 bytes
     private static final int MAX_HASH_FUNCS = 50;
 
+    private static class Bits {
+        final AtomicLongArray words;
+        final int size;  // in bytes, as serialized
+
+        Bits(int size) {
+            this.words = new AtomicLongArray((size + 7) / 8);
+            this.size = size;
+        }
+
+        Bits(byte[] data) {
+            this(data.length);
+            for (int i = 0; i < data.length; i++)
+                setByte(i, data[i]);
+        }
+
+        boolean get(long bit) {
+            return (words.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+        }
+
+        void set(long bit) {
+            or((int) (bit >>> 6), 1L << bit);
+        }
+
+        void setByte(int index, byte b) {
+            or(index >>> 3, (b & 0xFFL) << ((index & 7) * 8));
+        }
+
+        byte getByte(int index) {
+            return (byte) (words.get(index >>> 3) >>> ((index & 7) * 8));
+        }
+
+        void or(int index, long mask) {
+            long word;
+            do {
+                word = words.get(index);
+                if ((word | mask) == word)
+                    return;
+            } while (!words.compareAndSet(index, word, word | mask));
+        }
+
+        byte[] toByteArray() {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++)
+                data[i] = getByte(i);
+            return data;
+        }
+
+        static Bits matchAll() {
+            return new Bits(new byte[] {(byte) 0xff});
+        }
+    }
+
     /**
      * Construct a BloomFilter by deserializing payloadBytes
      */
@@ -112,9 +169,9 @@ public class BloomFilter extends Message {
         //                        Size required for a given number of elements and false-positive rate
         int size = (int)(-1  / (pow(log(2), 2)) * elements * log(falsePositiveRate));
         size = max(1, min(size, (int) MAX_FILTER_SIZE * 8) / 8);
-        data = new byte[size];
+        bits = new Bits(size);
         // Optimal number of hash functions for a given filter size and element count.
-        hashFuncs = (int)(data.length * 8 / (double)elements * log(2));
+        hashFuncs = (int)(size * 8 / (double)elements * log(2));
         hashFuncs = max(1, min(hashFuncs, MAX_HASH_FUNCS));
         this.nTweak = randomNonce;
         this.nFlags = (byte)(0xff & updateFlag.ordinal());
@@ -124,19 +181,20 @@ public class BloomFilter extends Message {
      * Returns the theoretical false positive rate of this filter if were to contain the given number of elements.
      */
     public double getFalsePositiveRate(int elements) {
-        return pow(1 - pow(E, -1.0 * (hashFuncs * elements) / (data.length * 8)), hashFuncs);
+        return pow(1 - pow(E, -1.0 * (hashFuncs * elements) / (bits.size * 8)), hashFuncs);
     }
 
     @Override
     public String toString() {
-        return "Bloom Filter of size " + data.length + " with " + hashFuncs + " hash functions.";
+        return "Bloom Filter of size " + bits.size + " with " + hashFuncs + " hash functions.";
     }
 
     @Override
     protected void parse() throws ProtocolException {
-        data = readByteArray();
+        byte[] data = readByteArray();
         if (data.length > MAX_FILTER_SIZE)
             throw new ProtocolException ("Bloom filter out of size range.");
+        bits = new Bits(data);
         hashFuncs = readUint32();
         if (hashFuncs > MAX_HASH_FUNCS)
             throw new ProtocolException("Bloom filter hash function count out of range");
@@ -150,6 +208,7 @@ public class BloomFilter extends Message {
      */
     @Override
     protected void bitcoinSerializeToStream(OutputStream stream) throws IOException {
+        byte[] data = bits.toByteArray();
         stream.write(new VarInt(data.length).encode());
         stream.write(data);
         Utils.uint32ToByteStreamLE(hashFuncs, stream);
@@ -215,27 +274,86 @@ public class BloomFilter extends Message {
         
         return (int)((h1&0xFFFFFFFFL) % (data.length * 8));
     }
+
+    /**
+     * Mixes the 4 byte blocks of the object the way {@link #murmurHash3(byte[], long, int, byte[])} does. This part
+     * doesn't depend on the hash function number, so it is done once per object rather than once per hash function.
+     * The mixed tail, if there is one, is the last element.
+     */
+    private static int[] murmurMixBlocks(byte[] object) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int numBlocks = object.length / 4;
+        int[] mixed = new int[numBlocks + ((object.length & 3) != 0 ? 1 : 0)];
+        for (int i = 0; i < numBlocks; i++) {
+            int k1 = (object[i * 4] & 0xFF) |
+                  ((object[i * 4 + 1] & 0xFF) << 8) |
+                  ((object[i * 4 + 2] & 0xFF) << 16) |
+                  ((object[i * 4 + 3] & 0xFF) << 24);
+            k1 *= c1;
+            k1 = rotateLeft32(k1, 15);
+            k1 *= c2;
+            mixed[i] = k1;
+        }
+        if (numBlocks < mixed.length) {
+            int k1 = 0;
+            int tail = numBlocks * 4;
+            for (int i = object.length - 1; i >= tail; i--)
+                k1 = (k1 << 8) | (object[i] & 0xFF);
+            k1 *= c1;
+            k1 = rotateLeft32(k1, 15);
+            k1 *= c2;
+            mixed[numBlocks] = k1;
+        }
+        return mixed;
+    }
+
+    /** Returns the bit the given hash function selects, from blocks mixed by {@link #murmurMixBlocks(byte[])}. */
+    private long murmurBit(int[] mixed, int length, int hashNum, long numBits) {
+        int h1 = (int)(hashNum * 0xFBA4C795L + nTweak);
+        int numBlocks = length / 4;
+        for (int i = 0; i < numBlocks; i++) {
+            h1 ^= mixed[i];
+            h1 = rotateLeft32(h1, 13);
+            h1 = h1*5+0xe6546b64;
+        }
+        if (numBlocks < mixed.length)
+            h1 ^= mixed[numBlocks];
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return (h1&0xFFFFFFFFL) % numBits;
+    }
     
     /**
      * Returns true if the given object matches the filter either because it was inserted, or because we have a
      * false-positive.
      */
-    public synchronized boolean contains(byte[] object) {
+    public boolean contains(byte[] object) {
+        Bits bits = this.bits;
+        long numBits = bits.size * 8L;
+        int[] mixed = murmurMixBlocks(object);
         for (int i = 0; i < hashFuncs; i++) {
-            if (!Utils.checkBitLE(data, murmurHash3(data, nTweak, i, object)))
+            if (!bits.get(murmurBit(mixed, object.length, i, numBits)))
                 return false;
         }
         return true;
     }
     
     /** Insert the given arbitrary data into the filter */
-    public synchronized void insert(byte[] object) {
+    public void insert(byte[] object) {
+        Bits bits = this.bits;
+        long numBits = bits.size * 8L;
+        int[] mixed = murmurMixBlocks(object);
         for (int i = 0; i < hashFuncs; i++)
-            Utils.setBitLE(data, murmurHash3(data, nTweak, i, object));
+            bits.set(murmurBit(mixed, object.length, i, numBits));
     }
 
     /** Inserts the given key and equivalent hashed form (for the address). */
-    public synchronized void insert(ECKey key) {
+    public void insert(ECKey key) {
         insert(key.getPubKey());
         insert(key.getPubKeyHash());
     }
@@ -247,23 +365,24 @@ public class BloomFilter extends Message {
      * Solved blocks will then be send just as Merkle trees of tx hashes, meaning a constant 32 bytes of data for each
      * transaction instead of 100-300 bytes as per usual.
      */
-    public synchronized void setMatchAll() {
-        data = new byte[] {(byte) 0xff};
+    public void setMatchAll() {
+        bits = Bits.matchAll();
     }
 
     /**
      * Copies filter into this. Filter must have the same size, hash function count and nTweak or an
      * IllegalArgumentException will be thrown.
      */
-    public synchronized void merge(BloomFilter filter) {
+    public void merge(BloomFilter filter) {
         if (!this.matchesAll() && !filter.matchesAll()) {
-            checkArgument(filter.data.length == this.data.length &&
+            Bits bits = this.bits, other = filter.bits;
+            checkArgument(other.size == bits.size &&
                           filter.hashFuncs == this.hashFuncs &&
                           filter.nTweak == this.nTweak);
-            for (int i = 0; i < data.length; i++)
-                this.data[i] |= filter.data[i];
+            for (int i = 0; i < bits.words.length(); i++)
+                bits.or(i, other.words.get(i));
         } else {
-            this.data = new byte[] {(byte) 0xff};
+            this.bits = Bits.matchAll();
         }
     }
 
@@ -271,9 +390,10 @@ public class BloomFilter extends Message {
      * Returns true if this filter will match anything. See {@link org.bitcoinj.core.BloomFilter#setMatchAll()}
      * for when this can be a useful thing to do.
      */
-    public synchronized boolean matchesAll() {
-        for (byte b : data)
-            if (b != (byte) 0xff)
+    public boolean matchesAll() {
+        Bits bits = this.bits;
+        for (int i = 0; i < bits.size; i++)
+            if (bits.getByte(i) != (byte) 0xff)
                 return false;
         return true;
     }
@@ -282,7 +402,7 @@ public class BloomFilter extends Message {
      * The update flag controls how application of the filter to a block modifies the filter. See the enum javadocs
      * for information on what occurs and when.
      */
-    public synchronized BloomUpdate getUpdateFlag() {
+    public BloomUpdate getUpdateFlag() {
         if (nFlags == 0)
             return BloomUpdate.UPDATE_NONE;
         else if (nFlags == 1)
@@ -299,7 +419,7 @@ public class BloomFilter extends Message {
      * matched transactions are also matched. However it means this filter can be mutated by the operation. The returned
      * filtered block already has the matched transactions associated with it.
      */
-    public synchronized FilteredBlock applyAndUpdate(Block block) {
+    public FilteredBlock applyAndUpdate(Block block) {
         List<Transaction> txns = block.getTransactions();
         List<Sha256Hash> txHashes = new ArrayList<Sha256Hash>(txns.size());
         List<Transaction> matched = Lists.newArrayList();
@@ -319,7 +439,7 @@ public class BloomFilter extends Message {
         return filteredBlock;
     }
 
-    public synchronized boolean applyAndUpdate(Transaction tx) {
+    public boolean applyAndUpdate(Transaction tx) {
         if (contains(tx.getHash().getBytes()))
             return true;
         boolean found = false;
@@ -327,7 +447,8 @@ public class BloomFilter extends Message {
         for (TransactionOutput output : tx.getOutputs()) {
             Script script = output.getScriptPubKey();
             for (ScriptChunk chunk : script.getChunks()) {
-                if (!chunk.isPushData())
+                // Like Bitcoin Core, skip small integers and empty pushes, which have no data.
+                if (!chunk.isPushData() || chunk.data == null || chunk.data.length == 0)
                     continue;
                 if (contains(chunk.data)) {
                     boolean isSendingToPubKeys = script.isSentToRawPubKey() || script.isSentToMultiSig();
@@ -343,7 +464,7 @@ public class BloomFilter extends Message {
                 return true;
             }
             for (ScriptChunk chunk : input.getScriptSig().getChunks()) {
-                if (chunk.isPushData() && contains(chunk.data))
+                if (chunk.isPushData() && chunk.data != null && chunk.data.length != 0 && contains(chunk.data))
                     return true;
             }
         }
@@ -351,15 +472,16 @@ public class BloomFilter extends Message {
     }
     
     @Override
-    public synchronized boolean equals(Object o) {
+    public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         BloomFilter other = (BloomFilter) o;
-        return hashFuncs == other.hashFuncs && nTweak == other.nTweak && Arrays.equals(data, other.data);
+        return hashFuncs == other.hashFuncs && nTweak == other.nTweak &&
+                Arrays.equals(bits.toByteArray(), other.bits.toByteArray());
     }
 
     @Override
-    public synchronized int hashCode() {
-        return Objects.hashCode(hashFuncs, nTweak, Arrays.hashCode(data));
+    public int hashCode() {
+        return Objects.hashCode(hashFuncs, nTweak, Arrays.hashCode(bits.toByteArray()));
     }
 }
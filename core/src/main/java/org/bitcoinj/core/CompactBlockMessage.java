@@ -0,0 +1,187 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A compact block ("cmpctblock") is a block header followed by a 6 byte short ID for each of its transactions,
+ * instead of the transactions themselves. The receiver looks the short IDs up in its memory pool and only has to ask
+ * for the transactions it doesn't have, with a {@link GetBlockTransactionsMessage}. The transactions the sender
+ * expects the receiver not to have, at least the coinbase, are sent in full ("prefilled"). See
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0152.mediawiki">BIP 152</a>, and
+ * {@link PartiallyDownloadedBlock} for putting the block back together.</p>
+ *
+ * <p>Peers only send compact blocks after negotiating them with a {@link SendCompactBlocksMessage}, which needs a
+ * protocol version GoldCoin nodes don't speak yet, so on the GoldCoin network this message is not used for now.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple threads.</p>
+ */
+public class CompactBlockMessage extends Message {
+    public static final int SHORT_ID_LENGTH = 6;
+    private static final long SHORT_ID_MASK = 0xffffffffffffL;
+    // No transaction can be smaller than this, which bounds how many can be prefilled.
+    private static final int MIN_TRANSACTION_SIZE = 60;
+
+    private Block header;
+    private long nonce;
+    private long[] shortIds;
+    private int[] prefilledIndexes;
+    private List<Transaction> prefilledTransactions;
+    // The short ID hash function, keyed by the header and nonce.
+    private HashFunction sipHash;
+
+    /**
+     * Makes a compact version of the given block that sends only the coinbase in full. The nonce should be random
+     * so that short ID collisions differ between peers.
+     */
+    public CompactBlockMessage(NetworkParameters params, Block block, long nonce) {
+        super(params);
+        this.header = block.cloneAsHeader();
+        this.nonce = nonce;
+        List<Transaction> transactions = block.getTransactions();
+        this.prefilledIndexes = new int[] { 0 };
+        this.prefilledTransactions = Collections.singletonList(transactions.get(0));
+        this.shortIds = new long[transactions.size() - 1];
+        for (int i = 1; i < transactions.size(); i++)
+            shortIds[i - 1] = shortIdOf(transactions.get(i).getHash());
+    }
+
+    public CompactBlockMessage(NetworkParameters params, byte[] payloadBytes) throws ProtocolException {
+        super(params, payloadBytes, 0);
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        header = params.getDefaultSerializer().makeBlock(readBytes(Block.HEADER_SIZE));
+        nonce = readInt64();
+        long numShortIds = readVarInt();
+        if (numShortIds < 0 || numShortIds > Block.MAX_BLOCK_SIZE / SHORT_ID_LENGTH)
+            throw new ProtocolException("Too many short IDs: " + numShortIds);
+        if (cursor + numShortIds * SHORT_ID_LENGTH > payload.length)
+            throw new ProtocolException("Ran off the end of the short IDs");
+        shortIds = new long[(int) numShortIds];
+        for (int i = 0; i < shortIds.length; i++) {
+            long shortId = 0;
+            for (int b = 0; b < SHORT_ID_LENGTH; b++)
+                shortId |= (payload[cursor + b] & 0xffL) << (8 * b);
+            cursor += SHORT_ID_LENGTH;
+            shortIds[i] = shortId;
+        }
+        long numPrefilled = readVarInt();
+        if (numPrefilled < 0 || numPrefilled > Block.MAX_BLOCK_SIZE / MIN_TRANSACTION_SIZE)
+            throw new ProtocolException("Too many prefilled transactions: " + numPrefilled);
+        prefilledIndexes = new int[(int) numPrefilled];
+        prefilledTransactions = new ArrayList<Transaction>(prefilledIndexes.length);
+        // Indexes are sent as the difference to the previous one, minus one.
+        long index = -1;
+        for (int i = 0; i < prefilledIndexes.length; i++) {
+            index += readVarInt() + 1;
+            if (index < 0 || index >= numShortIds + numPrefilled)
+                throw new ProtocolException("Prefilled transaction index out of range: " + index);
+            prefilledIndexes[i] = (int) index;
+            Transaction tx = new Transaction(params, payload, cursor);
+            cursor += tx.getMessageSize();
+            prefilledTransactions.add(tx);
+        }
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(OutputStream stream) throws IOException {
+        header.writeHeader(stream);
+        Utils.int64ToByteStreamLE(nonce, stream);
+        stream.write(new VarInt(shortIds.length).encode());
+        byte[] bytes = new byte[SHORT_ID_LENGTH];
+        for (long shortId : shortIds) {
+            for (int b = 0; b < SHORT_ID_LENGTH; b++)
+                bytes[b] = (byte) (shortId >>> (8 * b));
+            stream.write(bytes);
+        }
+        stream.write(new VarInt(prefilledIndexes.length).encode());
+        int previous = -1;
+        for (int i = 0; i < prefilledIndexes.length; i++) {
+            stream.write(new VarInt(prefilledIndexes[i] - previous - 1).encode());
+            previous = prefilledIndexes[i];
+            prefilledTransactions.get(i).bitcoinSerialize(stream);
+        }
+    }
+
+    /** Returns the short ID the given transaction has in this block. */
+    public long shortIdOf(Sha256Hash txId) {
+        if (sipHash == null) {
+            // The key is the first 16 bytes of the SHA256 of the header and nonce.
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(Block.HEADER_SIZE + 8);
+            try {
+                header.writeHeader(bos);
+                Utils.int64ToByteStreamLE(nonce, bos);
+            } catch (IOException e) {
+                throw new RuntimeException(e);  // Cannot happen.
+            }
+            byte[] key = Sha256Hash.hash(bos.toByteArray());
+            sipHash = Hashing.sipHash24(Utils.readInt64(key, 0), Utils.readInt64(key, 8));
+        }
+        return sipHash.hashBytes(txId.getReversedBytes()).asLong() & SHORT_ID_MASK;
+    }
+
+    /** Returns the header of the block. */
+    public Block getHeader() {
+        return header;
+    }
+
+    public Sha256Hash getHash() {
+        return header.getHash();
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    /** Returns the short IDs of the transactions that were not prefilled, in block order. */
+    public long[] getShortIds() {
+        return Arrays.copyOf(shortIds, shortIds.length);
+    }
+
+    /** Returns the positions in the block of the prefilled transactions, in ascending order. */
+    public int[] getPrefilledIndexes() {
+        return Arrays.copyOf(prefilledIndexes, prefilledIndexes.length);
+    }
+
+    public List<Transaction> getPrefilledTransactions() {
+        return Collections.unmodifiableList(prefilledTransactions);
+    }
+
+    /** Returns the number of transactions in the block. */
+    public int getTransactionCount() {
+        return shortIds.length + prefilledIndexes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "cmpctblock " + getHash() + ": " + shortIds.length + " short IDs, " + prefilledIndexes.length
+                + " prefilled";
+    }
+}
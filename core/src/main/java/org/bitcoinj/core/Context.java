@@ -77,6 +77,18 @@ public class Context {
         this.ensureMinRequiredFee = ensureMinRequiredFee;
     }
 
+    /**
+     * Creates a new context object that tracks announced transactions in the given table, for instance one sized
+     * with {@link TxConfidenceTable#TxConfidenceTable(int, int)} for a node with many peers and a busy memory pool.
+     *
+     * @param params The network parameters that will be associated with this context.
+     * @param confidenceTable The table returned by {@link #getConfidenceTable()}.
+     */
+    public Context(NetworkParameters params, TxConfidenceTable confidenceTable) {
+        this(params);
+        this.confidenceTable = checkNotNull(confidenceTable);
+    }
+
     private static volatile Context lastConstructed;
     private static boolean isStrictMode;
     private static final ThreadLocal<Context> slot = new ThreadLocal<Context>();
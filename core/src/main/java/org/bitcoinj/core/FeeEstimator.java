@@ -0,0 +1,334 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.core.listeners.NewBestBlockListener;
+import org.bitcoinj.core.listeners.ReadOnlyTransactionsReceivedInBlockListener;
+import org.bitcoinj.utils.StateFiles;
+import org.bitcoinj.utils.Threading;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>Estimates the fee rate a transaction needs to pay to confirm within a given number of blocks, from how long the
+ * transactions seen in the {@link Mempool} took to get into the block chain.</p>
+ *
+ * <p>Transactions are sorted into fee rate buckets that are 10% apart. For every bucket and every target up to
+ * {@link #MAX_TARGET} blocks, the estimator counts the transactions that confirmed within the target and those that
+ * waited longer. The counts decay by {@link #DECAY} each block, so they mostly reflect the last few hundred blocks.
+ * After each block, the estimate for a target is the lowest bucket in which, together with all the buckets above it,
+ * at least {@link #SUCCESS_THRESHOLD} of the transactions confirmed in time. Asking for an estimate just reads an
+ * array.</p>
+ *
+ * <p>Only the transactions whose fee the mempool knows are taken into account. In SPV mode with a Bloom filter that is
+ * just the few matching our wallets, so this is mostly useful with Bloom filtering disabled.</p>
+ *
+ * <p>The statistics can be saved with {@link #saveToFile(File)} and loaded with {@link #loadFromFile(File)}, or saved
+ * after every block with {@link #setAutosaveFile(File)}.</p>
+ */
+public class FeeEstimator implements Mempool.Listener, ReadOnlyTransactionsReceivedInBlockListener,
+        NewBestBlockListener, StateFiles.State {
+    private static final Logger log = LoggerFactory.getLogger(FeeEstimator.class);
+
+    /** The highest confirmation target, in blocks, that estimates are kept for. */
+    public static final int MAX_TARGET = 25;
+    /** The factor the statistics are multiplied by with every block. */
+    public static final double DECAY = 0.998;
+    /** The share of transactions that must have confirmed within the target for a fee rate to be recommended. */
+    public static final double SUCCESS_THRESHOLD = 0.85;
+    // The decayed number of transactions a range of buckets needs before it is trusted.
+    private static final double SUFFICIENT_TXNS = 1;
+
+    private static final long MIN_BUCKET_FEE_PER_KB = Transaction.REFERENCE_DEFAULT_MIN_TX_FEE.value;
+    private static final long MAX_BUCKET_FEE_PER_KB = Coin.MILLICOIN.value * 100;
+    private static final double BUCKET_SPACING = 1.1;
+    private static final long[] BUCKET_FEE_PER_KB;
+    static {
+        List<Long> bounds = new ArrayList<Long>();
+        for (double fee = MIN_BUCKET_FEE_PER_KB; fee <= MAX_BUCKET_FEE_PER_KB; fee *= BUCKET_SPACING)
+            bounds.add((long) fee);
+        BUCKET_FEE_PER_KB = new long[bounds.size()];
+        for (int i = 0; i < BUCKET_FEE_PER_KB.length; i++)
+            BUCKET_FEE_PER_KB[i] = bounds.get(i);
+    }
+    private static final int NUM_BUCKETS = BUCKET_FEE_PER_KB.length;
+
+    private static final int FILE_VERSION = 1;
+
+    protected final ReentrantLock lock = Threading.lock("feeestimator");
+
+    // Indexed by (target - 1) * NUM_BUCKETS + bucket. Transactions that confirmed within the target, and transactions
+    // that had waited as many blocks as the target without confirming.
+    @GuardedBy("lock") private final double[] confirmed = new double[MAX_TARGET * NUM_BUCKETS];
+    @GuardedBy("lock") private final double[] failed = new double[MAX_TARGET * NUM_BUCKETS];
+    // The unconfirmed transactions being watched, mapped to the height when they were seen in the upper bits and
+    // their bucket in the low byte.
+    @GuardedBy("lock") private final HashMap<Sha256Hash, Integer> unconfirmed = new HashMap<Sha256Hash, Integer>();
+    @GuardedBy("lock") private int bestHeight = -1;
+    @GuardedBy("lock") @Nullable private File autosaveFile;
+
+    // Fee per kB by target - 1, or -1 if not known. Replaced as a whole after every block.
+    private volatile long[] estimates = new long[MAX_TARGET];
+
+    public FeeEstimator() {
+        Arrays.fill(estimates, -1);
+    }
+
+    /**
+     * Creates an estimator that watches the transactions of the given mempool and the blocks connected to the given
+     * chain.
+     */
+    public FeeEstimator(AbstractBlockChain chain, Mempool mempool) {
+        this();
+        bestHeight = chain.getBestChainHeight();
+        mempool.addEventListener(Threading.SAME_THREAD, this);
+        chain.addTransactionReceivedListener(Threading.SAME_THREAD, this);
+        chain.addNewBestBlockListener(Threading.SAME_THREAD, this);
+    }
+
+    /**
+     * Returns the fee per 1000 bytes a transaction should pay to confirm within the given number of blocks, or null if
+     * there is not enough data yet. Targets beyond {@link #MAX_TARGET} get the estimate for {@link #MAX_TARGET}.
+     */
+    @Nullable
+    public Coin estimateFeePerKb(int targetBlocks) {
+        checkArgument(targetBlocks > 0, "targetBlocks must be positive");
+        long estimate = estimates[Math.min(targetBlocks, MAX_TARGET) - 1];
+        return estimate < 0 ? null : Coin.valueOf(estimate);
+    }
+
+    /** Starts watching an unconfirmed transaction with the given fee rate. */
+    public void track(Sha256Hash txId, Coin feePerKb) {
+        lock.lock();
+        try {
+            if (bestHeight < 0)
+                return;
+            int bucket = Arrays.binarySearch(BUCKET_FEE_PER_KB, feePerKb.value);
+            if (bucket < 0)
+                bucket = Math.max(0, -bucket - 2);  // The bucket whose range it falls in.
+            unconfirmed.put(txId, bestHeight << 8 | bucket);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops watching a transaction, because it will never confirm. */
+    public void forget(Sha256Hash txId) {
+        lock.lock();
+        try {
+            unconfirmed.remove(txId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean confirmedLocked(Sha256Hash txId, int height) {
+        Integer tracked = unconfirmed.remove(txId);
+        if (tracked == null)
+            return false;
+        int bucket = tracked & 0xff;
+        int blocks = Math.max(1, height - (tracked >>> 8));
+        for (int target = blocks; target <= MAX_TARGET; target++)
+            confirmed[(target - 1) * NUM_BUCKETS + bucket]++;
+        return true;
+    }
+
+    @GuardedBy("lock")
+    private void newBestBlockLocked(int height) {
+        for (int i = 0; i < confirmed.length; i++) {
+            confirmed[i] *= DECAY;
+            failed[i] *= DECAY;
+        }
+        Iterator<Map.Entry<Sha256Hash, Integer>> it = unconfirmed.entrySet().iterator();
+        while (it.hasNext()) {
+            int tracked = it.next().getValue();
+            int age = height - (tracked >>> 8);
+            if (age >= 1 && age <= MAX_TARGET)
+                failed[(age - 1) * NUM_BUCKETS + (tracked & 0xff)]++;
+            if (age >= MAX_TARGET)
+                it.remove();  // Missed every target already.
+        }
+        bestHeight = height;
+        updateEstimatesLocked();
+    }
+
+    @GuardedBy("lock")
+    private void updateEstimatesLocked() {
+        long[] newEstimates = new long[MAX_TARGET];
+        for (int target = 1; target <= MAX_TARGET; target++) {
+            int offset = (target - 1) * NUM_BUCKETS;
+            double inTime = 0, total = 0;
+            int lowestGoodBucket = -1;
+            // Walk down from the highest fee rate, a range of buckets at a time, for as long as enough confirm in time.
+            for (int bucket = NUM_BUCKETS - 1; bucket >= 0; bucket--) {
+                inTime += confirmed[offset + bucket];
+                total += confirmed[offset + bucket] + failed[offset + bucket];
+                if (total < SUFFICIENT_TXNS)
+                    continue;
+                if (inTime / total < SUCCESS_THRESHOLD)
+                    break;
+                lowestGoodBucket = bucket;
+                inTime = total = 0;
+            }
+            long estimate = lowestGoodBucket < 0 ? -1 : BUCKET_FEE_PER_KB[lowestGoodBucket];
+            // Waiting longer should never cost more.
+            if (target > 1 && newEstimates[target - 2] >= 0 && (estimate < 0 || estimate > newEstimates[target - 2]))
+                estimate = newEstimates[target - 2];
+            newEstimates[target - 1] = estimate;
+        }
+        estimates = newEstimates;
+    }
+
+    @Override
+    public void onTransactionAdded(Mempool mempool, Mempool.Entry entry) {
+        Coin feePerKb = entry.getFeePerKb();
+        if (feePerKb != null)
+            track(entry.getTxId(), feePerKb);
+    }
+
+    @Override
+    public void onTransactionRemoved(Mempool mempool, Mempool.Entry entry, Mempool.RemovalReason reason) {
+        // Confirmations are counted when the block is connected to the chain, so only forget those that won't be.
+        if (reason != Mempool.RemovalReason.CONFIRMED)
+            forget(entry.getTxId());
+    }
+
+    @Override
+    public Set<Sha256Hash> receiveFromBlock(List<Sha256Hash> txHashes, Map<Sha256Hash, Transaction> transactions,
+                                            StoredBlock block, AbstractBlockChain.NewBlockType blockType) {
+        Set<Sha256Hash> relevant = new HashSet<Sha256Hash>();
+        if (blockType != AbstractBlockChain.NewBlockType.BEST_CHAIN)
+            return relevant;
+        lock.lock();
+        try {
+            for (Sha256Hash hash : txHashes)
+                if (confirmedLocked(hash, block.getHeight()))
+                    relevant.add(hash);
+        } finally {
+            lock.unlock();
+        }
+        return relevant;
+    }
+
+    @Override
+    public void receiveFromBlock(Transaction tx, StoredBlock block, AbstractBlockChain.NewBlockType blockType,
+                                 int relativityOffset) {
+        notifyTransactionIsInBlock(tx.getHash(), block, blockType, relativityOffset);
+    }
+
+    @Override
+    public boolean notifyTransactionIsInBlock(Sha256Hash txHash, StoredBlock block,
+                                              AbstractBlockChain.NewBlockType blockType, int relativityOffset) {
+        if (blockType != AbstractBlockChain.NewBlockType.BEST_CHAIN)
+            return false;
+        lock.lock();
+        try {
+            return confirmedLocked(txHash, block.getHeight());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void notifyNewBestBlock(StoredBlock block) {
+        File file;
+        lock.lock();
+        try {
+            newBestBlockLocked(block.getHeight());
+            file = autosaveFile;
+        } finally {
+            lock.unlock();
+        }
+        if (file != null) {
+            try {
+                saveToFile(file);
+            } catch (IOException e) {
+                log.error("Failed to save fee estimates to {}", file, e);
+            }
+        }
+    }
+
+    /** Sets a file to save the statistics to after every block, or null to stop doing so. */
+    public void setAutosaveFile(@Nullable File file) {
+        lock.lock();
+        try {
+            autosaveFile = file;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Writes the statistics to the given stream. The unconfirmed transactions being watched are not included. */
+    @Override
+    public void save(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        lock.lock();
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(MAX_TARGET);
+            out.writeInt(NUM_BUCKETS);
+            for (double count : confirmed)
+                out.writeDouble(count);
+            for (double count : failed)
+                out.writeDouble(count);
+        } finally {
+            lock.unlock();
+        }
+        out.flush();
+    }
+
+    /** Replaces the statistics with the ones read from the given stream, as written by {@link #save(OutputStream)}. */
+    @Override
+    public void load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != FILE_VERSION || in.readInt() != MAX_TARGET || in.readInt() != NUM_BUCKETS)
+            throw new IOException("Unsupported fee estimates format");
+        double[] newConfirmed = new double[confirmed.length];
+        double[] newFailed = new double[failed.length];
+        for (int i = 0; i < newConfirmed.length; i++)
+            newConfirmed[i] = in.readDouble();
+        for (int i = 0; i < newFailed.length; i++)
+            newFailed[i] = in.readDouble();
+        lock.lock();
+        try {
+            System.arraycopy(newConfirmed, 0, confirmed, 0, confirmed.length);
+            System.arraycopy(newFailed, 0, failed, 0, failed.length);
+            updateEstimatesLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Saves the statistics to the given file, writing to a temporary file in the same directory first. */
+    public void saveToFile(File file) throws IOException {
+        StateFiles.save(this, file, "fees");
+    }
+
+    /** Loads the statistics saved with {@link #saveToFile(File)}, if the file exists. */
+    public void loadFromFile(File file) throws IOException {
+        StateFiles.load(this, file);
+    }
+}
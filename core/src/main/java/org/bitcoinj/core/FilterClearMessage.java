@@ -0,0 +1,33 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+/**
+ * <p>The "filterclear" message removes the Bloom filter set on a connection, after which the remote peer relays all
+ * transactions again and serves full blocks instead of filtered ones. See
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0037.mediawiki">BIP 37</a>.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple threads.</p>
+ */
+public class FilterClearMessage extends EmptyMessage {
+    public FilterClearMessage() {
+    }
+
+    // this is needed by the BitcoinSerializer
+    public FilterClearMessage(NetworkParameters params, byte[] payload) {
+    }
+}
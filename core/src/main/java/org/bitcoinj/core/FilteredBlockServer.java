@@ -0,0 +1,431 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.net.NioServer;
+import org.bitcoinj.net.StreamConnection;
+import org.bitcoinj.net.StreamConnectionFactory;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.utils.BlockFileIndex;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.bitcoinj.utils.Threading;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>Serves filtered blocks to SPV clients, as described in
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0037.mediawiki">BIP 37</a>. Clients connect over the normal
+ * peer to peer protocol, load a Bloom filter with filterload, grow it with filteradd and then request blocks with
+ * getdata. Filtered blocks are answered with a merkleblock message followed by the matching transactions. Full blocks
+ * can be requested too.</p>
+ *
+ * <p>Blocks are served from a local copy of the chain: the {@link BlockStore} decides which blocks are known, the
+ * {@link BlockFileIndex} provides their contents. Nothing else is served, in particular no headers and no transactions
+ * from a memory pool, so clients will usually also be connected to a full node.</p>
+ *
+ * <p>The requests of different clients are handled in parallel on a pool of threads, while the requests of each
+ * client are handled in the order they arrived. Recently served blocks are kept in memory together with their complete
+ * merkle trees, so building a partial merkle tree for another client only needs the Bloom filter to be applied.</p>
+ */
+public class FilteredBlockServer {
+    private static final Logger log = LoggerFactory.getLogger(FilteredBlockServer.class);
+
+    /** The default number of recently served blocks that are kept in memory. */
+    public static final int DEFAULT_CACHED_BLOCKS = 50;
+    // A client that sends more requests than this without waiting for the answers is disconnected.
+    private static final int MAX_QUEUED_MESSAGES = 500;
+
+    private final NetworkParameters params;
+    private final BlockStore blockStore;
+    private final BlockFileIndex blockIndex;
+    private final ExecutorService executor;
+
+    private final ReentrantLock lock = Threading.lock("filteredblockserver");
+    @GuardedBy("lock") private final Set<ClientConnection> clients = new HashSet<ClientConnection>();
+    @GuardedBy("lock") private int maxCachedBlocks = DEFAULT_CACHED_BLOCKS;
+    // Blocks that were read recently or are being read right now.
+    @GuardedBy("lock") private final LinkedHashMap<Sha256Hash, SettableFuture<CachedBlock>> cache =
+            new LinkedHashMap<Sha256Hash, SettableFuture<CachedBlock>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Sha256Hash, SettableFuture<CachedBlock>> eldest) {
+            return size() > maxCachedBlocks;
+        }
+    };
+    @GuardedBy("lock") @Nullable private NioServer server;
+
+    // A block and the complete merkle tree over its transactions. Nothing in here is modified once it's been built.
+    private static class CachedBlock {
+        final Block block;
+        final Block header;
+        final List<Transaction> transactions;
+        final MerkleTree merkleTree;
+
+        CachedBlock(Block block, MerkleTree merkleTree) {
+            this.block = block;
+            this.header = block.cloneAsHeader();
+            this.transactions = block.getTransactions();
+            this.merkleTree = merkleTree;
+        }
+    }
+
+    /**
+     * Creates a server which handles requests on as many threads as there are processors.
+     */
+    public FilteredBlockServer(NetworkParameters params, BlockStore blockStore, BlockFileIndex blockIndex) {
+        this(params, blockStore, blockIndex, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a server which handles requests on the given number of threads. Call
+     * {@link #bindAndStart(InetSocketAddress)} to start accepting clients.
+     */
+    public FilteredBlockServer(NetworkParameters params, BlockStore blockStore, BlockFileIndex blockIndex,
+                               int threads) {
+        checkArgument(threads > 0);
+        this.params = checkNotNull(params);
+        this.blockStore = checkNotNull(blockStore);
+        this.blockIndex = checkNotNull(blockIndex);
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ContextPropagatingThreadFactory("Filtered block server"));
+    }
+
+    /** Starts listening for clients on the given address. */
+    public void bindAndStart(InetSocketAddress address) throws IOException {
+        NioServer server = new NioServer(new StreamConnectionFactory() {
+            @Override
+            public StreamConnection getNewConnection(InetAddress inetAddress, int port) {
+                return new ClientConnection(new InetSocketAddress(inetAddress, port));
+            }
+        }, address);
+        lock.lock();
+        try {
+            checkState(this.server == null, "Already started");
+            this.server = server;
+        } finally {
+            lock.unlock();
+        }
+        server.startAsync();
+        server.awaitRunning();
+        log.info("Serving filtered blocks on {}", address);
+    }
+
+    /** Disconnects all clients and stops the server. */
+    public void close() {
+        NioServer server;
+        lock.lock();
+        try {
+            server = this.server;
+            this.server = null;
+        } finally {
+            lock.unlock();
+        }
+        if (server != null) {
+            server.stopAsync();
+            server.awaitTerminated();
+        }
+        executor.shutdown();
+    }
+
+    /** Returns the number of clients that are currently connected. */
+    public int getClientCount() {
+        lock.lock();
+        try {
+            return clients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sets how many recently served blocks are kept in memory, {@link #DEFAULT_CACHED_BLOCKS} by default. */
+    public void setMaxCachedBlocks(int maxCachedBlocks) {
+        checkArgument(maxCachedBlocks > 0);
+        lock.lock();
+        try {
+            this.maxCachedBlocks = maxCachedBlocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the block with the given hash, reading it if it isn't in memory yet, or null if the block can't be served.
+     * If another thread is already reading the block, waits for it to finish instead of reading it twice.
+     */
+    @Nullable
+    private CachedBlock getBlock(Sha256Hash hash) throws Exception {
+        SettableFuture<CachedBlock> future;
+        boolean read = false;
+        lock.lock();
+        try {
+            future = cache.get(hash);
+            if (future == null) {
+                future = SettableFuture.create();
+                cache.put(hash, future);
+                read = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (read) {
+            CachedBlock block = null;
+            try {
+                block = readBlock(hash);
+                future.set(block);
+            } catch (Exception e) {
+                future.setException(e);
+            } finally {
+                // Don't remember blocks that couldn't be read, they may be available later.
+                if (block == null) {
+                    lock.lock();
+                    try {
+                        if (cache.get(hash) == future)
+                            cache.remove(hash);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Nullable
+    private CachedBlock readBlock(Sha256Hash hash) throws IOException, BlockStoreException {
+        // Only blocks that made it into our block store are served.
+        if (blockStore.get(hash) == null)
+            return null;
+        Block block = blockIndex.getBlock(hash);
+        if (block == null || block.getTransactions() == null)
+            return null;
+        List<Sha256Hash> leaves = new ArrayList<Sha256Hash>(block.getTransactions().size());
+        for (Transaction tx : block.getTransactions()) {
+            leaves.add(tx.getHash());
+            // Parts of transactions are parsed lazily. Do that now, so that applying filters from several threads at
+            // once only reads them.
+            for (TransactionInput input : tx.getInputs())
+                input.getScriptSig().getChunks();
+            for (TransactionOutput output : tx.getOutputs()) {
+                Script script = output.getScriptPubKey();
+                script.getChunks();
+                script.isSentToRawPubKey();
+                script.isSentToMultiSig();
+            }
+        }
+        MerkleTree merkleTree = MerkleTree.build(leaves);
+        if (!merkleTree.getRoot().equals(block.getMerkleRoot())) {
+            log.error("Block {} in the block files doesn't match its merkle root", hash);
+            return null;
+        }
+        block.getHash();
+        return new CachedBlock(block, merkleTree);
+    }
+
+    /**
+     * Applies the filter to the transactions of the block, adding the matching ones to the given list, and returns the
+     * filtered block.
+     */
+    private FilteredBlock applyFilter(CachedBlock block, BloomFilter filter, List<Transaction> matched) {
+        int count = block.transactions.size();
+        byte[] bits = new byte[(count + 7) / 8];
+        for (int i = 0; i < count; i++) {
+            Transaction tx = block.transactions.get(i);
+            if (filter.applyAndUpdate(tx)) {
+                Utils.setBitLE(bits, i);
+                matched.add(tx);
+            }
+        }
+        PartialMerkleTree pmt = PartialMerkleTree.buildFromTree(params, bits, block.merkleTree);
+        return new FilteredBlock(params, block.header, pmt);
+    }
+
+    private int getBestHeight() {
+        try {
+            return blockStore.getChainHead().getHeight();
+        } catch (BlockStoreException e) {
+            return 0;
+        }
+    }
+
+    private class ClientConnection extends PeerSocketHandler {
+        private final ReentrantLock queueLock = Threading.lock("filteredblockclient");
+        @GuardedBy("queueLock") private final ArrayDeque<Message> queue = new ArrayDeque<Message>();
+        @GuardedBy("queueLock") private boolean draining;
+
+        // Only touched by the task draining the queue, of which there's at most one per connection at a time.
+        @Nullable private BloomFilter filter;
+
+        // Only touched by the network thread.
+        private boolean versionReceived;
+
+        private final Runnable drainQueue = new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Message m;
+                    queueLock.lock();
+                    try {
+                        m = queue.poll();
+                        if (m == null) {
+                            draining = false;
+                            return;
+                        }
+                    } finally {
+                        queueLock.unlock();
+                    }
+                    try {
+                        handleQueuedMessage(m);
+                    } catch (Exception e) {
+                        exceptionCaught(e);
+                    }
+                }
+            }
+        };
+
+        ClientConnection(InetSocketAddress address) {
+            super(params, address);
+        }
+
+        @Override
+        public void connectionOpened() {
+            lock.lock();
+            try {
+                clients.add(this);
+            } finally {
+                lock.unlock();
+            }
+            log.info("{}: Client connected", getAddress());
+        }
+
+        @Override
+        public void connectionClosed() {
+            lock.lock();
+            try {
+                clients.remove(this);
+            } finally {
+                lock.unlock();
+            }
+            log.info("{}: Client disconnected", getAddress());
+        }
+
+        @Override
+        protected void processMessage(Message m) throws Exception {
+            if (m instanceof VersionMessage) {
+                if (versionReceived)
+                    throw new ProtocolException("Got a second version message");
+                versionReceived = true;
+                VersionMessage ver = new VersionMessage(params, getBestHeight());
+                ver.localServices = VersionMessage.NODE_NETWORK | VersionMessage.NODE_BLOOM;
+                sendMessage(ver);
+                sendMessage(new VersionAck());
+            } else if (!versionReceived) {
+                throw new ProtocolException("Got " + m.getClass().getSimpleName() + " before the version message");
+            } else if (m instanceof Ping) {
+                if (((Ping) m).hasNonce())
+                    sendMessage(new Pong(((Ping) m).getNonce()));
+            } else if (m instanceof BloomFilter || m instanceof FilterAddMessage || m instanceof FilterClearMessage
+                    || m instanceof GetDataMessage) {
+                // Filter changes are queued too, so that they apply to exactly the requests that came after them.
+                enqueue(m);
+            } else if (!(m instanceof VersionAck)) {
+                log.debug("{}: Ignoring {}", getAddress(), m.getClass().getSimpleName());
+            }
+        }
+
+        private void enqueue(Message m) throws ProtocolException {
+            queueLock.lock();
+            try {
+                if (queue.size() >= MAX_QUEUED_MESSAGES)
+                    throw new ProtocolException("Too many requests queued");
+                queue.add(m);
+                if (draining)
+                    return;
+                draining = true;
+            } finally {
+                queueLock.unlock();
+            }
+            executor.execute(drainQueue);
+        }
+
+        private void handleQueuedMessage(Message m) throws Exception {
+            if (m instanceof BloomFilter) {
+                filter = (BloomFilter) m;
+            } else if (m instanceof FilterAddMessage) {
+                if (filter == null)
+                    throw new ProtocolException("Got filteradd without a filter");
+                filter.insert(((FilterAddMessage) m).getData());
+            } else if (m instanceof FilterClearMessage) {
+                filter = null;
+            } else if (m instanceof GetDataMessage) {
+                processGetData((GetDataMessage) m);
+            }
+        }
+
+        private void processGetData(GetDataMessage getdata) throws Exception {
+            List<InventoryItem> notFound = new ArrayList<InventoryItem>();
+            for (InventoryItem item : getdata.getItems()) {
+                boolean filtered = item.type == InventoryItem.Type.FilteredBlock;
+                if (!filtered && item.type != InventoryItem.Type.Block) {
+                    notFound.add(item);
+                    continue;
+                }
+                // Filtered blocks can't be served without a filter.
+                CachedBlock block = filtered && filter == null ? null : getBlock(item.hash);
+                if (block == null) {
+                    notFound.add(item);
+                } else if (filtered) {
+                    List<Transaction> matched = new ArrayList<Transaction>();
+                    sendMessage(applyFilter(block, filter, matched));
+                    for (Transaction tx : matched)
+                        sendMessage(tx);
+                } else {
+                    sendMessage(block.block);
+                }
+            }
+            if (!notFound.isEmpty())
+                sendMessage(new NotFoundMessage(params, notFound));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import com.google.common.base.Objects;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>Asks for the transactions of a {@link CompactBlockMessage} that could not be found in the memory pool, by their
+ * position in the block ("getblocktxn"). The answer is a {@link BlockTransactionsMessage}.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple threads.</p>
+ */
+public class GetBlockTransactionsMessage extends Message {
+    private Sha256Hash blockHash;
+    private int[] indexes;
+
+    /** The indexes must be in ascending order. */
+    public GetBlockTransactionsMessage(NetworkParameters params, Sha256Hash blockHash, int[] indexes) {
+        super(params);
+        this.blockHash = blockHash;
+        this.indexes = Arrays.copyOf(indexes, indexes.length);
+    }
+
+    public GetBlockTransactionsMessage(NetworkParameters params, byte[] payloadBytes) throws ProtocolException {
+        super(params, payloadBytes, 0);
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        blockHash = readHash();
+        long numIndexes = readVarInt();
+        if (numIndexes < 0 || numIndexes > Block.MAX_BLOCK_SIZE / CompactBlockMessage.SHORT_ID_LENGTH)
+            throw new ProtocolException("Too many indexes: " + numIndexes);
+        indexes = new int[(int) numIndexes];
+        // Indexes are sent as the difference to the previous one, minus one.
+        long index = -1;
+        for (int i = 0; i < indexes.length; i++) {
+            index += readVarInt() + 1;
+            if (index < 0 || index > Integer.MAX_VALUE)
+                throw new ProtocolException("Index out of range: " + index);
+            indexes[i] = (int) index;
+        }
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(OutputStream stream) throws IOException {
+        stream.write(blockHash.getReversedBytes());
+        stream.write(new VarInt(indexes.length).encode());
+        int previous = -1;
+        for (int index : indexes) {
+            stream.write(new VarInt(index - previous - 1).encode());
+            previous = index;
+        }
+    }
+
+    public Sha256Hash getBlockHash() {
+        return blockHash;
+    }
+
+    /** Returns the positions in the block of the requested transactions, in ascending order. */
+    public int[] getIndexes() {
+        return Arrays.copyOf(indexes, indexes.length);
+    }
+
+    @Override
+    public String toString() {
+        return "getblocktxn " + blockHash + ": " + Arrays.toString(indexes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GetBlockTransactionsMessage other = (GetBlockTransactionsMessage) o;
+        return blockHash.equals(other.blockHash) && Arrays.equals(indexes, other.indexes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(blockHash, Arrays.hashCode(indexes));
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.primitives.UnsignedLongs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>A Golomb-coded set, as used by the compact block filters of
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0158.mediawiki">BIP 158</a>. Like a Bloom filter it is a
+ * probabilistic set: it never misses an element that was added, but matches an element that wasn't with a small
+ * probability of 1/M. It is roughly half the size of a Bloom filter with the same false positive rate.</p>
+ *
+ * <p>Elements are hashed with SipHash-2-4 to a number in the range [0, N * M), the numbers are sorted and the
+ * differences between them are stored with Golomb-Rice coding, using P bits for the remainder. The serialization is
+ * the number of elements as a varint followed by the coded differences.</p>
+ *
+ * <p>Instances of this class are immutable and safe for use by multiple threads.</p>
+ */
+public class GolombCodedSet {
+    /** The Golomb-Rice parameter of the basic filter type. */
+    public static final int BASIC_P = 19;
+    /** The inverse false positive rate of the basic filter type. */
+    public static final long BASIC_M = 784931;
+
+    private final HashFunction hashFunction;
+    private final int p;
+    private final long m;
+    private final int n;
+    private final byte[] encoded;
+    private final int dataOffset;
+
+    /**
+     * Parses a set from its serialized form. The coded differences are walked once to check that none are cut off.
+     *
+     * @param key the 16 byte SipHash key the set was built with
+     */
+    public GolombCodedSet(byte[] key, int p, long m, byte[] encoded) throws ProtocolException {
+        this.hashFunction = hashFunction(key);
+        this.p = p;
+        this.m = m;
+        this.encoded = encoded;
+        try {
+            VarInt count = new VarInt(encoded, 0);
+            if (count.value < 0 || count.value > Integer.MAX_VALUE)
+                throw new ProtocolException("Bad element count: " + count.value);
+            this.n = (int) count.value;
+            this.dataOffset = count.getOriginalSizeInBytes();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ProtocolException(e);
+        }
+        // Every element takes at least p + 1 bits, so the count alone can rule out most truncated sets cheaply.
+        if ((encoded.length - dataOffset) * 8L < n * (p + 1L))
+            throw new ProtocolException("Golomb-coded set of " + n + " elements is truncated");
+        BitReader reader = new BitReader(encoded, dataOffset);
+        for (int i = 0; i < n; i++) {
+            if (!reader.skipCode(p))
+                throw new ProtocolException("Golomb-coded set of " + n + " elements is truncated");
+        }
+    }
+
+    private GolombCodedSet(HashFunction hashFunction, int p, long m, int n, byte[] encoded) {
+        this.hashFunction = hashFunction;
+        this.p = p;
+        this.m = m;
+        this.n = n;
+        this.encoded = encoded;
+        this.dataOffset = VarInt.sizeOf(n);
+    }
+
+    /**
+     * Builds a set of the given elements. Duplicate elements are only added once.
+     *
+     * @param key the 16 byte SipHash key, which must also be used to match elements against the set
+     */
+    public static GolombCodedSet build(byte[] key, int p, long m, Collection<byte[]> elements) {
+        checkArgument(p > 0 && p < 32);
+        checkArgument(m > 0);
+        HashFunction hashFunction = hashFunction(key);
+        Set<byte[]> distinct = new TreeSet<byte[]>(UnsignedBytes.lexicographicalComparator());
+        distinct.addAll(elements);
+        int n = distinct.size();
+        long[] values = hashToRange(hashFunction, distinct, n * m);
+        Arrays.sort(values);
+
+        BitWriter writer = new BitWriter(VarInt.sizeOf(n), n * (p + 2));
+        long last = 0;
+        for (long value : values) {
+            long delta = value - last;
+            writer.writeUnary(delta >>> p);
+            writer.writeBits(delta, p);
+            last = value;
+        }
+        byte[] encoded = writer.toByteArray();
+        byte[] count = new VarInt(n).encode();
+        System.arraycopy(count, 0, encoded, 0, count.length);
+        return new GolombCodedSet(hashFunction, p, m, n, encoded);
+    }
+
+    private static HashFunction hashFunction(byte[] key) {
+        checkArgument(key.length >= 16, "SipHash key must be 16 bytes");
+        return Hashing.sipHash24(Utils.readInt64(key, 0), Utils.readInt64(key, 8));
+    }
+
+    // Maps each element uniformly to [0, range) by multiplying its 64 bit hash with the range and keeping the upper
+    // 64 bits of the product, which avoids the bias and the cost of a modulo.
+    private static long[] hashToRange(HashFunction hashFunction, Collection<byte[]> elements, long range) {
+        long[] values = new long[elements.size()];
+        int i = 0;
+        for (byte[] element : elements)
+            values[i++] = multiplyHigh(hashFunction.hashBytes(element).asLong(), range);
+        return values;
+    }
+
+    // The upper 64 bits of the unsigned 128 bit product of a and b.
+    private static long multiplyHigh(long a, long b) {
+        long aLow = a & 0xffffffffL, aHigh = a >>> 32;
+        long bLow = b & 0xffffffffL, bHigh = b >>> 32;
+        long lowLow = aLow * bLow;
+        long highLow = aHigh * bLow;
+        long lowHigh = aLow * bHigh;
+        long carry = (lowLow >>> 32) + (highLow & 0xffffffffL) + (lowHigh & 0xffffffffL);
+        return aHigh * bHigh + (highLow >>> 32) + (lowHigh >>> 32) + (carry >>> 32);
+    }
+
+    /** Returns whether the element may be in the set. */
+    public boolean match(byte[] element) {
+        return matchAny(Collections.singletonList(element));
+    }
+
+    /**
+     * Returns whether any of the elements may be in the set. This is much faster than matching them one by one, as
+     * the set is decoded only once.
+     */
+    public boolean matchAny(Collection<byte[]> elements) {
+        if (n == 0 || elements.isEmpty())
+            return false;
+        long[] queries = hashToRange(hashFunction, elements, n * m);
+        Arrays.sort(queries);
+        BitReader reader = new BitReader(encoded, dataOffset);
+        long value = 0;
+        int q = 0;
+        for (int i = 0; i < n; i++) {
+            long delta = reader.readUnary() << p;
+            delta |= reader.readBits(p);
+            value += delta;
+            // Both lists are sorted, so walk them in step.
+            while (UnsignedLongs.compare(queries[q], value) < 0) {
+                if (++q == queries.length)
+                    return false;
+            }
+            if (queries[q] == value)
+                return true;
+        }
+        return false;
+    }
+
+    /** Returns the number of elements in the set. */
+    public int size() {
+        return n;
+    }
+
+    /** Returns the serialized set. The returned array must not be modified. */
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GolombCodedSet other = (GolombCodedSet) o;
+        return p == other.p && m == other.m && Arrays.equals(encoded, other.encoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(encoded);
+    }
+
+    @Override
+    public String toString() {
+        return "Golomb-coded set of " + n + " elements, " + encoded.length + " bytes";
+    }
+
+    // Writes bits most significant first, leaving room for a header at the start.
+    private static class BitWriter {
+        private byte[] bytes;
+        private long bitPos;
+
+        BitWriter(int headerBytes, int expectedBits) {
+            bytes = new byte[headerBytes + expectedBits / 8 + 1];
+            bitPos = headerBytes * 8L;
+        }
+
+        void writeBit(boolean bit) {
+            int index = (int) (bitPos >>> 3);
+            if (index == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            if (bit)
+                bytes[index] |= 0x80 >>> (bitPos & 7);
+            bitPos++;
+        }
+
+        void writeUnary(long count) {
+            for (long i = 0; i < count; i++)
+                writeBit(true);
+            writeBit(false);
+        }
+
+        void writeBits(long value, int count) {
+            for (int i = count - 1; i >= 0; i--)
+                writeBit(((value >>> i) & 1) != 0);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((bitPos + 7) >>> 3));
+        }
+    }
+
+    private static class BitReader {
+        private final byte[] bytes;
+        private long bitPos;
+
+        BitReader(byte[] bytes, int offset) {
+            this.bytes = bytes;
+            this.bitPos = offset * 8L;
+        }
+
+        boolean readBit() {
+            int index = (int) (bitPos >>> 3);
+            // Parsed sets were checked with skipCode, so this only happens if this class has a bug.
+            if (index >= bytes.length)
+                throw new IllegalStateException("Golomb-coded set is truncated");
+            boolean bit = (bytes[index] & (0x80 >>> (bitPos & 7))) != 0;
+            bitPos++;
+            return bit;
+        }
+
+        long readUnary() {
+            long count = 0;
+            while (readBit())
+                count++;
+            return count;
+        }
+
+        long readBits(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++)
+                value = (value << 1) | (readBit() ? 1 : 0);
+            return value;
+        }
+
+        // Skips a unary quotient and a remainder of p bits, returning false if the data ends before they do.
+        boolean skipCode(int p) {
+            long end = bytes.length * 8L;
+            do {
+                if (bitPos >= end)
+                    return false;
+            } while (readBit());
+            if (end - bitPos < p)
+                return false;
+            bitPos += p;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import java.util.List;
+
+/**
+ * A {@link PeerFilterProvider} that can also list the elements it inserts into its filter, so that an existing filter
+ * can be grown by only the elements it doesn't match yet instead of being built again. See
+ * {@link org.bitcoinj.net.FilterMerger}.
+ */
+public interface GrowablePeerFilterProvider extends PeerFilterProvider {
+    /**
+     * Returns the elements that {@link PeerFilterProvider#getBloomFilter(int, double, long)} inserts into the filter.
+     * Like the filter itself this is called between beginBloomFilterCalculation and endBloomFilterCalculation.
+     */
+    List<byte[]> getBloomFilterElements();
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.core.listeners.GetDataEventListener;
+import org.bitcoinj.utils.Threading;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>Coordinates the transaction inventory of all the peers of a {@link PeerGroup}, so that a transaction announced by
+ * many peers is downloaded and parsed once rather than once per peer. The first peer to announce a transaction is asked
+ * for it. If it doesn't send it within {@link #setRequestTimeoutMsec(long) the timeout}, says it doesn't have it or
+ * disconnects, the next peer that announced it is asked, and so on.</p>
+ *
+ * <p>It also batches our own announcements: transactions passed to {@link #announce(Transaction)} are sent in a single
+ * inv to every peer each {@link #setTrickleIntervalMsec(long) trickle interval}, skipping peers that announced them to
+ * us, and are served to the peers that ask for them.</p>
+ *
+ * <p>Enable it with {@link PeerGroup#setInventoryCoordination(boolean)}.</p>
+ */
+public class InventoryCoordinator implements GetDataEventListener {
+    private static final Logger log = LoggerFactory.getLogger(InventoryCoordinator.class);
+
+    /** How long a peer has to send a transaction we asked for before another peer is asked, by default. */
+    public static final long DEFAULT_REQUEST_TIMEOUT_MSEC = 5000;
+    /** How often our own announcements are sent, by default. */
+    public static final long DEFAULT_TRICKLE_INTERVAL_MSEC = 2000;
+    // Bounds the memory used by transactions that are announced but never arrive, and by our own announcements.
+    private static final int MAX_TRACKED_REQUESTS = 50000;
+    private static final int MAX_ANNOUNCED_TXNS = 5000;
+    // Peers beyond the first few that announced a transaction are not worth remembering as fallbacks.
+    private static final int MAX_ANNOUNCERS = 8;
+
+    private final ReentrantLock lock = Threading.lock("inventorycoordinator");
+    private final NetworkParameters params;
+    @Nullable private volatile PeerScores vPeerScores;
+
+    private static class Request {
+        // The peers that announced the transaction and haven't been asked for it yet, in the order they did.
+        final LinkedHashSet<Peer> announcers = new LinkedHashSet<Peer>();
+        @Nullable Peer requestedFrom;
+        long deadline;
+    }
+
+    @GuardedBy("lock") private final Set<Peer> peers = new HashSet<Peer>();
+    @GuardedBy("lock") private final LinkedHashMap<Sha256Hash, Request> requests
+            = new LinkedHashMap<Sha256Hash, Request>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Sha256Hash, Request> eldest) {
+            return size() > MAX_TRACKED_REQUESTS;
+        }
+    };
+    // Transactions that arrived, so that peers announcing them later are not asked for them again.
+    @GuardedBy("lock") private final LinkedHashMap<Sha256Hash, Boolean> received
+            = new LinkedHashMap<Sha256Hash, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Sha256Hash, Boolean> eldest) {
+            return size() > MAX_TRACKED_REQUESTS;
+        }
+    };
+    @GuardedBy("lock") private final LinkedHashMap<Sha256Hash, Transaction> announced
+            = new LinkedHashMap<Sha256Hash, Transaction>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Sha256Hash, Transaction> eldest) {
+            return size() > MAX_ANNOUNCED_TXNS;
+        }
+    };
+    @GuardedBy("lock") private final List<Transaction> toAnnounce = new ArrayList<Transaction>();
+    @GuardedBy("lock") private long requestTimeoutMsec = DEFAULT_REQUEST_TIMEOUT_MSEC;
+    @GuardedBy("lock") private long trickleIntervalMsec = DEFAULT_TRICKLE_INTERVAL_MSEC;
+    @GuardedBy("lock") private long lastTrickleTime;
+
+    // Statistics.
+    @GuardedBy("lock") private long requested, duplicateAnnouncements, retries;
+
+    public InventoryCoordinator(NetworkParameters params) {
+        this.params = params;
+    }
+
+    /** Sets how long a peer has to send a transaction we asked for before another peer is asked. */
+    public void setRequestTimeoutMsec(long requestTimeoutMsec) {
+        checkArgument(requestTimeoutMsec > 0);
+        lock.lock();
+        try {
+            this.requestTimeoutMsec = requestTimeoutMsec;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sets how often our own announcements are sent. */
+    public void setTrickleIntervalMsec(long trickleIntervalMsec) {
+        checkArgument(trickleIntervalMsec > 0);
+        lock.lock();
+        try {
+            this.trickleIntervalMsec = trickleIntervalMsec;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the scores used to ask the best peer first when a request has to be retried, and to which the peers that
+     * sit on requests are reported. Set by the {@link PeerGroup}.
+     */
+    void setPeerScores(@Nullable PeerScores scores) {
+        this.vPeerScores = scores;
+    }
+
+    void addPeer(Peer peer) {
+        lock.lock();
+        try {
+            peers.add(peer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Gives the transactions the peer was asked for to other peers that announced them. */
+    void removePeer(Peer peer) {
+        Map<Peer, GetDataMessage> getdatas = new HashMap<Peer, GetDataMessage>();
+        lock.lock();
+        try {
+            peers.remove(peer);
+            Iterator<Map.Entry<Sha256Hash, Request>> it = requests.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Sha256Hash, Request> entry = it.next();
+                Request request = entry.getValue();
+                request.announcers.remove(peer);
+                if (request.requestedFrom == peer && !retryLocked(entry.getKey(), request, getdatas))
+                    it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        send(getdatas);
+    }
+
+    /**
+     * Called by a peer for each transaction it announces. Returns true if the peer should ask for it, which it is then
+     * expected to do, or false if another peer has been asked already or the transaction already arrived.
+     */
+    boolean onAnnounced(Peer peer, Sha256Hash hash) {
+        lock.lock();
+        try {
+            if (received.containsKey(hash)) {
+                duplicateAnnouncements++;
+                return false;
+            }
+            Request request = requests.get(hash);
+            if (request == null) {
+                request = new Request();
+                request.requestedFrom = peer;
+                request.deadline = Utils.currentTimeMillis() + requestTimeoutMsec;
+                requests.put(hash, request);
+                requested++;
+                return true;
+            }
+            duplicateAnnouncements++;
+            if (request.requestedFrom != peer && request.announcers.size() < MAX_ANNOUNCERS)
+                request.announcers.add(peer);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called by a peer when it receives a transaction. */
+    void onReceived(Sha256Hash hash) {
+        lock.lock();
+        try {
+            requests.remove(hash);
+            received.put(hash, Boolean.TRUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called by a peer when it says it doesn't have some of the items we asked for. */
+    void onNotFound(Peer peer, List<InventoryItem> items) {
+        Map<Peer, GetDataMessage> getdatas = new HashMap<Peer, GetDataMessage>();
+        lock.lock();
+        try {
+            for (InventoryItem item : items) {
+                if (item.type != InventoryItem.Type.Transaction)
+                    continue;
+                Request request = requests.get(item.hash);
+                if (request != null && request.requestedFrom == peer && !retryLocked(item.hash, request, getdatas))
+                    requests.remove(item.hash);
+            }
+        } finally {
+            lock.unlock();
+        }
+        send(getdatas);
+    }
+
+    /** Asks other peers for the transactions that were not sent in time. Called regularly by the {@link PeerGroup}. */
+    void checkTimeouts() {
+        Map<Peer, GetDataMessage> getdatas = new HashMap<Peer, GetDataMessage>();
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            PeerScores scores = vPeerScores;
+            Iterator<Map.Entry<Sha256Hash, Request>> it = requests.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Sha256Hash, Request> entry = it.next();
+                Request request = entry.getValue();
+                if (request.deadline > now)
+                    continue;
+                if (scores != null && request.requestedFrom != null)
+                    scores.recordStall(request.requestedFrom.getAddress());
+                if (!retryLocked(entry.getKey(), request, getdatas))
+                    it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        send(getdatas);
+    }
+
+    // Asks the next connected announcer, or the best one if there are scores, for the transaction. Returns false if
+    // there is none left.
+    @GuardedBy("lock")
+    private boolean retryLocked(Sha256Hash hash, Request request, Map<Peer, GetDataMessage> getdatas) {
+        request.announcers.retainAll(peers);
+        if (!request.announcers.isEmpty()) {
+            PeerScores scores = vPeerScores;
+            Peer peer = scores != null ? scores.selectBest(new ArrayList<Peer>(request.announcers))
+                    : request.announcers.iterator().next();
+            request.announcers.remove(peer);
+            request.requestedFrom = peer;
+            request.deadline = Utils.currentTimeMillis() + requestTimeoutMsec;
+            GetDataMessage getdata = getdatas.get(peer);
+            if (getdata == null) {
+                getdata = new GetDataMessage(params);
+                getdatas.put(peer, getdata);
+            }
+            getdata.addTransaction(hash);
+            retries++;
+            return true;
+        }
+        log.debug("No more peers to ask for {}", hash);
+        return false;
+    }
+
+    private void send(Map<Peer, GetDataMessage> getdatas) {
+        for (Map.Entry<Peer, GetDataMessage> entry : getdatas.entrySet())
+            entry.getKey().sendMessage(entry.getValue());
+    }
+
+    /** Queues the transaction to be announced to all peers with the next trickle. */
+    public void announce(Transaction tx) {
+        lock.lock();
+        try {
+            toAnnounce.add(tx);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sends the queued announcements if the trickle interval has passed. Called regularly by the {@link PeerGroup}. */
+    void trickle() {
+        List<Transaction> txns;
+        List<Peer> targets;
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            if (toAnnounce.isEmpty() || now - lastTrickleTime < trickleIntervalMsec)
+                return;
+            lastTrickleTime = now;
+            txns = new ArrayList<Transaction>(toAnnounce);
+            toAnnounce.clear();
+            for (Transaction tx : txns)
+                announced.put(tx.getHash(), tx);
+            targets = new ArrayList<Peer>(peers);
+        } finally {
+            lock.unlock();
+        }
+        TxConfidenceTable table = Context.get().getConfidenceTable();
+        for (Peer peer : targets) {
+            InventoryMessage inv = new InventoryMessage(params);
+            for (Transaction tx : txns) {
+                // Don't tell peers about transactions they told us about.
+                TransactionConfidence confidence = table.get(tx.getHash());
+                if (confidence == null || !confidence.wasBroadcastBy(peer.getAddress()))
+                    inv.addTransaction(tx);
+            }
+            if (!inv.getItems().isEmpty())
+                peer.sendMessage(inv);
+        }
+    }
+
+    /** Serves the transactions we announced. */
+    @Override
+    public List<Message> getData(Peer peer, GetDataMessage m) {
+        List<Message> result = new ArrayList<Message>();
+        lock.lock();
+        try {
+            for (InventoryItem item : m.getItems()) {
+                if (item.type != InventoryItem.Type.Transaction)
+                    continue;
+                Transaction tx = announced.get(item.hash);
+                if (tx != null)
+                    result.add(tx);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /** Returns the number of transactions being waited for. */
+    public int getRequestsInFlight() {
+        lock.lock();
+        try {
+            return requests.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format(Locale.US, "%d in flight, %d requested, %d duplicate announcements, %d retries",
+                    requests.size(), requested, duplicateAnnouncements, retries);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
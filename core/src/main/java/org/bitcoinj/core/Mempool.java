@@ -0,0 +1,618 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.core.listeners.BlocksDownloadedEventListener;
+import org.bitcoinj.core.listeners.OnTransactionBroadcastListener;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.store.FullPrunedBlockStore;
+import org.bitcoinj.utils.ListenerRegistration;
+import org.bitcoinj.utils.Threading;
+import com.google.common.base.MoreObjects;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>An in-process memory pool: the unconfirmed transactions relayed to us by our peers. Unlike the
+ * {@link TxConfidenceTable}, which only counts announcements, it keeps the full transactions, indexed by hash, by the
+ * outpoints they spend and by fee rate, and knows which of them depend on each other. It is optional: create one and
+ * pass it to {@link PeerGroup#setMempool(Mempool)}, after which every transaction a peer sends us is added and every
+ * downloaded block removes the transactions it confirms or conflicts with.</p>
+ *
+ * <p>Transactions are kept serialized, along with the values of their inputs and outputs, so memory use is close to
+ * the serialized size and is bounded by {@link #setMaxMemoryBytes(long)}. When the pool grows beyond it, the
+ * transactions with the lowest fee rate are evicted along with everything that spends them. The fee of a transaction
+ * is only known if the values of all its inputs are: they can come from the transaction itself, from parents in the
+ * pool or from a {@link FullPrunedBlockStore} given to {@link #setUTXOStore(FullPrunedBlockStore)}. Transactions with
+ * an unknown fee are evicted first.</p>
+ *
+ * <p>A transaction that spends an outpoint already spent by another one in the pool is ignored: the first seen wins.
+ * Transactions of blocks that are disconnected by a re-org are not put back.</p>
+ *
+ * <p>Use {@link #getSnapshot()} to read the whole pool and {@link #addEventListener(Executor, Listener)} to follow
+ * changes to it.</p>
+ */
+public class Mempool implements OnTransactionBroadcastListener, BlocksDownloadedEventListener {
+    private static final Logger log = LoggerFactory.getLogger(Mempool.class);
+
+    /** The default limit of {@link #getMemoryUsage()}. */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+
+    // Rough size of an entry, its index entries and its links, on top of the serialized transaction and the values.
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final int OUTPOINT_OVERHEAD_BYTES = 96;
+
+    /** Why a transaction left the pool. */
+    public enum RemovalReason {
+        /** It was included in a block. */
+        CONFIRMED,
+        /** A block included another transaction spending the same outpoint, or it depends on such a transaction. */
+        CONFLICT,
+        /** It had one of the lowest fee rates when the pool was full, or depends on such a transaction. */
+        SIZE_LIMIT
+    }
+
+    /** Receives changes to the pool. */
+    public interface Listener {
+        /** Called when a transaction is added to the pool. */
+        void onTransactionAdded(Mempool mempool, Entry entry);
+
+        /** Called when a transaction leaves the pool. */
+        void onTransactionRemoved(Mempool mempool, Entry entry, RemovalReason reason);
+    }
+
+    /** A transaction in the pool. */
+    public static class Entry {
+        private final NetworkParameters params;
+        private final Sha256Hash txId;
+        private final byte[] bytes;
+        private final long firstSeenTimeSecs;
+        private final long sequence;
+        // The spent outpoints, with the values of the outputs they refer to or -1 if unknown.
+        private final OutPoint[] spends;
+        private final long[] inputValues;
+        private final long[] outputValues;
+        // Fee in satoshis and per 1000 bytes, or -1 if not known yet. They change when a parent arrives.
+        private volatile long fee = -1, feePerKb = -1;
+        // Links to the entries this one spends and the entries that spend this one, guarded by the mempool lock.
+        private final List<Entry> parents = new ArrayList<Entry>(1);
+        private final List<Entry> children = new ArrayList<Entry>(1);
+
+        private Entry(NetworkParameters params, Transaction tx, long firstSeenTimeSecs, long sequence) {
+            this.params = params;
+            this.txId = tx.getHash();
+            this.bytes = tx.unsafeBitcoinSerialize();
+            this.firstSeenTimeSecs = firstSeenTimeSecs;
+            this.sequence = sequence;
+            List<TransactionInput> inputs = tx.getInputs();
+            spends = new OutPoint[inputs.size()];
+            inputValues = new long[inputs.size()];
+            for (int i = 0; i < inputs.size(); i++) {
+                TransactionInput input = inputs.get(i);
+                spends[i] = new OutPoint(input.getOutpoint().getHash(), input.getOutpoint().getIndex());
+                inputValues[i] = input.getValue() != null ? input.getValue().value : -1;
+            }
+            List<TransactionOutput> outputs = tx.getOutputs();
+            outputValues = new long[outputs.size()];
+            for (int i = 0; i < outputs.size(); i++)
+                outputValues[i] = outputs.get(i).getValue().value;
+        }
+
+        public Sha256Hash getTxId() {
+            return txId;
+        }
+
+        /** Returns the transaction. It is parsed from its serialized form on every call. */
+        public Transaction getTransaction() {
+            return params.getDefaultSerializer().makeTransaction(bytes);
+        }
+
+        /** Returns the serialized size of the transaction in bytes. */
+        public int getSize() {
+            return bytes.length;
+        }
+
+        /** Returns the fee paid by the transaction, or null if the value of one of its inputs is not known. */
+        @Nullable
+        public Coin getFee() {
+            long fee = this.fee;
+            return fee < 0 ? null : Coin.valueOf(fee);
+        }
+
+        /** Returns the fee paid by the transaction per 1000 bytes, or null if it is not known. */
+        @Nullable
+        public Coin getFeePerKb() {
+            long feePerKb = this.feePerKb;
+            return feePerKb < 0 ? null : Coin.valueOf(feePerKb);
+        }
+
+        /** Returns when the transaction was added to the pool, in seconds since the epoch. */
+        public long getFirstSeenTimeSecs() {
+            return firstSeenTimeSecs;
+        }
+
+        private long memoryUsage() {
+            return ENTRY_OVERHEAD_BYTES + bytes.length + spends.length * (OUTPOINT_OVERHEAD_BYTES + 8)
+                    + outputValues.length * 8;
+        }
+
+        @GuardedBy("Mempool.lock")
+        private void updateFee() {
+            long in = 0, out = 0;
+            for (long value : inputValues) {
+                if (value < 0)
+                    return;
+                in += value;
+            }
+            for (long value : outputValues)
+                out += value;
+            // A negative fee means a broken transaction, which Bitcoin Core would not relay. Treat it as unknown.
+            if (in < out)
+                return;
+            fee = in - out;
+            feePerKb = fee * 1000 / bytes.length;
+        }
+
+        @Override
+        public String toString() {
+            return txId + " (" + bytes.length + " bytes, fee " + getFee() + ")";
+        }
+    }
+
+    // A compact key for the outpoint index, rather than the much bigger TransactionOutPoint message.
+    private static final class OutPoint {
+        final Sha256Hash hash;
+        final long index;
+
+        OutPoint(Sha256Hash hash, long index) {
+            this.hash = hash;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            OutPoint other = (OutPoint) o;
+            return index == other.index && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode() * 31 + (int) index;
+        }
+    }
+
+    // Lowest fee rate first, with transactions of unknown fee before all others, then oldest first.
+    private static final Comparator<Entry> BY_FEE_RATE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.feePerKb != b.feePerKb)
+                return a.feePerKb < b.feePerKb ? -1 : 1;
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    protected final ReentrantLock lock = Threading.lock("mempool");
+
+    private final NetworkParameters params;
+    @GuardedBy("lock") private final HashMap<Sha256Hash, Entry> byTxId = new HashMap<Sha256Hash, Entry>();
+    @GuardedBy("lock") private final HashMap<OutPoint, Entry> bySpentOutPoint = new HashMap<OutPoint, Entry>();
+    @GuardedBy("lock") private final TreeSet<Entry> byFeeRate = new TreeSet<Entry>(BY_FEE_RATE);
+    @GuardedBy("lock") private long memoryUsage;
+    @GuardedBy("lock") private long maxMemoryBytes = DEFAULT_MAX_MEMORY_BYTES;
+    @GuardedBy("lock") private long nextSequence;
+    @GuardedBy("lock") @Nullable private FullPrunedBlockStore utxoStore;
+
+    private final CopyOnWriteArrayList<ListenerRegistration<Listener>> listeners
+            = new CopyOnWriteArrayList<ListenerRegistration<Listener>>();
+
+    public Mempool(NetworkParameters params) {
+        this.params = checkNotNull(params);
+    }
+
+    /**
+     * Sets the limit of {@link #getMemoryUsage()}, evicting transactions if the pool is already bigger. Defaults to
+     * {@link #DEFAULT_MAX_MEMORY_BYTES}, which is enough for tens of thousands of typical transactions.
+     */
+    public void setMaxMemoryBytes(long maxMemoryBytes) {
+        checkArgument(maxMemoryBytes > 0);
+        List<Event> events = new ArrayList<Event>();
+        lock.lock();
+        try {
+            this.maxMemoryBytes = maxMemoryBytes;
+            trimLocked(events);
+        } finally {
+            lock.unlock();
+        }
+        queueListeners(events);
+    }
+
+    /**
+     * Sets a store to look up the values of inputs that spend confirmed outputs, so that the fee of every transaction
+     * can be worked out. Only useful in full mode, as SPV block stores don't keep the unspent outputs.
+     */
+    public void setUTXOStore(@Nullable FullPrunedBlockStore utxoStore) {
+        lock.lock();
+        try {
+            this.utxoStore = utxoStore;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Adds a listener that is told about every transaction that is added to or removed from the pool. */
+    public void addEventListener(Executor executor, Listener listener) {
+        listeners.add(new ListenerRegistration<Listener>(listener, executor));
+    }
+
+    /** Removes a listener added with {@link #addEventListener(Executor, Listener)}. */
+    public boolean removeEventListener(Listener listener) {
+        return ListenerRegistration.removeFromList(listener, listeners);
+    }
+
+    /**
+     * Adds the transaction to the pool. Returns false if it was not added because it is already in the pool, is a
+     * coinbase, double spends a transaction in the pool or is the first to be evicted.
+     */
+    public boolean add(Transaction tx) {
+        List<Event> events = new ArrayList<Event>();
+        boolean added;
+        lock.lock();
+        try {
+            added = addLocked(tx, events);
+        } finally {
+            lock.unlock();
+        }
+        queueListeners(events);
+        return added;
+    }
+
+    @GuardedBy("lock")
+    private boolean addLocked(Transaction tx, List<Event> events) {
+        if (tx.isCoinBase() || byTxId.containsKey(tx.getHash()))
+            return false;
+        Entry entry = new Entry(params, tx, Utils.currentTimeSeconds(), nextSequence++);
+        for (OutPoint spent : entry.spends) {
+            Entry spender = bySpentOutPoint.get(spent);
+            if (spender != null) {
+                log.debug("Ignoring {} which double spends {}", entry.txId, spender.txId);
+                return false;
+            }
+        }
+        // Link to the parents in the pool and look up the input values we don't have.
+        for (int i = 0; i < entry.spends.length; i++) {
+            OutPoint spent = entry.spends[i];
+            bySpentOutPoint.put(spent, entry);
+            Entry parent = byTxId.get(spent.hash);
+            if (parent != null) {
+                if (!entry.parents.contains(parent)) {
+                    entry.parents.add(parent);
+                    parent.children.add(entry);
+                }
+                if (entry.inputValues[i] < 0 && spent.index < parent.outputValues.length)
+                    entry.inputValues[i] = parent.outputValues[(int) spent.index];
+            } else if (entry.inputValues[i] < 0 && utxoStore != null) {
+                try {
+                    UTXO utxo = utxoStore.getTransactionOutput(spent.hash, spent.index);
+                    if (utxo != null)
+                        entry.inputValues[i] = utxo.getValue().value;
+                } catch (BlockStoreException e) {
+                    log.warn("Failed to look up the value of an input of {}", entry.txId, e);
+                }
+            }
+        }
+        entry.updateFee();
+        // Link to children that arrived before this entry, which now know the values of their inputs.
+        for (int i = 0; i < entry.outputValues.length; i++) {
+            Entry child = bySpentOutPoint.get(new OutPoint(entry.txId, i));
+            if (child == null)
+                continue;
+            if (!entry.children.contains(child)) {
+                entry.children.add(child);
+                child.parents.add(entry);
+            }
+            for (int j = 0; j < child.spends.length; j++) {
+                if (child.spends[j].hash.equals(entry.txId) && child.spends[j].index == i)
+                    child.inputValues[j] = entry.outputValues[i];
+            }
+            if (child.fee < 0) {
+                byFeeRate.remove(child);
+                child.updateFee();
+                byFeeRate.add(child);
+            }
+        }
+        byTxId.put(entry.txId, entry);
+        byFeeRate.add(entry);
+        memoryUsage += entry.memoryUsage();
+        events.add(new Event(entry, null));
+        trimLocked(events);
+        return byTxId.containsKey(entry.txId);
+    }
+
+    @GuardedBy("lock")
+    private void trimLocked(List<Event> events) {
+        while (memoryUsage > maxMemoryBytes && !byFeeRate.isEmpty())
+            removeWithDescendantsLocked(byFeeRate.first(), RemovalReason.SIZE_LIMIT, events);
+    }
+
+    @GuardedBy("lock")
+    private void removeWithDescendantsLocked(Entry entry, RemovalReason reason, List<Event> events) {
+        for (Entry descendant : getDescendantsLocked(entry))
+            removeLocked(descendant, reason, events);
+        removeLocked(entry, reason, events);
+    }
+
+    @GuardedBy("lock")
+    private void removeLocked(Entry entry, RemovalReason reason, List<Event> events) {
+        if (byTxId.remove(entry.txId) == null)
+            return;
+        byFeeRate.remove(entry);
+        for (OutPoint spent : entry.spends)
+            bySpentOutPoint.remove(spent);
+        for (Entry parent : entry.parents)
+            parent.children.remove(entry);
+        for (Entry child : entry.children)
+            child.parents.remove(entry);
+        entry.parents.clear();
+        entry.children.clear();
+        memoryUsage -= entry.memoryUsage();
+        events.add(new Event(entry, reason));
+    }
+
+    /**
+     * Removes the transactions of the block from the pool, along with the transactions that conflict with them and
+     * everything that depends on those.
+     */
+    public void removeForBlock(Block block) {
+        List<Transaction> transactions = block.getTransactions();
+        if (transactions == null)
+            return;
+        List<Event> events = new ArrayList<Event>();
+        lock.lock();
+        try {
+            for (Transaction tx : transactions)
+                removeConfirmedLocked(tx.getHash(), tx, events);
+        } finally {
+            lock.unlock();
+        }
+        queueListeners(events);
+    }
+
+    /**
+     * Removes the matched transactions of the filtered block from the pool. Conflicts are only found for the matched
+     * transactions that the peer sent along with the block.
+     */
+    public void removeForBlock(FilteredBlock block) {
+        List<Event> events = new ArrayList<Event>();
+        lock.lock();
+        try {
+            Map<Sha256Hash, Transaction> associated = block.getAssociatedTransactions();
+            for (Sha256Hash hash : block.getTransactionHashes())
+                removeConfirmedLocked(hash, associated.get(hash), events);
+        } finally {
+            lock.unlock();
+        }
+        queueListeners(events);
+    }
+
+    @GuardedBy("lock")
+    private void removeConfirmedLocked(Sha256Hash hash, @Nullable Transaction tx, List<Event> events) {
+        Entry entry = byTxId.get(hash);
+        if (entry != null) {
+            // Its children stay: they can now be mined too.
+            removeLocked(entry, RemovalReason.CONFIRMED, events);
+        } else if (tx != null && !tx.isCoinBase()) {
+            for (TransactionInput input : tx.getInputs()) {
+                TransactionOutPoint outpoint = input.getOutpoint();
+                Entry conflict = bySpentOutPoint.get(new OutPoint(outpoint.getHash(), outpoint.getIndex()));
+                if (conflict != null)
+                    removeWithDescendantsLocked(conflict, RemovalReason.CONFLICT, events);
+            }
+        }
+    }
+
+    /** Returns the entry of the transaction with the given hash, or null if it is not in the pool. */
+    @Nullable
+    public Entry get(Sha256Hash txId) {
+        lock.lock();
+        try {
+            return byTxId.get(txId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns true if the transaction with the given hash is in the pool. */
+    public boolean contains(Sha256Hash txId) {
+        return get(txId) != null;
+    }
+
+    /** Returns the entry of the transaction in the pool that spends the given outpoint, or null if there is none. */
+    @Nullable
+    public Entry getSpender(TransactionOutPoint outpoint) {
+        lock.lock();
+        try {
+            return bySpentOutPoint.get(new OutPoint(outpoint.getHash(), outpoint.getIndex()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the transactions in the pool that the given one spends outputs of, directly or indirectly. */
+    public Set<Entry> getAncestors(Sha256Hash txId) {
+        lock.lock();
+        try {
+            Set<Entry> result = new LinkedHashSet<Entry>();
+            Entry entry = byTxId.get(txId);
+            if (entry == null)
+                return result;
+            LinkedList<Entry> todo = new LinkedList<Entry>(entry.parents);
+            while (!todo.isEmpty()) {
+                Entry next = todo.poll();
+                if (result.add(next))
+                    todo.addAll(next.parents);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the transactions in the pool that spend outputs of the given one, directly or indirectly. */
+    public Set<Entry> getDescendants(Sha256Hash txId) {
+        lock.lock();
+        try {
+            Entry entry = byTxId.get(txId);
+            return entry == null ? new LinkedHashSet<Entry>() : getDescendantsLocked(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private Set<Entry> getDescendantsLocked(Entry entry) {
+        Set<Entry> result = new LinkedHashSet<Entry>();
+        LinkedList<Entry> todo = new LinkedList<Entry>(entry.children);
+        while (!todo.isEmpty()) {
+            Entry next = todo.poll();
+            if (result.add(next))
+                todo.addAll(next.children);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all the entries in the pool, highest fee rate first and transactions of unknown fee last. Entries with
+     * the same fee rate are ordered oldest first.
+     */
+    public List<Entry> getSnapshot() {
+        lock.lock();
+        try {
+            // Walking the set backwards also puts the newest first within a fee rate, so each run of entries with the
+            // same fee rate is reversed back.
+            List<Entry> snapshot = new ArrayList<Entry>(byFeeRate.size());
+            int runStart = 0;
+            for (Entry entry : byFeeRate.descendingSet()) {
+                if (!snapshot.isEmpty() && snapshot.get(snapshot.size() - 1).feePerKb != entry.feePerKb) {
+                    Collections.reverse(snapshot.subList(runStart, snapshot.size()));
+                    runStart = snapshot.size();
+                }
+                snapshot.add(entry);
+            }
+            Collections.reverse(snapshot.subList(runStart, snapshot.size()));
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the IDs of all the transactions in the pool, without parsing them. */
+    public Set<Sha256Hash> getTxIds() {
+        lock.lock();
+        try {
+            return new HashSet<Sha256Hash>(byTxId.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of transactions in the pool. */
+    public int size() {
+        lock.lock();
+        try {
+            return byTxId.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns an estimate of the memory used by the transactions in the pool and their indexes, in bytes. */
+    public long getMemoryUsage() {
+        lock.lock();
+        try {
+            return memoryUsage;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called by the peers of the {@link PeerGroup} this pool is attached to. Adds the transaction. */
+    @Override
+    public void onTransaction(Peer peer, Transaction tx) {
+        add(tx);
+    }
+
+    /** Called by the {@link PeerGroup} this pool is attached to. Removes the transactions of the block. */
+    @Override
+    public void onBlocksDownloaded(Peer peer, Block block, @Nullable FilteredBlock filteredBlock, int blocksLeft) {
+        if (filteredBlock != null)
+            removeForBlock(filteredBlock);
+        else
+            removeForBlock(block);
+    }
+
+    // An addition when reason is null, else a removal.
+    private static class Event {
+        final Entry entry;
+        @Nullable final RemovalReason reason;
+
+        Event(Entry entry, @Nullable RemovalReason reason) {
+            this.entry = entry;
+            this.reason = reason;
+        }
+    }
+
+    private void queueListeners(final List<Event> events) {
+        if (events.isEmpty())
+            return;
+        for (final ListenerRegistration<Listener> registration : listeners) {
+            registration.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Event event : events) {
+                        if (event.reason == null)
+                            registration.listener.onTransactionAdded(Mempool.this, event.entry);
+                        else
+                            registration.listener.onTransactionRemoved(Mempool.this, event.entry, event.reason);
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return MoreObjects.toStringHelper(this).add("transactions", byTxId.size())
+                    .add("memoryUsage", memoryUsage).toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
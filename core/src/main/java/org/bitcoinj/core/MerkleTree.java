@@ -0,0 +1,190 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.utils.Threading;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>The complete merkle tree over the transaction hashes of a block. Every node is stored in one contiguous array, 32
+ * bytes per node in the byte order they are hashed in: the leaves first, then each level above them in turn, ending
+ * with the root. Building a tree allocates nothing but that array, and the nodes can be read back individually, for
+ * example to build {@link PartialMerkleTree}s without hashing again.</p>
+ *
+ * <p>For large blocks the lower levels are split into subtrees that are hashed in parallel on
+ * {@link Threading#THREAD_POOL}. Each subtree covers a power of two leaves, so its nodes are the same as in the
+ * tree as a whole, including where the last node of a level is paired with itself.</p>
+ *
+ * <p>Instances of this class are immutable and safe for use by multiple threads.</p>
+ */
+public class MerkleTree {
+    // Trees with at least this many leaves have their lower levels hashed in parallel.
+    private static final int PARALLEL_THRESHOLD = 4096;
+    // The leaves of the subtree hashed by each parallel task, which must be a power of two.
+    private static final int LEAVES_PER_TASK = 1024;
+
+    private final int leafCount;
+    private final int height;
+    private final byte[] nodes;
+
+    private MerkleTree(int leafCount, int height, byte[] nodes) {
+        this.leafCount = leafCount;
+        this.height = height;
+        this.nodes = nodes;
+    }
+
+    /** Builds the merkle tree over the given leaf hashes, which must not be empty. */
+    public static MerkleTree build(List<Sha256Hash> leaves) {
+        return build(leaves, leaves.size() >= PARALLEL_THRESHOLD ? Threading.THREAD_POOL : null);
+    }
+
+    /**
+     * Builds the merkle tree over the given leaf hashes, which must not be empty, hashing the lower levels in parallel
+     * on the given executor if it isn't null.
+     */
+    public static MerkleTree build(List<Sha256Hash> leaves, @Nullable ExecutorService executor) {
+        int leafCount = leaves.size();
+        checkArgument(leafCount > 0, "A merkle tree needs at least one leaf");
+        int height = 0;
+        int nodeCount = 0;
+        for (int width = leafCount; ; width = (width + 1) / 2) {
+            nodeCount += width;
+            if (width == 1)
+                break;
+            height++;
+        }
+        byte[] nodes = new byte[nodeCount * Sha256Hash.LENGTH];
+        int offset = 0;
+        for (Sha256Hash leaf : leaves) {
+            System.arraycopy(leaf.getBytes(), 0, nodes, offset, Sha256Hash.LENGTH);
+            Utils.reverseBytesInPlace(nodes, offset, Sha256Hash.LENGTH);
+            offset += Sha256Hash.LENGTH;
+        }
+        final MerkleTree tree = new MerkleTree(leafCount, height, nodes);
+        int level = 1;
+        if (executor != null && leafCount > LEAVES_PER_TASK) {
+            final int taskLevels = Integer.numberOfTrailingZeros(LEAVES_PER_TASK);
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            for (int first = LEAVES_PER_TASK; first < leafCount; first += LEAVES_PER_TASK) {
+                final int firstLeaf = first;
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        tree.hashSubtree(firstLeaf, taskLevels);
+                    }
+                }));
+            }
+            tree.hashSubtree(0, taskLevels);
+            for (Future<?> task : tasks) {
+                try {
+                    Uninterruptibles.getUninterruptibly(task);
+                } catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+            level = taskLevels + 1;
+        }
+        for (; level <= height; level++)
+            tree.hashLevel(level, 0, tree.getWidth(level));
+        return tree;
+    }
+
+    /** Returns the merkle root over the given leaf hashes, which must not be empty. */
+    public static Sha256Hash computeRoot(List<Sha256Hash> leaves) {
+        return build(leaves).getRoot();
+    }
+
+    // Hashes the given number of levels above the leaves of the subtree whose leftmost leaf is given.
+    private void hashSubtree(int firstLeaf, int levels) {
+        for (int level = 1; level <= levels && level <= height; level++) {
+            int width = getWidth(level);
+            int from = firstLeaf >> level;
+            hashLevel(level, from, Math.min(width, (firstLeaf + LEAVES_PER_TASK) >> level));
+        }
+    }
+
+    // Hashes the nodes [from, to) of a level from the level below it.
+    private void hashLevel(int level, int from, int to) {
+        int childOffset = getLevelOffset(level - 1) * Sha256Hash.LENGTH;
+        int childWidth = getWidth(level - 1);
+        int offset = getLevelOffset(level) * Sha256Hash.LENGTH;
+        for (int pos = from; pos < to; pos++) {
+            int left = childOffset + 2 * pos * Sha256Hash.LENGTH;
+            // The last node of a level is paired with itself if it has no sibling.
+            int right = 2 * pos + 1 < childWidth ? left + Sha256Hash.LENGTH : left;
+            Sha256Hash.hashTwiceInto(nodes, left, Sha256Hash.LENGTH, nodes, right, Sha256Hash.LENGTH,
+                    nodes, offset + pos * Sha256Hash.LENGTH);
+        }
+    }
+
+    /** Returns the number of leaves the tree was built over. */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /** Returns the height of the tree, which is 0 for a tree of a single leaf. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** Returns the number of nodes at the given height, where the leaves are at height 0. */
+    public int getWidth(int level) {
+        return getWidth(leafCount, level);
+    }
+
+    static int getWidth(int leafCount, int level) {
+        return (leafCount + (1 << level) - 1) >> level;
+    }
+
+    // The index of the first node of the given level.
+    private int getLevelOffset(int level) {
+        int offset = 0;
+        for (int l = 0; l < level; l++)
+            offset += getWidth(l);
+        return offset;
+    }
+
+    /** Returns the node at the given position of the given height, where the leaves are at height 0. */
+    public Sha256Hash getNode(int level, int pos) {
+        checkElementIndex(pos, getWidth(level));
+        int offset = (getLevelOffset(level) + pos) * Sha256Hash.LENGTH;
+        byte[] bytes = new byte[Sha256Hash.LENGTH];
+        System.arraycopy(nodes, offset, bytes, 0, Sha256Hash.LENGTH);
+        Utils.reverseBytesInPlace(bytes);
+        return Sha256Hash.wrap(bytes);
+    }
+
+    /** Returns the merkle root. */
+    public Sha256Hash getRoot() {
+        return getNode(height, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "Merkle tree of " + leafCount + " leaves with root " + getRoot();
+    }
+}
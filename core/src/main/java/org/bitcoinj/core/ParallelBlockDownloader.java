@@ -0,0 +1,903 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>Downloads the block chain from several peers at once. Block headers are fetched from a single peer with
+ * getheaders, which tells us up front the hashes of all the blocks we need. The blocks themselves, or filtered blocks
+ * when a Bloom filter is in use, are then requested from every suitable peer. Each peer is kept busy with a window of
+ * up to {@link #setMaxBlocksInFlightPerPeer(int)} outstanding requests, and blocks that arrive ahead of the ones
+ * before them are held in a reorder buffer until they can be added to the chain in order. The buffer is bounded by
+ * never requesting more than {@link #setMaxBlocksAhead(int)} blocks beyond the one the chain needs next.</p>
+ *
+ * <p>Requests that are not answered within the stall timeout are taken away from their peer and given to another
+ * one. When the block the chain needs next is held up by a slow peer it is requested from a faster, idle peer as
+ * well, and whichever answer arrives first is used. The download therefore proceeds at roughly the combined speed of
+ * the peers rather than at the speed of the slowest one.</p>
+ *
+ * <p>Instances are created and driven by {@link PeerGroup}, see {@link PeerGroup#setParallelBlockDownload(boolean)}.
+ * Progress events are reported through the {@link org.bitcoinj.core.listeners.BlocksDownloadedEventListener}s of the
+ * peer that headers are downloaded from, as they would be for a download from that peer alone.</p>
+ */
+public class ParallelBlockDownloader {
+    private static final Logger log = LoggerFactory.getLogger(ParallelBlockDownloader.class);
+
+    /** The default number of block requests that may be outstanding at each peer. */
+    public static final int DEFAULT_MAX_BLOCKS_IN_FLIGHT_PER_PEER = 16;
+    /** The default number of blocks that may be requested beyond the one the chain needs next. */
+    public static final int DEFAULT_MAX_BLOCKS_AHEAD = 1024;
+    /** The default time after which an unanswered block request is given to another peer. */
+    public static final long DEFAULT_STALL_TIMEOUT_MSEC = 10000;
+
+    // The block the chain needs next is requested from a second peer once it has been outstanding for this many times
+    // the usual response time of the peer that has it, but never sooner than MIN_HEAD_OF_LINE_WAIT_MSEC.
+    private static final int HEAD_OF_LINE_LATENCY_FACTOR = 3;
+    private static final long MIN_HEAD_OF_LINE_WAIT_MSEC = 1000;
+    // Batches of headers smaller than this are verified on the calling thread.
+    private static final int PARALLEL_VERIFY_THRESHOLD = 100;
+
+    protected final ReentrantLock lock = Threading.lock("blockdownloader");
+
+    private final NetworkParameters params;
+    private final AbstractBlockChain chain;
+    private final List<Wallet> wallets;
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @GuardedBy("lock") private int maxBlocksInFlightPerPeer = DEFAULT_MAX_BLOCKS_IN_FLIGHT_PER_PEER;
+    @GuardedBy("lock") private int maxBlocksAhead = DEFAULT_MAX_BLOCKS_AHEAD;
+    @GuardedBy("lock") private long stallTimeoutMsec = DEFAULT_STALL_TIMEOUT_MSEC;
+    @GuardedBy("lock") private boolean useFilteredBlocks;
+    // Blocks before this time can't contain transactions for our wallets, so only their headers are downloaded.
+    @GuardedBy("lock") private long fastCatchupTimeSecs;
+
+    // The peer we download headers from. Block download events are reported through its listeners.
+    @GuardedBy("lock") @Nullable private Peer downloadPeer;
+    // The peer we sent our outstanding getheaders to, if any. Usually the download peer, but a peer that announces a
+    // new block is asked for its header directly.
+    @GuardedBy("lock") @Nullable private Peer headersRequestedFrom;
+    // Whether the last headers message was full, meaning that the peer has more for us.
+    @GuardedBy("lock") private boolean moreHeadersAvailable;
+    // The last header we queued, from which the next getheaders continues.
+    @GuardedBy("lock") @Nullable private Sha256Hash lastHeaderHash;
+
+    // Every peer that can serve us blocks, with the requests outstanding at it.
+    @GuardedBy("lock") private final Map<Peer, PeerState> peerStates = new LinkedHashMap<Peer, PeerState>();
+    // The blocks that we have headers for but that have not been added to the chain yet, keyed by their position in
+    // the download. The lowest position is always the block the chain needs next.
+    @GuardedBy("lock") private final TreeMap<Long, Sha256Hash> queued = new TreeMap<Long, Sha256Hash>();
+    @GuardedBy("lock") private final Map<Sha256Hash, Long> positions = new HashMap<Sha256Hash, Long>();
+    @GuardedBy("lock") private long nextPosition;
+    // Positions of the queued blocks that are neither requested from any peer nor received yet.
+    @GuardedBy("lock") private final TreeSet<Long> unrequested = new TreeSet<Long>();
+    // The reorder buffer: blocks that have arrived but can't be added to the chain until the ones before them have.
+    @GuardedBy("lock") private final Map<Long, ReceivedBlock> received = new HashMap<Long, ReceivedBlock>();
+    // Set whilst we wait for the PeerGroup to send a new Bloom filter because the current one ran out of keys.
+    @GuardedBy("lock") private boolean awaitingFreshFilter;
+    // Set whilst a thread is adding blocks to the chain. Only one thread does so at a time, so they go in in order.
+    @GuardedBy("lock") private boolean delivering;
+    // Set whilst headers before the fast catchup time are being added to the chain, which the queued blocks follow.
+    @GuardedBy("lock") private boolean addingHeaders;
+
+    private static class PeerState {
+        // Hashes of the blocks requested from the peer, mapped to the time the request was sent, oldest first.
+        final LinkedHashMap<Sha256Hash, Long> inFlight = new LinkedHashMap<Sha256Hash, Long>();
+        // Moving average of the time the peer takes to answer a block request, or zero if it hasn't answered any yet.
+        long averageLatencyMsec;
+        // Set whilst the peer may still be answering requests that were made before a new Bloom filter was sent to
+        // it. Such answers are filtered with the old filter, so they're thrown away.
+        boolean awaitingFilterBarrier;
+    }
+
+    private static class ReceivedBlock {
+        final Block block;
+        @Nullable final FilteredBlock filteredBlock;
+
+        ReceivedBlock(Block block, @Nullable FilteredBlock filteredBlock) {
+            this.block = block;
+            this.filteredBlock = filteredBlock;
+        }
+    }
+
+    public ParallelBlockDownloader(NetworkParameters params, AbstractBlockChain chain, List<Wallet> wallets) {
+        this.params = params;
+        this.chain = chain;
+        this.wallets = wallets;
+    }
+
+    /** Sets how many block requests may be outstanding at each peer. Defaults to 16. */
+    public void setMaxBlocksInFlightPerPeer(int maxBlocksInFlightPerPeer) {
+        checkArgument(maxBlocksInFlightPerPeer > 0);
+        lock.lock();
+        try {
+            this.maxBlocksInFlightPerPeer = maxBlocksInFlightPerPeer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how many blocks beyond the one the chain needs next may be requested. This bounds the number of blocks
+     * held in memory waiting for an earlier block to arrive. Defaults to 1024.
+     */
+    public void setMaxBlocksAhead(int maxBlocksAhead) {
+        checkArgument(maxBlocksAhead > 0);
+        lock.lock();
+        try {
+            this.maxBlocksAhead = maxBlocksAhead;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sets how long a peer may take to answer a block request before it is given to another peer. */
+    public void setStallTimeoutMsec(long stallTimeoutMsec) {
+        checkArgument(stallTimeoutMsec > 0);
+        lock.lock();
+        try {
+            this.stallTimeoutMsec = stallTimeoutMsec;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns how many blocks we have headers for that have not been added to the chain yet. */
+    public int getQueuedBlockCount() {
+        lock.lock();
+        try {
+            return queued.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns how many block requests are outstanding at the given peer. */
+    public int getBlocksInFlight(Peer peer) {
+        lock.lock();
+        try {
+            PeerState state = peerStates.get(peer);
+            return state == null ? 0 : state.inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Whether to request filtered blocks rather than full blocks. Set by the PeerGroup when a filter is in use. */
+    void setUseFilteredBlocks(boolean useFilteredBlocks) {
+        lock.lock();
+        try {
+            this.useFilteredBlocks = useFilteredBlocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the time before which only block headers are downloaded, usually the creation time of the oldest key in
+     * the wallets. Set by the PeerGroup.
+     */
+    void setFastCatchupTimeSecs(long fastCatchupTimeSecs) {
+        lock.lock();
+        try {
+            this.fastCatchupTimeSecs = fastCatchupTimeSecs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Makes the given peer available for block requests. */
+    void addPeer(Peer peer) {
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            if (!peerStates.containsKey(peer))
+                peerStates.put(peer, new PeerState());
+            messages = scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    /** Stops using the given peer, typically because it disconnected. Its outstanding requests go to other peers. */
+    void removePeer(Peer peer) {
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            PeerState state = peerStates.remove(peer);
+            if (state != null) {
+                for (Sha256Hash hash : state.inFlight.keySet())
+                    requeueLocked(hash);
+            }
+            if (peer == downloadPeer)
+                downloadPeer = null;
+            if (peer == headersRequestedFrom)
+                headersRequestedFrom = null;
+            messages = scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    /**
+     * Starts or resumes the download, with the given peer as the source of headers. Called by
+     * {@link Peer#startBlockChainDownload()}.
+     */
+    void start(Peer peer) {
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            log.info("{}: Starting parallel block download from {} peers", peer, peerStates.size());
+            downloadPeer = peer;
+            if (!peerStates.containsKey(peer))
+                peerStates.put(peer, new PeerState());
+            messages = scheduleLocked();
+            requestHeadersLocked(peer, lastHeaderHash, messages);
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    /** Called when a peer announces new blocks to us, so we fetch their headers. */
+    void onBlocksAnnounced(Peer peer) {
+        Map<Peer, List<Message>> messages = new HashMap<Peer, List<Message>>();
+        lock.lock();
+        try {
+            if (downloadPeer != null && peerStates.containsKey(peer))
+                requestHeadersLocked(peer, lastHeaderHash, messages);
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    /**
+     * <p>Called when headers arrive. If the batch is full, the next one is requested straight away so that it is on
+     * its way whilst this one is checked. The headers are checked to connect to each other and to have valid proof
+     * of work, which is verified on several threads for large batches.</p>
+     *
+     * <p>Whilst the download is before the fast catchup time, headers are added straight to the chain, which also
+     * checks the difficulty transitions. From the first header after that time on, the blocks are queued for
+     * download instead.</p>
+     *
+     * @throws ProtocolException if the headers don't connect or fail verification, so the peer is disconnected.
+     */
+    void onHeaders(Peer peer, HeadersMessage m) throws ProtocolException {
+        List<Block> headers = m.getBlockHeaders();
+        boolean full = headers.size() >= HeadersMessage.MAX_HEADERS;
+        Map<Peer, List<Message>> messages = new HashMap<Peer, List<Message>>();
+        lock.lock();
+        try {
+            if (peer != headersRequestedFrom) {
+                log.debug("{}: Ignoring headers we did not ask for", peer);
+                return;
+            }
+            headersRequestedFrom = null;
+            // Only read ahead if there is room in the queue, the headers of blocks we haven't downloaded yet can wait.
+            if (full && queued.size() < maxBlocksAhead)
+                requestHeadersLocked(peer, headers.get(headers.size() - 1).getHash(), messages);
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+        // Checking the proof of work is the expensive part, so do it without holding the lock.
+        try {
+            verifyHeaders(headers);
+        } catch (VerificationException e) {
+            throw new ProtocolException("Block header verification failed", e);
+        }
+        List<Block> headersOnly = new ArrayList<Block>();
+        lock.lock();
+        try {
+            if (!peerStates.containsKey(peer))
+                return;  // Peer was removed in the meantime.
+            BlockStore store = chain.getBlockStore();
+            int added = 0;
+            for (Block header : headers) {
+                Sha256Hash hash = header.getHash();
+                if (positions.containsKey(hash) || store.get(hash) != null)
+                    continue;  // Already have it, or it is already on its way.
+                Sha256Hash prevHash = header.getPrevBlockHash();
+                if (!prevHash.equals(lastHeaderHash)) {
+                    // The headers fork off an earlier block, so what we queued after that block is on a side chain.
+                    Long prevPosition = positions.get(prevHash);
+                    if (prevPosition != null) {
+                        truncateQueueLocked(prevPosition);
+                    } else if (store.get(prevHash) != null && headersOnly.isEmpty()) {
+                        truncateQueueLocked(-1);
+                    } else {
+                        clearQueueLocked();
+                        throw new ProtocolException("Got unconnected header from peer: " + header.getHashAsString());
+                    }
+                    log.info("{}: Headers fork from {}, {} blocks still queued", peer, prevHash, queued.size());
+                }
+                lastHeaderHash = hash;
+                added++;
+                if (queued.isEmpty() && header.getTimeSeconds() < fastCatchupTimeSecs) {
+                    // No wallet has keys this old, so the header is all we need.
+                    headersOnly.add(header);
+                    continue;
+                }
+                long position = nextPosition++;
+                queued.put(position, hash);
+                positions.put(hash, position);
+                unrequested.add(position);
+            }
+            // If nothing was new the peer is just repeating itself, so don't ask again.
+            moreHeadersAvailable = full && added > 0;
+            log.info("{}: Got {} headers, {} new, {} blocks queued", peer, headers.size(), added, queued.size());
+            // The queued blocks build on the new headers, so they must not go into the chain before them.
+            addingHeaders = !headersOnly.isEmpty();
+        } catch (BlockStoreException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+        if (!headersOnly.isEmpty())
+            addHeadersToChain(headersOnly);
+        lock.lock();
+        try {
+            messages = scheduleLocked();
+            maybeRequestMoreHeadersLocked(messages);
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+        deliver();
+    }
+
+    private void addHeadersToChain(List<Block> headers) throws ProtocolException {
+        Peer eventPeer;
+        lock.lock();
+        try {
+            eventPeer = downloadPeer;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Block header : headers) {
+                if (!chain.add(header))
+                    throw new ProtocolException("Got unconnected header from peer: " + header.getHashAsString());
+                if (eventPeer != null)
+                    eventPeer.invokeOnBlocksDownloaded(header, null);
+            }
+        } catch (VerificationException e) {
+            fail();
+            if (e instanceof ProtocolException)
+                throw (ProtocolException) e;
+            throw new ProtocolException("Block header verification failed", e);
+        } catch (PrunedException e) {
+            // Unreachable when in SPV mode.
+            throw new RuntimeException(e);
+        } finally {
+            lock.lock();
+            addingHeaders = false;
+            lock.unlock();
+        }
+    }
+
+    // Forgets everything after the chain head, so the download starts again from there with the next peer.
+    private void fail() {
+        lock.lock();
+        try {
+            clearQueueLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Checks the proof of work of the headers, splitting large batches across {@link Threading#THREAD_POOL}. */
+    private void verifyHeaders(List<Block> headers) throws VerificationException {
+        if (headers.size() < PARALLEL_VERIFY_THRESHOLD || parallelism == 1) {
+            for (Block header : headers)
+                header.verifyHeader();
+            return;
+        }
+        List<ListenableFuture<Void>> futures = Lists.newArrayList();
+        for (final List<Block> chunk : Lists.partition(headers, (headers.size() + parallelism - 1) / parallelism)) {
+            futures.add(Threading.THREAD_POOL.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws VerificationException {
+                    for (Block header : chunk)
+                        header.verifyHeader();
+                    return null;
+                }
+            }));
+        }
+        try {
+            Futures.allAsList(futures).get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), VerificationException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Called when a block or a completed filtered block arrives.
+     *
+     * @return true if the block belongs to this download, in which case the caller must not process it further.
+     */
+    boolean onBlock(Peer peer, Block block, @Nullable FilteredBlock filteredBlock) {
+        Sha256Hash hash = block.getHash();
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            PeerState state = peerStates.get(peer);
+            Long requestTime = state != null ? state.inFlight.remove(hash) : null;
+            Long position = positions.get(hash);
+            if (requestTime == null && position == null)
+                return false;  // Not part of the download, eg a newly solved block or one we got from elsewhere.
+            if (state != null && requestTime != null) {
+                long latency = Math.max(0, Utils.currentTimeMillis() - requestTime);
+                state.averageLatencyMsec = state.averageLatencyMsec == 0 ? latency :
+                        (state.averageLatencyMsec * 7 + latency) / 8;
+            }
+            if (state != null && state.awaitingFilterBarrier) {
+                log.debug("{}: Discarding block {} filtered with a stale filter", peer, hash);
+                return true;
+            }
+            if (position != null && !received.containsKey(position)) {
+                received.put(position, new ReceivedBlock(block, filteredBlock));
+                // It may be a late answer to a request that we already gave to another peer.
+                unrequested.remove(position);
+            }
+            messages = scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+        deliver();
+        return true;
+    }
+
+    /** Called when a peer tells us it doesn't have some of the data we asked for. */
+    void onNotFound(Peer peer, List<InventoryItem> items) {
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            PeerState state = peerStates.get(peer);
+            if (state == null)
+                return;
+            for (InventoryItem item : items) {
+                if (state.inFlight.remove(item.hash) != null) {
+                    log.info("{}: Peer does not have block {}", peer, item.hash);
+                    requeueLocked(item.hash);
+                }
+            }
+            messages = scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    /**
+     * Called when a new Bloom filter has been sent to all peers. If the download was paused because the previous
+     * filter ran out of keys, it resumes with each peer once that peer has answered a ping, which tells us that any
+     * blocks filtered with the old filter have been received and discarded.
+     */
+    void onFilterUpdated() {
+        List<Peer> barrierPeers = new ArrayList<Peer>();
+        lock.lock();
+        try {
+            awaitingFreshFilter = false;
+            for (Map.Entry<Peer, PeerState> entry : peerStates.entrySet()) {
+                if (entry.getValue().awaitingFilterBarrier)
+                    barrierPeers.add(entry.getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (final Peer peer : barrierPeers) {
+            try {
+                peer.ping().addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        passFilterBarrier(peer);
+                    }
+                }, Threading.SAME_THREAD);
+            } catch (ProtocolException e) {
+                // Can't happen for peers that serve filtered blocks as they're new enough to support pings.
+                passFilterBarrier(peer);
+            }
+        }
+    }
+
+    private void passFilterBarrier(Peer peer) {
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            PeerState state = peerStates.get(peer);
+            if (state != null)
+                state.awaitingFilterBarrier = false;
+            messages = scheduleLocked();
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    /**
+     * Takes back block requests that have been outstanding for longer than the stall timeout and gives them to other
+     * peers, and asks a second peer for the block the chain needs next if its peer is being slow. Run periodically
+     * by the PeerGroup.
+     */
+    void checkForStalls() {
+        Map<Peer, List<Message>> messages;
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            for (Map.Entry<Peer, PeerState> entry : peerStates.entrySet()) {
+                PeerState state = entry.getValue();
+                Iterator<Map.Entry<Sha256Hash, Long>> it = state.inFlight.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Sha256Hash, Long> request = it.next();
+                    if (now - request.getValue() < stallTimeoutMsec)
+                        break;  // Requests are in the order they were made, so the rest are younger.
+                    log.info("{}: Block {} timed out, asking another peer", entry.getKey(), request.getKey());
+                    it.remove();
+                    // Count it as a very slow answer, so the peer goes to the back of the queue for new requests.
+                    state.averageLatencyMsec = Math.max(state.averageLatencyMsec, stallTimeoutMsec);
+                    requeueLocked(request.getKey());
+                }
+            }
+            messages = scheduleLocked();
+            maybeDuplicateHeadOfLineLocked(now, messages);
+        } finally {
+            lock.unlock();
+        }
+        send(messages);
+    }
+
+    @GuardedBy("lock")
+    private void maybeDuplicateHeadOfLineLocked(long now, Map<Peer, List<Message>> messages) {
+        if (queued.isEmpty() || awaitingFreshFilter)
+            return;
+        long head = queued.firstKey();
+        if (received.containsKey(head) || unrequested.contains(head))
+            return;
+        Sha256Hash hash = queued.get(head);
+        PeerState holder = null;
+        Long requestTime = null;
+        for (PeerState state : peerStates.values()) {
+            Long time = state.inFlight.get(hash);
+            if (time != null) {
+                if (holder != null)
+                    return;  // Already requested from two peers.
+                holder = state;
+                requestTime = time;
+            }
+        }
+        if (holder == null)
+            return;
+        long wait = Math.max(MIN_HEAD_OF_LINE_WAIT_MSEC, holder.averageLatencyMsec * HEAD_OF_LINE_LATENCY_FACTOR);
+        if (now - requestTime < wait)
+            return;
+        for (Map.Entry<Peer, PeerState> entry : peersByLatencyLocked()) {
+            PeerState state = entry.getValue();
+            Peer peer = entry.getKey();
+            if (state == holder || state.inFlight.size() >= maxBlocksInFlightPerPeer || !canServeLocked(peer, head))
+                continue;
+            log.info("{}: Block {} is holding up the download, asking this peer too", peer, hash);
+            state.inFlight.put(hash, now);
+            GetDataMessage getdata = new GetDataMessage(params);
+            addBlockRequestLocked(getdata, hash);
+            addRequestMessagesLocked(messages, peer, getdata);
+            return;
+        }
+    }
+
+    /**
+     * Adds as many of the received blocks to the chain as possible, in order. Only one thread does this at a time;
+     * if another thread is already doing it, that thread will pick up any blocks we received.
+     */
+    private void deliver() {
+        lock.lock();
+        try {
+            if (delivering)
+                return;
+            delivering = true;
+        } finally {
+            lock.unlock();
+        }
+        boolean done = false;
+        try {
+            while (true) {
+                long position;
+                ReceivedBlock next;
+                Peer eventPeer;
+                lock.lock();
+                try {
+                    next = queued.isEmpty() || awaitingFreshFilter || addingHeaders ? null :
+                            received.get(queued.firstKey());
+                    if (next == null) {
+                        // Decide to stop whilst holding the lock, so no block can arrive unnoticed.
+                        delivering = false;
+                        done = true;
+                        return;
+                    }
+                    position = queued.firstKey();
+                    eventPeer = downloadPeer;
+                } finally {
+                    lock.unlock();
+                }
+                if (next.filteredBlock != null && checkForFilterExhaustion(next.filteredBlock)) {
+                    // The block may be missing transactions that match keys the filter didn't have yet. Everything
+                    // after it is suspect too, so throw away what we have and ask for it again with the new filter.
+                    log.info("Bloom filter exhausted whilst processing block {}, discarding", next.block.getHash());
+                    lock.lock();
+                    try {
+                        awaitingFreshFilter = true;
+                        for (PeerState state : peerStates.values()) {
+                            state.inFlight.clear();
+                            state.awaitingFilterBarrier = true;
+                        }
+                        received.clear();
+                        unrequested.addAll(queued.keySet());
+                    } finally {
+                        lock.unlock();
+                    }
+                    continue;  // Exits via the check for awaitingFreshFilter above.
+                }
+                boolean added;
+                try {
+                    added = next.filteredBlock != null ? chain.add(next.filteredBlock) : chain.add(next.block);
+                } catch (VerificationException e) {
+                    log.warn("Block verification failed, restarting download from the chain head", e);
+                    added = false;
+                } catch (PrunedException e) {
+                    // Unreachable when in SPV mode.
+                    throw new RuntimeException(e);
+                }
+                Map<Peer, List<Message>> messages = new HashMap<Peer, List<Message>>();
+                lock.lock();
+                try {
+                    if (added) {
+                        Sha256Hash hash = queued.remove(position);
+                        positions.remove(hash);
+                        received.remove(position);
+                        messages = scheduleLocked();
+                        maybeRequestMoreHeadersLocked(messages);
+                    } else {
+                        // Either it didn't verify or it doesn't connect, eg because the chain was reorganized under
+                        // us. Start again from whatever the chain head is now.
+                        log.warn("Block {} was not added to the chain", next.block.getHash());
+                        clearQueueLocked();
+                        if (downloadPeer != null) {
+                            headersRequestedFrom = null;
+                            requestHeadersLocked(downloadPeer, null, messages);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                send(messages);
+                if (added && eventPeer != null)
+                    eventPeer.invokeOnBlocksDownloaded(next.block, next.filteredBlock);
+            }
+        } finally {
+            if (!done) {
+                lock.lock();
+                delivering = false;
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean checkForFilterExhaustion(FilteredBlock m) {
+        boolean exhausted = false;
+        for (Wallet wallet : wallets) {
+            exhausted |= wallet.checkForFilterExhaustion(m);
+        }
+        return exhausted;
+    }
+
+    /** Hands out unrequested blocks to peers with room in their window, fastest peers first. */
+    @GuardedBy("lock")
+    private Map<Peer, List<Message>> scheduleLocked() {
+        Map<Peer, List<Message>> messages = new HashMap<Peer, List<Message>>();
+        if (awaitingFreshFilter || unrequested.isEmpty())
+            return messages;
+        long limit = queued.firstKey() + maxBlocksAhead;
+        long now = Utils.currentTimeMillis();
+        for (Map.Entry<Peer, PeerState> entry : peersByLatencyLocked()) {
+            Peer peer = entry.getKey();
+            PeerState state = entry.getValue();
+            if (state.awaitingFilterBarrier)
+                continue;
+            GetDataMessage getdata = null;
+            while (state.inFlight.size() < maxBlocksInFlightPerPeer && !unrequested.isEmpty()) {
+                long position = unrequested.first();
+                if (position >= limit || !canServeLocked(peer, position))
+                    break;
+                unrequested.pollFirst();
+                Sha256Hash hash = queued.get(position);
+                if (getdata == null)
+                    getdata = new GetDataMessage(params);
+                addBlockRequestLocked(getdata, hash);
+                state.inFlight.put(hash, now);
+            }
+            if (getdata != null)
+                addRequestMessagesLocked(messages, peer, getdata);
+            if (unrequested.isEmpty())
+                break;
+        }
+        return messages;
+    }
+
+    @GuardedBy("lock")
+    private List<Map.Entry<Peer, PeerState>> peersByLatencyLocked() {
+        List<Map.Entry<Peer, PeerState>> entries = new ArrayList<Map.Entry<Peer, PeerState>>(peerStates.entrySet());
+        // Stable, so peers that haven't answered anything yet keep the order they were added in.
+        Collections.sort(entries, new Comparator<Map.Entry<Peer, PeerState>>() {
+            @Override
+            public int compare(Map.Entry<Peer, PeerState> a, Map.Entry<Peer, PeerState> b) {
+                long latencyA = a.getValue().averageLatencyMsec, latencyB = b.getValue().averageLatencyMsec;
+                return latencyA < latencyB ? -1 : (latencyA == latencyB ? 0 : 1);
+            }
+        });
+        return entries;
+    }
+
+    /** Whether the peer claims to have the block at the given position, and can send it the way we want it. */
+    @GuardedBy("lock")
+    private boolean canServeLocked(Peer peer, long position) {
+        if (useFilteredBlocks && !peer.getPeerVersionMessage().isBloomFilteringSupported())
+            return false;
+        long height = chain.getBestChainHeight() + 1 + (position - queued.firstKey());
+        return peer.getBestHeight() >= height;
+    }
+
+    @GuardedBy("lock")
+    private void addBlockRequestLocked(GetDataMessage getdata, Sha256Hash hash) {
+        if (useFilteredBlocks)
+            getdata.addFilteredBlock(hash);
+        else
+            getdata.addBlock(hash);
+    }
+
+    @GuardedBy("lock")
+    private void addRequestMessagesLocked(Map<Peer, List<Message>> messages, Peer peer, GetDataMessage getdata) {
+        addMessage(messages, peer, getdata);
+        // The transactions of a filtered block follow it, so send a ping to mark the end of the last block's.
+        if (useFilteredBlocks)
+            addMessage(messages, peer, new Ping((long) (Math.random() * Long.MAX_VALUE)));
+    }
+
+    private static void addMessage(Map<Peer, List<Message>> messages, Peer peer, Message message) {
+        List<Message> list = messages.get(peer);
+        if (list == null) {
+            list = new ArrayList<Message>(2);
+            messages.put(peer, list);
+        }
+        list.add(message);
+    }
+
+    /** Makes a block available for requesting again, unless it has arrived or is still requested from another peer. */
+    @GuardedBy("lock")
+    private void requeueLocked(Sha256Hash hash) {
+        Long position = positions.get(hash);
+        if (position == null || received.containsKey(position))
+            return;
+        for (PeerState state : peerStates.values()) {
+            if (state.inFlight.containsKey(hash))
+                return;
+        }
+        unrequested.add(position);
+    }
+
+    /** Forgets the queued blocks after the given position, or all of them if it is negative. */
+    @GuardedBy("lock")
+    private void truncateQueueLocked(long afterPosition) {
+        Iterator<Map.Entry<Long, Sha256Hash>> it = queued.tailMap(afterPosition, false).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Sha256Hash> entry = it.next();
+            positions.remove(entry.getValue());
+            unrequested.remove(entry.getKey());
+            received.remove(entry.getKey());
+            for (PeerState state : peerStates.values())
+                state.inFlight.remove(entry.getValue());
+            it.remove();
+        }
+        lastHeaderHash = queued.isEmpty() ? null : queued.lastEntry().getValue();
+    }
+
+    @GuardedBy("lock")
+    private void clearQueueLocked() {
+        truncateQueueLocked(-1);
+        moreHeadersAvailable = false;
+    }
+
+    /** Asks for the next batch of headers once the queue has room for it. */
+    @GuardedBy("lock")
+    private void maybeRequestMoreHeadersLocked(Map<Peer, List<Message>> messages) {
+        if (moreHeadersAvailable && downloadPeer != null && queued.size() < maxBlocksAhead)
+            requestHeadersLocked(downloadPeer, lastHeaderHash, messages);
+    }
+
+    @GuardedBy("lock")
+    private void requestHeadersLocked(Peer peer, @Nullable Sha256Hash from, Map<Peer, List<Message>> messages) {
+        if (headersRequestedFrom != null)
+            return;
+        // Continue from the given header if there is one, falling back to what the chain has in case that header is
+        // no longer on the peer's best chain.
+        List<Sha256Hash> locator = new ArrayList<Sha256Hash>(102);
+        if (from != null)
+            locator.add(from);
+        locator.addAll(buildChainLocator());
+        headersRequestedFrom = peer;
+        addMessage(messages, peer, new GetHeadersMessage(params, locator, Sha256Hash.ZERO_HASH));
+    }
+
+    /** Returns the top 100 blocks of the chain followed by the genesis block, like {@link Peer} does. */
+    private List<Sha256Hash> buildChainLocator() {
+        List<Sha256Hash> locator = new ArrayList<Sha256Hash>(101);
+        BlockStore store = chain.getBlockStore();
+        StoredBlock cursor = chain.getChainHead();
+        try {
+            for (int i = 100; cursor != null && i > 0; i--) {
+                locator.add(cursor.getHeader().getHash());
+                cursor = cursor.getPrev(store);
+            }
+        } catch (BlockStoreException e) {
+            log.error("Failed to walk the block chain whilst constructing a locator");
+            throw new RuntimeException(e);
+        }
+        if (cursor != null)
+            locator.add(params.getGenesisBlock().getHash());
+        return locator;
+    }
+
+    private static void send(Map<Peer, List<Message>> messages) {
+        for (Map.Entry<Peer, List<Message>> entry : messages.entrySet()) {
+            for (Message message : entry.getValue())
+                entry.getKey().sendMessage(message);
+        }
+    }
+}
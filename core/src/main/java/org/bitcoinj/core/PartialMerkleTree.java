@@ -85,18 +85,23 @@ public class PartialMerkleTree extends Message {
      * are calculated and a new PMT returned.
      */
     public static PartialMerkleTree buildFromLeaves(NetworkParameters params, byte[] includeBits, List<Sha256Hash> allLeafHashes) {
-        // Calculate height of the tree.
-        int height = 0;
-        while (getTreeWidth(allLeafHashes.size(), height) > 1)
-            height++;
+        return buildFromTree(params, includeBits, MerkleTree.build(allLeafHashes));
+    }
+
+    /**
+     * Calculates a PMT like {@link #buildFromLeaves(NetworkParameters, byte[], List)}, but takes the interior hashes
+     * from a complete merkle tree instead of calculating them again. This is much cheaper when many PMTs are built for
+     * the same block.
+     */
+    public static PartialMerkleTree buildFromTree(NetworkParameters params, byte[] includeBits, MerkleTree tree) {
         List<Boolean> bitList = new ArrayList<Boolean>();
         List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
-        traverseAndBuild(height, 0, allLeafHashes, includeBits, bitList, hashes);
+        traverseAndBuild(tree.getHeight(), 0, tree, includeBits, bitList, hashes);
         byte[] bits = new byte[(int)Math.ceil(bitList.size() / 8.0)];
         for (int i = 0; i < bitList.size(); i++)
             if (bitList.get(i))
                 Utils.setBitLE(bits, i);
-        return new PartialMerkleTree(params, bits, hashes, allLeafHashes.size());
+        return new PartialMerkleTree(params, bits, hashes, tree.getLeafCount());
     }
 
     @Override
@@ -127,11 +132,11 @@ public class PartialMerkleTree extends Message {
     }
 
     // Based on CPartialMerkleTree::TraverseAndBuild in Bitcoin Core.
-    private static void traverseAndBuild(int height, int pos, List<Sha256Hash> allLeafHashes, byte[] includeBits,
+    private static void traverseAndBuild(int height, int pos, MerkleTree tree, byte[] includeBits,
                                          List<Boolean> matchedChildBits, List<Sha256Hash> resultHashes) {
         boolean parentOfMatch = false;
         // Is this node a parent of at least one matched hash?
-        for (int p = pos << height; p < (pos+1) << height && p < allLeafHashes.size(); p++) {
+        for (int p = pos << height; p < (pos+1) << height && p < tree.getLeafCount(); p++) {
             if (Utils.checkBitLE(includeBits, p)) {
                 parentOfMatch = true;
                 break;
@@ -141,47 +146,32 @@ public class PartialMerkleTree extends Message {
         matchedChildBits.add(parentOfMatch);
         if (height == 0 || !parentOfMatch) {
             // If at height 0, or nothing interesting below, store hash and stop.
-            resultHashes.add(calcHash(height, pos, allLeafHashes));
+            resultHashes.add(tree.getNode(height, pos));
         } else {
             // Otherwise descend into the subtrees.
             int h = height - 1;
             int p = pos * 2;
-            traverseAndBuild(h, p, allLeafHashes, includeBits, matchedChildBits, resultHashes);
-            if (p + 1 < getTreeWidth(allLeafHashes.size(), h))
-                traverseAndBuild(h, p + 1, allLeafHashes, includeBits, matchedChildBits, resultHashes);
+            traverseAndBuild(h, p, tree, includeBits, matchedChildBits, resultHashes);
+            if (p + 1 < tree.getWidth(h))
+                traverseAndBuild(h, p + 1, tree, includeBits, matchedChildBits, resultHashes);
         }
     }
 
-    private static Sha256Hash calcHash(int height, int pos, List<Sha256Hash> hashes) {
-        if (height == 0) {
-            // Hash at height 0 is just the regular tx hash itself.
-            return hashes.get(pos);
-        }
-        int h = height - 1;
-        int p = pos * 2;
-        Sha256Hash left = calcHash(h, p, hashes);
-        // Calculate right hash if not beyond the end of the array - copy left hash otherwise.
-        Sha256Hash right;
-        if (p + 1 < getTreeWidth(hashes.size(), h)) {
-            right = calcHash(h, p + 1, hashes);
-        } else {
-            right = left;
-        }
-        return combineLeftRight(left.getBytes(), right.getBytes());
-    }
-
     // helper function to efficiently calculate the number of nodes at given height in the merkle tree
     private static int getTreeWidth(int transactionCount, int height) {
-        return (transactionCount + (1 << height) - 1) >> height;
+        return MerkleTree.getWidth(transactionCount, height);
     }
-    
+
     private static class ValuesUsed {
         public int bitsUsed = 0, hashesUsed = 0;
     }
     
     // recursive function that traverses tree nodes, consuming the bits and hashes produced by TraverseAndBuild.
-    // it returns the hash of the respective node.
-    private Sha256Hash recursiveExtractHashes(int height, int pos, ValuesUsed used, List<Sha256Hash> matchedHashes) throws VerificationException {
+    // it writes the hash of the respective node to the scratch buffer at the given offset, in the byte order it is
+    // hashed in. the children are written right after it, so that they can be hashed together where they are, and
+    // each of them uses the space after that for its own children.
+    private void recursiveExtractHashes(int height, int pos, ValuesUsed used, List<Sha256Hash> matchedHashes,
+                                        byte[] scratch, int offset) throws VerificationException {
         if (used.bitsUsed >= matchedChildBits.length*8) {
             // overflowed the bits array - failure
             throw new VerificationException("PartialMerkleTree overflowed its bits array");
@@ -196,26 +186,29 @@ public class PartialMerkleTree extends Message {
             Sha256Hash hash = hashes.get(used.hashesUsed++);
             if (height == 0 && parentOfMatch) // in case of height 0, we have a matched txid
                 matchedHashes.add(hash);
-            return hash;
+            System.arraycopy(hash.getBytes(), 0, scratch, offset, Sha256Hash.LENGTH);
+            reverseBytesInPlace(scratch, offset, Sha256Hash.LENGTH);
         } else {
             // otherwise, descend into the subtrees to extract matched txids and hashes
-            byte[] left = recursiveExtractHashes(height - 1, pos * 2, used, matchedHashes).getBytes(), right;
+            int left = offset + Sha256Hash.LENGTH, right = left + Sha256Hash.LENGTH;
+            recursiveExtractHashes(height - 1, pos * 2, used, matchedHashes, scratch, left);
             if (pos * 2 + 1 < getTreeWidth(transactionCount, height-1)) {
-                right = recursiveExtractHashes(height - 1, pos * 2 + 1, used, matchedHashes).getBytes();
-                if (Arrays.equals(right, left))
+                recursiveExtractHashes(height - 1, pos * 2 + 1, used, matchedHashes, scratch, right);
+                if (rangeEquals(scratch, left, right, Sha256Hash.LENGTH))
                     throw new VerificationException("Invalid merkle tree with duplicated left/right branches");
             } else {
-                right = left;
+                System.arraycopy(scratch, left, scratch, right, Sha256Hash.LENGTH);
             }
             // and combine them before returning
-            return combineLeftRight(left, right);
+            Sha256Hash.hashTwiceInto(scratch, left, 2 * Sha256Hash.LENGTH, scratch, offset);
         }
     }
 
-    private static Sha256Hash combineLeftRight(byte[] left, byte[] right) {
-        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(
-            reverseBytes(left), 0, 32,
-            reverseBytes(right), 0, 32));
+    private static boolean rangeEquals(byte[] bytes, int offset1, int offset2, int length) {
+        for (int i = 0; i < length; i++)
+            if (bytes[offset1 + i] != bytes[offset2 + i])
+                return false;
+        return true;
     }
 
     /**
@@ -248,9 +241,12 @@ public class PartialMerkleTree extends Message {
         int height = 0;
         while (getTreeWidth(transactionCount, height) > 1)
             height++;
-        // traverse the partial tree
+        // traverse the partial tree, with room for the two children of every node on the path down to a leaf
         ValuesUsed used = new ValuesUsed();
-        Sha256Hash merkleRoot = recursiveExtractHashes(height, 0, used, matchedHashesOut);
+        byte[] scratch = new byte[(2 * height + 1) * Sha256Hash.LENGTH];
+        recursiveExtractHashes(height, 0, used, matchedHashesOut, scratch, 0);
+        Utils.reverseBytesInPlace(scratch, 0, Sha256Hash.LENGTH);
+        Sha256Hash merkleRoot = Sha256Hash.wrap(Arrays.copyOf(scratch, Sha256Hash.LENGTH));
         // verify that all bits were consumed (except for the padding caused by serializing it as a byte sequence)
         if ((used.bitsUsed+7)/8 != matchedChildBits.length ||
                 // verify that all hashes were consumed
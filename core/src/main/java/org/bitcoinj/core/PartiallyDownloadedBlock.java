@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <p>Puts a block back together from a {@link CompactBlockMessage}: the prefilled transactions are placed first, the
+ * others are looked up by short ID among the transactions we already have, and the rest are asked for with a
+ * {@link GetBlockTransactionsMessage} and filled in from the answer.</p>
+ *
+ * <p>Short IDs are only 6 bytes so two transactions can share one. A transaction in the block that matches several
+ * known transactions is treated as missing, and a wrong match shows up as a bad merkle root in {@link #build()}, in
+ * which case the full block has to be downloaded instead. So does a block with two transactions sharing a short ID,
+ * see {@link #hasShortIdCollision()}.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple threads.</p>
+ */
+public class PartiallyDownloadedBlock {
+    private final CompactBlockMessage cmpct;
+    private final Transaction[] transactions;
+    // Positions of the transactions that weren't prefilled, by short ID.
+    private final HashMap<Long, Integer> positions;
+    // Positions that more than one known transaction matched.
+    private final boolean[] ambiguous;
+    private boolean shortIdCollision;
+
+    public PartiallyDownloadedBlock(CompactBlockMessage cmpct) {
+        this.cmpct = cmpct;
+        this.transactions = new Transaction[cmpct.getTransactionCount()];
+        this.ambiguous = new boolean[transactions.length];
+        int[] prefilledIndexes = cmpct.getPrefilledIndexes();
+        List<Transaction> prefilled = cmpct.getPrefilledTransactions();
+        for (int i = 0; i < prefilledIndexes.length; i++)
+            transactions[prefilledIndexes[i]] = prefilled.get(i);
+        long[] shortIds = cmpct.getShortIds();
+        positions = new HashMap<Long, Integer>(shortIds.length * 2);
+        int position = 0;
+        for (long shortId : shortIds) {
+            while (transactions[position] != null)
+                position++;
+            if (positions.put(shortId, position++) != null)
+                shortIdCollision = true;
+        }
+    }
+
+    /** Returns the hash of the block. */
+    public Sha256Hash getHash() {
+        return cmpct.getHash();
+    }
+
+    /**
+     * Returns true if two transactions of the block have the same short ID, so the block can't be put back together
+     * and has to be downloaded in full.
+     */
+    public boolean hasShortIdCollision() {
+        return shortIdCollision;
+    }
+
+    /** Places the transaction in the block if its short ID is in it. Returns true if it was. */
+    public boolean offer(Transaction tx) {
+        return offer(tx.getHash(), tx);
+    }
+
+    private boolean offer(Sha256Hash txId, @Nullable Transaction tx) {
+        Integer position = positions.get(cmpct.shortIdOf(txId));
+        if (position == null || ambiguous[position])
+            return false;
+        Transaction existing = transactions[position];
+        if (existing != null) {
+            if (!existing.getHash().equals(txId)) {
+                transactions[position] = null;
+                ambiguous[position] = true;
+            }
+            return false;
+        }
+        transactions[position] = tx;
+        return true;
+    }
+
+    /** Looks the missing transactions up in the given memory pool, parsing only the ones that are in the block. */
+    public void fillFrom(Mempool mempool) {
+        for (Sha256Hash txId : mempool.getTxIds()) {
+            Integer position = positions.get(cmpct.shortIdOf(txId));
+            if (position == null || ambiguous[position])
+                continue;
+            Transaction existing = transactions[position];
+            if (existing != null) {
+                offer(txId, null);
+                continue;
+            }
+            Mempool.Entry entry = mempool.get(txId);
+            if (entry != null)
+                offer(txId, entry.getTransaction());
+        }
+    }
+
+    /** Returns the positions of the transactions that are still missing, in ascending order. */
+    public int[] getMissingIndexes() {
+        int[] missing = new int[transactions.length];
+        int count = 0;
+        for (int i = 0; i < transactions.length; i++) {
+            if (transactions[i] == null)
+                missing[count++] = i;
+        }
+        return Arrays.copyOf(missing, count);
+    }
+
+    public boolean isComplete() {
+        for (Transaction tx : transactions) {
+            if (tx == null)
+                return false;
+        }
+        return true;
+    }
+
+    /** Fills in the missing transactions from the answer to a {@link GetBlockTransactionsMessage}. */
+    public void fill(BlockTransactionsMessage m) throws ProtocolException {
+        if (!m.getBlockHash().equals(getHash()))
+            throw new ProtocolException("blocktxn for " + m.getBlockHash() + " but expected " + getHash());
+        int[] missing = getMissingIndexes();
+        List<Transaction> txns = m.getTransactions();
+        if (txns.size() != missing.length)
+            throw new ProtocolException("Expected " + missing.length + " transactions but got " + txns.size());
+        for (int i = 0; i < missing.length; i++)
+            transactions[missing[i]] = txns.get(i);
+    }
+
+    /**
+     * Returns the block once all its transactions are known, or null if they don't match the merkle root in the
+     * header because a short ID matched the wrong transaction.
+     */
+    @Nullable
+    public Block build() {
+        if (!isComplete())
+            throw new IllegalStateException("Transactions missing: " + Arrays.toString(getMissingIndexes()));
+        Block header = cmpct.getHeader();
+        Block block = new Block(header.getParams(), header.getVersion(), header.getPrevBlockHash(),
+                header.getMerkleRoot(), header.getTimeSeconds(), header.getDifficultyTarget(), header.getNonce(),
+                Arrays.asList(transactions));
+        if (!block.calculateMerkleRoot().equals(header.getMerkleRoot()))
+            return null;
+        return block;
+    }
+}
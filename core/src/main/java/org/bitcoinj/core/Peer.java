@@ -23,6 +23,7 @@ import org.bitcoinj.net.StreamConnection;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.utils.ListenerRegistration;
+import org.bitcoinj.utils.Sha256HashSet;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
 
@@ -43,6 +44,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
@@ -123,7 +125,7 @@ public class Peer extends PeerSocketHandler {
     //
     // It is important to avoid a nasty edge case where we can end up with parallel chain downloads proceeding
     // simultaneously if we were to receive a newly solved block whilst parts of the chain are streaming to us.
-    private final HashSet<Sha256Hash> pendingBlockDownloads = new HashSet<Sha256Hash>();
+    private final Sha256HashSet pendingBlockDownloads = new Sha256HashSet();
     // Keep references to TransactionConfidence objects for transactions that were announced by a remote peer, but
     // which we haven't downloaded yet. These objects are de-duplicated by the TxConfidenceTable class.
     // Once the tx is downloaded (by some peer), the Transaction object that is created will have a reference to
@@ -133,6 +135,33 @@ public class Peer extends PeerSocketHandler {
     private final HashSet<TransactionConfidence> pendingTxDownloads = new HashSet<TransactionConfidence>();
     // The lowest version number we're willing to accept. Lower than this will result in an immediate disconnect.
     private volatile int vMinProtocolVersion;
+    // If set, the chain is being downloaded from several peers at once and this peer routes headers, blocks and block
+    // announcements to the downloader instead of handling them itself. Set by the PeerGroup.
+    @Nullable private volatile ParallelBlockDownloader vBlockDownloader;
+    // If set, transactions announced by several peers are only requested from one of them at a time, as decided by
+    // the coordinator. Set by the PeerGroup.
+    @Nullable private volatile InventoryCoordinator vInventoryCoordinator;
+    // If set, new blocks are downloaded as compact blocks when the peer can send them, and put back together from the
+    // transactions in this pool. Set by the PeerGroup.
+    @Nullable private volatile Mempool vMempool;
+    // If set, invalid data the peer sends us counts against its score. Set by the PeerGroup.
+    @Nullable private volatile PeerScores vPeerScores;
+    // Whether the peer told us with a sendcmpct message that it can send compact blocks.
+    private volatile boolean vCompactBlocksSupported;
+    // Compact blocks waiting for the transactions we asked for with getblocktxn, in the order they were asked for.
+    @GuardedBy("lock") private final LinkedHashMap<Sha256Hash, PendingCompactBlock> pendingCompactBlocks
+            = new LinkedHashMap<Sha256Hash, PendingCompactBlock>();
+    private static class PendingCompactBlock {
+        final PartiallyDownloadedBlock partial;
+        final long requestTime;
+
+        PendingCompactBlock(PartiallyDownloadedBlock partial, long requestTime) {
+            this.partial = partial;
+            this.requestTime = requestTime;
+        }
+    }
+    /** How long to wait for the transactions missing from a compact block before downloading the block in full. */
+    public static final long COMPACT_BLOCK_TIMEOUT_MSEC = 10000;
     // When an API user explicitly requests a block or transaction from a peer, the InventoryItem is put here
     // whilst waiting for the response. Is not used for downloads Peer generates itself.
     private static class GetDataRequest {
@@ -416,6 +445,14 @@ public class Peer extends PeerSocketHandler {
 
     @Override
     public void connectionClosed() {
+        // Let the next peer to connect have our announcement slot.
+        context.getConfidenceTable().peerDisconnected(getAddress());
+        lock.lock();
+        try {
+            pendingCompactBlocks.clear();
+        } finally {
+            lock.unlock();
+        }
         for (final ListenerRegistration<PeerDisconnectedEventListener> registration : disconnectedEventListeners) {
             registration.executor.execute(new Runnable() {
                 @Override
@@ -514,11 +551,126 @@ public class Peer extends PeerSocketHandler {
             log.error("{} {}: Received {}", this, getPeerVersionMessage().subVer, m);
         } else if (m instanceof CheckpointMessage) {
             processCheckpoint((CheckpointMessage)m);
+        } else if (m instanceof SendCompactBlocksMessage) {
+            processSendCompactBlocks((SendCompactBlocksMessage) m);
+        } else if (m instanceof CompactBlockMessage) {
+            processCompactBlock((CompactBlockMessage) m);
+        } else if (m instanceof BlockTransactionsMessage) {
+            processBlockTransactions((BlockTransactionsMessage) m);
         } else {
             log.warn("{}: Received unhandled message: {}", this, m);
         }
     }
 
+    @Override
+    protected void exceptionCaught(Exception e) {
+        PeerScores scores = vPeerScores;
+        if (scores != null && (e instanceof ProtocolException || e instanceof VerificationException))
+            scores.recordInvalid(getAddress());
+        super.exceptionCaught(e);
+    }
+
+    protected void processSendCompactBlocks(SendCompactBlocksMessage m) {
+        if (m.getVersion() == SendCompactBlocksMessage.VERSION)
+            vCompactBlocksSupported = true;
+    }
+
+    protected void processCompactBlock(CompactBlockMessage m) {
+        final Sha256Hash hash = m.getHash();
+        lock.lock();
+        try {
+            if (!pendingBlockDownloads.contains(hash)) {
+                log.debug("{}: Received compact block we did not ask for: {}", getAddress(), hash);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        PartiallyDownloadedBlock partial = new PartiallyDownloadedBlock(m);
+        Mempool mempool = vMempool;
+        if (mempool != null && !partial.hasShortIdCollision())
+            partial.fillFrom(mempool);
+        if (partial.hasShortIdCollision()) {
+            log.info("{}: Short ID collision in compact block {}, downloading it in full", getAddress(), hash);
+            requestFullBlock(hash);
+        } else if (partial.isComplete()) {
+            processCompactBlock(partial);
+        } else {
+            int[] missing = partial.getMissingIndexes();
+            log.debug("{}: Compact block {} is missing {} of {} transactions", getAddress(), hash, missing.length,
+                    m.getTransactionCount());
+            lock.lock();
+            try {
+                pendingCompactBlocks.put(hash, new PendingCompactBlock(partial, Utils.currentTimeMillis()));
+            } finally {
+                lock.unlock();
+            }
+            sendMessage(new GetBlockTransactionsMessage(params, hash, missing));
+        }
+    }
+
+    protected void processBlockTransactions(BlockTransactionsMessage m) throws ProtocolException {
+        PendingCompactBlock pending;
+        lock.lock();
+        try {
+            pending = pendingCompactBlocks.remove(m.getBlockHash());
+        } finally {
+            lock.unlock();
+        }
+        if (pending == null) {
+            log.debug("{}: Received transactions for a compact block we did not ask for: {}", getAddress(),
+                    m.getBlockHash());
+            return;
+        }
+        pending.partial.fill(m);
+        processCompactBlock(pending.partial);
+    }
+
+    /**
+     * Gives up on compact blocks whose missing transactions the peer hasn't sent within
+     * {@link #COMPACT_BLOCK_TIMEOUT_MSEC}, and downloads them in full instead. Run periodically by the PeerGroup.
+     */
+    void checkCompactBlockTimeouts() {
+        List<Sha256Hash> timedOut = new ArrayList<Sha256Hash>();
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            Iterator<Map.Entry<Sha256Hash, PendingCompactBlock>> it = pendingCompactBlocks.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Sha256Hash, PendingCompactBlock> entry = it.next();
+                if (now - entry.getValue().requestTime < COMPACT_BLOCK_TIMEOUT_MSEC)
+                    break;  // Requests are in the order they were made, so the rest are younger.
+                it.remove();
+                timedOut.add(entry.getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Sha256Hash hash : timedOut) {
+            log.info("{}: Timed out waiting for the transactions of compact block {}, downloading it in full",
+                    getAddress(), hash);
+            requestFullBlock(hash);
+        }
+    }
+
+    private void processCompactBlock(PartiallyDownloadedBlock partial) {
+        Block block = partial.build();
+        if (block == null) {
+            // A short ID matched the wrong transaction from the memory pool.
+            log.info("{}: Compact block {} has the wrong merkle root, downloading it in full", getAddress(),
+                    partial.getHash());
+            requestFullBlock(partial.getHash());
+            return;
+        }
+        processBlock(block);
+    }
+
+    private void requestFullBlock(Sha256Hash hash) {
+        GetDataMessage getdata = new GetDataMessage(params);
+        getdata.addBlock(hash);
+        sendMessage(getdata);
+    }
+
     protected void processCheckpoint(CheckpointMessage checkpoint) {
         if(checkpoint.checkSignature()) {
 
@@ -618,6 +770,9 @@ public class Peer extends PeerSocketHandler {
             log.warn("Connected to a peer speaking protocol version {} but need {}, closing",
                     vPeerVersionMessage.clientVersion, version);
             close();
+        } else if (vPeerVersionMessage.clientVersion >= SendCompactBlocksMessage.MIN_PROTOCOL_VERSION) {
+            // Let the peer know we can take compact blocks, but only when we ask for them.
+            sendMessage(new SendCompactBlocksMessage(params, false, SendCompactBlocksMessage.VERSION));
         }
     }
 
@@ -643,6 +798,12 @@ public class Peer extends PeerSocketHandler {
         // in the chain).
         //
         // We go through and cancel the pending getdata futures for the items we were told weren't found.
+        ParallelBlockDownloader blockDownloader = vBlockDownloader;
+        if (blockDownloader != null)
+            blockDownloader.onNotFound(this, m.getItems());
+        InventoryCoordinator coordinator = vInventoryCoordinator;
+        if (coordinator != null)
+            coordinator.onNotFound(this, m.getItems());
         for (GetDataRequest req : getDataFutures) {
             for (InventoryItem item : m.getItems()) {
                 if (item.hash.equals(req.hash)) {
@@ -677,6 +838,11 @@ public class Peer extends PeerSocketHandler {
         // likely when we've requested them as part of chain download using fast catchup. We need to add each block to
         // the chain if it pre-dates the fast catchup time. If we go past it, we can stop processing the headers and
         // request the full blocks from that point on instead.
+        ParallelBlockDownloader blockDownloader = vBlockDownloader;
+        if (blockDownloader != null) {
+            blockDownloader.onHeaders(this, m);
+            return;
+        }
         boolean downloadBlockBodies;
         long fastCatchupTimeSecs;
 
@@ -786,6 +952,9 @@ public class Peer extends PeerSocketHandler {
             TransactionConfidence confidence = tx.getConfidence();
             confidence.setSource(TransactionConfidence.Source.NETWORK);
             pendingTxDownloads.remove(confidence);
+            InventoryCoordinator coordinator = vInventoryCoordinator;
+            if (coordinator != null)
+                coordinator.onReceived(tx.getHash());
             if (maybeHandleRequestedData(tx)) {
                 return;
             }
@@ -993,12 +1162,19 @@ public class Peer extends PeerSocketHandler {
             log.debug("Received block but was not configured with an AbstractBlockChain");
             return;
         }
+        ParallelBlockDownloader blockDownloader = vBlockDownloader;
+        if (blockDownloader != null) {
+            if (!blockDownloader.onBlock(this, m, null))
+                log.debug("{}: Received block we did not ask for: {}", getAddress(), m.getHashAsString());
+            return;
+        }
         // Did we lose download peer status after requesting block data?
         if (!vDownloadData) {
             log.debug("{}: Received block we did not ask for: {}", getAddress(), m.getHashAsString());
             return;
         }
         pendingBlockDownloads.remove(m.getHash());
+        maybeSendDeferredGetBlocks();
         try {
             // Otherwise it's a block sent to us because the peer thought we needed it, so add it to the block chain.
             if (blockChain.add(m)) {
@@ -1025,7 +1201,9 @@ public class Peer extends PeerSocketHandler {
                 // off a request for lots more headers in parallel.
                 lock.lock();
                 try {
-                    if (downloadBlockBodies) {
+                    if (isPipeliningLocked()) {
+                        log.debug("{}: Orphan block whilst pipelined batches are pending, not restarting download", this);
+                    } else if (downloadBlockBodies) {
                         final Block orphanRoot = checkNotNull(blockChain.getOrphanRoot(m.getHash()));
                         blockChainDownloadLocked(orphanRoot.getHash());
                     } else {
@@ -1048,6 +1226,12 @@ public class Peer extends PeerSocketHandler {
     protected void endFilteredBlock(FilteredBlock m) {
         if (log.isDebugEnabled())
             log.debug("{}: Received broadcast filtered block {}", getAddress(), m.getHash().toString());
+        ParallelBlockDownloader blockDownloader = vBlockDownloader;
+        if (blockDownloader != null) {
+            if (!blockDownloader.onBlock(this, m.getBlockHeader(), m))
+                log.debug("{}: Received block we did not ask for: {}", getAddress(), m.getHash().toString());
+            return;
+        }
         if (!vDownloadData) {
             log.debug("{}: Received block we did not ask for: {}", getAddress(), m.getHash().toString());
             return;
@@ -1060,6 +1244,7 @@ public class Peer extends PeerSocketHandler {
         // actually match our filter or which simply do not send us all the transactions we need: it can be fixed
         // by cross-checking peers against each other.
         pendingBlockDownloads.remove(m.getBlockHeader().getHash());
+        maybeSendDeferredGetBlocks();
         try {
             // It's a block sent to us because the peer thought we needed it, so maybe add it to the block chain.
             // The FilteredBlock m here contains a list of hashes, and may contain Transaction objects for a subset
@@ -1126,8 +1311,10 @@ public class Peer extends PeerSocketHandler {
                 // no matter how many blocks are solved, and therefore that the (2) duplicate filtering can work.
                 lock.lock();
                 try {
-                    final Block orphanRoot = checkNotNull(blockChain.getOrphanRoot(m.getHash()));
-                    blockChainDownloadLocked(orphanRoot.getHash());
+                    if (!isPipeliningLocked()) {
+                        final Block orphanRoot = checkNotNull(blockChain.getOrphanRoot(m.getHash()));
+                        blockChainDownloadLocked(orphanRoot.getHash());
+                    }
                 } finally {
                     lock.unlock();
                 }
@@ -1165,11 +1352,11 @@ public class Peer extends PeerSocketHandler {
         return found;
     }
 
-    private void invokeOnBlocksDownloaded(final Block block, @Nullable final FilteredBlock fb) {
+    void invokeOnBlocksDownloaded(final Block block, @Nullable final FilteredBlock fb) {
         // It is possible for the peer block height difference to be negative when blocks have been solved and broadcast
         // since the time we first connected to the peer. However, it's weird and unexpected to receive a callback
         // with negative "blocks left" in this case, so we clamp to zero so the API user doesn't have to think about it.
-        final int blocksLeft = Math.max(0, (int) vPeerVersionMessage.bestHeight - checkNotNull(blockChain).getBestChainHeight());
+        final int blocksLeft = Math.max(0, (int) getPeerVersionMessage().bestHeight - checkNotNull(blockChain).getBestChainHeight());
         for (final ListenerRegistration<BlocksDownloadedEventListener> registration : blocksDownloadedEventListeners) {
             registration.executor.execute(new Runnable() {
                 @Override
@@ -1201,6 +1388,9 @@ public class Peer extends PeerSocketHandler {
         }
 
         final boolean downloadData = this.vDownloadData;
+        final ParallelBlockDownloader blockDownloader = vBlockDownloader;
+        // A single block is a newly solved one, whose transactions are most likely in our memory pool already.
+        final boolean useCompactBlocks = blocks.size() == 1 && vCompactBlocksSupported && vMempool != null;
 
         if (transactions.size() == 0 && blocks.size() == 1) {
             // Single block announcement. If we're downloading the chain this is just a tickle to make us continue
@@ -1218,6 +1408,7 @@ public class Peer extends PeerSocketHandler {
 
         GetDataMessage getdata = new GetDataMessage(params);
 
+        final InventoryCoordinator coordinator = vInventoryCoordinator;
         Iterator<InventoryItem> it = transactions.iterator();
         while (it.hasNext()) {
             InventoryItem item = it.next();
@@ -1226,16 +1417,17 @@ public class Peer extends PeerSocketHandler {
             // potentially download transactions faster by always asking every peer for a tx when advertised, as remote
             // peers run at different speeds. However to conserve bandwidth on mobile devices we try to only download a
             // transaction once. This means we can miss broadcasts if the peer disconnects between sending us an inv and
-            // sending us the transaction: currently we'll never try to re-fetch after a timeout.
+            // sending us the transaction, unless the PeerGroup coordinates downloads: then the coordinator decides
+            // which peer is asked, and asks the next one that announced it after a timeout.
             //
             // The line below can trigger confidence listeners.
             TransactionConfidence conf = context.getConfidenceTable().seen(item.hash, this.getAddress());
-            if (conf.numBroadcastPeers() > 1) {
-                // Some other peer already announced this so don't download.
-                it.remove();
-            } else if (conf.getSource().equals(TransactionConfidence.Source.SELF)) {
+            if (conf.getSource().equals(TransactionConfidence.Source.SELF)) {
                 // We created this transaction ourselves, so don't download.
                 it.remove();
+            } else if (coordinator != null ? !coordinator.onAnnounced(this, item.hash) : conf.numBroadcastPeers() > 1) {
+                // Some other peer already announced this so don't download.
+                it.remove();
             } else {
                 log.debug("{}: getdata on tx {}", getAddress(), item.hash);
                 getdata.addItem(item);
@@ -1250,14 +1442,16 @@ public class Peer extends PeerSocketHandler {
 
         lock.lock();
         try {
-            if (blocks.size() > 0 && downloadData && blockChain != null) {
+            if (blocks.size() > 0 && downloadData && blockChain != null && blockDownloader == null) {
                 // Ideally, we'd only ask for the data here if we actually needed it. However that can imply a lot of
                 // disk IO to figure out what we've got. Normally peers will not send us inv for things we already have
                 // so we just re-request it here, and if we get duplicates the block chain / wallet will filter them out.
                 for (InventoryItem item : blocks) {
                     if (blockChain.isOrphan(item.hash) && downloadBlockBodies) {
                         // If an orphan was re-advertised, ask for more blocks unless we are not currently downloading
-                        // full block data because we have a getheaders outstanding.
+                        // full block data because we have a getheaders outstanding, or pipelined batches will get them.
+                        if (isPipeliningLocked())
+                            continue;
                         final Block orphanRoot = checkNotNull(blockChain.getOrphanRoot(item.hash));
                         blockChainDownloadLocked(orphanRoot.getHash());
                     } else {
@@ -1277,6 +1471,8 @@ public class Peer extends PeerSocketHandler {
                             if (vPeerVersionMessage.isBloomFilteringSupported() && useFilteredBlocks) {
                                 getdata.addFilteredBlock(item.hash);
                                 pingAfterGetData = true;
+                            } else if (useCompactBlocks) {
+                                getdata.addCompactBlock(item.hash);
                             } else {
                                 getdata.addItem(item);
                             }
@@ -1284,6 +1480,10 @@ public class Peer extends PeerSocketHandler {
                         }
                     }
                 }
+                // A full batch means there are more blocks after it, so ask for them now rather than after the
+                // tickle at the end of this batch: the next inv then arrives whilst these blocks are still streaming.
+                if (blocks.size() >= GETBLOCKS_BATCH_SIZE && downloadBlockBodies && maxGetBlocksBatches > 1)
+                    pipelineGetBlocksLocked(blocks.get(blocks.size() - 1).hash);
                 // If we're downloading the chain, doing a getdata on the last block we were told about will cause the
                 // peer to advertize the head block to us in a single-item inv. When we download THAT, it will be an
                 // orphan block, meaning we'll re-enter blockChainDownloadLocked() to trigger another getblocks between the
@@ -1299,6 +1499,10 @@ public class Peer extends PeerSocketHandler {
             sendMessage(getdata);
         }
 
+        // The downloader fetches the headers of announced blocks, then the blocks from whichever peers are fastest.
+        if (blocks.size() > 0 && blockDownloader != null)
+            blockDownloader.onBlocksAnnounced(this);
+
         if (pingAfterGetData)
             sendMessage(new Ping((long) (Math.random() * Long.MAX_VALUE)));
     }
@@ -1405,6 +1609,16 @@ public class Peer extends PeerSocketHandler {
     @GuardedBy("lock")
     private Sha256Hash lastGetBlocksBegin, lastGetBlocksEnd;
 
+    /** The default number of getblocks batches that may be outstanding at once, see {@link #setMaxGetBlocksBatches(int)}. */
+    public static final int DEFAULT_MAX_GETBLOCKS_BATCHES = 3;
+    // Bitcoin Core answers a getblocks with at most this many block hashes. A shorter inv means we reached the end.
+    private static final int GETBLOCKS_BATCH_SIZE = 500;
+    @GuardedBy("lock") private int maxGetBlocksBatches = DEFAULT_MAX_GETBLOCKS_BATCHES;
+    // The last block of the last full inv that we sent a pipelined getblocks for, so we don't ask twice.
+    @GuardedBy("lock") @Nullable private Sha256Hash lastPipelinedGetBlocksFrom;
+    // The block to continue from once enough pending blocks have arrived, if too many were pending to ask right away.
+    @GuardedBy("lock") @Nullable private Sha256Hash deferredGetBlocksFrom;
+
     @GuardedBy("lock")
     private void blockChainDownloadLocked(Sha256Hash toHash) {
         checkState(lock.isHeldByCurrentThread());
@@ -1443,15 +1657,7 @@ public class Peer extends PeerSocketHandler {
 
         // TODO: Block locators should be abstracted out rather than special cased here.
         List<Sha256Hash> blockLocator = new ArrayList<Sha256Hash>(51);
-        // For now we don't do the exponential thinning as suggested here:
-        //
-        //   https://en.bitcoin.it/wiki/Protocol_specification#getblocks
-        //
-        // This is because it requires scanning all the block chain headers, which is very slow. Instead we add the top
-        // 100 block headers. If there is a re-org deeper than that, we'll end up downloading the entire chain. We
-        // must always put the genesis block as the first entry.
-        BlockStore store = checkNotNull(blockChain).getBlockStore();
-        StoredBlock chainHead = blockChain.getChainHead();
+        StoredBlock chainHead = checkNotNull(blockChain).getChainHead();
         Sha256Hash chainHeadHash = chainHead.getHeader().getHash();
         // Did we already make this request? If so, don't do it again.
         if (Objects.equal(lastGetBlocksBegin, chainHeadHash) && Objects.equal(lastGetBlocksEnd, toHash)) {
@@ -1464,6 +1670,36 @@ public class Peer extends PeerSocketHandler {
         if (log.isDebugEnabled())
             log.debug("{}: blockChainDownloadLocked({}) current head = {}",
                     this, toHash, chainHead.getHeader().getHashAsString());
+        addChainToLocatorLocked(blockLocator, chainHead);
+
+        // Record that we requested this range of blocks so we can filter out duplicate requests in the event of a
+        // block being solved during chain download.
+        lastGetBlocksBegin = chainHeadHash;
+        lastGetBlocksEnd = toHash;
+        // A fresh request, so any batches pipelined after an earlier one are no longer relevant.
+        lastPipelinedGetBlocksFrom = null;
+        deferredGetBlocksFrom = null;
+
+        if (downloadBlockBodies) {
+            GetBlocksMessage message = new GetBlocksMessage(params, blockLocator, toHash);
+            sendMessage(message);
+        } else {
+            // Downloading headers for a while instead of full blocks.
+            GetHeadersMessage message = new GetHeadersMessage(params, blockLocator, toHash);
+            sendMessage(message);
+        }
+    }
+
+    @GuardedBy("lock")
+    private void addChainToLocatorLocked(List<Sha256Hash> blockLocator, StoredBlock chainHead) {
+        // For now we don't do the exponential thinning as suggested here:
+        //
+        //   https://en.bitcoin.it/wiki/Protocol_specification#getblocks
+        //
+        // This is because it requires scanning all the block chain headers, which is very slow. Instead we add the top
+        // 100 block headers. If there is a re-org deeper than that, we'll end up downloading the entire chain. We
+        // must always put the genesis block as the first entry.
+        BlockStore store = checkNotNull(blockChain).getBlockStore();
         StoredBlock cursor = chainHead;
         for (int i = 100; cursor != null && i > 0; i--) {
             blockLocator.add(cursor.getHeader().getHash());
@@ -1477,19 +1713,62 @@ public class Peer extends PeerSocketHandler {
         // Only add the locator if we didn't already do so. If the chain is < 50 blocks we already reached it.
         if (cursor != null)
             blockLocator.add(params.getGenesisBlock().getHash());
+    }
 
-        // Record that we requested this range of blocks so we can filter out duplicate requests in the event of a
-        // block being solved during chain download.
-        lastGetBlocksBegin = chainHeadHash;
-        lastGetBlocksEnd = toHash;
+    /**
+     * Asks for the batch of blocks after the given one, which is the last block of a full inv we are downloading,
+     * without waiting for the download of that batch to finish. If too many blocks are already pending, the request
+     * is deferred until enough of them have arrived, so at most {@link #setMaxGetBlocksBatches(int)} batches are
+     * outstanding and the blocks received out of order (held as orphans by the chain) stay bounded.
+     */
+    @GuardedBy("lock")
+    private void pipelineGetBlocksLocked(Sha256Hash from) {
+        if (pendingBlockDownloads.size() >= maxGetBlocksBatches * GETBLOCKS_BATCH_SIZE) {
+            deferredGetBlocksFrom = from;
+            return;
+        }
+        deferredGetBlocksFrom = null;
+        if (from.equals(lastPipelinedGetBlocksFrom))
+            return;
+        lastPipelinedGetBlocksFrom = from;
+        List<Sha256Hash> blockLocator = new ArrayList<Sha256Hash>(52);
+        blockLocator.add(from);
+        addChainToLocatorLocked(blockLocator, checkNotNull(blockChain).getChainHead());
+        sendMessage(new GetBlocksMessage(params, blockLocator, Sha256Hash.ZERO_HASH));
+    }
 
-        if (downloadBlockBodies) {
-            GetBlocksMessage message = new GetBlocksMessage(params, blockLocator, toHash);
-            sendMessage(message);
-        } else {
-            // Downloading headers for a while instead of full blocks.
-            GetHeadersMessage message = new GetHeadersMessage(params, blockLocator, toHash);
-            sendMessage(message);
+    /**
+     * Returns true if pipelined getblocks batches are still being downloaded. Orphans are expected then, as the
+     * peer's head block arrives ahead of the batches, and the batches will connect them without a fresh getblocks.
+     */
+    @GuardedBy("lock")
+    private boolean isPipeliningLocked() {
+        return lastPipelinedGetBlocksFrom != null && !pendingBlockDownloads.isEmpty();
+    }
+
+    private void maybeSendDeferredGetBlocks() {
+        lock.lock();
+        try {
+            if (deferredGetBlocksFrom != null)
+                pipelineGetBlocksLocked(deferredGetBlocksFrom);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how many getblocks batches of up to 500 blocks may be outstanding at once whilst downloading block bodies.
+     * With more than one, the next getblocks is sent as soon as the inv for a full batch arrives, so the download
+     * doesn't stall for a round trip at the end of every batch. Defaults to {@link #DEFAULT_MAX_GETBLOCKS_BATCHES};
+     * 1 disables pipelining.
+     */
+    public void setMaxGetBlocksBatches(int maxGetBlocksBatches) {
+        checkArgument(maxGetBlocksBatches > 0);
+        lock.lock();
+        try {
+            this.maxGetBlocksBatches = maxGetBlocksBatches;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -1511,6 +1790,11 @@ public class Peer extends PeerSocketHandler {
                     }
                 });
             }
+            ParallelBlockDownloader blockDownloader = vBlockDownloader;
+            if (blockDownloader != null) {
+                blockDownloader.start(this);
+                return;
+            }
             // When we just want as many blocks as possible, we can set the target hash to zero.
             lock.lock();
             try {
@@ -1671,6 +1955,35 @@ public class Peer extends PeerSocketHandler {
         this.vDownloadData = downloadData;
     }
 
+    /**
+     * Makes this peer hand headers, blocks and block announcements to the given downloader, which fetches the chain
+     * from several peers at once. If null, the peer downloads the chain by itself as usual.
+     */
+    void setBlockDownloader(@Nullable ParallelBlockDownloader blockDownloader) {
+        this.vBlockDownloader = blockDownloader;
+    }
+
+    /**
+     * Gives this peer the memory pool to put compact blocks back together from. If null, or if the peer doesn't
+     * support them, blocks are always downloaded in full.
+     */
+    void setMempool(@Nullable Mempool mempool) {
+        this.vMempool = mempool;
+    }
+
+    /** Gives this peer the scores to record invalid data it sends against. */
+    void setPeerScores(@Nullable PeerScores scores) {
+        this.vPeerScores = scores;
+    }
+
+    /**
+     * Makes this peer ask the given coordinator whether to request the transactions it hears about. If null, the peer
+     * only requests transactions that no other peer announced first.
+     */
+    void setInventoryCoordinator(@Nullable InventoryCoordinator coordinator) {
+        this.vInventoryCoordinator = coordinator;
+    }
+
     /** Returns version data announced by the remote peer. */
     public VersionMessage getPeerVersionMessage() {
         return vPeerVersionMessage;
@@ -1750,6 +2063,41 @@ public class Peer extends PeerSocketHandler {
         maybeRestartChainDownload();
     }
 
+    /**
+     * <p>Brings the Bloom filter on this connection up to date by sending the remote peer only the given elements, as
+     * {@link FilterAddMessage}s, instead of the whole filter. The filter must be the one that was last set on this
+     * connection, with the elements inserted into it since. If it isn't, or if sending the elements would take more
+     * bytes than sending the whole filter, the whole filter is sent as with {@link #setBloomFilter(BloomFilter, boolean)}.</p>
+     *
+     * <p>Unlike the filter, the elements themselves are visible to the remote peer. You should not use this method if
+     * your app uses a {@link PeerGroup}, it is called for you if enabled with
+     * {@link PeerGroup#setBloomFilterDeltasEnabled(boolean)}.</p>
+     */
+    public void addToBloomFilter(BloomFilter filter, List<byte[]> elements, boolean andQueryMemPool) {
+        final VersionMessage ver = vPeerVersionMessage;
+        if (ver == null || !ver.isBloomFilteringSupported())
+            return;
+        // Every message costs its element plus a header of 24 bytes, the filter costs one header.
+        long deltaBytes = 0;
+        for (byte[] element : elements) {
+            if (element.length > FilterAddMessage.MAX_DATA_SIZE) {
+                deltaBytes = Long.MAX_VALUE;
+                break;
+            }
+            deltaBytes += 24 + VarInt.sizeOf(element.length) + element.length;
+        }
+        if (vBloomFilter != filter || deltaBytes > 24 + filter.unsafeBitcoinSerialize().length) {
+            setBloomFilter(filter, andQueryMemPool);
+            return;
+        }
+        log.debug("{}: Adding {} elements to Bloom filter{}", this, elements.size(), andQueryMemPool ? " and querying mempool" : "");
+        for (byte[] element : elements)
+            sendMessage(new FilterAddMessage(params, element));
+        if (andQueryMemPool)
+            sendMessage(new MemoryPoolMessage());
+        maybeRestartChainDownload();
+    }
+
     private void maybeRestartChainDownload() {
         lock.lock();
         try {
@@ -119,6 +119,20 @@ public class PeerGroup implements TransactionBroadcaster {
     @GuardedBy("lock") private Peer downloadPeer;
     // Callback for events related to chain download.
     @Nullable @GuardedBy("lock") private PeerDataEventListener downloadListener;
+    // If set, blocks are downloaded from all peers at once, see setParallelBlockDownload.
+    @Nullable private volatile ParallelBlockDownloader vBlockDownloader;
+    // If set, each announced transaction is requested from one peer at a time, see setInventoryCoordination.
+    @Nullable private volatile InventoryCoordinator vInventoryCoordinator;
+    @Nullable @GuardedBy("lock") private ListenableScheduledFuture<?> inventoryTimeoutTask, inventoryTrickleTask;
+    // If set, remembers peer addresses across restarts and is asked for them before any other discovery source.
+    @Nullable private volatile AddressBook vAddressBook;
+    @Nullable @GuardedBy("lock") private ListenableScheduledFuture<?> addressBookSaveTask;
+    // If set, records how well peers serve us and is used to prefer the best ones, see setPeerScores.
+    @Nullable private volatile PeerScores vPeerScores;
+    @Nullable @GuardedBy("lock") private ListenableScheduledFuture<?> peerRotationTask;
+    // If set, every transaction and block our peers send us updates it, see setMempool.
+    @Nullable private volatile Mempool vMempool;
+    @Nullable @GuardedBy("lock") private ListenableScheduledFuture<?> compactBlockTimeoutTask;
     private final CopyOnWriteArrayList<ListenerRegistration<BlocksDownloadedEventListener>> peersBlocksDownloadedEventListeners
         = new CopyOnWriteArrayList<ListenerRegistration<BlocksDownloadedEventListener>>();
     private final CopyOnWriteArrayList<ListenerRegistration<ChainDownloadStartedEventListener>> peersChainDownloadStartedEventListeners
@@ -155,6 +169,14 @@ public class PeerGroup implements TransactionBroadcaster {
     public static final long DEFAULT_PING_INTERVAL_MSEC = 2000;
     @GuardedBy("lock") private long pingIntervalMsec = DEFAULT_PING_INTERVAL_MSEC;
 
+    /** How often the worst peer is considered for disconnection when {@link PeerScores} are attached. */
+    public static final long PEER_ROTATION_INTERVAL_SECS = 60;
+    /** How much worse than the median quality a peer must be before it is disconnected to make room for another. */
+    public static final double PEER_ROTATION_MARGIN = 50;
+    private static final int MIN_PEERS_FOR_ROTATION = 3;
+    /** How often an attached {@link AddressBook} is saved to its autosave file, if it changed. */
+    public static final long ADDRESS_BOOK_SAVE_INTERVAL_SECS = 60;
+
     @GuardedBy("lock") private boolean useLocalhostPeerWhenPossible = true;
     @GuardedBy("lock") private boolean ipv6Unreachable = false;
 
@@ -286,6 +308,8 @@ public class PeerGroup implements TransactionBroadcaster {
     
     /** Whether bloom filter support is enabled when using a non FullPrunedBlockchain*/
     private volatile boolean vBloomFilteringEnabled = false; //GoldCoin doesn't support this.
+    // Whether filters that only gained elements are sent to peers as filteradd messages.
+    private volatile boolean vBloomFilterDeltasEnabled = false;
 
     /** See {@link #PeerGroup(Context)} */
     public PeerGroup(NetworkParameters params) {
@@ -537,6 +561,11 @@ public class PeerGroup implements TransactionBroadcaster {
                 lock.unlock();
             }
 
+            // Addresses from the address book are at hand and worked before, so connect to them straight away and only
+            // fall back to the slower discovery sources once they are used up.
+            if (doDiscovery && discoverFromAddressBook() > 0)
+                doDiscovery = false;
+
             // Don't hold the lock across discovery as this process can be very slow.
             boolean discoverySuccess = false;
             if (doDiscovery) {
@@ -987,14 +1016,15 @@ public class PeerGroup implements TransactionBroadcaster {
         setMaxConnections(newMax);
     }
 
-    private void addInactive(PeerAddress peerAddress) {
+    private boolean addInactive(PeerAddress peerAddress) {
         lock.lock();
         try {
             // Deduplicate
             if (backoffMap.containsKey(peerAddress))
-                return;
+                return false;
             backoffMap.put(peerAddress, new ExponentialBackoff(peerBackoffParams));
             inactives.offer(peerAddress);
+            return true;
         } finally {
             lock.unlock();
         }
@@ -1069,6 +1099,21 @@ public class PeerGroup implements TransactionBroadcaster {
         return addressList.size();
     }
 
+    /** Adds the addresses from the address book we don't know about yet, and returns how many there were. */
+    private int discoverFromAddressBook() {
+        AddressBook book = vAddressBook;
+        if (book == null)
+            return 0;
+        int count = 0;
+        for (InetSocketAddress address : book.getPeers(requiredServices, 0, TimeUnit.MILLISECONDS)) {
+            if (addInactive(new PeerAddress(params, address)))
+                count++;
+        }
+        if (count > 0)
+            log.info("Address book provided {} peers", count);
+        return count;
+    }
+
     @VisibleForTesting
     void waitForJobQueue() {
         Futures.getUnchecked(executor.submit(Runnables.doNothing()));
@@ -1183,6 +1228,9 @@ public class PeerGroup implements TransactionBroadcaster {
                     for (PeerDiscovery peerDiscovery : peerDiscoverers) {
                         peerDiscovery.shutdown();
                     }
+                    AddressBook book = vAddressBook;
+                    if (book != null)
+                        book.shutdown();
                     if (torClient != null) {
                         torClient.stop();
                     }
@@ -1361,7 +1409,9 @@ public class PeerGroup implements TransactionBroadcaster {
                 if ((chain != null && chain.shouldVerifyTransactions()) || !vBloomFilteringEnabled)
                     return;
                 // We only ever call bloomFilterMerger.calculate on jobQueue, so we cannot be calculating two filters at once.
-                FilterMerger.Result result = bloomFilterMerger.calculate(ImmutableList.copyOf(peerFilterProviders /* COW */));
+                // A refresh is asked for when the filters on the peers got too noisy, so build it again from scratch.
+                FilterMerger.Result result = bloomFilterMerger.calculate(ImmutableList.copyOf(peerFilterProviders /* COW */),
+                        mode == FilterRecalculateMode.FORCE_SEND_FOR_REFRESH);
                 boolean send;
                 switch (mode) {
                     case SEND_IF_CHANGED:
@@ -1377,11 +1427,21 @@ public class PeerGroup implements TransactionBroadcaster {
                         throw new UnsupportedOperationException();
                 }
                 if (send) {
+                    boolean sendDeltas = vBloomFilterDeltasEnabled && result.addedElements != null;
                     for (Peer peer : peers /* COW */) {
                         // Only query the mempool if this recalculation request is not in order to lower the observed FP
                         // rate. There's no point querying the mempool when doing this because the FP rate can only go
                         // down, and we will have seen all the relevant txns before: it's pointless to ask for them again.
-                        peer.setBloomFilter(result.filter, mode != FilterRecalculateMode.FORCE_SEND_FOR_REFRESH);
+                        boolean queryMemPool = mode != FilterRecalculateMode.FORCE_SEND_FOR_REFRESH;
+                        if (sendDeltas)
+                            peer.addToBloomFilter(result.filter, result.addedElements, queryMemPool);
+                        else
+                            peer.setBloomFilter(result.filter, queryMemPool);
+                    }
+                    ParallelBlockDownloader blockDownloader = vBlockDownloader;
+                    if (blockDownloader != null) {
+                        blockDownloader.setUseFilteredBlocks(true);
+                        blockDownloader.onFilterUpdated();
                     }
                     // Reset the false positive estimate so that we don't send a flood of filter updates
                     // if the estimate temporarily overshoots our threshold.
@@ -1616,6 +1676,28 @@ public class PeerGroup implements TransactionBroadcaster {
             // TODO: The peer should calculate the fast catchup time from the added wallets here.
             for (Wallet wallet : wallets)
                 peer.addWallet(wallet);
+            ParallelBlockDownloader blockDownloader = vBlockDownloader;
+            if (blockDownloader != null) {
+                peer.setBlockDownloader(blockDownloader);
+                blockDownloader.addPeer(peer);
+            }
+            peer.setMempool(vMempool);
+            AddressBook book = vAddressBook;
+            if (book != null) {
+                book.markGood(peer.getAddress(), peer.getPeerVersionMessage().localServices);
+                // Ask for more addresses to keep the book fresh.
+                peer.getAddr();
+            }
+            PeerScores scores = vPeerScores;
+            if (scores != null) {
+                peer.setPeerScores(scores);
+                scores.recordConnected(peer.getAddress());
+            }
+            InventoryCoordinator coordinator = vInventoryCoordinator;
+            if (coordinator != null) {
+                peer.setInventoryCoordinator(coordinator);
+                coordinator.addPeer(peer);
+            }
             if (downloadPeer == null) {
                 // Kick off chain download if we aren't already doing it.
                 setDownloadPeer(selectDownloadPeer(peers));
@@ -1676,10 +1758,23 @@ public class PeerGroup implements TransactionBroadcaster {
                         }
                         return;  // Disabled.
                     }
-                    for (Peer peer : getConnectedPeers()) {
+                    for (final Peer peer : getConnectedPeers()) {
                         if (peer.getPeerVersionMessage().clientVersion < params.getProtocolVersionNum(NetworkParameters.ProtocolVersion.PONG))
                             continue;
-                        peer.ping();
+                        ListenableFuture<Long> pong = peer.ping();
+                        final PeerScores scores = vPeerScores;
+                        if (scores != null) {
+                            Futures.addCallback(pong, new FutureCallback<Long>() {
+                                @Override
+                                public void onSuccess(Long pingMsec) {
+                                    scores.recordPing(peer.getAddress(), pingMsec);
+                                }
+
+                                @Override
+                                public void onFailure(Throwable t) {
+                                }
+                            });
+                        }
                     }
                 } catch (Throwable e) {
                     log.error("Exception in ping loop", e);  // The executor swallows exceptions :(
@@ -1731,6 +1826,9 @@ public class PeerGroup implements TransactionBroadcaster {
         try {
             checkState(chain == null || !chain.shouldVerifyTransactions(), "Fast catchup is incompatible with fully verifying");
             fastCatchupTimeSecs = secondsSinceEpoch;
+            ParallelBlockDownloader blockDownloader = vBlockDownloader;
+            if (blockDownloader != null)
+                blockDownloader.setFastCatchupTimeSecs(secondsSinceEpoch);
             if (downloadPeer != null) {
                 downloadPeer.setDownloadParameters(secondsSinceEpoch, bloomFilterMerger.getLastFilter() != null);
             }
@@ -1763,11 +1861,27 @@ public class PeerGroup implements TransactionBroadcaster {
         lock.lock();
         try {
             pendingPeers.remove(peer);
-            peers.remove(peer);
+            boolean wasConnected = peers.remove(peer);
 
             PeerAddress address = peer.getAddress();
+            AddressBook book = vAddressBook;
+            if (book != null && !wasConnected)
+                book.markFailed(address);
+            PeerScores scores = vPeerScores;
+            if (scores != null) {
+                if (wasConnected)
+                    scores.recordDisconnected(address);
+                else
+                    scores.recordConnectFailure(address);
+            }
 
             log.info("{}: Peer died      ({} connected, {} pending, {} max)", address, peers.size(), pendingPeers.size(), maxConnections);
+            ParallelBlockDownloader blockDownloader = vBlockDownloader;
+            if (blockDownloader != null)
+                blockDownloader.removePeer(peer);
+            InventoryCoordinator coordinator = vInventoryCoordinator;
+            if (coordinator != null)
+                coordinator.removePeer(peer);
             if (peer == downloadPeer) {
                 log.info("Download peer died. Picking a new one.");
                 setDownloadPeer(null);
@@ -1950,6 +2064,9 @@ public class PeerGroup implements TransactionBroadcaster {
                                 log.warn("This network seems to be slower than the requested stall threshold - won't do stall disconnects any more.");
                             } else {
                                 Peer peer = getDownloadPeer();
+                                PeerScores scores = vPeerScores;
+                                if (scores != null)
+                                    scores.recordStall(peer.getAddress());
                                 log.warn(String.format(Locale.US, "Chain download stalled: received %.2f KB/sec for %d seconds, require average of %.2f KB/sec, disconnecting %s", average / 1024.0, samples.length, minSpeedBytesPerSec / 1024.0, peer));
                                 peer.close();
                                 // Reset the sample buffer and give the next peer time to get going.
@@ -1972,6 +2089,7 @@ public class PeerGroup implements TransactionBroadcaster {
         }
     }
     @Nullable private ChainDownloadSpeedCalculator chainDownloadSpeedCalculator;
+    @Nullable @GuardedBy("lock") private Runnable blockDownloaderStallCheck;
 
     private void startBlockChainDownloadFromPeer(Peer peer) {
         lock.lock();
@@ -1985,6 +2103,23 @@ public class PeerGroup implements TransactionBroadcaster {
             }
             peer.addBlocksDownloadedEventListener(Threading.SAME_THREAD, chainDownloadSpeedCalculator);
 
+            if (vBlockDownloader != null && blockDownloaderStallCheck == null) {
+                // Every second, give requests that a peer is sitting on to other peers.
+                blockDownloaderStallCheck = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            ParallelBlockDownloader blockDownloader = vBlockDownloader;
+                            if (blockDownloader != null)
+                                blockDownloader.checkForStalls();
+                        } catch (Throwable e) {
+                            log.error("Exception in block download stall check", e);  // The executor swallows exceptions :(
+                        }
+                    }
+                };
+                executor.scheduleAtFixedRate(blockDownloaderStallCheck, 1, 1, TimeUnit.SECONDS);
+            }
+
             // startBlockChainDownload will setDownloadData(true) on itself automatically.
             peer.startBlockChainDownload();
         } finally {
@@ -2310,6 +2445,12 @@ public class PeerGroup implements TransactionBroadcaster {
                 candidates2.add(peer);
             }
         }
+        PeerScores scores = vPeerScores;
+        if (scores != null) {
+            // Pick the best of them, randomly if they are equally good.
+            Collections.shuffle(candidates2);
+            return scores.selectBest(candidates2);
+        }
         int index = (int) (Math.random() * candidates2.size());
         return candidates2.get(index);
     }
@@ -2394,4 +2535,318 @@ public class PeerGroup implements TransactionBroadcaster {
     public boolean isBloomFilteringEnabled() {
         return vBloomFilteringEnabled;
     }
+
+    /**
+     * <p>If enabled, when the Bloom filter only gained elements, for example because wallets handed out new keys,
+     * peers are sent just the new elements as filteradd messages instead of the whole filter, if that is smaller. The
+     * default is false.</p>
+     *
+     * <p>This saves bandwidth for large wallets, but unlike the filter, the elements themselves are visible to the
+     * peers, so they learn exactly which keys were added. See {@link Peer#addToBloomFilter(BloomFilter, List, boolean)}.</p>
+     */
+    public void setBloomFilterDeltasEnabled(boolean enabled) {
+        this.vBloomFilterDeltasEnabled = enabled;
+    }
+
+    /** Returns whether filters that only gained elements are sent to peers as filteradd messages. */
+    public boolean isBloomFilterDeltasEnabled() {
+        return vBloomFilterDeltasEnabled;
+    }
+
+    /**
+     * <p>If enabled, the block chain is synced headers first and from all connected peers at once, instead of from
+     * the download peer alone with getblocks. Headers are fetched from the download peer in batches of 2000, with the
+     * next batch requested whilst the previous one is verified. Before the fast catchup time only the headers are
+     * stored. After it, the blocks (or filtered blocks) are requested from every peer that has them, many per
+     * request, so a slow download peer no longer limits the speed of the initial sync. See
+     * {@link ParallelBlockDownloader} for details.</p>
+     *
+     * <p>Must be called before starting block chain download. Defaults to false.</p>
+     */
+    public void setParallelBlockDownload(boolean enabled) {
+        lock.lock();
+        try {
+            checkState(downloadListener == null, "Must be called before block chain download is started");
+            if (enabled == (vBlockDownloader != null))
+                return;
+            ParallelBlockDownloader blockDownloader = null;
+            if (enabled) {
+                checkState(chain != null, "Parallel block download requires a block chain");
+                blockDownloader = new ParallelBlockDownloader(params, chain, wallets);
+                blockDownloader.setUseFilteredBlocks(bloomFilterMerger.getLastFilter() != null);
+                blockDownloader.setFastCatchupTimeSecs(fastCatchupTimeSecs);
+            }
+            vBlockDownloader = blockDownloader;
+            for (Peer peer : peers) {
+                peer.setBlockDownloader(blockDownloader);
+                if (blockDownloader != null)
+                    blockDownloader.addPeer(peer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the downloader in use if parallel block download is enabled, so it can be tuned, or null otherwise. */
+    @Nullable
+    public ParallelBlockDownloader getParallelBlockDownloader() {
+        return vBlockDownloader;
+    }
+
+    /**
+     * <p>If enabled, a transaction announced by several peers is requested from the first of them only, and if it
+     * isn't sent within a few seconds, from the next one, until one of them sends it. Otherwise it is requested from
+     * the first peer only and never again if that peer fails to send it. Transactions can also be announced to all
+     * peers in batches with {@link InventoryCoordinator#announce(Transaction)}. See {@link InventoryCoordinator} for
+     * details.</p>
+     *
+     * <p>Defaults to false.</p>
+     */
+    public void setInventoryCoordination(boolean enabled) {
+        lock.lock();
+        try {
+            if (enabled == (vInventoryCoordinator != null))
+                return;
+            InventoryCoordinator previous = vInventoryCoordinator;
+            if (previous != null) {
+                removeGetDataEventListener(previous);
+                inventoryTimeoutTask.cancel(false);
+                inventoryTrickleTask.cancel(false);
+                inventoryTimeoutTask = inventoryTrickleTask = null;
+            }
+            InventoryCoordinator coordinator = null;
+            if (enabled) {
+                coordinator = new InventoryCoordinator(params);
+                coordinator.setPeerScores(vPeerScores);
+                for (Peer peer : peers)
+                    coordinator.addPeer(peer);
+                addGetDataEventListener(Threading.SAME_THREAD, coordinator);
+                final InventoryCoordinator finalCoordinator = coordinator;
+                // Every second, give requests that a peer is sitting on to other peers.
+                inventoryTimeoutTask = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            finalCoordinator.checkTimeouts();
+                        } catch (Throwable e) {
+                            log.error("Exception in inventory timeout check", e);  // The executor swallows exceptions :(
+                        }
+                    }
+                }, 1, 1, TimeUnit.SECONDS);
+                inventoryTrickleTask = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            finalCoordinator.trickle();
+                        } catch (Throwable e) {
+                            log.error("Exception in inventory trickle", e);  // The executor swallows exceptions :(
+                        }
+                    }
+                }, 250, 250, TimeUnit.MILLISECONDS);
+            }
+            vInventoryCoordinator = coordinator;
+            for (Peer peer : peers)
+                peer.setInventoryCoordinator(coordinator);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the coordinator in use if inventory coordination is enabled, so it can be tuned, or null otherwise. */
+    @Nullable
+    public InventoryCoordinator getInventoryCoordinator() {
+        return vInventoryCoordinator;
+    }
+
+    /**
+     * <p>Attaches an address book that remembers peer addresses across restarts. It is asked for addresses before any
+     * {@link PeerDiscovery} source, so that after the first run we can connect straight away without waiting for DNS
+     * seeds, and the slower sources are only used once its addresses run out. The book learns addresses from the
+     * {@code addr} messages our peers send, which we ask for on every new connection, and from which peers we
+     * managed to connect to. Pass null to detach it again.</p>
+     *
+     * <p>Load the book from disk before attaching it, and set {@link AddressBook#setAutosaveFile(File)} to have it
+     * saved every minute and when the peer group stops.</p>
+     */
+    public void setAddressBook(@Nullable AddressBook book) {
+        lock.lock();
+        try {
+            AddressBook previous = vAddressBook;
+            if (previous == book)
+                return;
+            if (previous != null) {
+                removePreMessageReceivedEventListener(previous);
+                addressBookSaveTask.cancel(false);
+                addressBookSaveTask = null;
+            }
+            if (book != null) {
+                if (getMaxConnections() == 0)
+                    setMaxConnections(DEFAULT_CONNECTIONS);
+                addPreMessageReceivedEventListener(Threading.SAME_THREAD, book);
+                for (Peer peer : peers)
+                    book.markGood(peer.getAddress(), peer.getPeerVersionMessage().localServices);
+                final AddressBook finalBook = book;
+                addressBookSaveTask = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            finalBook.autosave();
+                        } catch (Throwable e) {
+                            log.error("Exception saving the address book", e);  // The executor swallows exceptions :(
+                        }
+                    }
+                }, ADDRESS_BOOK_SAVE_INTERVAL_SECS, ADDRESS_BOOK_SAVE_INTERVAL_SECS, TimeUnit.SECONDS);
+            }
+            vAddressBook = book;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the address book attached with {@link #setAddressBook(AddressBook)}, or null if there is none. */
+    @Nullable
+    public AddressBook getAddressBook() {
+        return vAddressBook;
+    }
+
+    /**
+     * <p>Attaches scores that record how well each peer serves us: ping times, block throughput, time connected,
+     * stalls, invalid data and failed connections. They are then used to prefer the best peers as the download peer,
+     * for broadcasts and for transaction requests, and every minute, when all connection slots are taken, the worst
+     * peer is disconnected if it is much worse than the others so that another peer can take its place. Pass null to
+     * detach them again.</p>
+     *
+     * <p>Load the scores from disk before attaching them, and set {@link PeerScores#setAutosaveFile(File)} to have
+     * them saved every minute.</p>
+     */
+    public void setPeerScores(@Nullable PeerScores scores) {
+        lock.lock();
+        try {
+            PeerScores previous = vPeerScores;
+            if (previous == scores)
+                return;
+            if (previous != null) {
+                removeBlocksDownloadedEventListener(previous);
+                peerRotationTask.cancel(false);
+                peerRotationTask = null;
+            }
+            if (scores != null) {
+                addBlocksDownloadedEventListener(Threading.SAME_THREAD, scores);
+                for (Peer peer : peers)
+                    scores.recordConnected(peer.getAddress());
+                final PeerScores finalScores = scores;
+                peerRotationTask = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            rotateWorstPeer();
+                            finalScores.autosave();
+                        } catch (Throwable e) {
+                            log.error("Exception in peer rotation", e);  // The executor swallows exceptions :(
+                        }
+                    }
+                }, PEER_ROTATION_INTERVAL_SECS, PEER_ROTATION_INTERVAL_SECS, TimeUnit.SECONDS);
+            }
+            vPeerScores = scores;
+            for (Peer peer : peers)
+                peer.setPeerScores(scores);
+            InventoryCoordinator coordinator = vInventoryCoordinator;
+            if (coordinator != null)
+                coordinator.setPeerScores(scores);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the scores attached with {@link #setPeerScores(PeerScores)}, or null if there are none. */
+    @Nullable
+    public PeerScores getPeerScores() {
+        return vPeerScores;
+    }
+
+    /**
+     * Disconnects the worst connected peer if all connection slots are taken and it is much worse than the median, so
+     * that another peer is connected in its place. Never disconnects the download peer. Called every minute when
+     * {@link PeerScores} are attached.
+     */
+    @VisibleForTesting
+    void rotateWorstPeer() {
+        PeerScores scores = vPeerScores;
+        if (scores == null)
+            return;
+        Peer worst = null;
+        lock.lock();
+        try {
+            if (peers.size() < Math.max(getMaxConnections(), MIN_PEERS_FOR_ROTATION))
+                return;
+            List<Peer> sorted = new ArrayList<Peer>(peers);
+            scores.sortByQuality(sorted);
+            double median = scores.getQuality(sorted.get(sorted.size() / 2).getAddress());
+            for (int i = sorted.size() - 1; i > sorted.size() / 2; i--) {
+                Peer peer = sorted.get(i);
+                if (peer == downloadPeer)
+                    continue;
+                if (scores.getQuality(peer.getAddress()) < median - PEER_ROTATION_MARGIN)
+                    worst = peer;
+                break;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (worst != null) {
+            log.info("{}: Disconnecting to make room for a better peer, quality {}", worst,
+                    scores.getQuality(worst.getAddress()));
+            worst.close();
+        }
+    }
+
+    /**
+     * Attaches a {@link Mempool} that every transaction our peers send us is added to, and that blocks downloaded by
+     * them remove their transactions from. Pass null to detach it again. Note that with a Bloom filter set the peers
+     * only send us the transactions that match it.
+     *
+     * <p>When full blocks are downloaded, new blocks are then fetched as compact blocks from peers that support them
+     * (BIP 152), so only the transactions missing from the pool are transferred.</p>
+     */
+    public void setMempool(@Nullable Mempool mempool) {
+        lock.lock();
+        try {
+            Mempool previous = vMempool;
+            if (previous == mempool)
+                return;
+            if (previous != null) {
+                removeOnTransactionBroadcastListener(previous);
+                removeBlocksDownloadedEventListener(previous);
+                compactBlockTimeoutTask.cancel(false);
+                compactBlockTimeoutTask = null;
+            }
+            if (mempool != null) {
+                addOnTransactionBroadcastListener(Threading.SAME_THREAD, mempool);
+                addBlocksDownloadedEventListener(Threading.SAME_THREAD, mempool);
+                // Every second, download compact blocks in full whose missing transactions a peer is sitting on.
+                compactBlockTimeoutTask = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (Peer peer : getConnectedPeers())
+                                peer.checkCompactBlockTimeouts();
+                        } catch (Throwable e) {
+                            log.error("Exception in compact block timeout check", e);  // The executor swallows exceptions :(
+                        }
+                    }
+                }, 1, 1, TimeUnit.SECONDS);
+            }
+            vMempool = mempool;
+            for (Peer peer : peers)
+                peer.setMempool(mempool);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the mempool attached with {@link #setMempool(Mempool)}, or null if there is none. */
+    @Nullable
+    public Mempool getMempool() {
+        return vMempool;
+    }
 }
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.core.listeners.BlocksDownloadedEventListener;
+import org.bitcoinj.utils.StateFiles;
+import org.bitcoinj.utils.Threading;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Remembers how well each peer address has served us: its ping time, how fast it sent blocks, how long it stayed
+ * connected, and how often it stalled, sent invalid data or could not be connected to. These are combined into a
+ * single {@link #getQuality(PeerAddress) quality} that the {@link PeerGroup} uses to pick the download peer, the peers
+ * to broadcast to and to request transactions from, and which peer to disconnect to make room for a possibly faster
+ * one. Penalties fade with a half life of a day, so a peer that misbehaved once is not shunned forever.</p>
+ *
+ * <p>The scores can be saved with {@link #saveToFile(File)} and loaded with {@link #loadFromFile(File)}, or saved
+ * regularly by the peer group with {@link #setAutosaveFile(File)}. Attach them with
+ * {@link PeerGroup#setPeerScores(PeerScores)}.</p>
+ */
+public class PeerScores implements BlocksDownloadedEventListener, StateFiles.State {
+    private static final Logger log = LoggerFactory.getLogger(PeerScores.class);
+
+    // Addresses beyond this, least recently seen first, are forgotten.
+    private static final int MAX_ENTRIES = 5000;
+    private static final long PENALTY_HALF_LIFE_MSEC = 24 * 60 * 60 * 1000L;
+    // How much each thing counts towards the quality.
+    private static final double PING_WEIGHT = -0.1;  // per millisecond
+    private static final double THROUGHPUT_WEIGHT = 10;  // per order of magnitude of bytes per second
+    private static final double UPTIME_WEIGHT = 2;  // per hour, up to a day
+    private static final double STALL_WEIGHT = -50;
+    private static final double INVALID_WEIGHT = -200;
+    private static final double FAILURE_WEIGHT = -20;
+    private static final int FILE_VERSION = 1;
+
+    private final ReentrantLock lock = Threading.lock("peerscores");
+
+    private static class Score {
+        long pingMsec = -1;
+        long bytesReceived;
+        long connectedMsec;
+        long connectedSince;  // or 0 if not connected.
+        double stalls, invalid, failures;
+        long lastDecay;
+
+        void decay(long now) {
+            if (lastDecay != 0 && now > lastDecay) {
+                double factor = Math.pow(0.5, (double) (now - lastDecay) / PENALTY_HALF_LIFE_MSEC);
+                stalls *= factor;
+                invalid *= factor;
+                failures *= factor;
+            }
+            lastDecay = now;
+        }
+
+        double quality(long now) {
+            double quality = 0;
+            if (pingMsec >= 0)
+                quality += PING_WEIGHT * pingMsec;
+            long uptime = connectedMsec + (connectedSince != 0 ? now - connectedSince : 0);
+            if (uptime > 0) {
+                double bytesPerSec = bytesReceived * 1000.0 / Math.max(uptime, 1000);
+                quality += THROUGHPUT_WEIGHT * Math.log10(1 + bytesPerSec);
+                quality += UPTIME_WEIGHT * Math.min(uptime / 3600000.0, 24);
+            }
+            quality += STALL_WEIGHT * stalls + INVALID_WEIGHT * invalid + FAILURE_WEIGHT * failures;
+            return quality;
+        }
+    }
+
+    @GuardedBy("lock") private final LinkedHashMap<InetSocketAddress, Score> scores
+            = new LinkedHashMap<InetSocketAddress, Score>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, Score> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    @GuardedBy("lock") @Nullable private File autosaveFile;
+
+    @GuardedBy("lock")
+    private Score getLocked(PeerAddress address, long now) {
+        InetSocketAddress key = address.toSocketAddress();
+        Score score = scores.get(key);
+        if (score == null) {
+            score = new Score();
+            scores.put(key, score);
+        }
+        score.decay(now);
+        return score;
+    }
+
+    /** Records that we connected to the peer. */
+    public void recordConnected(PeerAddress address) {
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            getLocked(address, now).connectedSince = now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that the connection to the peer was closed. */
+    public void recordDisconnected(PeerAddress address) {
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            Score score = getLocked(address, now);
+            if (score.connectedSince != 0) {
+                score.connectedMsec += now - score.connectedSince;
+                score.connectedSince = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that we could not connect to the peer, or it disconnected before the handshake completed. */
+    public void recordConnectFailure(PeerAddress address) {
+        lock.lock();
+        try {
+            getLocked(address, Utils.currentTimeMillis()).failures++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records the round trip time of a ping. */
+    public void recordPing(PeerAddress address, long pingMsec) {
+        lock.lock();
+        try {
+            Score score = getLocked(address, Utils.currentTimeMillis());
+            // A moving average, so one slow ping doesn't count for much.
+            score.pingMsec = score.pingMsec < 0 ? pingMsec : (score.pingMsec * 3 + pingMsec) / 4;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that the peer sent us the given number of bytes of block data. */
+    public void recordBytes(PeerAddress address, long bytes) {
+        lock.lock();
+        try {
+            getLocked(address, Utils.currentTimeMillis()).bytesReceived += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that the peer sat on a request for too long. */
+    public void recordStall(PeerAddress address) {
+        lock.lock();
+        try {
+            getLocked(address, Utils.currentTimeMillis()).stalls++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that the peer sent us something malformed or invalid. */
+    public void recordInvalid(PeerAddress address) {
+        lock.lock();
+        try {
+            getLocked(address, Utils.currentTimeMillis()).invalid++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onBlocksDownloaded(Peer peer, Block block, @Nullable FilteredBlock filteredBlock, int blocksLeft) {
+        recordBytes(peer.getAddress(), filteredBlock != null ? filteredBlock.getMessageSize() : block.getMessageSize());
+    }
+
+    /**
+     * Returns the quality of the peer: higher is better. Addresses we know nothing about have a quality of zero. Each
+     * millisecond of ping time takes 0.1 away, a throughput of 1 MB/sec adds 60, each hour connected adds 2 for up to
+     * a day, and each stall, invalid message or failed connection takes away 50, 200 and 20 respectively.
+     */
+    public double getQuality(PeerAddress address) {
+        lock.lock();
+        try {
+            Score score = scores.get(address.toSocketAddress());
+            if (score == null)
+                return 0;
+            long now = Utils.currentTimeMillis();
+            score.decay(now);
+            return score.quality(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the best peer of the given ones, or null if there are none. Ties are broken by order in the list. */
+    @Nullable
+    public Peer selectBest(List<Peer> peers) {
+        Peer best = null;
+        double bestQuality = 0;
+        for (Peer peer : peers) {
+            double quality = getQuality(peer.getAddress());
+            if (best == null || quality > bestQuality) {
+                best = peer;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /** Sorts the given peers best first. The sort is stable, so peers of equal quality keep their order. */
+    public void sortByQuality(List<Peer> peers) {
+        final Map<Peer, Double> qualities = new HashMap<Peer, Double>();
+        for (Peer peer : peers)
+            qualities.put(peer, getQuality(peer.getAddress()));
+        Collections.sort(peers, new Comparator<Peer>() {
+            @Override
+            public int compare(Peer a, Peer b) {
+                return Double.compare(qualities.get(b), qualities.get(a));
+            }
+        });
+    }
+
+    /** Returns the number of addresses scores are kept for. */
+    public int size() {
+        lock.lock();
+        try {
+            return scores.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sets the file the peer group regularly saves the scores to, or null to not save them. */
+    public void setAutosaveFile(@Nullable File file) {
+        lock.lock();
+        try {
+            autosaveFile = file;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Saves the scores to the autosave file, if one is set. */
+    void autosave() {
+        File file;
+        lock.lock();
+        try {
+            file = autosaveFile;
+        } finally {
+            lock.unlock();
+        }
+        if (file == null)
+            return;
+        try {
+            saveToFile(file);
+        } catch (IOException e) {
+            log.error("Failed to save peer scores to {}", file, e);
+        }
+    }
+
+    /** Writes the scores to the given stream in a compact binary format. */
+    @Override
+    public void save(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        lock.lock();
+        try {
+            long now = Utils.currentTimeMillis();
+            out.writeInt(FILE_VERSION);
+            out.writeInt(scores.size());
+            for (Map.Entry<InetSocketAddress, Score> entry : scores.entrySet()) {
+                InetSocketAddress key = entry.getKey();
+                Score score = entry.getValue();
+                InetAddress addr = key.getAddress();
+                if (addr != null) {
+                    out.writeByte(0);
+                    out.writeByte(addr.getAddress().length);
+                    out.write(addr.getAddress());
+                } else {
+                    out.writeByte(1);
+                    out.writeUTF(key.getHostName());
+                }
+                out.writeShort(key.getPort());
+                out.writeLong(score.pingMsec);
+                out.writeLong(score.bytesReceived);
+                // Time connected so far counts, the current connection doesn't carry over.
+                out.writeLong(score.connectedMsec + (score.connectedSince != 0 ? now - score.connectedSince : 0));
+                out.writeDouble(score.stalls);
+                out.writeDouble(score.invalid);
+                out.writeDouble(score.failures);
+                out.writeLong(score.lastDecay);
+            }
+        } finally {
+            lock.unlock();
+        }
+        out.flush();
+    }
+
+    /** Replaces the scores with the ones read from the given stream, as written by {@link #save(OutputStream)}. */
+    @Override
+    public void load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != FILE_VERSION)
+            throw new IOException("Unsupported peer scores format");
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ENTRIES)
+            throw new IOException("Bad number of peer scores: " + count);
+        LinkedHashMap<InetSocketAddress, Score> loaded = new LinkedHashMap<InetSocketAddress, Score>();
+        for (int i = 0; i < count; i++) {
+            InetSocketAddress key;
+            int type = in.readByte();
+            if (type == 0) {
+                int length = in.readUnsignedByte();
+                if (length != 4 && length != 16)
+                    throw new IOException("Bad address length " + length);
+                byte[] addr = new byte[length];
+                in.readFully(addr);
+                key = new InetSocketAddress(InetAddress.getByAddress(addr), in.readUnsignedShort());
+            } else if (type == 1) {
+                key = InetSocketAddress.createUnresolved(in.readUTF(), in.readUnsignedShort());
+            } else {
+                throw new IOException("Unknown address type " + type);
+            }
+            Score score = new Score();
+            score.pingMsec = in.readLong();
+            score.bytesReceived = in.readLong();
+            score.connectedMsec = in.readLong();
+            score.stalls = in.readDouble();
+            score.invalid = in.readDouble();
+            score.failures = in.readDouble();
+            score.lastDecay = in.readLong();
+            loaded.put(key, score);
+        }
+        lock.lock();
+        try {
+            scores.clear();
+            scores.putAll(loaded);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Saves the scores to the given file, writing to a temporary file in the same directory first. */
+    public void saveToFile(File file) throws IOException {
+        StateFiles.save(this, file, "peerscores");
+    }
+
+    /** Loads the scores saved with {@link #saveToFile(File)}, if the file exists. */
+    public void loadFromFile(File file) throws IOException {
+        StateFiles.load(this, file);
+    }
+
+    @Override
+    public String toString() {
+        return "Scores for " + size() + " peer addresses";
+    }
+}
@@ -224,7 +224,7 @@ public abstract class PeerSocketHandler extends AbstractTimeoutHandler implement
     }
 
     /** Catch any exceptions, logging them and then closing the channel. */
-    private void exceptionCaught(Exception e) {
+    protected void exceptionCaught(Exception e) {
         PeerAddress addr = getAddress();
         String s = addr == null ? "?" : addr.toString();
         if (e instanceof ConnectException || e instanceof IOException) {
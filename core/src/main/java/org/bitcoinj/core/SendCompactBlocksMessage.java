@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import com.google.common.base.Objects;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Tells the remote peer that we understand compact blocks ("cmpctblock"), and whether it should announce new
+ * blocks to us by sending them in that form straight away. With announce set to false the peer keeps announcing
+ * blocks with inv or headers and sends a compact block only when we ask for one. See
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0152.mediawiki">BIP 152</a>.</p>
+ *
+ * <p>It is only sent to peers with a protocol version of at least {@link #MIN_PROTOCOL_VERSION}. GoldCoin nodes
+ * currently speak protocol version 70000 (see {@link NetworkParameters.ProtocolVersion#CURRENT}), so until they
+ * support compact blocks no peer will ever be sent this message, and blocks are always downloaded in full.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple threads.</p>
+ */
+public class SendCompactBlocksMessage extends Message {
+    public static final int MIN_PROTOCOL_VERSION = 70014;
+    /** The only version of compact blocks there is. */
+    public static final long VERSION = 1;
+
+    private boolean announce;
+    private long version;
+
+    public SendCompactBlocksMessage(NetworkParameters params, boolean announce, long version) {
+        super(params);
+        this.announce = announce;
+        this.version = version;
+    }
+
+    public SendCompactBlocksMessage(NetworkParameters params, byte[] payloadBytes) throws ProtocolException {
+        super(params, payloadBytes, 0);
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        announce = readBytes(1)[0] != 0;
+        version = readInt64();
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(OutputStream stream) throws IOException {
+        stream.write(announce ? 1 : 0);
+        Utils.int64ToByteStreamLE(version, stream);
+    }
+
+    /** Returns true if the sender wants new blocks to be sent to it as compact blocks without an inv first. */
+    public boolean getAnnounce() {
+        return announce;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "sendcmpct: announce " + announce + ", version " + version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SendCompactBlocksMessage other = (SendCompactBlocksMessage) o;
+        return announce == other.announce && version == other.version;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(announce, version);
+    }
+}
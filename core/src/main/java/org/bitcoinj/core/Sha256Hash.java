@@ -26,11 +26,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 
 /**
  * A Sha256Hash just wraps a byte[] so that equals and hashcode work correctly, allowing it to be used as keys in a
@@ -40,6 +42,15 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
     public static final int LENGTH = 32; // bytes
     public static final Sha256Hash ZERO_HASH = wrap(new byte[LENGTH]);
 
+    // One digest per thread, so that hashing doesn't look up the provider and allocate a new digest every time. The
+    // JDK's own SHA-256 implementation is compiled to the CPU's SHA instructions where the JVM supports them.
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            return newDigest();
+        }
+    };
+
     private final byte[] bytes;
 
     /**
@@ -162,6 +173,22 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
         }
     }
 
+    // Returns the digest of the calling thread. It must not be used after calling into code that may hash as well.
+    static MessageDigest threadDigest() {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    // Finishes the digest into the given array without allocating.
+    static void digestInto(MessageDigest digest, byte[] output, int outputOffset) {
+        try {
+            digest.digest(output, outputOffset, LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);  // Can't happen, the bounds are checked by the callers.
+        }
+    }
+
     /**
      * Calculates the SHA-256 hash of the given bytes.
      *
@@ -181,11 +208,24 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
      * @return the hash (in big-endian order)
      */
     public static byte[] hash(byte[] input, int offset, int length) {
-        MessageDigest digest = newDigest();
+        MessageDigest digest = threadDigest();
         digest.update(input, offset, length);
         return digest.digest();
     }
 
+    /**
+     * Calculates the SHA-256 hash of the given byte range and writes it to the output array, without allocating.
+     *
+     * @param output the array to write the hash (in big-endian order) to
+     * @param outputOffset the offset within the output array to write the 32 bytes of the hash at
+     */
+    public static void hashInto(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        checkPositionIndexes(outputOffset, outputOffset + LENGTH, output.length);
+        MessageDigest digest = threadDigest();
+        digest.update(input, offset, length);
+        digestInto(digest, output, outputOffset);
+    }
+
     /**
      * Calculates the SHA-256 hash of the given bytes,
      * and then hashes the resulting hash again.
@@ -207,9 +247,25 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
      * @return the double-hash (in big-endian order)
      */
     public static byte[] hashTwice(byte[] input, int offset, int length) {
-        MessageDigest digest = newDigest();
+        byte[] output = new byte[LENGTH];
+        hashTwiceInto(input, offset, length, output, 0);
+        return output;
+    }
+
+    /**
+     * Calculates the double SHA-256 hash of the given byte range and writes it to the output array, without
+     * allocating. The output may overlap the input.
+     *
+     * @param output the array to write the double-hash (in big-endian order) to
+     * @param outputOffset the offset within the output array to write the 32 bytes of the double-hash at
+     */
+    public static void hashTwiceInto(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        checkPositionIndexes(outputOffset, outputOffset + LENGTH, output.length);
+        MessageDigest digest = threadDigest();
         digest.update(input, offset, length);
-        return digest.digest(digest.digest());
+        digestInto(digest, output, outputOffset);
+        digest.update(output, outputOffset, LENGTH);
+        digestInto(digest, output, outputOffset);
     }
 
     /**
@@ -218,10 +274,37 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
      */
     public static byte[] hashTwice(byte[] input1, int offset1, int length1,
                                    byte[] input2, int offset2, int length2) {
-        MessageDigest digest = newDigest();
+        byte[] output = new byte[LENGTH];
+        hashTwiceInto(input1, offset1, length1, input2, offset2, length2, output, 0);
+        return output;
+    }
+
+    /**
+     * Calculates the hash of hash on the given byte ranges and writes it to the output array, without allocating.
+     * This is equivalent to concatenating the two ranges and then passing the result to
+     * {@link #hashTwiceInto(byte[], int, int, byte[], int)}.
+     */
+    public static void hashTwiceInto(byte[] input1, int offset1, int length1, byte[] input2, int offset2, int length2,
+                                     byte[] output, int outputOffset) {
+        checkPositionIndexes(outputOffset, outputOffset + LENGTH, output.length);
+        MessageDigest digest = threadDigest();
         digest.update(input1, offset1, length1);
         digest.update(input2, offset2, length2);
-        return digest.digest(digest.digest());
+        digestInto(digest, output, outputOffset);
+        digest.update(output, outputOffset, LENGTH);
+        digestInto(digest, output, outputOffset);
+    }
+
+    /**
+     * Calculates the double SHA-256 hash of the given byte range and returns it byte reversed, which is how the
+     * hashes of transactions and blocks are shown. This is the same as
+     * {@code wrapReversed(hashTwice(input, offset, length))} with a single allocation for the hash.
+     */
+    public static Sha256Hash twiceOfReversed(byte[] input, int offset, int length) {
+        byte[] bytes = new byte[LENGTH];
+        hashTwiceInto(input, offset, length, bytes, 0);
+        Utils.reverseBytesInPlace(bytes);
+        return wrap(bytes);
     }
 
     @Override
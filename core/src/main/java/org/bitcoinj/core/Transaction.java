@@ -251,7 +251,13 @@ public class Transaction extends ChildMessage {
     @Override
     public Sha256Hash getHash() {
         if (hash == null) {
-            hash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(unsafeBitcoinSerialize()));
+            // Hash the cached bytes where they are, rather than copying them out of the block they were read from.
+            if (payload != null && length != UNKNOWN_LENGTH) {
+                hash = Sha256Hash.twiceOfReversed(payload, offset, length);
+            } else {
+                byte[] bytes = unsafeBitcoinSerialize();
+                hash = Sha256Hash.twiceOfReversed(bytes, 0, bytes.length);
+            }
         }
         return hash;
     }
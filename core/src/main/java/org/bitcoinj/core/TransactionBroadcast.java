@@ -151,6 +151,10 @@ public class TransactionBroadcast {
             int numToBroadcastTo = (int) Math.max(1, Math.round(Math.ceil(peers.size() / 2.0)));
             numWaitingFor = (int) Math.ceil((peers.size() - numToBroadcastTo) / 2.0);
             Collections.shuffle(peers, random);
+            // Prefer the peers that have served us best, they are the most likely to relay it quickly.
+            PeerScores scores = peerGroup.getPeerScores();
+            if (scores != null)
+                scores.sortByQuality(peers);
             peers = peers.subList(0, numToBroadcastTo);
             log.info("broadcastTransaction: We have {} peers, adding {} to the memory pool", numConnected, tx.getHashAsString());
             log.info("Sending to {} peers, will wait for {}, sending to: {}", numToBroadcastTo, numWaitingFor, Joiner.on(",").join(peers));
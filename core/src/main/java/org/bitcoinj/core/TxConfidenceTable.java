@@ -17,12 +17,16 @@
 package org.bitcoinj.core;
 
 import org.bitcoinj.utils.*;
+import com.google.common.annotations.VisibleForTesting;
 
 import javax.annotation.*;
 import java.lang.ref.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -35,44 +39,185 @@ import static com.google.common.base.Preconditions.checkNotNull;
  *
  * <p>It is <b>not</b> at this time directly equivalent to the Bitcoin Core memory pool, which tracks
  * all transactions not currently included in the best chain - it's simply a cache.</p>
+ *
+ * <p>Every inv from every peer passes through {@link #seen(Sha256Hash, PeerAddress)}, so the table is split into
+ * shards by transaction hash, each with its own lock and its own share of the size limit. An entry is just the hash,
+ * a weak reference to the {@link TransactionConfidence} and a bitmap of the peers that announced it. Once nothing else
+ * references the confidence object it is dropped, but the bitmap stays, so the table can hold many more announced
+ * transactions than confidence objects and a confidence created later still knows who announced it.</p>
  */
 public class TxConfidenceTable {
-    protected ReentrantLock lock = Threading.lock("txconfidencetable");
-
     private static class WeakConfidenceReference extends WeakReference<TransactionConfidence> {
         public Sha256Hash hash;
-        public WeakConfidenceReference(TransactionConfidence confidence, ReferenceQueue<TransactionConfidence> queue) {
+        // One bit per peer slot, see slotFor().
+        public long announcedBy;
+        // The number of slot reassignments when announcedBy was last checked for slots given to another peer.
+        public long checkedAt;
+        public WeakConfidenceReference(Sha256Hash hash, @Nullable TransactionConfidence confidence,
+                                       ReferenceQueue<TransactionConfidence> queue) {
             super(confidence, queue);
-            hash = confidence.getTransactionHash();
+            this.hash = hash;
         }
     }
-    private LinkedHashMap<Sha256Hash, WeakConfidenceReference> table;
 
-    // This ReferenceQueue gets entries added to it when they are only weakly reachable, ie, the TxConfidenceTable is the
-    // only thing that is tracking the confidence data anymore. We check it from time to time and delete table entries
-    // corresponding to expired transactions. In this way memory usage of the system is in line with however many
-    // transactions you actually care to track the confidence of. We can still end up with lots of hashes being stored
-    // if our peers flood us with invs but the MAX_SIZE param caps this.
-    private ReferenceQueue<TransactionConfidence> referenceQueue;
+    private class Shard {
+        private final ReentrantLock lock = Threading.lock("txconfidencetable");
+        private final LinkedHashMap<Sha256Hash, WeakConfidenceReference> table;
+        // This ReferenceQueue gets entries added to it when they are only weakly reachable, ie, the TxConfidenceTable
+        // is the only thing that is tracking the confidence data anymore. We check it from time to time and drop the
+        // confidence part of the corresponding entries. In this way memory usage of the system is in line with however
+        // many transactions you actually care to track the confidence of. We can still end up with lots of hashes
+        // being stored if our peers flood us with invs but the size limit caps this.
+        private final ReferenceQueue<TransactionConfidence> referenceQueue = new ReferenceQueue<TransactionConfidence>();
+
+        Shard(final int size) {
+            table = new LinkedHashMap<Sha256Hash, WeakConfidenceReference>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Sha256Hash, WeakConfidenceReference> entry) {
+                    // An arbitrary choice to stop the memory used by tracked transactions getting too huge in the
+                    // event of some kind of DoS attack.
+                    if (size() <= size)
+                        return false;
+                    evictions.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * If any transactions have expired due to being only weakly reachable through us, forget their confidence
+         * objects - it means we downloaded the transaction and sent it to various event listeners, none of which
+         * bothered to keep a reference. Typically, this is because the transaction does not involve any keys that
+         * are relevant to any of our wallets. Who announced them is kept.
+         */
+        private void cleanLocked() {
+            Reference<? extends TransactionConfidence> ref;
+            while ((ref = referenceQueue.poll()) != null) {
+                // Find which transaction got deleted by the GC.
+                WeakConfidenceReference txRef = (WeakConfidenceReference) ref;
+                // The entry may have been evicted or replaced already.
+                if (table.get(txRef.hash) != txRef)
+                    continue;
+                WeakConfidenceReference announcements = new WeakConfidenceReference(txRef.hash, null, referenceQueue);
+                announcements.announcedBy = txRef.announcedBy;
+                announcements.checkedAt = txRef.checkedAt;
+                putLocked(announcements);
+            }
+        }
+
+        /**
+         * Clears the bits of the slots that were given to another peer since the entry was last checked, so the new
+         * peers aren't credited with what the old ones announced.
+         */
+        private void checkSlotsLocked(WeakConfidenceReference ref) {
+            long current = reassignments.get();
+            if (ref.checkedAt == current)
+                return;
+            long bits = ref.announcedBy;
+            while (bits != 0) {
+                int slot = Long.numberOfTrailingZeros(bits);
+                if (slotReassignedAt.get(slot) > ref.checkedAt)
+                    ref.announcedBy &= ~(1L << slot);
+                bits &= bits - 1;
+            }
+            ref.checkedAt = current;
+        }
+
+        private void putLocked(WeakConfidenceReference ref) {
+            // Replacing a value doesn't change the insertion order, so remove first to keep the newest last.
+            table.remove(ref.hash);
+            table.put(ref.hash, ref);
+        }
+
+        private TransactionConfidence getOrCreateLocked(Sha256Hash hash) {
+            WeakConfidenceReference reference = table.get(hash);
+            if (reference != null) {
+                TransactionConfidence confidence = reference.get();
+                if (confidence != null) {
+                    hits.incrementAndGet();
+                    return confidence;
+                }
+            }
+            misses.incrementAndGet();
+            TransactionConfidence newConfidence = new TransactionConfidence(hash);
+            WeakConfidenceReference newReference = new WeakConfidenceReference(hash, newConfidence, referenceQueue);
+            newReference.checkedAt = reassignments.get();
+            if (reference != null) {
+                // Announced before, but nothing kept the confidence object around. Tell the new one who did.
+                checkSlotsLocked(reference);
+                newReference.announcedBy = reference.announcedBy;
+                long bits = reference.announcedBy;
+                while (bits != 0) {
+                    PeerAddress peer = slotPeers.get(Long.numberOfTrailingZeros(bits));
+                    if (peer != null)
+                        newConfidence.markBroadcastBy(peer);
+                    bits &= bits - 1;
+                }
+            }
+            putLocked(newReference);
+            return newConfidence;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int shardMask;
+
+    // Peers are given one of 64 slots, which is the bit they set in the entries of the transactions they announce.
+    // A new peer takes a slot released by a peer that disconnected or, with more peers than slots, the slot whose
+    // peer announced something least recently. The bits the previous peer set aren't cleared from all entries then:
+    // each slot records the reassignment it was last given away in, and the bits of an entry are checked against
+    // that when it is next used, see Shard.checkSlotsLocked(). An announcement racing with a reassignment can still
+    // end up credited to the slot's new peer.
+    private static final int PEER_SLOTS = 64;
+    private final ConcurrentHashMap<PeerAddress, Integer> peerSlots = new ConcurrentHashMap<PeerAddress, Integer>();
+    // The peer each slot was last given to. It's kept after the peer disconnects as its bits still count until the
+    // slot is reused.
+    private final AtomicReferenceArray<PeerAddress> slotPeers = new AtomicReferenceArray<PeerAddress>(PEER_SLOTS);
+    // The announcement count at the last announcement of each slot's peer, -1 once the peer disconnected.
+    private final AtomicLongArray slotLastSeen = new AtomicLongArray(PEER_SLOTS);
+    private final AtomicLongArray slotReassignedAt = new AtomicLongArray(PEER_SLOTS);
+    private final AtomicLong reassignments = new AtomicLong();
+    private final Object slotAssignmentLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong announcements = new AtomicLong();
+    private final Object rateLock = new Object();
+    private long rateSampleTimeMsec, rateSampleAnnouncements;
+    private double announcementRate;
 
     /** The max size of a table created with the no-args constructor. */
     public static final int MAX_SIZE = 1000;
 
+    /** The number of shards of a table created without a concurrency level. */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
     /**
      * Creates a table that will track at most the given number of transactions (allowing you to bound memory
      * usage).
      * @param size Max number of transactions to track. The table will fill up to this size then stop growing.
      */
     public TxConfidenceTable(final int size) {
-        table = new LinkedHashMap<Sha256Hash, WeakConfidenceReference>() {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Sha256Hash, WeakConfidenceReference> entry) {
-                // An arbitrary choice to stop the memory used by tracked transactions getting too huge in the event
-                // of some kind of DoS attack.
-                return size() > size;
-            }
-        };
-        referenceQueue = new ReferenceQueue<TransactionConfidence>();
+        this(size, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a table that will track at most the given number of transactions, split into shards so that about the
+     * given number of threads can update it without contending. Each shard evicts its oldest entries on its own, so
+     * the table as a whole only approximates evicting the oldest entries first.
+     * @param size Max number of transactions to track. The table will fill up to this size then stop growing.
+     * @param concurrencyLevel The number of shards, rounded down to a power of two and to no more than size.
+     */
+    public TxConfidenceTable(final int size, final int concurrencyLevel) {
+        checkArgument(size > 0, "size must be positive");
+        checkArgument(concurrencyLevel > 0, "concurrencyLevel must be positive");
+        int numShards = Integer.highestOneBit(Math.min(size, concurrencyLevel));
+        shards = new Shard[numShards];
+        shardMask = numShards - 1;
+        for (int i = 0; i < numShards; i++)
+            shards[i] = new Shard(size / numShards + (i < size % numShards ? 1 : 0));
+        rateSampleTimeMsec = Utils.currentTimeMillis();
     }
 
     /**
@@ -83,24 +228,45 @@ public class TxConfidenceTable {
         this(MAX_SIZE);
     }
 
+    private Shard shardFor(Sha256Hash hash) {
+        // Hashes are uniformly distributed, so any bits will do.
+        return shards[hash.hashCode() & shardMask];
+    }
+
+    private int slotFor(PeerAddress peer, long announcement) {
+        Integer slot = peerSlots.get(peer);
+        if (slot == null) {
+            synchronized (slotAssignmentLock) {
+                slot = peerSlots.get(peer);
+                if (slot == null) {
+                    // Released slots come first, then ones that were never used, then the least recently seen.
+                    int newSlot = 0;
+                    for (int i = 1; i < PEER_SLOTS; i++)
+                        if (slotLastSeen.get(i) < slotLastSeen.get(newSlot))
+                            newSlot = i;
+                    PeerAddress previous = slotPeers.get(newSlot);
+                    if (previous != null)
+                        peerSlots.remove(previous, newSlot);
+                    slotReassignedAt.set(newSlot, reassignments.incrementAndGet());
+                    slotPeers.set(newSlot, peer);
+                    peerSlots.put(peer, newSlot);
+                    slot = newSlot;
+                }
+            }
+        }
+        slotLastSeen.set(slot, announcement);
+        return slot;
+    }
+
     /**
-     * If any transactions have expired due to being only weakly reachable through us, go ahead and delete their
-     * table entries - it means we downloaded the transaction and sent it to various event listeners, none of
-     * which bothered to keep a reference. Typically, this is because the transaction does not involve any keys that
-     * are relevant to any of our wallets.
+     * Called when a peer disconnects, so that the next new peer takes its slot. What the peer announced still counts
+     * until then.
      */
-    private void cleanTable() {
-        lock.lock();
-        try {
-            Reference<? extends TransactionConfidence> ref;
-            while ((ref = referenceQueue.poll()) != null) {
-                // Find which transaction got deleted by the GC.
-                WeakConfidenceReference txRef = (WeakConfidenceReference) ref;
-                // And remove the associated map entry so the other bits of memory can also be reclaimed.
-                table.remove(txRef.hash);
-            }
-        } finally {
-            lock.unlock();
+    public void peerDisconnected(PeerAddress peer) {
+        synchronized (slotAssignmentLock) {
+            Integer slot = peerSlots.remove(peer);
+            if (slot != null)
+                slotLastSeen.set(slot, -1);
         }
     }
 
@@ -108,24 +274,25 @@ public class TxConfidenceTable {
      * Returns the number of peers that have seen the given hash recently.
      */
     public int numBroadcastPeers(Sha256Hash txHash) {
-        lock.lock();
+        Shard shard = shardFor(txHash);
+        shard.lock.lock();
         try {
-            cleanTable();
-            WeakConfidenceReference entry = table.get(txHash);
+            shard.cleanLocked();
+            WeakConfidenceReference entry = shard.table.get(txHash);
             if (entry == null) {
                 return 0;  // No such TX known.
             } else {
                 TransactionConfidence confidence = entry.get();
                 if (confidence == null) {
-                    // Such a TX hash was seen, but nothing seemed to care so we ended up throwing away the data.
-                    table.remove(txHash);
-                    return 0;
+                    // Such a TX hash was seen, but nothing seemed to care so we only kept who announced it.
+                    shard.checkSlotsLocked(entry);
+                    return Long.bitCount(entry.announcedBy);
                 } else {
                     return confidence.numBroadcastPeers();
                 }
             }
         } finally {
-            lock.unlock();
+            shard.lock.unlock();
         }
     }
 
@@ -138,13 +305,19 @@ public class TxConfidenceTable {
     public TransactionConfidence seen(Sha256Hash hash, PeerAddress byPeer) {
         TransactionConfidence confidence;
         boolean fresh = false;
-        lock.lock();
-        {
-            cleanTable();
-            confidence = getOrCreate(hash);
+        int slot = slotFor(byPeer, announcements.incrementAndGet());
+        Shard shard = shardFor(hash);
+        shard.lock.lock();
+        try {
+            shard.cleanLocked();
+            confidence = shard.getOrCreateLocked(hash);
+            WeakConfidenceReference entry = shard.table.get(hash);
+            shard.checkSlotsLocked(entry);
+            entry.announcedBy |= 1L << slot;
             fresh = confidence.markBroadcastBy(byPeer);
+        } finally {
+            shard.lock.unlock();
         }
-        lock.unlock();
         if (fresh)
             confidence.queueListeners(TransactionConfidence.Listener.ChangeReason.SEEN_PEERS);
         return confidence;
@@ -156,19 +329,13 @@ public class TxConfidenceTable {
      */
     public TransactionConfidence getOrCreate(Sha256Hash hash) {
         checkNotNull(hash);
-        lock.lock();
+        Shard shard = shardFor(hash);
+        shard.lock.lock();
         try {
-            WeakConfidenceReference reference = table.get(hash);
-            if (reference != null) {
-                TransactionConfidence confidence = reference.get();
-                if (confidence != null)
-                    return confidence;
-            }
-            TransactionConfidence newConfidence = new TransactionConfidence(hash);
-            table.put(hash, new WeakConfidenceReference(newConfidence, referenceQueue));
-            return newConfidence;
+            shard.cleanLocked();
+            return shard.getOrCreateLocked(hash);
         } finally {
-            lock.unlock();
+            shard.lock.unlock();
         }
     }
 
@@ -178,18 +345,93 @@ public class TxConfidenceTable {
      */
     @Nullable
     public TransactionConfidence get(Sha256Hash hash) {
-        lock.lock();
+        Shard shard = shardFor(hash);
+        shard.lock.lock();
         try {
-            WeakConfidenceReference ref = table.get(hash);
-            if (ref == null)
-                return null;
-            TransactionConfidence confidence = ref.get();
+            WeakConfidenceReference ref = shard.table.get(hash);
+            TransactionConfidence confidence = ref == null ? null : ref.get();
             if (confidence != null)
-                return confidence;
+                hits.incrementAndGet();
             else
-                return null;
+                misses.incrementAndGet();
+            return confidence;
         } finally {
-            lock.unlock();
+            shard.lock.unlock();
         }
     }
+
+    /** Drops the confidence object of the given hash as if it had been garbage collected, keeping who announced it. */
+    @VisibleForTesting
+    void forgetConfidence(Sha256Hash hash) {
+        Shard shard = shardFor(hash);
+        shard.lock.lock();
+        try {
+            WeakConfidenceReference ref = shard.table.get(hash);
+            if (ref != null) {
+                ref.clear();
+                ref.enqueue();
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /** Returns the number of transactions currently tracked, whether or not their confidence objects are alive. */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.table.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /** Returns how many lookups found a live {@link TransactionConfidence}. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Returns how many lookups did not find a live {@link TransactionConfidence}, creating one where asked to. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Returns how many entries were dropped to stay within the size limit. */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** Returns how many announcements have been passed to {@link #seen(Sha256Hash, PeerAddress)}. */
+    public long getAnnouncements() {
+        return announcements.get();
+    }
+
+    /**
+     * Returns the rate of announcements per second. The rate is measured between calls to this method, so call it
+     * periodically, and smoothed over successive calls.
+     */
+    public double getAnnouncementRate() {
+        synchronized (rateLock) {
+            long now = Utils.currentTimeMillis();
+            long count = announcements.get();
+            long elapsed = now - rateSampleTimeMsec;
+            if (elapsed > 0) {
+                double rate = (count - rateSampleAnnouncements) * 1000.0 / elapsed;
+                announcementRate = rateSampleAnnouncements == 0 ? rate : (announcementRate + rate) / 2;
+                rateSampleTimeMsec = now;
+                rateSampleAnnouncements = count;
+            }
+            return announcementRate;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d txns tracked, %d hits, %d misses, %d evictions, %d announcements",
+                size(), getHits(), getMisses(), getEvictions(), getAnnouncements());
+    }
 }
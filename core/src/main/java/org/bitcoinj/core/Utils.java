@@ -164,6 +164,24 @@ public class Utils {
             buf[i] = bytes[bytes.length - 1 - i];
         return buf;
     }
+
+    /**
+     * Reverses the given range of the byte array in place.
+     */
+    public static void reverseBytesInPlace(byte[] bytes, int offset, int length) {
+        for (int i = offset, j = offset + length - 1; i < j; i++, j--) {
+            byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+    }
+
+    /**
+     * Reverses the given byte array in place.
+     */
+    public static void reverseBytesInPlace(byte[] bytes) {
+        reverseBytesInPlace(bytes, 0, bytes.length);
+    }
     
     /**
      * Returns a copy of the given byte array with the bytes of each double-word (4 bytes) reversed.
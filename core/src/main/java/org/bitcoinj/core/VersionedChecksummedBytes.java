@@ -19,7 +19,13 @@ package org.bitcoinj.core;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 import com.google.common.base.Objects;
 import com.google.common.primitives.Ints;
@@ -36,13 +42,22 @@ import com.google.common.primitives.UnsignedBytes;
 public class VersionedChecksummedBytes implements Serializable, Cloneable, Comparable<VersionedChecksummedBytes> {
     protected final int version;
     protected byte[] bytes;
+    // The base58 form, which is the same for equal objects and expensive to compute, so it's kept once it's known.
+    // Racing threads can only ever write the same string.
+    @Nullable private transient String base58;
 
     protected VersionedChecksummedBytes(String encoded) throws AddressFormatException {
-        byte[] versionAndDataBytes = Base58.decodeChecked(encoded);
+        this(Base58.decodeChecked(encoded), encoded);
+    }
+
+    // Takes the decoded version and data bytes of the given base58 string.
+    protected VersionedChecksummedBytes(byte[] versionAndDataBytes, String encoded) {
         byte versionByte = versionAndDataBytes[0];
         version = versionByte & 0xFF;
         bytes = new byte[versionAndDataBytes.length - 1];
         System.arraycopy(versionAndDataBytes, 1, bytes, 0, versionAndDataBytes.length - 1);
+        // The base58 encoding of a number is unique, so this is exactly what toBase58() would return.
+        base58 = encoded;
     }
 
     protected VersionedChecksummedBytes(int version, byte[] bytes) {
@@ -56,14 +71,49 @@ public class VersionedChecksummedBytes implements Serializable, Cloneable, Compa
      * object, including version and checksum bytes.
      */
     public final String toBase58() {
-        // A stringified buffer is:
-        //   1 byte version + data bytes + 4 bytes check code (a truncated hash)
-        byte[] addressBytes = new byte[1 + bytes.length + 4];
-        addressBytes[0] = (byte) version;
-        System.arraycopy(bytes, 0, addressBytes, 1, bytes.length);
-        byte[] checksum = Sha256Hash.hashTwice(addressBytes, 0, bytes.length + 1);
-        System.arraycopy(checksum, 0, addressBytes, bytes.length + 1, 4);
-        return Base58.encode(addressBytes);
+        String result = base58;
+        if (result == null) {
+            // A stringified buffer is:
+            //   1 byte version + data bytes + 4 bytes check code (a truncated hash)
+            result = Base58.encodeChecked(version, bytes);
+            base58 = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the base-58 forms of the given objects like {@link #toBase58()}, encoding all the ones that don't know
+     * theirs yet together.
+     */
+    public static List<String> toBase58(List<? extends VersionedChecksummedBytes> objects) {
+        String[] result = new String[objects.size()];
+        // Group the objects that still need to be encoded by version.
+        Map<Integer, List<Integer>> pending = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < result.length; i++) {
+            VersionedChecksummedBytes object = objects.get(i);
+            result[i] = object.base58;
+            if (result[i] == null) {
+                List<Integer> indexes = pending.get(object.version);
+                if (indexes == null) {
+                    indexes = new ArrayList<Integer>();
+                    pending.put(object.version, indexes);
+                }
+                indexes.add(i);
+            }
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : pending.entrySet()) {
+            List<byte[]> payloads = new ArrayList<byte[]>(entry.getValue().size());
+            for (int i : entry.getValue())
+                payloads.add(objects.get(i).bytes);
+            List<String> encoded = Base58.encodeChecked(entry.getKey(), payloads);
+            for (int j = 0; j < encoded.size(); j++) {
+                int i = entry.getValue().get(j);
+                VersionedChecksummedBytes object = objects.get(i);
+                result[i] = encoded.get(j);
+                object.base58 = result[i];
+            }
+        }
+        return Arrays.asList(result);
     }
 
     @Override
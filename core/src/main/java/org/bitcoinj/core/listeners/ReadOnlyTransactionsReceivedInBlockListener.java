@@ -0,0 +1,26 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core.listeners;
+
+/**
+ * A {@link TransactionsReceivedInBlockListener} that neither keeps nor modifies the transactions it is given, for
+ * example because it only looks at their hashes. Listeners other than the first normally get copies of the
+ * transactions so that they don't share objects with each other, which costs serializing and parsing every
+ * transaction of every block again. A listener implementing this gets the same objects as the first one instead.
+ */
+public interface ReadOnlyTransactionsReceivedInBlockListener extends TransactionsReceivedInBlockListener {
+}
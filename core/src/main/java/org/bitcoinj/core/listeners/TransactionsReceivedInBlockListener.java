@@ -0,0 +1,50 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core.listeners;
+
+import org.bitcoinj.core.BlockChain;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.VerificationException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link TransactionReceivedInBlockListener} that can take all the transactions of a block in one call. The block
+ * chain uses this in preference to the per-transaction methods, which lets listeners such as the wallet do their
+ * per-block work (locking, change events, saving) once rather than once per transaction.
+ */
+public interface TransactionsReceivedInBlockListener extends TransactionReceivedInBlockListener {
+    /**
+     * <p>Called by the {@link BlockChain} when we receive a new block or {@link org.bitcoinj.core.FilteredBlock}. It
+     * is equivalent to calling
+     * {@link #receiveFromBlock(Transaction, StoredBlock, BlockChain.NewBlockType, int)} for each hash that has an
+     * entry in the transactions map, and
+     * {@link #notifyTransactionIsInBlock(Sha256Hash, StoredBlock, BlockChain.NewBlockType, int)} for each that has
+     * not, in order. The relativity offset of a transaction is its index in txHashes.</p>
+     *
+     * @param txHashes the hashes of the transactions in the order they appear in the block
+     * @param transactions the full transactions that are available, keyed by hash
+     * @return the hashes of the transactions that were relevant or already known about. The caller needs this to
+     * calculate the effective FP rate.
+     */
+    Set<Sha256Hash> receiveFromBlock(List<Sha256Hash> txHashes, Map<Sha256Hash, Transaction> transactions,
+                                     StoredBlock block, BlockChain.NewBlockType blockType) throws VerificationException;
+}
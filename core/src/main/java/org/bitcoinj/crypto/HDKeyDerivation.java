@@ -212,6 +212,21 @@ public final class HDKeyDerivation {
         return new RawKeyBytes(Ki.getEncoded(true), chainCode);
     }
 
+    /**
+     * Returns the chain code of the given non-hardened child of the parent. Unlike deriving the child itself this
+     * takes a single HMAC and no EC math, so it's cheap enough to do whenever a child whose public key is already
+     * known has to be turned into a {@link DeterministicKey} again.
+     */
+    public static byte[] deriveChildChainCode(DeterministicKey parent, ChildNumber childNumber) {
+        checkArgument(!childNumber.isHardened(), "Chain codes of hardened children need the private key.");
+        byte[] parentPublicKey = parent.getPubKeyPoint().getEncoded(true);
+        ByteBuffer data = ByteBuffer.allocate(37);
+        data.put(parentPublicKey);
+        data.putInt(childNumber.i());
+        byte[] i = HDUtils.hmacSha512(parent.getChainCode(), data.array());
+        return Arrays.copyOfRange(i, 32, 64);
+    }
+
     private static void assertNonZero(BigInteger integer, String errorMessage) {
         if (integer.equals(BigInteger.ZERO))
             throw new HDDerivationException(errorMessage);
@@ -16,10 +16,14 @@ package org.bitcoinj.net;
 
 import com.google.common.collect.Lists;
 import org.bitcoinj.core.BloomFilter;
+import org.bitcoinj.core.GrowablePeerFilterProvider;
 import org.bitcoinj.core.PeerFilterProvider;
 import com.google.common.collect.ImmutableList;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 // This code is unit tested by the PeerGroup tests.
 
@@ -28,6 +32,12 @@ import java.util.LinkedList;
  * {@link org.bitcoinj.core.BloomFilter} and earliest key time for all of them.
  * Used by the {@link org.bitcoinj.core.PeerGroup} class internally.</p>
  *
+ * <p>Filters are built with room for more elements than the providers have, and as they get more elements a copy of
+ * the last filter is grown by inserting only the elements it doesn't match yet. The filter is only built again from
+ * scratch once that would make its false positive rate drift too far from that of a newly built one, or if any of the
+ * providers isn't a {@link org.bitcoinj.core.GrowablePeerFilterProvider}. Filters that were returned are never
+ * modified, as peers may still be using them.</p>
+ *
  * <p>Thread safety: threading here can be complicated. Each filter provider is given a begin event, which may acquire
  * a lock (and is guaranteed to receive an end event). This class is mostly thread unsafe and is meant to be used from a
  * single thread only, PeerGroup ensures this by only accessing it from the dedicated PeerGroup thread. PeerGroup does
@@ -36,12 +46,22 @@ import java.util.LinkedList;
  * thread. However the bloomFilterFPRate property IS thread safe, for convenience.</p>
  */
 public class FilterMerger {
+    /**
+     * How many times higher than that of a newly built filter the false positive rate of a filter that was grown in
+     * place may get before it is built again.
+     */
+    public static final double MAX_FP_RATE_DRIFT = 2.0;
+
     // We use a constant tweak to avoid giving up privacy when we regenerate our filter with new keys
     private final long bloomFilterTweak = (long) (Math.random() * Long.MAX_VALUE);
 
     private volatile double vBloomFilterFPRate;
     private int lastBloomFilterElementCount;
     private BloomFilter lastFilter;
+    // What the last filter was built with, and how many elements it holds now.
+    private double lastFPRate;
+    private BloomFilter.BloomUpdate lastBloomFlags;
+    private int lastFilterElements;
 
     public FilterMerger(double bloomFilterFPRate) {
         this.vBloomFilterFPRate = bloomFilterFPRate;
@@ -51,9 +71,23 @@ public class FilterMerger {
         public BloomFilter filter;
         public long earliestKeyTimeSecs;
         public boolean changed;
+        /**
+         * If the last filter was grown instead of being built again, the elements that were inserted into
+         * it, so that peers that have the previous filter can be sent just those. Otherwise null.
+         */
+        @Nullable public List<byte[]> addedElements;
     }
 
     public Result calculate(ImmutableList<PeerFilterProvider> providers) {
+        return calculate(providers, false);
+    }
+
+    /**
+     * Calculates the merged filter, growing a copy of the last one if possible. The filter is built again from scratch
+     * if forceRebuild is set, when the false positive rate or the update flags changed, or when growing it would make
+     * its false positive rate more than {@link #MAX_FP_RATE_DRIFT} times that of a newly built filter.
+     */
+    public Result calculate(ImmutableList<PeerFilterProvider> providers, boolean forceRebuild) {
         LinkedList<PeerFilterProvider> begunProviders = Lists.newLinkedList();
         try {
             // All providers must be in a consistent, unchanging state because the filter is a merged one that's
@@ -75,20 +109,30 @@ public class FilterMerger {
             }
 
             if (elements > 0) {
-                // We stair-step our element count so that we avoid creating a filter with different parameters
-                // as much as possible as that results in a loss of privacy.
-                // The constant 100 here is somewhat arbitrary, but makes sense for small to medium wallets -
-                // it will likely mean we never need to create a filter with different parameters.
-                lastBloomFilterElementCount = elements > lastBloomFilterElementCount ? elements + 100 : lastBloomFilterElementCount;
                 BloomFilter.BloomUpdate bloomFlags =
                         requiresUpdateAll ? BloomFilter.BloomUpdate.UPDATE_ALL : BloomFilter.BloomUpdate.UPDATE_P2PUBKEY_ONLY;
                 double fpRate = vBloomFilterFPRate;
-                BloomFilter filter = new BloomFilter(lastBloomFilterElementCount, fpRate, bloomFilterTweak, bloomFlags);
-                for (PeerFilterProvider p : providers)
-                    filter.merge(p.getBloomFilter(lastBloomFilterElementCount, fpRate, bloomFilterTweak));
+                if (!forceRebuild && lastFilter != null && fpRate == lastFPRate && bloomFlags == lastBloomFlags)
+                    result.addedElements = growLastFilter(providers, elements, fpRate);
+                if (result.addedElements != null) {
+                    result.changed = !result.addedElements.isEmpty();
+                    result.filter = lastFilter;
+                } else {
+                    // We stair-step our element count so that we avoid creating a filter with different parameters
+                    // as much as possible as that results in a loss of privacy. The headroom also lets the filter
+                    // grow for a while before it has to be built again.
+                    if (elements > lastBloomFilterElementCount)
+                        lastBloomFilterElementCount = withHeadroom(elements);
+                    BloomFilter filter = new BloomFilter(lastBloomFilterElementCount, fpRate, bloomFilterTweak, bloomFlags);
+                    for (PeerFilterProvider p : providers)
+                        filter.merge(p.getBloomFilter(lastBloomFilterElementCount, fpRate, bloomFilterTweak));
 
-                result.changed = !filter.equals(lastFilter);
-                result.filter = lastFilter = filter;
+                    result.changed = !filter.equals(lastFilter);
+                    result.filter = lastFilter = filter;
+                    lastFPRate = fpRate;
+                    lastBloomFlags = bloomFlags;
+                    lastFilterElements = elements;
+                }
             }
             // Now adjust the earliest key time backwards by a week to handle the case of clock drift. This can occur
             // both in block header timestamps and if the users clock was out of sync when the key was first created
@@ -102,6 +146,53 @@ public class FilterMerger {
         }
     }
 
+    // The constant 100 is somewhat arbitrary, but makes sense for small to medium wallets: it will likely mean we
+    // never need to create a filter with different parameters. Larger wallets get half as many elements again.
+    private static int withHeadroom(int elements) {
+        return elements + Math.max(100, elements / 2);
+    }
+
+    /**
+     * Replaces the last filter with a copy that also has the elements the last filter doesn't match yet and returns
+     * them, or returns null without touching the filter if it should be built again instead.
+     */
+    @Nullable
+    private List<byte[]> growLastFilter(List<PeerFilterProvider> providers, int elements, double fpRate) {
+        for (PeerFilterProvider p : providers) {
+            if (!(p instanceof GrowablePeerFilterProvider))
+                return null;
+        }
+        List<byte[]> missing = new ArrayList<byte[]>();
+        for (PeerFilterProvider p : providers) {
+            for (byte[] element : ((GrowablePeerFilterProvider) p).getBloomFilterElements()) {
+                if (!lastFilter.contains(element))
+                    missing.add(element);
+            }
+        }
+        if (missing.isEmpty())
+            return missing;
+        // Elements the providers no longer have, such as spent outpoints, are still in the filter so count them too.
+        int held = lastFilterElements + missing.size();
+        int capacity = Math.max(lastBloomFilterElementCount, withHeadroom(elements));
+        double rebuiltRate = new BloomFilter(capacity, fpRate, bloomFilterTweak).getFalsePositiveRate(elements);
+        if (lastFilter.getFalsePositiveRate(held) > rebuiltRate * MAX_FP_RATE_DRIFT)
+            return null;
+        // Peers may still hold the last filter, so grow a copy of it. One with the same parameters merges into it.
+        BloomFilter filter = new BloomFilter(lastBloomFilterElementCount, lastFPRate, bloomFilterTweak, lastBloomFlags);
+        filter.merge(lastFilter);
+        List<byte[]> added = new ArrayList<byte[]>(missing.size());
+        for (byte[] element : missing) {
+            // The same element may come from more than one provider.
+            if (!filter.contains(element)) {
+                filter.insert(element);
+                added.add(element);
+            }
+        }
+        lastFilter = filter;
+        lastFilterElements += added.size();
+        return added;
+    }
+
     public void setBloomFilterFPRate(double bloomFilterFPRate) {
         this.vBloomFilterFPRate = bloomFilterFPRate;
     }
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.net.discovery;
+
+import org.bitcoinj.core.AddressMessage;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.listeners.PreMessageReceivedEventListener;
+import org.bitcoinj.utils.StateFiles;
+import org.bitcoinj.utils.Threading;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Remembers the addresses of peers across restarts, so that we can connect to the network straight away instead of
+ * waiting for DNS seeds. Addresses learned from {@code addr} messages go into "new" buckets, and move into "tried"
+ * buckets once we have successfully connected to them. Which bucket an address lands in is decided by a keyed hash of
+ * its network group (and, for new addresses, the group of the peer that told us about it), so a single peer or
+ * network can't fill the book with addresses it controls. Each bucket holds a fixed number of addresses, which bounds
+ * the size of the book; when a bucket is full the stalest address in it is dropped.</p>
+ *
+ * <p>As a {@link PeerDiscovery} it returns tried addresses first, most recently successful first, then new ones.
+ * Attach it with {@link org.bitcoinj.core.PeerGroup#setAddressBook(AddressBook)}, which feeds it connection results
+ * and {@code addr} traffic, queries it before any other discovery source and saves it regularly if
+ * {@link #setAutosaveFile(File)} was used. The file format is a compact binary one of 42 bytes per address.</p>
+ */
+public class AddressBook implements PeerDiscovery, PreMessageReceivedEventListener, StateFiles.State {
+    private static final Logger log = LoggerFactory.getLogger(AddressBook.class);
+
+    public static final int NEW_BUCKET_COUNT = 256;
+    public static final int TRIED_BUCKET_COUNT = 64;
+    public static final int BUCKET_SIZE = 64;
+    // How many buckets addresses from one source group, or one address group in the tried table, can spread over.
+    private static final int NEW_BUCKETS_PER_SOURCE_GROUP = 32;
+    private static final int TRIED_BUCKETS_PER_GROUP = 8;
+    // The most addresses returned from a single call to getPeers.
+    private static final int MAX_ADDRESSES_RETURNED = 1000;
+    // Addresses not heard of for this long are dropped first.
+    private static final long HORIZON_SECS = 30 * 24 * 60 * 60;
+    private static final int MAX_RETRIES = 3;
+    private static final int MAX_FAILURES = 10;
+    private static final long MIN_FAIL_SECS = 7 * 24 * 60 * 60;
+    private static final int FILE_VERSION = 1;
+
+    private final ReentrantLock lock = Threading.lock("addressbook");
+
+    private static class Entry {
+        final InetSocketAddress address;
+        long services;
+        long lastSeen, lastSuccess, lastAttempt;  // seconds, zero if never.
+        int attempts;
+        boolean tried;
+        int bucket;
+
+        Entry(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        boolean isTerrible(long now) {
+            if (lastAttempt >= now - 60)
+                return false;  // Never remove things tried in the last minute.
+            if (lastSeen > now + 10 * 60)
+                return true;  // Came in a flying DeLorean.
+            if (lastSeen == 0 || now - lastSeen > HORIZON_SECS)
+                return true;
+            if (lastSuccess == 0 && attempts >= MAX_RETRIES)
+                return true;
+            return now - lastSuccess > MIN_FAIL_SECS && attempts >= MAX_FAILURES;
+        }
+    }
+
+    @GuardedBy("lock") private final Map<InetSocketAddress, Entry> entries = new HashMap<InetSocketAddress, Entry>();
+    @GuardedBy("lock") private final List<List<Entry>> newBuckets = newBuckets(NEW_BUCKET_COUNT);
+    @GuardedBy("lock") private final List<List<Entry>> triedBuckets = newBuckets(TRIED_BUCKET_COUNT);
+    @GuardedBy("lock") private long key0, key1;
+    @GuardedBy("lock") private HashFunction hashFunction;
+    @GuardedBy("lock") private boolean dirty;
+    @GuardedBy("lock") @Nullable private File autosaveFile;
+
+    public AddressBook() {
+        SecureRandom random = new SecureRandom();
+        setKey(random.nextLong(), random.nextLong());
+    }
+
+    private static List<List<Entry>> newBuckets(int count) {
+        List<List<Entry>> buckets = new ArrayList<List<Entry>>(count);
+        for (int i = 0; i < count; i++)
+            buckets.add(new ArrayList<Entry>());
+        return buckets;
+    }
+
+    @GuardedBy("lock")
+    private void setKey(long key0, long key1) {
+        this.key0 = key0;
+        this.key1 = key1;
+        this.hashFunction = Hashing.sipHash24(key0, key1);
+    }
+
+    // IPv4 addresses are grouped by /16 and IPv6 ones by /32.
+    private static byte[] group(InetAddress address) {
+        return Arrays.copyOf(address.getAddress(), address instanceof Inet4Address ? 2 : 4);
+    }
+
+    @GuardedBy("lock")
+    private int hash(byte[] a, byte[] b, int c, int range) {
+        long hash = hashFunction.newHasher().putBytes(a).putByte((byte) 0).putBytes(b).putInt(c).hash().asLong();
+        return (int) ((hash & Long.MAX_VALUE) % range);
+    }
+
+    @GuardedBy("lock")
+    private int newBucket(InetAddress address, InetAddress source) {
+        byte[] sourceGroup = group(source);
+        int spread = hash(sourceGroup, group(address), 0, NEW_BUCKETS_PER_SOURCE_GROUP);
+        return hash(sourceGroup, new byte[0], spread, NEW_BUCKET_COUNT);
+    }
+
+    @GuardedBy("lock")
+    private int triedBucket(InetSocketAddress address) {
+        int spread = hash(address.getAddress().getAddress(), new byte[0], address.getPort(), TRIED_BUCKETS_PER_GROUP);
+        return hash(group(address.getAddress()), new byte[0], spread, TRIED_BUCKET_COUNT);
+    }
+
+    @Nullable
+    private static InetSocketAddress keyOf(PeerAddress address) {
+        // Onion addresses and the like aren't kept.
+        if (address.getAddr() == null || address.getPort() == 0)
+            return null;
+        return new InetSocketAddress(address.getAddr(), address.getPort());
+    }
+
+    // Puts the entry in the given bucket, dropping the stalest entry there if it is full.
+    @GuardedBy("lock")
+    private void placeLocked(Entry entry, boolean tried, int bucket, long now) {
+        List<Entry> list = (tried ? triedBuckets : newBuckets).get(bucket);
+        if (list.size() >= BUCKET_SIZE) {
+            Entry victim = null;
+            for (Entry candidate : list) {
+                if (candidate.isTerrible(now)) {
+                    victim = candidate;
+                    break;
+                }
+                if (victim == null || (tried ? candidate.lastSuccess < victim.lastSuccess : candidate.lastSeen < victim.lastSeen))
+                    victim = candidate;
+            }
+            list.remove(victim);
+            if (tried) {
+                // Addresses pushed out of the tried table get another chance as new ones.
+                placeLocked(victim, false, newBucket(victim.address.getAddress(), victim.address.getAddress()), now);
+            } else {
+                entries.remove(victim.address);
+            }
+        }
+        entry.tried = tried;
+        entry.bucket = bucket;
+        list.add(entry);
+    }
+
+    @GuardedBy("lock")
+    private void unplaceLocked(Entry entry) {
+        (entry.tried ? triedBuckets : newBuckets).get(entry.bucket).remove(entry);
+    }
+
+    /**
+     * Adds addresses that the given peer told us about to the new buckets, or updates when they were last seen and
+     * which services they offer if we know them already.
+     */
+    public void add(List<PeerAddress> addresses, PeerAddress source) {
+        if (source.getAddr() == null)
+            return;
+        long now = Utils.currentTimeSeconds();
+        lock.lock();
+        try {
+            for (PeerAddress address : addresses) {
+                InetSocketAddress key = keyOf(address);
+                if (key == null)
+                    continue;
+                // Don't trust timestamps from the future, and treat missing ones as five days old.
+                long time = address.getTime();
+                if (time <= 0 || time > now + 10 * 60)
+                    time = now - 5 * 24 * 60 * 60;
+                long services = address.getServices().longValue();
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry(key);
+                    entry.lastSeen = Math.min(time, now);
+                    entry.services = services;
+                    entries.put(key, entry);
+                    placeLocked(entry, false, newBucket(key.getAddress(), source.getAddr()), now);
+                } else {
+                    entry.lastSeen = Math.max(entry.lastSeen, Math.min(time, now));
+                    entry.services |= services;
+                }
+            }
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that we connected to the given address, moving it into the tried buckets. */
+    public void markGood(PeerAddress address, long services) {
+        InetSocketAddress key = keyOf(address);
+        if (key == null)
+            return;
+        long now = Utils.currentTimeSeconds();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                entries.put(key, entry);
+            } else {
+                unplaceLocked(entry);
+            }
+            entry.services = services;
+            entry.lastSeen = entry.lastSuccess = entry.lastAttempt = now;
+            entry.attempts = 0;
+            placeLocked(entry, true, triedBucket(key), now);
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that we failed to connect to the given address. Addresses that keep failing are eventually dropped. */
+    public void markFailed(PeerAddress address) {
+        InetSocketAddress key = keyOf(address);
+        if (key == null)
+            return;
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null)
+                return;
+            entry.lastAttempt = Utils.currentTimeSeconds();
+            entry.attempts++;
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Learns addresses from {@code addr} messages. Registered by the peer group. */
+    @Override
+    public Message onPreMessageReceived(Peer peer, Message m) {
+        if (m instanceof AddressMessage)
+            add(((AddressMessage) m).getAddresses(), peer.getAddress());
+        return m;
+    }
+
+    /**
+     * Returns up to 1000 addresses that offer the given services, the tried ones first, most recently connected to
+     * first, followed by new ones, most recently seen first. Never blocks.
+     */
+    @Override
+    public InetSocketAddress[] getPeers(long services, long timeoutValue, TimeUnit timeoutUnit) {
+        long now = Utils.currentTimeSeconds();
+        List<Entry> tried = new ArrayList<Entry>(), fresh = new ArrayList<Entry>();
+        lock.lock();
+        try {
+            for (Entry entry : entries.values()) {
+                if ((entry.services & services) != services || entry.isTerrible(now))
+                    continue;
+                (entry.tried ? tried : fresh).add(entry);
+            }
+            Collections.sort(tried, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return Longs.compare(b.lastSuccess, a.lastSuccess);
+                }
+            });
+            Collections.sort(fresh, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return Longs.compare(b.lastSeen, a.lastSeen);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+        tried.addAll(fresh);
+        int count = Math.min(tried.size(), MAX_ADDRESSES_RETURNED);
+        InetSocketAddress[] result = new InetSocketAddress[count];
+        for (int i = 0; i < count; i++)
+            result[i] = tried.get(i).address;
+        return result;
+    }
+
+    /** Saves the book to the autosave file, if one is set. */
+    @Override
+    public void shutdown() {
+        autosave();
+    }
+
+    /** Returns the number of addresses in the book. */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of addresses in the tried buckets, that is the ones we have connected to before. */
+    public int getTriedCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (List<Entry> bucket : triedBuckets)
+                count += bucket.size();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sets the file the peer group regularly saves the book to, or null to not save it. */
+    public void setAutosaveFile(@Nullable File file) {
+        lock.lock();
+        try {
+            autosaveFile = file;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Saves the book to the autosave file if one is set and anything changed since it was last saved. */
+    public void autosave() {
+        File file;
+        lock.lock();
+        try {
+            file = autosaveFile;
+            if (file == null || !dirty)
+                return;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            saveToFile(file);
+        } catch (IOException e) {
+            log.error("Failed to save address book to {}", file, e);
+        }
+    }
+
+    /** Writes the book to the given stream in a compact binary format. */
+    @Override
+    public void save(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        lock.lock();
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(key0);
+            out.writeLong(key1);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                // IPv4 addresses are written as IPv4-mapped IPv6 ones, like in addr messages.
+                byte[] addr = entry.address.getAddress().getAddress();
+                if (addr.length == 4) {
+                    byte[] mapped = new byte[16];
+                    mapped[10] = mapped[11] = (byte) 0xFF;
+                    System.arraycopy(addr, 0, mapped, 12, 4);
+                    addr = mapped;
+                }
+                out.write(addr);
+                out.writeShort(entry.address.getPort());
+                out.writeLong(entry.services);
+                out.writeInt((int) entry.lastSeen);
+                out.writeInt((int) entry.lastSuccess);
+                out.writeInt((int) entry.lastAttempt);
+                out.writeByte(Math.min(entry.attempts, 255));
+                out.writeByte(entry.tried ? 1 : 0);
+                out.writeShort(entry.bucket);
+            }
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+        out.flush();
+    }
+
+    /** Replaces the book with the one read from the given stream, as written by {@link #save(OutputStream)}. */
+    @Override
+    public void load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != FILE_VERSION)
+            throw new IOException("Unsupported address book format");
+        long key0 = in.readLong(), key1 = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > (NEW_BUCKET_COUNT + TRIED_BUCKET_COUNT) * BUCKET_SIZE)
+            throw new IOException("Bad number of addresses: " + count);
+        List<Entry> loaded = new ArrayList<Entry>(count);
+        byte[] addr = new byte[16];
+        for (int i = 0; i < count; i++) {
+            in.readFully(addr);
+            Entry entry = new Entry(new InetSocketAddress(InetAddress.getByAddress(addr), in.readUnsignedShort()));
+            entry.services = in.readLong();
+            entry.lastSeen = in.readInt() & 0xFFFFFFFFL;
+            entry.lastSuccess = in.readInt() & 0xFFFFFFFFL;
+            entry.lastAttempt = in.readInt() & 0xFFFFFFFFL;
+            entry.attempts = in.readUnsignedByte();
+            entry.tried = in.readByte() != 0;
+            entry.bucket = in.readUnsignedShort();
+            if (entry.bucket >= (entry.tried ? TRIED_BUCKET_COUNT : NEW_BUCKET_COUNT))
+                throw new IOException("Bad bucket " + entry.bucket);
+            loaded.add(entry);
+        }
+        lock.lock();
+        try {
+            entries.clear();
+            for (List<Entry> bucket : newBuckets)
+                bucket.clear();
+            for (List<Entry> bucket : triedBuckets)
+                bucket.clear();
+            setKey(key0, key1);
+            for (Entry entry : loaded) {
+                List<Entry> bucket = (entry.tried ? triedBuckets : newBuckets).get(entry.bucket);
+                if (bucket.size() >= BUCKET_SIZE || entries.containsKey(entry.address))
+                    continue;
+                bucket.add(entry);
+                entries.put(entry.address, entry);
+            }
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Saves the book to the given file, writing to a temporary file in the same directory first. */
+    public void saveToFile(File file) throws IOException {
+        StateFiles.save(this, file, "addressbook");
+    }
+
+    /** Loads the book saved with {@link #saveToFile(File)}, if the file exists. */
+    public void loadFromFile(File file) throws IOException {
+        StateFiles.load(this, file);
+    }
+
+    @Override
+    public String toString() {
+        return "Address book with " + size() + " addresses, " + getTriedCount() + " tried";
+    }
+}
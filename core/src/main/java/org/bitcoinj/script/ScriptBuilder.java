@@ -222,20 +222,31 @@ public class ScriptBuilder {
                 .op(OP_EQUAL)
                 .build();
         } else {
-            // OP_DUP OP_HASH160 <pubKeyHash> OP_EQUALVERIFY OP_CHECKSIG
-            return new ScriptBuilder()
-                .op(OP_DUP)
-                .op(OP_HASH160)
-                .data(to.getHash160())
-                .op(OP_EQUALVERIFY)
-                .op(OP_CHECKSIG)
-                .build();
+            return createP2PKHOutputScript(to.getHash160());
         }
     }
 
+    /** Creates a scriptPubKey that encodes payment to the given public key hash. */
+    public static Script createP2PKHOutputScript(byte[] hash) {
+        checkArgument(hash.length == 20);
+        // OP_DUP OP_HASH160 <pubKeyHash> OP_EQUALVERIFY OP_CHECKSIG
+        return new ScriptBuilder()
+            .op(OP_DUP)
+            .op(OP_HASH160)
+            .data(hash)
+            .op(OP_EQUALVERIFY)
+            .op(OP_CHECKSIG)
+            .build();
+    }
+
     /** Creates a scriptPubKey that encodes payment to the given raw public key. */
     public static Script createOutputScript(ECKey key) {
-        return new ScriptBuilder().data(key.getPubKey()).op(OP_CHECKSIG).build();
+        return createP2PKOutputScript(key.getPubKey());
+    }
+
+    /** Creates a scriptPubKey that encodes payment to the given encoded public key. */
+    public static Script createP2PKOutputScript(byte[] pubKey) {
+        return new ScriptBuilder().data(pubKey).op(OP_CHECKSIG).build();
     }
 
     /**
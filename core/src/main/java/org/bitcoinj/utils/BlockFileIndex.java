@@ -0,0 +1,220 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.utils;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import com.google.common.collect.ImmutableList;
+import net.jcip.annotations.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Indexes block files stored in the Bitcoin Core format, as read by {@link BlockFileLoader}, so that individual
+ * blocks can be read back by hash without keeping them in memory.</p>
+ *
+ * <p>{@link #index()} scans the files and records where each block starts. It can be called again later to pick up
+ * blocks that were appended to the files since, only the new data is read. Blocks are read from disk on every call
+ * to {@link #getBlock(Sha256Hash)}, so callers that serve the same blocks repeatedly should cache them.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class BlockFileIndex {
+    private static final Logger log = LoggerFactory.getLogger(BlockFileIndex.class);
+
+    private static class Location {
+        final int file;
+        final long offset;  // of the serialized block, after the magic and length
+        final int size;
+
+        Location(int file, long offset, int size) {
+            this.file = file;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final NetworkParameters params;
+    private final List<File> files;
+
+    private final ReentrantLock lock = Threading.lock("blockfileindex");
+    @GuardedBy("lock") private final Map<Sha256Hash, Location> locations = new HashMap<Sha256Hash, Location>();
+    // How far each file has been scanned.
+    @GuardedBy("lock") private final long[] scanned;
+
+    public BlockFileIndex(NetworkParameters params, List<File> files) {
+        this.params = params;
+        this.files = ImmutableList.copyOf(files);
+        this.scanned = new long[files.size()];
+    }
+
+    /**
+     * Scans the parts of the block files that weren't scanned yet and indexes the blocks found there.
+     *
+     * @return the number of blocks that were added to the index
+     */
+    public int index() throws IOException {
+        lock.lock();
+        try {
+            int found = 0;
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                if (!file.exists() || file.length() <= scanned[i])
+                    continue;
+                found += scan(i, file);
+            }
+            if (found > 0)
+                log.info("Indexed {} blocks, {} in total", found, locations.size());
+            return found;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private int scan(int fileNumber, File file) throws IOException {
+        long length = file.length();
+        long pos = scanned[fileNumber];
+        int magic = (int) params.getPacketMagic();
+        int found = 0;
+        FileInputStream fileStream = new FileInputStream(file);
+        try {
+            fileStream.getChannel().position(pos);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fileStream));
+            byte[] header = new byte[Block.HEADER_SIZE];
+            while (length - pos >= 8 + Block.HEADER_SIZE) {
+                int word = in.readInt();
+                if (word != magic) {
+                    // Bitcoin Core preallocates its files, the zeros after the last block are where the next one goes.
+                    if (word == 0)
+                        break;
+                    throw new IOException(String.format("Bad magic bytes %08x at %s:%d", word, file, pos));
+                }
+                long size = Utils.readUint32(readBytes(in, 4), 0);
+                if (size < Block.HEADER_SIZE || size > Block.MAX_BLOCK_SIZE * 2)
+                    throw new IOException("Bad block size " + size + " at " + file + ":" + pos);
+                if (pos + 8 + size > length)
+                    break;  // Not completely written yet.
+                in.readFully(header);
+                Sha256Hash hash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(header));
+                if (!locations.containsKey(hash)) {
+                    locations.put(hash, new Location(fileNumber, pos + 8, (int) size));
+                    found++;
+                }
+                skipFully(in, size - Block.HEADER_SIZE);
+                pos += 8 + size;
+            }
+        } finally {
+            fileStream.close();
+            scanned[fileNumber] = pos;
+        }
+        return found;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0)
+                throw new EOFException();
+            count -= skipped;
+        }
+    }
+
+    /** Returns whether the block with the given hash was found in the files. */
+    public boolean contains(Sha256Hash hash) {
+        lock.lock();
+        try {
+            return locations.containsKey(hash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the hashes of all blocks in the index. */
+    public Set<Sha256Hash> getBlockHashes() {
+        lock.lock();
+        try {
+            return new HashSet<Sha256Hash>(locations.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of blocks in the index. */
+    public int size() {
+        lock.lock();
+        try {
+            return locations.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Reads the serialized block with the given hash, or returns null if the block isn't in the index. */
+    @Nullable
+    public byte[] getBlockBytes(Sha256Hash hash) throws IOException {
+        Location location;
+        lock.lock();
+        try {
+            location = locations.get(hash);
+        } finally {
+            lock.unlock();
+        }
+        if (location == null)
+            return null;
+        byte[] bytes = new byte[location.size];
+        RandomAccessFile file = new RandomAccessFile(files.get(location.file), "r");
+        try {
+            file.seek(location.offset);
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+        return bytes;
+    }
+
+    /** Reads and parses the block with the given hash, or returns null if the block isn't in the index. */
+    @Nullable
+    public Block getBlock(Sha256Hash hash) throws IOException, ProtocolException {
+        byte[] bytes = getBlockBytes(hash);
+        return bytes == null ? null : params.getDefaultSerializer().makeBlock(bytes);
+    }
+}
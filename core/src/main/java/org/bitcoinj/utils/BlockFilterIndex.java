@@ -0,0 +1,95 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.utils;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.BlockFilter;
+import org.bitcoinj.core.BlockFilterProvider;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>Builds the {@link BlockFilter}s of the blocks in a {@link BlockFileIndex} and keeps them in memory, where they
+ * take up a few hundred bytes per block. This lets blocks on disk be matched against a wallet without reading them
+ * again, and can stand in for filters downloaded from peers.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class BlockFilterIndex implements BlockFilterProvider {
+    private static final Logger log = LoggerFactory.getLogger(BlockFilterIndex.class);
+
+    private final BlockFileIndex blockFiles;
+    private final Map<Sha256Hash, byte[]> filters = new ConcurrentHashMap<Sha256Hash, byte[]>();
+
+    public BlockFilterIndex(BlockFileIndex blockFiles) {
+        this.blockFiles = checkNotNull(blockFiles);
+    }
+
+    /**
+     * Builds the filters of the blocks in the block file index that don't have one yet.
+     *
+     * @return the number of filters that were built
+     */
+    public synchronized int index() throws IOException {
+        int built = 0;
+        for (Sha256Hash hash : blockFiles.getBlockHashes()) {
+            if (filters.containsKey(hash))
+                continue;
+            Block block;
+            try {
+                block = blockFiles.getBlock(hash);
+            } catch (ProtocolException e) {
+                log.warn("Could not parse block {}: {}", hash, e.getMessage());
+                continue;
+            }
+            if (block == null)
+                continue;
+            filters.put(hash, BlockFilter.build(block).getEncoded());
+            built++;
+        }
+        if (built > 0)
+            log.info("Built {} block filters, {} in total", built, filters.size());
+        return built;
+    }
+
+    @Override
+    @Nullable
+    public BlockFilter getBlockFilter(Sha256Hash blockHash) {
+        byte[] encoded = filters.get(blockHash);
+        if (encoded == null)
+            return null;
+        try {
+            return new BlockFilter(blockHash, encoded);
+        } catch (ProtocolException e) {
+            throw new RuntimeException(e);  // Cannot happen, we built it.
+        }
+    }
+
+    /** Returns the number of filters in the index. */
+    public int size() {
+        return filters.size();
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.utils;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import javax.annotation.Nullable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>A map from {@link Sha256Hash}es to values which stores the keys inline. A {@link java.util.HashMap} needs an
+ * entry object, a {@link Sha256Hash} and its byte array for every key, whereas this map keeps the 32 bytes of each key
+ * as four longs in one array and the values in another, using open addressing with linear probing. That is a fraction
+ * of the objects the garbage collector has to trace, and a lookup touches no memory outside the two arrays.</p>
+ *
+ * <p>Lookups, insertions and removals don't allocate, and {@link #get(byte[], int)} looks up a hash without even
+ * wrapping it first. Iterating over the values doesn't allocate either, but iterating over the keys or entries creates
+ * a new {@link Sha256Hash} for every key. Null keys aren't supported.</p>
+ *
+ * <p>Like {@link java.util.HashMap}, this class is not thread safe and its iteration order is unspecified.</p>
+ */
+public class Sha256HashMap<V> extends AbstractMap<Sha256Hash, V> {
+    private static final int LONGS_PER_KEY = Sha256Hash.LENGTH / 8;
+    private static final int MIN_CAPACITY = 16;
+
+    // The state of each slot.
+    private static final byte FREE = 0, FULL = 1, REMOVED = 2;
+
+    private long[] keys;
+    private Object[] values;
+    private byte[] states;
+    private int size;
+    // Slots that are full or were removed, which both lengthen probe sequences.
+    private int used;
+    private int modCount;
+
+    public Sha256HashMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /** Creates a map that can hold the given number of entries without growing. */
+    public Sha256HashMap(int expectedSize) {
+        checkArgument(expectedSize >= 0);
+        allocate(capacityFor(expectedSize));
+    }
+
+    public Sha256HashMap(Map<Sha256Hash, ? extends V> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    // The smallest power of two that keeps the load factor below 2/3.
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 3 * 2 <= size)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * LONGS_PER_KEY];
+        values = new Object[capacity];
+        states = new byte[capacity];
+        used = 0;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xffL) << 56) |
+                ((bytes[offset + 1] & 0xffL) << 48) |
+                ((bytes[offset + 2] & 0xffL) << 40) |
+                ((bytes[offset + 3] & 0xffL) << 32) |
+                ((bytes[offset + 4] & 0xffL) << 24) |
+                ((bytes[offset + 5] & 0xffL) << 16) |
+                ((bytes[offset + 6] & 0xffL) << 8) |
+                (bytes[offset + 7] & 0xffL);
+    }
+
+    private static void writeLong(long value, byte[] bytes, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    // Block hashes start with zeros, so the slot is picked from the last word, mixed so that all of its bits count.
+    private int slotFor(long last) {
+        long h = last * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (states.length - 1);
+    }
+
+    // Returns the slot of the key, or -1 if it isn't in the map.
+    private int find(long k0, long k1, long k2, long k3) {
+        int mask = states.length - 1;
+        for (int slot = slotFor(k3); ; slot = (slot + 1) & mask) {
+            byte state = states[slot];
+            if (state == FREE)
+                return -1;
+            if (state == FULL) {
+                int i = slot * LONGS_PER_KEY;
+                if (keys[i + 3] == k3 && keys[i] == k0 && keys[i + 1] == k1 && keys[i + 2] == k2)
+                    return slot;
+            }
+        }
+    }
+
+    private int find(byte[] hash, int offset) {
+        return find(readLong(hash, offset), readLong(hash, offset + 8), readLong(hash, offset + 16),
+                readLong(hash, offset + 24));
+    }
+
+    private int find(@Nullable Object key) {
+        if (!(key instanceof Sha256Hash))
+            return -1;
+        return find(((Sha256Hash) key).getBytes(), 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return find(key) >= 0;
+    }
+
+    /** Returns whether the map contains the hash at the given offset of the array, in {@link Sha256Hash#getBytes()} order. */
+    public boolean containsKey(byte[] hash, int offset) {
+        return find(hash, offset) >= 0;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(@Nullable Object key) {
+        int slot = find(key);
+        return slot >= 0 ? (V) values[slot] : null;
+    }
+
+    /** Returns the value of the hash at the given offset of the array, in {@link Sha256Hash#getBytes()} order. */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(byte[] hash, int offset) {
+        int slot = find(hash, offset);
+        return slot >= 0 ? (V) values[slot] : null;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(Sha256Hash key, V value) {
+        byte[] bytes = key.getBytes();
+        long k0 = readLong(bytes, 0), k1 = readLong(bytes, 8), k2 = readLong(bytes, 16), k3 = readLong(bytes, 24);
+        int slot = find(k0, k1, k2, k3);
+        if (slot >= 0) {
+            V old = (V) values[slot];
+            values[slot] = value;
+            return old;
+        }
+        if (used + 1 > states.length / 3 * 2)
+            rehash(capacityFor(size + 1));
+        int mask = states.length - 1;
+        slot = slotFor(k3);
+        while (states[slot] == FULL)
+            slot = (slot + 1) & mask;
+        if (states[slot] == FREE)
+            used++;
+        int i = slot * LONGS_PER_KEY;
+        keys[i] = k0;
+        keys[i + 1] = k1;
+        keys[i + 2] = k2;
+        keys[i + 3] = k3;
+        values[slot] = value;
+        states[slot] = FULL;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    // Moves every entry into new arrays of the given capacity, which also drops the removed slots.
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        byte[] oldStates = states;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldStates.length; oldSlot++) {
+            if (oldStates[oldSlot] != FULL)
+                continue;
+            int oldIndex = oldSlot * LONGS_PER_KEY;
+            int slot = slotFor(oldKeys[oldIndex + 3]);
+            while (states[slot] != FREE)
+                slot = (slot + 1) & mask;
+            System.arraycopy(oldKeys, oldIndex, keys, slot * LONGS_PER_KEY, LONGS_PER_KEY);
+            values[slot] = oldValues[oldSlot];
+            states[slot] = FULL;
+            used++;
+        }
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(@Nullable Object key) {
+        int slot = find(key);
+        if (slot < 0)
+            return null;
+        V old = (V) values[slot];
+        removeSlot(slot);
+        return old;
+    }
+
+    // Removed slots are only marked, so that iterators can remove entries without other entries moving around them.
+    private void removeSlot(int slot) {
+        values[slot] = null;
+        states[slot] = REMOVED;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0 && used == 0)
+            return;
+        Arrays.fill(values, null);
+        Arrays.fill(states, FREE);
+        size = 0;
+        used = 0;
+        modCount++;
+    }
+
+    private Sha256Hash keyAt(int slot) {
+        byte[] bytes = new byte[Sha256Hash.LENGTH];
+        int i = slot * LONGS_PER_KEY;
+        for (int j = 0; j < LONGS_PER_KEY; j++)
+            writeLong(keys[i + j], bytes, j * 8);
+        return Sha256Hash.wrap(bytes);
+    }
+
+    // Visits the full slots in order.
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int next = advance(0);
+        private int current = -1;
+        private int expectedModCount = modCount;
+
+        private int advance(int slot) {
+            while (slot < states.length && states[slot] != FULL)
+                slot++;
+            return slot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < states.length;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            current = next;
+            next = advance(next + 1);
+            return get(current);
+        }
+
+        abstract T get(int slot);
+
+        @Override
+        public void remove() {
+            checkState(current >= 0);
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeSlot(current);
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private class Entry implements Map.Entry<Sha256Hash, V> {
+        private final int slot;
+        private final Sha256Hash key;
+
+        Entry(int slot) {
+            this.slot = slot;
+            this.key = keyAt(slot);
+        }
+
+        @Override
+        public Sha256Hash getKey() {
+            return key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) values[slot];
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = getValue();
+            values[slot] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            V value = getValue();
+            return key.equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            V value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<Sha256Hash, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Sha256Hash, V>>() {
+            @Override
+            public Iterator<Map.Entry<Sha256Hash, V>> iterator() {
+                return new SlotIterator<Map.Entry<Sha256Hash, V>>() {
+                    @Override
+                    Map.Entry<Sha256Hash, V> get(int slot) {
+                        return new Entry(slot);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                Sha256HashMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<Sha256Hash> keySet() {
+        return new AbstractSet<Sha256Hash>() {
+            @Override
+            public Iterator<Sha256Hash> iterator() {
+                return new SlotIterator<Sha256Hash>() {
+                    @Override
+                    Sha256Hash get(int slot) {
+                        return keyAt(slot);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                int slot = find(o);
+                if (slot < 0)
+                    return false;
+                removeSlot(slot);
+                return true;
+            }
+
+            @Override
+            public void clear() {
+                Sha256HashMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    V get(int slot) {
+                        return (V) values[slot];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                Sha256HashMap.this.clear();
+            }
+        };
+    }
+}
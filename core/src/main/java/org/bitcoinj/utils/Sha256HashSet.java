@@ -0,0 +1,83 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.utils;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * <p>A set of {@link Sha256Hash}es which stores them inline, backed by a {@link Sha256HashMap} in the way a
+ * {@link java.util.HashSet} is backed by a {@link java.util.HashMap}. See there for the memory it saves. Adding,
+ * removing and looking up hashes doesn't allocate, iterating creates a new {@link Sha256Hash} for every element.</p>
+ *
+ * <p>Like {@link java.util.HashSet}, this class is not thread safe and its iteration order is unspecified.</p>
+ */
+public class Sha256HashSet extends AbstractSet<Sha256Hash> {
+    private final Sha256HashMap<Boolean> map;
+
+    public Sha256HashSet() {
+        map = new Sha256HashMap<Boolean>();
+    }
+
+    /** Creates a set that can hold the given number of hashes without growing. */
+    public Sha256HashSet(int expectedSize) {
+        map = new Sha256HashMap<Boolean>(expectedSize);
+    }
+
+    public Sha256HashSet(Collection<Sha256Hash> hashes) {
+        map = new Sha256HashMap<Boolean>(hashes.size());
+        addAll(hashes);
+    }
+
+    @Override
+    public boolean add(Sha256Hash hash) {
+        return map.put(hash, Boolean.TRUE) == null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    /** Returns whether the set contains the hash at the given offset of the array, in {@link Sha256Hash#getBytes()} order. */
+    public boolean contains(byte[] hash, int offset) {
+        return map.containsKey(hash, offset);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return map.remove(o) != null;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Iterator<Sha256Hash> iterator() {
+        return map.keySet().iterator();
+    }
+}
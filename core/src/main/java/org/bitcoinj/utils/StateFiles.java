@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.utils;
+
+import org.bitcoinj.core.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Saves state that can be written to a stream, such as fee estimates, peer scores or an address book, to a file
+ * without ever leaving a half written file behind, and loads it back.
+ */
+public class StateFiles {
+    /** State that can be written to a stream and read back from one. */
+    public interface State {
+        void save(OutputStream stream) throws IOException;
+
+        void load(InputStream stream) throws IOException;
+    }
+
+    private StateFiles() {
+    }
+
+    /**
+     * Saves the state to a temporary file in the same directory as the given file first, whose name starts with the
+     * given prefix, then syncs it to disk and renames it over the given file.
+     */
+    public static void save(State state, File file, String tempPrefix) throws IOException {
+        File temp = File.createTempFile(tempPrefix, null, file.getAbsoluteFile().getParentFile());
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            state.save(stream);
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        // On Windows a file can't be renamed over an existing one.
+        if (Utils.isWindows() && file.exists() && !file.delete())
+            throw new IOException("Failed to delete " + file);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+    }
+
+    /** Loads the state saved with {@link #save(State, File, String)}, if the file exists. */
+    public static void load(State state, File file) throws IOException {
+        if (!file.exists())
+            return;
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            state.load(stream);
+        } finally {
+            stream.close();
+        }
+    }
+}
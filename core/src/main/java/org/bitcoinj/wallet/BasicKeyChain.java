@@ -19,6 +19,7 @@ package org.bitcoinj.wallet;
 import org.bitcoinj.core.BloomFilter;
 import org.bitcoinj.core.ECKey;
 import org.bitcoinj.crypto.*;
+import org.bitcoinj.script.ScriptBuilder;
 import org.bitcoinj.utils.ListenerRegistration;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.listeners.KeyChainEventListener;
@@ -49,6 +50,9 @@ public class BasicKeyChain implements EncryptableKeyChain {
     private final LinkedHashMap<ByteString, ECKey> pubkeyToKeys;
     @Nullable private final KeyCrypter keyCrypter;
     private boolean isWatching;
+    // Group wide lookup index that imported keys are registered with, if any.
+    @Nullable private KeyChainIndex index;
+    @Nullable private KeyChain indexOwner;
 
     private final CopyOnWriteArrayList<ListenerRegistration<KeyChainEventListener>> listeners;
 
@@ -180,6 +184,29 @@ public class BasicKeyChain implements EncryptableKeyChain {
         ECKey previousKey = pubkeyToKeys.put(ByteString.copyFrom(key.getPubKey()), key);
         hashToKeys.put(ByteString.copyFrom(key.getPubKeyHash()), key);
         checkState(previousKey == null);
+        if (index != null)
+            index.addKey(key, indexOwner);
+    }
+
+    /**
+     * Attaches this chain to the lookup index of a {@link KeyChainGroup}: all current keys are registered under the
+     * given owner, as is every key imported from now on. Pass null to detach.
+     */
+    void setIndex(@Nullable KeyChainIndex index, @Nullable KeyChain owner) {
+        checkArgument((index == null) == (owner == null));
+        lock.lock();
+        try {
+            if (this.index != null)
+                for (ECKey key : hashToKeys.values())
+                    this.index.removeKey(key, indexOwner);
+            this.index = index;
+            this.indexOwner = owner;
+            if (index != null)
+                for (ECKey key : hashToKeys.values())
+                    index.addKey(key, owner);
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void importKeysLocked(List<ECKey> keys) {
@@ -264,6 +291,8 @@ public class BasicKeyChain implements EncryptableKeyChain {
             boolean a = hashToKeys.remove(ByteString.copyFrom(key.getPubKeyHash())) != null;
             boolean b = pubkeyToKeys.remove(ByteString.copyFrom(key.getPubKey())) != null;
             checkState(a == b);   // Should be in both maps or neither.
+            if (a && index != null)
+                index.removeKey(key, indexOwner);
             return a;
         } finally {
             lock.unlock();
@@ -415,6 +444,19 @@ public class BasicKeyChain implements EncryptableKeyChain {
         return ListenerRegistration.removeFromList(listener, listeners);
     }
 
+    /**
+     * Tells the listeners of this chain about keys that were added to a chain wrapping it, without importing them
+     * here. Used by {@link DeterministicKeyChain} for the leaf keys it stores itself.
+     */
+    void notifyKeysAdded(List<ECKey> keys) {
+        lock.lock();
+        try {
+            queueOnKeysAdded(keys);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private void queueOnKeysAdded(final List<ECKey> keys) {
         checkState(lock.isHeldByCurrentThread());
         for (final ListenerRegistration<KeyChainEventListener> registration : listeners) {
@@ -571,6 +613,42 @@ public class BasicKeyChain implements EncryptableKeyChain {
         }
     }
 
+    /**
+     * Returns the elements {@link #getFilter(int, double, long)} inserts into the filter, so that an existing filter
+     * can be brought up to date by inserting only the ones it doesn't match yet.
+     */
+    public List<byte[]> getBloomFilterElements() {
+        lock.lock();
+        try {
+            List<byte[]> elements = new ArrayList<byte[]>(hashToKeys.size() * 2);
+            for (ECKey key : hashToKeys.values()) {
+                elements.add(key.getPubKey());
+                elements.add(key.getPubKeyHash());
+            }
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the programs of the output scripts that pay to keys in this chain, which are looked for in
+     * {@link org.bitcoinj.core.BlockFilter}s.
+     */
+    public List<byte[]> getBlockFilterElements() {
+        lock.lock();
+        try {
+            List<byte[]> elements = new ArrayList<byte[]>(hashToKeys.size() * 2);
+            for (ECKey key : hashToKeys.values()) {
+                elements.add(ScriptBuilder.createOutputScript(key).getProgram());
+                elements.add(ScriptBuilder.createP2PKHOutputScript(key.getPubKeyHash()).getProgram());
+            }
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public int numBloomFilterEntries() {
         return numKeys() * 2;
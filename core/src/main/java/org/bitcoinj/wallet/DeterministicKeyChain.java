@@ -23,13 +23,17 @@ import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.Utils;
 import org.bitcoinj.crypto.*;
 import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.listeners.KeyChainEventListener;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,7 +43,10 @@ import javax.annotation.Nullable;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.*;
@@ -135,6 +142,12 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         return lookaheadSize / 3;
     }
 
+    // Lookahead and bulk issuance derive keys in parallel on Threading.THREAD_POOL once at least this many are needed.
+    // Issuing this many keys at once also tops up the lookahead zone in the same step.
+    private static final int PARALLEL_DERIVATION_THRESHOLD = 64;
+    // The fewest keys derived or checked by each parallel task.
+    private static final int MIN_KEYS_PER_TASK = 16;
+
     // The parent keys for external keys (handed out to other people) and internal keys (used for change addresses).
     private DeterministicKey externalParentKey, internalParentKey;
     // How many keys on each path have actually been used. This may be fewer than the number that have been deserialized
@@ -149,8 +162,13 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
 
     // We simplify by wrapping a basic key chain and that way we get some functionality like key lookup and event
     // listeners "for free". All keys in the key tree appear here, even if they aren't meant to be used for receiving
-    // money.
+    // money, except for the leaf keys.
     private final BasicKeyChain basicKeyChain;
+    // The leaf keys, issued or in the lookahead zone. There can be very many of them, so instead of the basic key
+    // chain and the hierarchy they are kept here in packed form, and key objects are built as they are asked for.
+    private PackedLeafKeys leafKeys = new PackedLeafKeys();
+    // Group wide lookup index that leaf keys are registered with, if any.
+    @Nullable private KeyChainIndex index;
 
     // If set this chain is following another chain in a married KeyChainGroup
     private boolean isFollowing;
@@ -407,15 +425,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
 
         // Now copy the (pubkey only) leaf keys across to avoid rederiving them. The private key bytes are missing
         // anyway so there's nothing to encrypt.
-        for (ECKey eckey : chain.basicKeyChain.getKeys()) {
-            DeterministicKey key = (DeterministicKey) eckey;
-            if (key.getPath().size() != getAccountPath().size() + 2) continue; // Not a leaf key.
-            DeterministicKey parent = hierarchy.get(checkNotNull(key.getParent()).getPath(), false, false);
-            // Clone the key to the new encrypted hierarchy.
-            key = new DeterministicKey(key.dropPrivateBytes(), parent);
-            hierarchy.putKey(key);
-            basicKeyChain.importKey(key);
-        }
+        leafKeys = chain.leafKeys.copy(hierarchy);
     }
 
     /** Override in subclasses to use a different account derivation path */
@@ -447,7 +457,12 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         return getKeys(purpose, 1).get(0);
     }
 
-    /** Returns freshly derived key/s that have not been returned by this method before. */
+    /**
+     * Returns freshly derived key/s that have not been returned by this method before. When many keys are asked for at
+     * once, for example to hand out a batch of invoice addresses, they are derived and checked in parallel and the
+     * lookahead zone is topped up along with them, so that event listeners and thus the wallet's Bloom filter only see
+     * a single batch of new keys.
+     */
     @Override
     public List<DeterministicKey> getKeys(KeyPurpose purpose, int numberOfKeys) {
         checkArgument(numberOfKeys > 0);
@@ -486,27 +501,56 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
             //
             // It's safe to do this because when a network thread tries to calculate a Bloom filter, we'll go ahead
             // and calculate the full lookahead zone there, so network requests will always use the right amount.
-            List<DeterministicKey> lookahead = maybeLookAhead(parentKey, index, 0, 0);
-            basicKeyChain.importKeys(lookahead);
+            //
+            // Bulk requests aren't made on UI threads, so they do get the full lookahead: otherwise the keys would be
+            // added in one event here and the lookahead in another one when the Bloom filter is next calculated.
+            List<DeterministicKey> lookahead;
+            if (numberOfKeys >= PARALLEL_DERIVATION_THRESHOLD) {
+                lookahead = maybeLookAhead(parentKey, index);
+                if (!lookahead.isEmpty())
+                    keyLookaheadEpoch++;
+            } else {
+                lookahead = maybeLookAhead(parentKey, index, 0, 0);
+            }
+            notifyKeysAdded(lookahead);
             List<DeterministicKey> keys = new ArrayList<DeterministicKey>(numberOfKeys);
             for (int i = 0; i < numberOfKeys; i++) {
                 ImmutableList<ChildNumber> path = HDUtils.append(parentKey.getPath(), new ChildNumber(index - numberOfKeys + i, false));
-                DeterministicKey k = hierarchy.get(path, false, false);
-                // Just a last minute sanity check before we hand the key out to the app for usage. This isn't inspired
-                // by any real problem reports from bitcoinj users, but I've heard of cases via the grapevine of
-                // places that lost money due to bitflips causing addresses to not match keys. Of course in an
-                // environment with flaky RAM there's no real way to always win: bitflips could be introduced at any
-                // other layer. But as we're potentially retrieving from long term storage here, check anyway.
-                checkForBitFlip(k);
-                keys.add(k);
+                keys.add(leafKeys.get(leafKeys.indexOf(path)));
             }
+            // Just a last minute sanity check before we hand the keys out to the app for usage. This isn't inspired
+            // by any real problem reports from bitcoinj users, but I've heard of cases via the grapevine of
+            // places that lost money due to bitflips causing addresses to not match keys. Of course in an
+            // environment with flaky RAM there's no real way to always win: bitflips could be introduced at any
+            // other layer. But as we're potentially retrieving from long term storage here, check anyway.
+            checkForBitFlips(keys);
             return keys;
         } finally {
             lock.unlock();
         }
     }
 
-    private void checkForBitFlip(DeterministicKey k) {
+    private static void checkForBitFlips(List<DeterministicKey> keys) {
+        if (keys.size() < PARALLEL_DERIVATION_THRESHOLD) {
+            for (DeterministicKey k : keys)
+                checkForBitFlip(k);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final List<DeterministicKey> range : Lists.partition(keys, keysPerTask(keys.size()))) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (DeterministicKey k : range)
+                        checkForBitFlip(k);
+                    return null;
+                }
+            });
+        }
+        runInParallel(tasks);
+    }
+
+    private static void checkForBitFlip(DeterministicKey k) {
         DeterministicKey parent = checkNotNull(k.getParent());
         byte[] rederived = HDKeyDerivation.deriveChildKeyBytesFromPublic(parent, k.getChildNumber(), HDKeyDerivation.PublicDeriveMode.WITH_INVERSION).keyBytes;
         byte[] actual = k.getPubKey();
@@ -518,6 +562,12 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         basicKeyChain.importKeys(ImmutableList.of(key));
     }
 
+    // Tells the listeners about new leaf keys, in a single event.
+    private void notifyKeysAdded(List<DeterministicKey> keys) {
+        if (!keys.isEmpty())
+            basicKeyChain.notifyKeysAdded(ImmutableList.<ECKey>copyOf(keys));
+    }
+
     /**
      * Mark the DeterministicKey as used.
      * Also correct the issued{Internal|External}Keys counter, because all lower children seem to be requested already.
@@ -543,7 +593,8 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
     public DeterministicKey findKeyFromPubHash(byte[] pubkeyHash) {
         lock.lock();
         try {
-            return (DeterministicKey) basicKeyChain.findKeyFromPubHash(pubkeyHash);
+            DeterministicKey key = (DeterministicKey) basicKeyChain.findKeyFromPubHash(pubkeyHash);
+            return key != null ? key : leafKeys.findKeyFromPubHash(pubkeyHash);
         } finally {
             lock.unlock();
         }
@@ -552,7 +603,8 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
     public DeterministicKey findKeyFromPubKey(byte[] pubkey) {
         lock.lock();
         try {
-            return (DeterministicKey) basicKeyChain.findKeyFromPubKey(pubkey);
+            DeterministicKey key = (DeterministicKey) basicKeyChain.findKeyFromPubKey(pubkey);
+            return key != null ? key : leafKeys.findKeyFromPubKey(pubkey);
         } finally {
             lock.unlock();
         }
@@ -566,7 +618,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
     public DeterministicKey markPubHashAsUsed(byte[] pubkeyHash) {
         lock.lock();
         try {
-            DeterministicKey k = (DeterministicKey) basicKeyChain.findKeyFromPubHash(pubkeyHash);
+            DeterministicKey k = findKeyFromPubHash(pubkeyHash);
             if (k != null)
                 markKeyAsUsed(k);
             return k;
@@ -583,7 +635,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
     public DeterministicKey markPubKeyAsUsed(byte[] pubkey) {
         lock.lock();
         try {
-            DeterministicKey k = (DeterministicKey) basicKeyChain.findKeyFromPubKey(pubkey);
+            DeterministicKey k = findKeyFromPubKey(pubkey);
             if (k != null)
                 markKeyAsUsed(k);
             return k;
@@ -596,7 +648,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
     public boolean hasKey(ECKey key) {
         lock.lock();
         try {
-            return basicKeyChain.hasKey(key);
+            return basicKeyChain.hasKey(key) || leafKeys.indexOfPubKey(key.getPubKey()) >= 0;
         } finally {
             lock.unlock();
         }
@@ -614,7 +666,13 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
 
     /** Returns the deterministic key for the given absolute path in the hierarchy, optionally creating it */
     public DeterministicKey getKeyByPath(List<ChildNumber> path, boolean create) {
-        return hierarchy.get(path, false, create);
+        lock.lock();
+        try {
+            int entry = leafKeys.indexOf(path);
+            return entry >= 0 ? leafKeys.get(entry) : hierarchy.get(path, false, create);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -643,7 +701,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         lock.lock();
         try {
             maybeLookAhead();
-            return basicKeyChain.numKeys();
+            return basicKeyChain.numKeys() + leafKeys.size();
         } finally {
             lock.unlock();
         }
@@ -686,6 +744,26 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         return basicKeyChain.removeEventListener(listener);
     }
 
+    /**
+     * Registers all keys of this chain, including future lookahead keys, with the given group lookup index. Pass null
+     * to detach. Subclasses that can redeem scripts should register their script hashes too.
+     */
+    void setIndex(@Nullable KeyChainIndex index) {
+        lock.lock();
+        try {
+            basicKeyChain.setIndex(index, index == null ? null : this);
+            if (this.index != null)
+                for (int i = 0; i < leafKeys.size(); i++)
+                    this.index.removeKey(leafKeys.getPubKey(i), leafKeys.getPubKeyHash(i), this);
+            this.index = index;
+            if (index != null)
+                for (int i = 0; i < leafKeys.size(); i++)
+                    index.addKey(leafKeys.getPubKey(i), leafKeys.getPubKeyHash(i), this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /** Returns a list of words that represent the seed or null if this chain is a watching chain. */
     @Nullable
     public List<String> getMnemonicCode() {
@@ -735,36 +813,45 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
             entries.add(mnemonicEntry.build());
         }
         Map<ECKey, Protos.Key.Builder> keys = basicKeyChain.serializeToEditableProtobufs();
-        for (Map.Entry<ECKey, Protos.Key.Builder> entry : keys.entrySet()) {
-            DeterministicKey key = (DeterministicKey) entry.getKey();
-            Protos.Key.Builder proto = entry.getValue();
-            proto.setType(Protos.Key.Type.DETERMINISTIC_KEY);
-            final Protos.DeterministicKey.Builder detKey = proto.getDeterministicKeyBuilder();
-            detKey.setChainCode(ByteString.copyFrom(key.getChainCode()));
-            for (ChildNumber num : key.getPath())
-                detKey.addPath(num.i());
-            if (key.equals(externalParentKey)) {
-                detKey.setIssuedSubkeys(issuedExternalKeys);
-                detKey.setLookaheadSize(lookaheadSize);
-                detKey.setSigsRequiredToSpend(getSigsRequiredToSpend());
-            } else if (key.equals(internalParentKey)) {
-                detKey.setIssuedSubkeys(issuedInternalKeys);
-                detKey.setLookaheadSize(lookaheadSize);
-                detKey.setSigsRequiredToSpend(getSigsRequiredToSpend());
-            }
-            // Flag the very first key of following keychain.
-            if (entries.isEmpty() && isFollowing()) {
-                detKey.setIsFollowing(true);
-            }
-            if (key.getParent() != null) {
-                // HD keys inherit the timestamp of their parent if they have one, so no need to serialize it.
-                proto.clearCreationTimestamp();
-            }
-            entries.add(proto.build());
+        for (Map.Entry<ECKey, Protos.Key.Builder> entry : keys.entrySet())
+            entries.add(serializeKey((DeterministicKey) entry.getKey(), entry.getValue(), entries.isEmpty()));
+        // The leaf keys follow the keys they are derived from, and are built and serialized one at a time.
+        for (int i = 0; i < leafKeys.size(); i++) {
+            DeterministicKey key = leafKeys.get(i);
+            Protos.Key.Builder proto = BasicKeyChain.serializeEncryptableItem(key);
+            proto.setPublicKey(ByteString.copyFrom(key.getPubKey()));
+            entries.add(serializeKey(key, proto, entries.isEmpty()));
         }
         return entries;
     }
 
+    // Adds the data only deterministic keys have to a key serialized like a basic one.
+    private Protos.Key serializeKey(DeterministicKey key, Protos.Key.Builder proto, boolean isFirst) {
+        proto.setType(Protos.Key.Type.DETERMINISTIC_KEY);
+        final Protos.DeterministicKey.Builder detKey = proto.getDeterministicKeyBuilder();
+        detKey.setChainCode(ByteString.copyFrom(key.getChainCode()));
+        for (ChildNumber num : key.getPath())
+            detKey.addPath(num.i());
+        if (key.equals(externalParentKey)) {
+            detKey.setIssuedSubkeys(issuedExternalKeys);
+            detKey.setLookaheadSize(lookaheadSize);
+            detKey.setSigsRequiredToSpend(getSigsRequiredToSpend());
+        } else if (key.equals(internalParentKey)) {
+            detKey.setIssuedSubkeys(issuedInternalKeys);
+            detKey.setLookaheadSize(lookaheadSize);
+            detKey.setSigsRequiredToSpend(getSigsRequiredToSpend());
+        }
+        // Flag the very first key of following keychain.
+        if (isFirst && isFollowing()) {
+            detKey.setIsFollowing(true);
+        }
+        if (key.getParent() != null) {
+            // HD keys inherit the timestamp of their parent if they have one, so no need to serialize it.
+            proto.clearCreationTimestamp();
+        }
+        return proto.build();
+    }
+
     static List<DeterministicKeyChain> fromProtobuf(List<Protos.Key> keys, @Nullable KeyCrypter crypter) throws UnreadableWalletException {
         return fromProtobuf(keys, crypter, new DefaultKeyChainFactory());
     }
@@ -917,8 +1004,13 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
                         }
                     }
                 }
-                chain.hierarchy.putKey(detkey);
-                chain.basicKeyChain.importKey(detkey);
+                if (parent != null && path.size() == chain.getAccountPath().size() + 2) {
+                    // A leaf key. Any private key bytes are dropped, they can be rederived from the parent.
+                    chain.leafKeys.add(detkey);
+                } else {
+                    chain.hierarchy.putKey(detkey);
+                    chain.basicKeyChain.importKey(detkey);
+                }
             }
         }
         if (chain != null) {
@@ -977,16 +1069,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         chain.lookaheadSize = lookaheadSize;
         // Now copy the (pubkey only) leaf keys across to avoid rederiving them. The private key bytes are missing
         // anyway so there's nothing to decrypt.
-        for (ECKey eckey : basicKeyChain.getKeys()) {
-            DeterministicKey key = (DeterministicKey) eckey;
-            if (key.getPath().size() != getAccountPath().size() + 2) continue; // Not a leaf key.
-            checkState(key.isEncrypted());
-            DeterministicKey parent = chain.hierarchy.get(checkNotNull(key.getParent()).getPath(), false, false);
-            // Clone the key to the new decrypted hierarchy.
-            key = new DeterministicKey(key.dropPrivateBytes(), parent);
-            chain.hierarchy.putKey(key);
-            chain.basicKeyChain.importKey(key);
-        }
+        chain.leafKeys = leafKeys.copy(chain.hierarchy);
         chain.issuedExternalKeys = issuedExternalKeys;
         chain.issuedInternalKeys = issuedInternalKeys;
         return chain;
@@ -1044,13 +1127,56 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         try {
             checkArgument(size >= numBloomFilterEntries());
             maybeLookAhead();
-            return basicKeyChain.getFilter(size, falsePositiveRate, tweak);
+            BloomFilter filter = basicKeyChain.getFilter(size, falsePositiveRate, tweak);
+            for (int i = 0; i < leafKeys.size(); i++) {
+                filter.insert(leafKeys.getPubKey(i));
+                filter.insert(leafKeys.getPubKeyHash(i));
+            }
+            return filter;
         } finally {
             lock.unlock();
         }
 
     }
 
+    /**
+     * Returns the elements {@link #getFilter(int, double, long)} inserts into the filter, so that an existing filter
+     * can be brought up to date by inserting only the ones it doesn't match yet.
+     */
+    public List<byte[]> getBloomFilterElements() {
+        lock.lock();
+        try {
+            maybeLookAhead();
+            List<byte[]> elements = basicKeyChain.getBloomFilterElements();
+            for (int i = 0; i < leafKeys.size(); i++) {
+                elements.add(leafKeys.getPubKey(i));
+                elements.add(leafKeys.getPubKeyHash(i));
+            }
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the programs of the output scripts that pay to keys in this chain, which are looked for in
+     * {@link org.bitcoinj.core.BlockFilter}s.
+     */
+    public List<byte[]> getBlockFilterElements() {
+        lock.lock();
+        try {
+            maybeLookAhead();
+            List<byte[]> elements = basicKeyChain.getBlockFilterElements();
+            for (int i = 0; i < leafKeys.size(); i++) {
+                elements.add(ScriptBuilder.createP2PKOutputScript(leafKeys.getPubKey(i)).getProgram());
+                elements.add(ScriptBuilder.createP2PKHOutputScript(leafKeys.getPubKeyHash(i)).getProgram());
+            }
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * <p>The number of public keys we should pre-generate on each path before they are requested by the app. This is
      * required so that when scanning through the chain given only a seed, we can give enough keys to the remote node
@@ -1133,7 +1259,7 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
             // Batch add all keys at once so there's only one event listener invocation, as this will be listened to
             // by the wallet and used to rebuild/broadcast the Bloom filter. That's expensive so we don't want to do
             // it more often than necessary.
-            basicKeyChain.importKeys(keys);
+            notifyKeysAdded(keys);
         } finally {
             lock.unlock();
         }
@@ -1148,11 +1274,11 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
      * Pre-generate enough keys to reach the lookahead size, but only if there are more than the lookaheadThreshold to
      * be generated, so that the Bloom filter does not have to be regenerated that often.
      *
-     * The returned mutable list of keys must be inserted into the basic key chain.
+     * The new keys are added to the leaf keys, the returned mutable list of them must be passed to the listeners.
      */
     private List<DeterministicKey> maybeLookAhead(DeterministicKey parent, int issued, int lookaheadSize, int lookaheadThreshold) {
         checkState(lock.isHeldByCurrentThread());
-        final int numChildren = hierarchy.getNumChildren(parent.getPath());
+        final int numChildren = leafKeys.getNumChildren(parent);
         final int needed = issued + lookaheadSize + lookaheadThreshold - numChildren;
 
         if (needed <= lookaheadThreshold)
@@ -1161,19 +1287,96 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         log.info("{} keys needed for {} = {} issued + {} lookahead size + {} lookahead threshold - {} num children",
                 needed, parent.getPathAsString(), issued, lookaheadSize, lookaheadThreshold, numChildren);
 
-        List<DeterministicKey> result  = new ArrayList<DeterministicKey>(needed);
         final Stopwatch watch = Stopwatch.createStarted();
-        int nextChild = numChildren;
-        for (int i = 0; i < needed; i++) {
+        // The keys are derived without touching the leaf keys, possibly in parallel, and then added all at once.
+        List<DeterministicKey> result = deriveChildren(parent, numChildren, needed);
+        for (DeterministicKey key : result) {
+            leafKeys.add(key);
+            if (index != null)
+                index.addKey(key, this);
+        }
+        watch.stop();
+        log.info("Took {}", watch);
+        return result;
+    }
+
+    /**
+     * Derives the given number of public only children of the parent, starting at the given child number and skipping
+     * invalid children like {@link HDKeyDerivation#deriveThisOrNextChildKey(DeterministicKey, int)} does. Large
+     * numbers of children are derived in parallel.
+     */
+    private static List<DeterministicKey> deriveChildren(final DeterministicKey parent, int firstChild, int count) {
+        List<DeterministicKey> result = new ArrayList<DeterministicKey>(count);
+        if (count < PARALLEL_DERIVATION_THRESHOLD) {
+            deriveChildren(parent, firstChild, count, result);
+            return result;
+        }
+        parent.getPubKeyPoint();  // Decode the parent's point once, rather than in every task.
+        int perTask = keysPerTask(count);
+        List<Callable<DeterministicKey[]>> tasks = new ArrayList<Callable<DeterministicKey[]>>();
+        for (int offset = 0; offset < count; offset += perTask) {
+            final int from = firstChild + offset;
+            final int size = Math.min(perTask, count - offset);
+            tasks.add(new Callable<DeterministicKey[]>() {
+                @Override
+                public DeterministicKey[] call() {
+                    DeterministicKey[] keys = new DeterministicKey[size];
+                    for (int i = 0; i < size; i++) {
+                        try {
+                            keys[i] = HDKeyDerivation.deriveChildKey(parent, new ChildNumber(from + i, false))
+                                    .dropPrivateBytes();
+                        } catch (HDDerivationException e) {
+                            break;  // An invalid child, the rest of this range is left null.
+                        }
+                    }
+                    return keys;
+                }
+            });
+        }
+        for (DeterministicKey[] keys : runInParallel(tasks)) {
+            for (DeterministicKey key : keys) {
+                if (key == null) {
+                    // The child at this position is invalid, which practically never happens. As all children after
+                    // it are numbered one higher, derive the rest one after another.
+                    deriveChildren(parent, firstChild + result.size(), count - result.size(), result);
+                    return result;
+                }
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    private static void deriveChildren(DeterministicKey parent, int nextChild, int count, List<DeterministicKey> result) {
+        for (int i = 0; i < count; i++) {
             DeterministicKey key = HDKeyDerivation.deriveThisOrNextChildKey(parent, nextChild);
             key = key.dropPrivateBytes();
-            hierarchy.putKey(key);
             result.add(key);
             nextChild = key.getChildNumber().num() + 1;
         }
-        watch.stop();
-        log.info("Took {}", watch);
-        return result;
+    }
+
+    private static int keysPerTask(int count) {
+        int tasks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), count / MIN_KEYS_PER_TASK));
+        return (count + tasks - 1) / tasks;
+    }
+
+    // Runs the first task on the calling thread and the others on Threading.THREAD_POOL, returning the results in order.
+    private static <T> List<T> runInParallel(List<Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks.subList(1, tasks.size()))
+            futures.add(Threading.THREAD_POOL.submit(task));
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            results.add(tasks.get(0).call());
+            for (Future<T> future : futures)
+                results.add(Uninterruptibles.getUninterruptibly(future));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+        return results;
     }
 
     /** Housekeeping call to call when lookahead might be needed.  Normally called automatically by KeychainGroup. */
@@ -1219,22 +1422,22 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
 
     // For internal usage only
     /* package */ List<ECKey> getKeys(boolean includeLookahead) {
-        List<ECKey> keys = basicKeyChain.getKeys();
-        if (!includeLookahead) {
-            int treeSize = internalParentKey.getPath().size();
-            List<ECKey> issuedKeys = new LinkedList<ECKey>();
-            for (ECKey key : keys) {
-                DeterministicKey detkey = (DeterministicKey) key;
-                DeterministicKey parent = detkey.getParent();
-                if (parent == null) continue;
-                if (detkey.getPath().size() <= treeSize) continue;
-                if (parent.equals(internalParentKey) && detkey.getChildNumber().i() >= issuedInternalKeys) continue;
-                if (parent.equals(externalParentKey) && detkey.getChildNumber().i() >= issuedExternalKeys) continue;
-                issuedKeys.add(detkey);
+        lock.lock();
+        try {
+            // Without the lookahead, only the issued leaf keys are returned.
+            List<ECKey> keys = includeLookahead ? basicKeyChain.getKeys() : new ArrayList<ECKey>();
+            for (int i = 0; i < leafKeys.size(); i++) {
+                if (!includeLookahead) {
+                    DeterministicKey parent = leafKeys.getParent(i);
+                    if (parent.equals(internalParentKey) && leafKeys.getChildNumber(i) >= issuedInternalKeys) continue;
+                    if (parent.equals(externalParentKey) && leafKeys.getChildNumber(i) >= issuedExternalKeys) continue;
+                }
+                keys.add(leafKeys.get(i));
             }
-            return issuedKeys;
+            return keys;
+        } finally {
+            lock.unlock();
         }
-        return keys;
     }
 
     /**
@@ -1250,18 +1453,61 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
         return keys;
     }
 
+    /**
+     * Returns the number of leaf keys issued by this chain (including lookahead zone). Unlike
+     * {@link #getLeafKeys()} this doesn't build any keys.
+     */
+    public int numLeafKeys() {
+        lock.lock();
+        try {
+            return leafKeys.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the leaf key at the given index, in the order of {@link #getLeafKeys()}. Leaf keys are only ever
+     * added, so iterating up to {@link #numLeafKeys()} builds one key at a time instead of all of them at once.
+     */
+    public DeterministicKey getLeafKey(int index) {
+        lock.lock();
+        try {
+            return leafKeys.get(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Returns leaf keys issued by this chain (including lookahead zone)
      */
     public List<DeterministicKey> getLeafKeys() {
-        ImmutableList.Builder<DeterministicKey> keys = ImmutableList.builder();
-        for (ECKey key : getKeys(true)) {
-            DeterministicKey dKey = (DeterministicKey) key;
-            if (dKey.getPath().size() == getAccountPath().size() + 2) {
-                keys.add(dKey);
-            }
+        lock.lock();
+        try {
+            ImmutableList.Builder<DeterministicKey> keys = ImmutableList.builder();
+            for (int i = 0; i < leafKeys.size(); i++)
+                keys.add(leafKeys.get(i));
+            return keys.build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the public key hashes of the leaf keys, in the order of {@link #getLeafKeys()}. They are read straight
+     * from the packed key data, without building the keys.
+     */
+    public List<byte[]> getLeafKeyPubKeyHashes() {
+        lock.lock();
+        try {
+            List<byte[]> hashes = new ArrayList<byte[]>(leafKeys.size());
+            for (int i = 0; i < leafKeys.size(); i++)
+                hashes.add(leafKeys.getPubKeyHash(i));
+            return hashes;
+        } finally {
+            lock.unlock();
         }
-        return keys.build();
     }
 
     /*package*/ static void serializeSeedEncryptableItem(DeterministicSeed seed, Protos.Key.Builder proto) {
@@ -73,6 +73,9 @@ public class KeyChainGroup implements KeyBag {
     @Nullable private KeyCrypter keyCrypter;
     private int lookaheadSize = -1;
     private int lookaheadThreshold = -1;
+    // Maps pubkeys, pubkey hashes and P2SH script hashes to the chain that owns them, so lookups don't have to visit
+    // every chain. The chains keep it up to date as keys are added.
+    private final KeyChainIndex index = new KeyChainIndex();
 
     /** Creates a keychain group with no basic chain, and a single, lazily created HD chain. */
     public KeyChainGroup(NetworkParameters params) {
@@ -103,6 +106,7 @@ public class KeyChainGroup implements KeyBag {
                 ? new EnumMap<KeyChain.KeyPurpose, DeterministicKey>(KeyChain.KeyPurpose.class)
                 : currentKeys;
         this.currentAddresses = new EnumMap<KeyChain.KeyPurpose, Address>(KeyChain.KeyPurpose.class);
+        rebuildIndex();
         maybeLookaheadScripts();
 
         if (isMarried()) {
@@ -113,6 +117,14 @@ public class KeyChainGroup implements KeyBag {
         }
     }
 
+    // Registers the basic chain and every HD chain with the lookup index, replacing whatever was registered before.
+    private void rebuildIndex() {
+        index.clear();
+        basic.setIndex(index, basic);
+        for (DeterministicKeyChain chain : chains)
+            chain.setIndex(index);
+    }
+
     // This keeps married redeem data in sync with the number of keys issued
     private void maybeLookaheadScripts() {
         for (DeterministicKeyChain chain : chains) {
@@ -140,6 +152,7 @@ public class KeyChainGroup implements KeyBag {
         if (lookaheadThreshold >= 0)
             chain.setLookaheadThreshold(lookaheadThreshold);
         chains.add(chain);
+        chain.setIndex(index);
     }
 
     /**
@@ -338,14 +351,10 @@ public class KeyChainGroup implements KeyBag {
     @Override
     @Nullable
     public RedeemData findRedeemDataFromScriptHash(byte[] scriptHash) {
-        // Iterate in reverse order, since the active keychain is the one most likely to have the hit
-        for (Iterator<DeterministicKeyChain> iter = chains.descendingIterator() ; iter.hasNext() ; ) {
-            DeterministicKeyChain chain = iter.next();
-            RedeemData redeemData = chain.findRedeemDataByScriptHash(ByteString.copyFrom(scriptHash));
-            if (redeemData != null)
-                return redeemData;
-        }
-        return null;
+        KeyChain owner = index.getOwnerOfScriptHash(scriptHash);
+        if (owner == null)
+            return null;
+        return ((DeterministicKeyChain) owner).findRedeemDataByScriptHash(ByteString.copyFrom(scriptHash));
     }
 
     public void markP2SHAddressAsUsed(Address address) {
@@ -366,14 +375,13 @@ public class KeyChainGroup implements KeyBag {
     @Nullable
     @Override
     public ECKey findKeyFromPubHash(byte[] pubkeyHash) {
-        ECKey result;
-        if ((result = basic.findKeyFromPubHash(pubkeyHash)) != null)
-            return result;
-        for (DeterministicKeyChain chain : chains) {
-            if ((result = chain.findKeyFromPubHash(pubkeyHash)) != null)
-                return result;
-        }
-        return null;
+        KeyChain owner = index.getOwnerOfPubKeyHash(pubkeyHash);
+        if (owner == null)
+            return null;
+        else if (owner == basic)
+            return basic.findKeyFromPubHash(pubkeyHash);
+        else
+            return ((DeterministicKeyChain) owner).findKeyFromPubHash(pubkeyHash);
     }
 
     /**
@@ -381,13 +389,12 @@ public class KeyChainGroup implements KeyBag {
      * See {@link DeterministicKeyChain#markKeyAsUsed(DeterministicKey)} for more info on this.
      */
     public void markPubKeyHashAsUsed(byte[] pubkeyHash) {
-        for (DeterministicKeyChain chain : chains) {
-            DeterministicKey key;
-            if ((key = chain.markPubHashAsUsed(pubkeyHash)) != null) {
-                maybeMarkCurrentKeyAsUsed(key);
-                return;
-            }
-        }
+        KeyChain owner = index.getOwnerOfPubKeyHash(pubkeyHash);
+        if (!(owner instanceof DeterministicKeyChain))
+            return;
+        DeterministicKey key = ((DeterministicKeyChain) owner).markPubHashAsUsed(pubkeyHash);
+        if (key != null)
+            maybeMarkCurrentKeyAsUsed(key);
     }
 
     /** If the given P2SH address is "current", advance it to a new one. */
@@ -427,14 +434,13 @@ public class KeyChainGroup implements KeyBag {
     @Nullable
     @Override
     public ECKey findKeyFromPubKey(byte[] pubkey) {
-        ECKey result;
-        if ((result = basic.findKeyFromPubKey(pubkey)) != null)
-            return result;
-        for (DeterministicKeyChain chain : chains) {
-            if ((result = chain.findKeyFromPubKey(pubkey)) != null)
-                return result;
-        }
-        return null;
+        KeyChain owner = index.getOwnerOfPubKey(pubkey);
+        if (owner == null)
+            return null;
+        else if (owner == basic)
+            return basic.findKeyFromPubKey(pubkey);
+        else
+            return ((DeterministicKeyChain) owner).findKeyFromPubKey(pubkey);
     }
 
     /**
@@ -442,13 +448,12 @@ public class KeyChainGroup implements KeyBag {
      * See {@link DeterministicKeyChain#markKeyAsUsed(DeterministicKey)} for more info on this.
      */
     public void markPubKeyAsUsed(byte[] pubkey) {
-        for (DeterministicKeyChain chain : chains) {
-            DeterministicKey key;
-            if ((key = chain.markPubKeyAsUsed(pubkey)) != null) {
-                maybeMarkCurrentKeyAsUsed(key);
-                return;
-            }
-        }
+        KeyChain owner = index.getOwnerOfPubKey(pubkey);
+        if (!(owner instanceof DeterministicKeyChain))
+            return;
+        DeterministicKey key = ((DeterministicKeyChain) owner).markPubKeyAsUsed(pubkey);
+        if (key != null)
+            maybeMarkCurrentKeyAsUsed(key);
     }
 
     /** Returns the number of keys managed by this group, including the lookahead buffers. */
@@ -500,9 +505,7 @@ public class KeyChainGroup implements KeyBag {
         for (DeterministicKeyChain chain : chains)
             newChains.add(chain.toEncrypted(keyCrypter, aesKey));
         this.keyCrypter = keyCrypter;
-        basic = newBasic;
-        chains.clear();
-        chains.addAll(newChains);
+        replaceChains(newBasic, newChains);
     }
 
     /**
@@ -520,9 +523,17 @@ public class KeyChainGroup implements KeyBag {
             newChains.add(chain.toDecrypted(aesKey));
 
         this.keyCrypter = null;
+        replaceChains(newBasic, newChains);
+    }
+
+    private void replaceChains(BasicKeyChain newBasic, List<DeterministicKeyChain> newChains) {
+        basic.setIndex(null, null);
+        for (DeterministicKeyChain chain : chains)
+            chain.setIndex(null);
         basic = newBasic;
         chains.clear();
         chains.addAll(newChains);
+        rebuildIndex();
     }
 
     /** Returns true if the group is encrypted. */
@@ -594,6 +605,22 @@ public class KeyChainGroup implements KeyBag {
         return filter;
     }
 
+    /** Returns the elements {@link #getBloomFilter(int, double, long)} inserts into the filter. */
+    public List<byte[]> getBloomFilterElements() {
+        List<byte[]> elements = new ArrayList<byte[]>(basic.getBloomFilterElements());
+        for (DeterministicKeyChain chain : chains)
+            elements.addAll(chain.getBloomFilterElements());
+        return elements;
+    }
+
+    /** Returns the output script programs of all keys in the group, see {@link DeterministicKeyChain#getBlockFilterElements()}. */
+    public List<byte[]> getBlockFilterElements() {
+        List<byte[]> elements = new ArrayList<byte[]>(basic.getBlockFilterElements());
+        for (DeterministicKeyChain chain : chains)
+            elements.addAll(chain.getBlockFilterElements());
+        return elements;
+    }
+
     /** {@inheritDoc} */
     public boolean isRequiringUpdateAllBloomFilter() {
         throw new UnsupportedOperationException();   // Unused.
@@ -735,6 +762,7 @@ public class KeyChainGroup implements KeyBag {
             chain = chain.toEncrypted(checkNotNull(basic.getKeyCrypter()), aesKey);
         }
         chains.add(chain);
+        chain.setIndex(index);
         return chain;
     }
 
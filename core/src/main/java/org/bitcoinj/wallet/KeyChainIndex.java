@@ -0,0 +1,208 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.wallet;
+
+import org.bitcoinj.core.ECKey;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * <p>Maps pubkey hashes, pubkeys and P2SH script hashes to the {@link KeyChain} of a {@link KeyChainGroup} that owns
+ * them, so that deciding whether an output is ours costs a single hash probe regardless of how many chains the group
+ * contains. Without it every lookup has to visit the basic chain and each HD chain in turn.</p>
+ *
+ * <p>Entries are kept in open addressing tables keyed by the trailing eight bytes of the data as a primitive long.
+ * The full bytes are stored next to the owner so there are no false positives. The key chains push new entries as
+ * keys are imported (including lookahead keys) and as married scripts are generated; see
+ * {@link BasicKeyChain#setIndex(KeyChainIndex, KeyChain)}.</p>
+ *
+ * <p>This class is thread safe. Its lock is never held whilst calling out, so it can be used under any key chain
+ * lock.</p>
+ */
+final class KeyChainIndex {
+    private final Table pubKeyHashes = new Table();
+    private final Table pubKeys = new Table();
+    private final Table scriptHashes = new Table();
+
+    /** Registers both the pubkey and the pubkey hash of the given key. An existing owner is not replaced. */
+    void addKey(ECKey key, KeyChain owner) {
+        addKey(key.getPubKey(), key.getPubKeyHash(), owner);
+    }
+
+    /** Registers the given pubkey and pubkey hash, for chains that don't keep {@link ECKey} objects around. */
+    synchronized void addKey(byte[] pubKey, byte[] pubKeyHash, KeyChain owner) {
+        pubKeys.put(pubKey, owner, false);
+        pubKeyHashes.put(pubKeyHash, owner, false);
+    }
+
+    /** Unregisters the given key, if it is owned by the given chain. */
+    void removeKey(ECKey key, KeyChain owner) {
+        removeKey(key.getPubKey(), key.getPubKeyHash(), owner);
+    }
+
+    /** Unregisters the given pubkey and pubkey hash, if they are owned by the given chain. */
+    synchronized void removeKey(byte[] pubKey, byte[] pubKeyHash, KeyChain owner) {
+        pubKeys.remove(pubKey, owner);
+        pubKeyHashes.remove(pubKeyHash, owner);
+    }
+
+    /**
+     * Registers a P2SH script hash. The most recently registered owner wins, to match the active-chain-first order in
+     * which {@link KeyChainGroup#findRedeemDataFromScriptHash(byte[])} used to search.
+     */
+    synchronized void addScriptHash(byte[] scriptHash, KeyChain owner) {
+        scriptHashes.put(scriptHash, owner, true);
+    }
+
+    @Nullable
+    synchronized KeyChain getOwnerOfPubKeyHash(byte[] pubkeyHash) {
+        return pubKeyHashes.get(pubkeyHash);
+    }
+
+    @Nullable
+    synchronized KeyChain getOwnerOfPubKey(byte[] pubkey) {
+        return pubKeys.get(pubkey);
+    }
+
+    @Nullable
+    synchronized KeyChain getOwnerOfScriptHash(byte[] scriptHash) {
+        return scriptHashes.get(scriptHash);
+    }
+
+    /** Returns the total number of indexed pubkeys, pubkey hashes and script hashes. */
+    synchronized int size() {
+        return pubKeyHashes.size + pubKeys.size + scriptHashes.size;
+    }
+
+    synchronized void clear() {
+        pubKeyHashes.clear();
+        pubKeys.clear();
+        scriptHashes.clear();
+    }
+
+    /** A linear probing hash table from byte arrays to owners, hashed on a primitive long. */
+    private static final class Table {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] prefixes;
+        private byte[][] data;
+        private KeyChain[] owners;
+        private int size;
+
+        Table() {
+            clear();
+        }
+
+        void clear() {
+            prefixes = new long[INITIAL_CAPACITY];
+            data = new byte[INITIAL_CAPACITY][];
+            owners = new KeyChain[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        @Nullable
+        KeyChain get(byte[] bytes) {
+            long prefix = prefix(bytes);
+            int mask = data.length - 1;
+            for (int i = slot(prefix, mask); data[i] != null; i = (i + 1) & mask) {
+                if (prefixes[i] == prefix && Arrays.equals(data[i], bytes))
+                    return owners[i];
+            }
+            return null;
+        }
+
+        void put(byte[] bytes, KeyChain owner, boolean replace) {
+            if ((size + 1) * 4 > data.length * 3)
+                resize(data.length * 2);
+            long prefix = prefix(bytes);
+            int mask = data.length - 1;
+            int i = slot(prefix, mask);
+            for (; data[i] != null; i = (i + 1) & mask) {
+                if (prefixes[i] == prefix && Arrays.equals(data[i], bytes)) {
+                    if (replace)
+                        owners[i] = owner;
+                    return;
+                }
+            }
+            prefixes[i] = prefix;
+            data[i] = bytes;
+            owners[i] = owner;
+            size++;
+        }
+
+        void remove(byte[] bytes, KeyChain owner) {
+            long prefix = prefix(bytes);
+            int mask = data.length - 1;
+            int i = slot(prefix, mask);
+            for (; data[i] != null; i = (i + 1) & mask) {
+                if (prefixes[i] == prefix && Arrays.equals(data[i], bytes))
+                    break;
+            }
+            if (data[i] == null || owners[i] != owner)
+                return;
+            // Shift later entries of the same probe run back into the gap, so lookups never stop early.
+            int gap = i;
+            for (int j = (gap + 1) & mask; data[j] != null; j = (j + 1) & mask) {
+                int home = slot(prefixes[j], mask);
+                boolean movable = gap <= j ? (home <= gap || home > j) : (home <= gap && home > j);
+                if (movable) {
+                    prefixes[gap] = prefixes[j];
+                    data[gap] = data[j];
+                    owners[gap] = owners[j];
+                    gap = j;
+                }
+            }
+            data[gap] = null;
+            owners[gap] = null;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldPrefixes = prefixes;
+            byte[][] oldData = data;
+            KeyChain[] oldOwners = owners;
+            prefixes = new long[capacity];
+            data = new byte[capacity][];
+            owners = new KeyChain[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldData.length; i++) {
+                if (oldData[i] == null)
+                    continue;
+                int j = slot(oldPrefixes[i], mask);
+                while (data[j] != null)
+                    j = (j + 1) & mask;
+                prefixes[j] = oldPrefixes[i];
+                data[j] = oldData[i];
+                owners[j] = oldOwners[i];
+            }
+        }
+
+        // Hashes, and the x/y coordinates at the end of a pubkey, are uniformly distributed so their trailing bytes
+        // make a good hash code.
+        private static long prefix(byte[] bytes) {
+            long result = 0;
+            for (int i = Math.max(0, bytes.length - 8); i < bytes.length; i++)
+                result = (result << 8) | (bytes[i] & 0xFFL);
+            return result;
+        }
+
+        private static int slot(long prefix, int mask) {
+            return (int) ((prefix * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
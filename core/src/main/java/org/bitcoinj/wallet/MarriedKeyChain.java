@@ -30,6 +30,7 @@ import org.bitcoinj.script.Script;
 import org.bitcoinj.script.ScriptBuilder;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +62,8 @@ public class MarriedKeyChain extends DeterministicKeyChain {
 
     private List<DeterministicKeyChain> followingKeyChains;
 
+    @Nullable private KeyChainIndex index;
+
     /** Builds a {@link MarriedKeyChain} */
     public static class Builder<T extends Builder<T>> extends DeterministicKeyChain.Builder<T> {
         private List<DeterministicKey> followingKeys;
@@ -256,20 +259,33 @@ public class MarriedKeyChain extends DeterministicKeyChain {
     @Override
     public void maybeLookAheadScripts() {
         super.maybeLookAheadScripts();
-        int numLeafKeys = getLeafKeys().size();
+        int numLeafKeys = numLeafKeys();
 
         checkState(marriedKeysRedeemData.size() <= numLeafKeys, "Number of scripts is greater than number of leaf keys");
         if (marriedKeysRedeemData.size() == numLeafKeys)
             return;
 
         maybeLookAhead();
-        for (DeterministicKey followedKey : getLeafKeys()) {
+        // Leaf keys are only ever added, so the ones without scripts yet are the last ones.
+        for (int i = marriedKeysRedeemData.size(); i < numLeafKeys(); i++) {
+            DeterministicKey followedKey = getLeafKey(i);
             RedeemData redeemData = getRedeemData(followedKey);
             Script scriptPubKey = ScriptBuilder.createP2SHOutputScript(redeemData.redeemScript);
             marriedKeysRedeemData.put(ByteString.copyFrom(scriptPubKey.getPubKeyHash()), redeemData);
+            if (index != null)
+                index.addScriptHash(scriptPubKey.getPubKeyHash(), this);
         }
     }
 
+    @Override
+    void setIndex(@Nullable KeyChainIndex index) {
+        super.setIndex(index);
+        this.index = index;
+        if (index != null)
+            for (ByteString scriptHash : marriedKeysRedeemData.keySet())
+                index.addScriptHash(scriptHash.toByteArray(), this);
+    }
+
     @Nullable
     @Override
     public RedeemData findRedeemDataByScriptHash(ByteString bytes) {
@@ -292,9 +308,38 @@ public class MarriedKeyChain extends DeterministicKeyChain {
         return filter;
     }
 
+    @Override
+    public List<byte[]> getBloomFilterElements() {
+        lock.lock();
+        try {
+            List<byte[]> elements = new ArrayList<byte[]>(marriedKeysRedeemData.size() * 2);
+            for (Map.Entry<ByteString, RedeemData> entry : marriedKeysRedeemData.entrySet()) {
+                elements.add(entry.getKey().toByteArray());
+                elements.add(entry.getValue().redeemScript.getProgram());
+            }
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<byte[]> getBlockFilterElements() {
+        lock.lock();
+        try {
+            maybeLookAhead();
+            List<byte[]> elements = new ArrayList<byte[]>(marriedKeysRedeemData.size());
+            for (ByteString scriptHash : marriedKeysRedeemData.keySet())
+                elements.add(ScriptBuilder.createP2SHOutputScript(scriptHash.toByteArray()).getProgram());
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public int numBloomFilterEntries() {
         maybeLookAhead();
-        return getLeafKeys().size() * 2;
+        return numLeafKeys() * 2;
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.wallet;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicHierarchy;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.HDUtils;
+import org.bitcoinj.crypto.LazyECPoint;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * <p>The leaf keys of a {@link DeterministicKeyChain}, that is its issued and lookahead keys, packed into primitive
+ * arrays. For each key only its child number, its compressed public key and the hash of that are stored, which is
+ * around 80 bytes including the lookup tables. A full {@link DeterministicKey} with its point, chain code, path and
+ * cached hashes, plus its entries in the maps of a {@link BasicKeyChain} and a {@link DeterministicHierarchy}, costs
+ * many times that, which adds up for chains with hundreds of thousands of keys.</p>
+ *
+ * <p>Key objects are built on demand and aren't kept. That takes a single HMAC to rederive the chain code from the
+ * parent and no EC math, as the public key is already known. Keys are looked up by pubkey, pubkey hash or child
+ * number through open addressing tables of primitive ints, hashed on the trailing bytes of the data like in
+ * {@link KeyChainIndex}, so lookups that miss don't build anything.</p>
+ *
+ * <p>This class is not thread safe, the owning chain guards it with its lock.</p>
+ */
+final class PackedLeafKeys {
+    private static final int PUBKEY_LENGTH = 33;
+    private static final int HASH_LENGTH = 20;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The parent keys that the leaf keys are children of, normally the external and internal parent keys.
+    private final List<Branch> branches = new ArrayList<Branch>(2);
+
+    // Per entry: the branch, the child number and the compressed pubkey and its hash.
+    private byte[] branchOf;
+    private int[] childNumbers;
+    private byte[] pubKeys;
+    private byte[] pubKeyHashes;
+    private int size;
+
+    // Open addressing tables holding entry + 1, or zero for an empty slot. They're twice the capacity so they're at
+    // most half full.
+    private int[] pubKeyTable;
+    private int[] pubKeyHashTable;
+
+    PackedLeafKeys() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private static final class Branch {
+        final DeterministicKey parent;
+        // The entry + 1 of each child number, or zero if the child isn't stored.
+        int[] entries = new int[INITIAL_CAPACITY];
+        int numChildren;
+
+        Branch(DeterministicKey parent) {
+            this.parent = parent;
+        }
+    }
+
+    /** Returns the number of keys. */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds the given key, which must be a non-hardened child of a parent key. Its private key bytes, if any, aren't
+     * stored: they can be rederived from the parent. Returns false if the key was already present.
+     */
+    boolean add(DeterministicKey key) {
+        DeterministicKey parent = checkNotNull(key.getParent(), "Leaf keys must have a parent");
+        ChildNumber childNumber = key.getChildNumber();
+        checkArgument(!childNumber.isHardened(), "Leaf keys must not be hardened: %s", key.getPathAsString());
+        byte[] pubKey = key.getPubKey();
+        checkArgument(pubKey.length == PUBKEY_LENGTH, "Leaf keys must be compressed");
+        if (indexOfPubKey(pubKey) >= 0)
+            return false;
+        if (size == childNumbers.length)
+            grow();
+        Branch branch = getBranch(parent.getPath());
+        if (branch == null) {
+            checkState(branches.size() < 256, "Too many parent keys");
+            branch = new Branch(parent);
+            branches.add(branch);
+        }
+        int entry = size++;
+        branchOf[entry] = (byte) branches.indexOf(branch);
+        childNumbers[entry] = childNumber.num();
+        System.arraycopy(pubKey, 0, pubKeys, entry * PUBKEY_LENGTH, PUBKEY_LENGTH);
+        System.arraycopy(key.getPubKeyHash(), 0, pubKeyHashes, entry * HASH_LENGTH, HASH_LENGTH);
+        insert(pubKeyTable, pubKeys, PUBKEY_LENGTH, entry);
+        insert(pubKeyHashTable, pubKeyHashes, HASH_LENGTH, entry);
+        int num = childNumber.num();
+        if (num >= branch.entries.length)
+            branch.entries = Arrays.copyOf(branch.entries, Math.max(num + 1, branch.entries.length * 2));
+        branch.entries[num] = entry + 1;
+        // Like DeterministicHierarchy, assume children are added in order.
+        branch.numChildren = num + 1;
+        return true;
+    }
+
+    /** Returns one more than the highest child number added below the given parent, or 0 if there are none. */
+    int getNumChildren(DeterministicKey parent) {
+        Branch branch = getBranch(parent.getPath());
+        return branch == null ? 0 : branch.numChildren;
+    }
+
+    /** Returns the entry of the key with the given compressed pubkey, or -1 if there is none. */
+    int indexOfPubKey(byte[] pubKey) {
+        return find(pubKeyTable, pubKeys, PUBKEY_LENGTH, pubKey);
+    }
+
+    /** Returns the entry of the key with the given pubkey hash, or -1 if there is none. */
+    int indexOfPubKeyHash(byte[] pubKeyHash) {
+        return find(pubKeyHashTable, pubKeyHashes, HASH_LENGTH, pubKeyHash);
+    }
+
+    /** Returns the entry of the key at the given path, or -1 if there is none. */
+    int indexOf(List<ChildNumber> path) {
+        if (path.isEmpty())
+            return -1;
+        ChildNumber childNumber = path.get(path.size() - 1);
+        Branch branch = getBranch(path.subList(0, path.size() - 1));
+        if (branch == null || childNumber.isHardened() || childNumber.num() >= branch.entries.length)
+            return -1;
+        return branch.entries[childNumber.num()] - 1;
+    }
+
+    /** Builds the key of the given entry. */
+    DeterministicKey get(int entry) {
+        checkElementIndex(entry, size);
+        DeterministicKey parent = getParent(entry);
+        ChildNumber childNumber = new ChildNumber(childNumbers[entry], false);
+        byte[] chainCode = HDKeyDerivation.deriveChildChainCode(parent, childNumber);
+        LazyECPoint pubKey = new LazyECPoint(ECKey.CURVE.getCurve(), getPubKey(entry));
+        return new DeterministicKey(HDUtils.append(parent.getPath(), childNumber), chainCode, pubKey, null, parent);
+    }
+
+    /** Builds the key with the given compressed pubkey, or returns null if there is none. */
+    @Nullable
+    DeterministicKey findKeyFromPubKey(byte[] pubKey) {
+        int entry = indexOfPubKey(pubKey);
+        return entry >= 0 ? get(entry) : null;
+    }
+
+    /** Builds the key with the given pubkey hash, or returns null if there is none. */
+    @Nullable
+    DeterministicKey findKeyFromPubHash(byte[] pubKeyHash) {
+        int entry = indexOfPubKeyHash(pubKeyHash);
+        return entry >= 0 ? get(entry) : null;
+    }
+
+    /** Returns the parent of the key of the given entry. */
+    DeterministicKey getParent(int entry) {
+        checkElementIndex(entry, size);
+        return branches.get(branchOf[entry] & 0xFF).parent;
+    }
+
+    /** Returns the child number of the key of the given entry, without the hardened bit. */
+    int getChildNumber(int entry) {
+        checkElementIndex(entry, size);
+        return childNumbers[entry];
+    }
+
+    /** Returns a copy of the compressed pubkey of the given entry. */
+    byte[] getPubKey(int entry) {
+        checkElementIndex(entry, size);
+        return Arrays.copyOfRange(pubKeys, entry * PUBKEY_LENGTH, (entry + 1) * PUBKEY_LENGTH);
+    }
+
+    /** Returns a copy of the pubkey hash of the given entry. */
+    byte[] getPubKeyHash(int entry) {
+        checkElementIndex(entry, size);
+        return Arrays.copyOfRange(pubKeyHashes, entry * HASH_LENGTH, (entry + 1) * HASH_LENGTH);
+    }
+
+    /**
+     * Returns a copy of these keys whose parents are the keys at the same paths in the given hierarchy, for example
+     * after it was encrypted or decrypted. The public data of the keys doesn't change so nothing is rederived.
+     */
+    PackedLeafKeys copy(DeterministicHierarchy hierarchy) {
+        PackedLeafKeys copy = new PackedLeafKeys();
+        for (Branch branch : branches) {
+            Branch copied = new Branch(hierarchy.get(branch.parent.getPath(), false, false));
+            copied.entries = branch.entries.clone();
+            copied.numChildren = branch.numChildren;
+            copy.branches.add(copied);
+        }
+        copy.branchOf = branchOf.clone();
+        copy.childNumbers = childNumbers.clone();
+        copy.pubKeys = pubKeys.clone();
+        copy.pubKeyHashes = pubKeyHashes.clone();
+        copy.size = size;
+        copy.pubKeyTable = pubKeyTable.clone();
+        copy.pubKeyHashTable = pubKeyHashTable.clone();
+        return copy;
+    }
+
+    @Nullable
+    private Branch getBranch(List<ChildNumber> parentPath) {
+        for (Branch branch : branches)
+            if (branch.parent.getPath().equals(parentPath))
+                return branch;
+        return null;
+    }
+
+    private void allocate(int capacity) {
+        branchOf = new byte[capacity];
+        childNumbers = new int[capacity];
+        pubKeys = new byte[capacity * PUBKEY_LENGTH];
+        pubKeyHashes = new byte[capacity * HASH_LENGTH];
+        pubKeyTable = new int[capacity * 2];
+        pubKeyHashTable = new int[capacity * 2];
+    }
+
+    private void grow() {
+        byte[] oldBranchOf = branchOf;
+        int[] oldChildNumbers = childNumbers;
+        byte[] oldPubKeys = pubKeys;
+        byte[] oldPubKeyHashes = pubKeyHashes;
+        allocate(childNumbers.length * 2);
+        System.arraycopy(oldBranchOf, 0, branchOf, 0, size);
+        System.arraycopy(oldChildNumbers, 0, childNumbers, 0, size);
+        System.arraycopy(oldPubKeys, 0, pubKeys, 0, size * PUBKEY_LENGTH);
+        System.arraycopy(oldPubKeyHashes, 0, pubKeyHashes, 0, size * HASH_LENGTH);
+        for (int entry = 0; entry < size; entry++) {
+            insert(pubKeyTable, pubKeys, PUBKEY_LENGTH, entry);
+            insert(pubKeyHashTable, pubKeyHashes, HASH_LENGTH, entry);
+        }
+    }
+
+    private static void insert(int[] table, byte[] data, int length, int entry) {
+        int mask = table.length - 1;
+        int i = slot(data, entry * length, length, mask);
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = entry + 1;
+    }
+
+    private int find(int[] table, byte[] data, int length, byte[] bytes) {
+        if (bytes.length != length)
+            return -1;
+        int mask = table.length - 1;
+        for (int i = slot(bytes, 0, length, mask); table[i] != 0; i = (i + 1) & mask) {
+            int entry = table[i] - 1;
+            if (equals(data, entry * length, bytes, length))
+                return entry;
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] data, int offset, byte[] bytes, int length) {
+        for (int i = 0; i < length; i++)
+            if (data[offset + i] != bytes[i])
+                return false;
+        return true;
+    }
+
+    // Hashes, and the x coordinates at the end of compressed pubkeys, are uniformly distributed so their trailing
+    // bytes make a good hash code.
+    private static int slot(byte[] bytes, int offset, int length, int mask) {
+        long tail = 0;
+        for (int i = offset + length - 8; i < offset + length; i++)
+            tail = (tail << 8) | (bytes[i] & 0xFFL);
+        return (int) ((tail * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -102,6 +102,13 @@ public class SendRequest {
      */
     public boolean ensureMinRequiredFee = Context.get().isEnsureMinRequiredFee();
 
+    /**
+     * <p>If positive, and the wallet has a {@link org.bitcoinj.core.FeeEstimator}, {@link #feePerKb} is replaced by
+     * the estimated fee for confirming within this many blocks when the request is completed. If there is no estimate
+     * yet, feePerKb is used as given. Defaults to 0, which means feePerKb is always used.</p>
+     */
+    public int confirmationTarget = 0;
+
     /**
      * If true (the default), the inputs will be signed.
      */
@@ -258,6 +265,7 @@ public class SendRequest {
         helper.add("changeAddress", changeAddress);
         helper.add("feePerKb", feePerKb);
         helper.add("ensureMinRequiredFee", ensureMinRequiredFee);
+        helper.add("confirmationTarget", confirmationTarget);
         helper.add("signInputs", signInputs);
         helper.add("aesKey", aesKey != null ? "set" : null); // careful to not leak the key
         helper.add("coinSelector", coinSelector);
@@ -33,7 +33,9 @@ import org.bitcoinj.core.BloomFilter;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Context;
 import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.FeeEstimator;
 import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.GrowablePeerFilterProvider;
 import org.bitcoinj.core.InsufficientMoneyException;
 import org.bitcoinj.core.Message;
 import org.bitcoinj.core.NetworkParameters;
@@ -123,7 +125,7 @@ import static com.google.common.base.Preconditions.*;
  * for more information about this.</p>
  */
 public class Wallet extends BaseTaggableObject
-    implements NewBestBlockListener, TransactionReceivedInBlockListener, PeerFilterProvider, KeyBag, TransactionBag, ReorganizeListener {
+    implements NewBestBlockListener, TransactionsReceivedInBlockListener, GrowablePeerFilterProvider, KeyBag, TransactionBag, ReorganizeListener {
     private static final Logger log = LoggerFactory.getLogger(Wallet.class);
     private static final int MINIMUM_BLOOM_DATA_LENGTH = 8;
 
@@ -159,6 +161,10 @@ public class Wallet extends BaseTaggableObject
     // All transactions together.
     protected final Map<Sha256Hash, Transaction> transactions;
 
+    // Maps each outpoint spent by a transaction in any pool to the transactions spending it, so that double spends and
+    // dependent transactions can be found without scanning the pools. Coinbase transactions are not included.
+    private final SetMultimap<TransactionOutPoint, Transaction> spenders = HashMultimap.create();
+
     // All the TransactionOutput objects that we could spend (ignoring whether we have the private key or not).
     // Used to speed up various calculations.
     protected final HashSet<TransactionOutput> myUnspents = Sets.newHashSet();
@@ -211,7 +217,7 @@ public class Wallet extends BaseTaggableObject
     // If a TX hash appears in this set then notifyNewBestBlock will ignore it, as its confidence was already set up
     // in receive() via Transaction.setBlockAppearance(). As the BlockChain always calls notifyNewBestBlock even if
     // it sent transactions to the wallet, without this we'd double count.
-    private HashSet<Sha256Hash> ignoreNextNewBlock;
+    private Sha256HashSet ignoreNextNewBlock;
     // Whether or not to ignore pending transactions that are considered risky by the configured risk analyzer.
     private boolean acceptRiskyTransactions;
     // Object that performs risk analysis of pending transactions. We might reject transactions that seem like
@@ -248,6 +254,7 @@ public class Wallet extends BaseTaggableObject
 
     // If this is set then the wallet selects spendable candidate outputs from a UTXO provider.
     @Nullable private volatile UTXOProvider vUTXOProvider;
+    @Nullable private volatile FeeEstimator vFeeEstimator;
 
     /**
      * Creates a new, empty wallet with a randomly chosen seed and no transactions. Make sure to provide for sufficient
@@ -319,11 +326,11 @@ public class Wallet extends BaseTaggableObject
         if (this.keyChainGroup.numKeys() == 0)
             this.keyChainGroup.createAndActivateNewHDChain();
         watchedScripts = Sets.newHashSet();
-        unspent = new HashMap<Sha256Hash, Transaction>();
-        spent = new HashMap<Sha256Hash, Transaction>();
-        pending = new HashMap<Sha256Hash, Transaction>();
-        dead = new HashMap<Sha256Hash, Transaction>();
-        transactions = new HashMap<Sha256Hash, Transaction>();
+        unspent = new Sha256HashMap<Transaction>();
+        spent = new Sha256HashMap<Transaction>();
+        pending = new Sha256HashMap<Transaction>();
+        dead = new Sha256HashMap<Transaction>();
+        transactions = new Sha256HashMap<Transaction>();
         extensions = new HashMap<String, WalletExtension>();
         // Use a linked hash map to ensure ordering of event listeners is correct.
         confidenceChanged = new LinkedHashMap<Transaction, TransactionConfidence.Listener.ChangeReason>();
@@ -333,7 +340,7 @@ public class Wallet extends BaseTaggableObject
     }
 
     private void createTransientState() {
-        ignoreNextNewBlock = new HashSet<Sha256Hash>();
+        ignoreNextNewBlock = new Sha256HashSet();
         txConfidenceListener = new TransactionConfidence.Listener() {
             @Override
             public void onConfidenceChanged(TransactionConfidence confidence, TransactionConfidence.Listener.ChangeReason reason) {
@@ -647,6 +654,16 @@ public class Wallet extends BaseTaggableObject
         }
     }
 
+    /** Returns a copy of the list of deterministic key chains, including inactive ones. */
+    List<DeterministicKeyChain> getDeterministicKeyChains() {
+        keyChainGroupLock.lock();
+        try {
+            return keyChainGroup.getDeterministicKeyChains();
+        } finally {
+            keyChainGroupLock.unlock();
+        }
+    }
+
     /** Returns the address used for change outputs. Note: this will probably go away in future. */
     public Address currentChangeAddress() {
         return currentAddress(KeyChain.KeyPurpose.CHANGE);
@@ -1568,6 +1585,16 @@ public class Wallet extends BaseTaggableObject
                     throw new IllegalStateException("Inconsistent spent tx: " + tx.getHashAsString());
                 }
             }
+
+            SetMultimap<TransactionOutPoint, Transaction> expectedSpenders = HashMultimap.create();
+            for (Transaction tx : transactions) {
+                if (!tx.isCoinBase())
+                    for (TransactionInput input : tx.getInputs())
+                        expectedSpenders.put(input.getOutpoint(), tx);
+            }
+            if (!expectedSpenders.equals(spenders)) {
+                throw new IllegalStateException("Inconsistent spenders index");
+            }
         } finally {
             lock.unlock();
         }
@@ -1808,19 +1835,13 @@ public class Wallet extends BaseTaggableObject
     private Set<Transaction> findDoubleSpendsAgainst(Transaction tx, Map<Sha256Hash, Transaction> candidates) {
         checkState(lock.isHeldByCurrentThread());
         if (tx.isCoinBase()) return Sets.newHashSet();
-        // Compile a set of outpoints that are spent by tx.
-        HashSet<TransactionOutPoint> outpoints = new HashSet<TransactionOutPoint>();
-        for (TransactionInput input : tx.getInputs()) {
-            outpoints.add(input.getOutpoint());
-        }
-        // Now for each pending transaction, see if it shares any outpoints with this tx.
+        // For each outpoint spent by tx, see if any of the candidates spends it too.
         Set<Transaction> doubleSpendTxns = Sets.newHashSet();
-        for (Transaction p : candidates.values()) {
-            for (TransactionInput input : p.getInputs()) {
-                // This relies on the fact that TransactionOutPoint equality is defined at the protocol not object
-                // level - outpoints from two different inputs that point to the same output compare the same.
-                TransactionOutPoint outpoint = input.getOutpoint();
-                if (outpoints.contains(outpoint)) {
+        for (TransactionInput input : tx.getInputs()) {
+            // This relies on the fact that TransactionOutPoint equality is defined at the protocol not object
+            // level - outpoints from two different inputs that point to the same output compare the same.
+            for (Transaction p : spenders.get(input.getOutpoint())) {
+                if (candidates.containsKey(p.getHash())) {
                     // It does, it's a double spend against the candidates, which makes it relevant.
                     doubleSpendTxns.add(p);
                 }
@@ -1831,23 +1852,31 @@ public class Wallet extends BaseTaggableObject
 
     /**
      * Adds to txSet all the txns in txPool spending outputs of txns in txSet,
-     * and all txns spending the outputs of those txns, recursively.
+     * and all txns spending the outputs of those txns, recursively. Only wallet transactions are considered.
      */
     void addTransactionsDependingOn(Set<Transaction> txSet, Set<Transaction> txPool) {
+        lock.lock();
+        try {
+            addTransactionsDependingOnLocked(txSet, txPool);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // If txPool is null, all transactions in the wallet are considered.
+    private void addTransactionsDependingOnLocked(Set<Transaction> txSet, @Nullable Set<Transaction> txPool) {
         Map<Sha256Hash, Transaction> txQueue = new LinkedHashMap<Sha256Hash, Transaction>();
         for (Transaction tx : txSet) {
             txQueue.put(tx.getHash(), tx);
         }
         while(!txQueue.isEmpty()) {
             Transaction tx = txQueue.remove(txQueue.keySet().iterator().next());
-            for (Transaction anotherTx : txPool) {
-                if (anotherTx.equals(tx)) continue;
-                for (TransactionInput input : anotherTx.getInputs()) {
-                    if (input.getOutpoint().getHash().equals(tx.getHash())) {
-                        if (txQueue.get(anotherTx.getHash()) == null) {
-                            txQueue.put(anotherTx.getHash(), anotherTx);
-                            txSet.add(anotherTx);
-                        }
+            for (int i = 0; i < tx.getOutputs().size(); i++) {
+                for (Transaction anotherTx : spenders.get(new TransactionOutPoint(params, i, tx.getHash()))) {
+                    if (anotherTx.equals(tx) || (txPool != null && !txPool.contains(anotherTx))) continue;
+                    if (txQueue.get(anotherTx.getHash()) == null) {
+                        txQueue.put(anotherTx.getHash(), anotherTx);
+                        txSet.add(anotherTx);
                     }
                 }
             }
@@ -1886,15 +1915,92 @@ public class Wallet extends BaseTaggableObject
         }
     }
 
+    /**
+     * <p>Receives all the transactions of a block under a single acquisition of the wallet lock. This is equivalent
+     * to calling {@link #receiveFromBlock(Transaction, StoredBlock, BlockChain.NewBlockType, int)} or
+     * {@link #notifyTransactionIsInBlock(Sha256Hash, StoredBlock, BlockChain.NewBlockType, int)} for each
+     * transaction in turn, except that the wallet change event, confidence listeners, consistency check and save
+     * happen once for the whole block. Blocks paying many of our addresses are therefore processed in roughly the
+     * time it takes to handle a single transaction.</p>
+     *
+     * <p>The coins received and sent events are still fired for each transaction, as these carry per transaction
+     * data.</p>
+     */
+    @Override
+    public Set<Sha256Hash> receiveFromBlock(List<Sha256Hash> txHashes, Map<Sha256Hash, Transaction> txns,
+                                            StoredBlock block, BlockChain.NewBlockType blockType)
+            throws VerificationException {
+        Set<Sha256Hash> received = new HashSet<Sha256Hash>();
+        lock.lock();
+        try {
+            checkState(!insideBatchReceive);
+            boolean bestChain = blockType == BlockChain.NewBlockType.BEST_CHAIN;
+            // Only track the balance from transaction to transaction if somebody wants to be told about it.
+            boolean trackBalance = bestChain && !insideReorg &&
+                    (!coinsReceivedListeners.isEmpty() || !coinsSentListeners.isEmpty());
+            batchBalance = trackBalance ? getBalance() : null;
+            insideBatchReceive = true;
+            onWalletChangedSuppressions++;
+            try {
+                // Go through the single transaction methods so subclasses overriding them still see every tx.
+                for (int i = 0; i < txHashes.size(); i++) {
+                    Sha256Hash hash = txHashes.get(i);
+                    Transaction tx = txns.get(hash);
+                    try {
+                        if (tx != null) {
+                            receiveFromBlock(tx, block, blockType, i);
+                            if (transactions.containsKey(hash))
+                                received.add(hash);
+                        } else if (notifyTransactionIsInBlock(hash, block, blockType, i)) {
+                            received.add(hash);
+                        }
+                    } catch (ScriptException e) {
+                        // We don't want scripts we don't understand to break the block chain so just note that this
+                        // tx was not scanned here and continue.
+                        log.warn("Failed to parse a script: " + e.toString());
+                    }
+                }
+            } finally {
+                onWalletChangedSuppressions--;
+                insideBatchReceive = false;
+                batchBalance = null;
+            }
+            if (!received.isEmpty()) {
+                if (bestChain) {
+                    // notifyNewBestBlock will be invoked next and will then call maybeQueueOnWalletChanged for us.
+                    if (!insideReorg) {
+                        Coin newBalance = getBalance();
+                        log.info("Balance is now: " + newBalance.toFriendlyString());
+                        checkBalanceFuturesLocked(newBalance);
+                    }
+                } else {
+                    maybeQueueOnWalletChanged();
+                }
+                informConfidenceListenersIfNotReorganizing();
+                isConsistentOrThrow();
+                saveLater();
+                hardSaveOnNextBlock = true;
+            }
+            return received;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     // Whether to do a saveNow or saveLater when we are notified of the next best block.
     private boolean hardSaveOnNextBlock = false;
 
+    // Set whilst a whole block is being received, so that receive() leaves the once per block work to the caller.
+    private boolean insideBatchReceive;
+    // The balance after the last transaction received in the current batch, if coin listeners need it.
+    @Nullable private Coin batchBalance;
+
     private void receive(Transaction tx, StoredBlock block, BlockChain.NewBlockType blockType,
                          int relativityOffset) throws VerificationException {
         // Runs in a peer thread.
         checkState(lock.isHeldByCurrentThread());
 
-        Coin prevBalance = getBalance();
+        Coin prevBalance = insideBatchReceive ? batchBalance : getBalance();
         Sha256Hash txHash = tx.getHash();
         boolean bestChain = blockType == BlockChain.NewBlockType.BEST_CHAIN;
         boolean sideChain = blockType == BlockChain.NewBlockType.SIDE_CHAIN;
@@ -1976,7 +2082,7 @@ public class Wallet extends BaseTaggableObject
                 // change its confidence to PENDING (Unless they are also spending other txns IN_CONFLICT).
                 // Consider dependency chains.
                 Set<Transaction> currentTxDependencies = Sets.newHashSet(tx);
-                addTransactionsDependingOn(currentTxDependencies, getTransactions(true));
+                addTransactionsDependingOnLocked(currentTxDependencies, null);
                 currentTxDependencies.remove(tx);
                 List<Transaction> currentTxDependenciesSorted = sortTxnsByDependency(currentTxDependencies);
                 for (Transaction txDependency : currentTxDependenciesSorted) {
@@ -2007,9 +2113,8 @@ public class Wallet extends BaseTaggableObject
         //  - We have not already informed the user about the coins when we received the tx broadcast, or for our
         //    own spends. If users want to know when a broadcast tx becomes confirmed, they need to use tx confidence
         //    listeners.
-        if (!insideReorg && bestChain) {
+        if (!insideReorg && bestChain && prevBalance != null) {
             Coin newBalance = getBalance();  // This is slow.
-            log.info("Balance is now: " + newBalance.toFriendlyString());
             if (!wasPending) {
                 int diff = valueDifference.signum();
                 // We pick one callback based on the value difference, though a tx can of course both send and receive
@@ -2020,14 +2125,22 @@ public class Wallet extends BaseTaggableObject
                     queueOnCoinsSent(tx, prevBalance, newBalance);
                 }
             }
-            checkBalanceFuturesLocked(newBalance);
+            if (insideBatchReceive) {
+                // The rest is done once the whole block has been received.
+                batchBalance = newBalance;
+            } else {
+                log.info("Balance is now: " + newBalance.toFriendlyString());
+                checkBalanceFuturesLocked(newBalance);
+            }
         }
 
-        informConfidenceListenersIfNotReorganizing();
-        isConsistentOrThrow();
-        // Optimization for the case where a block has tons of relevant transactions.
-        saveLater();
-        hardSaveOnNextBlock = true;
+        if (!insideBatchReceive) {
+            informConfidenceListenersIfNotReorganizing();
+            isConsistentOrThrow();
+            // Optimization for the case where a block has tons of relevant transactions.
+            saveLater();
+            hardSaveOnNextBlock = true;
+        }
     }
 
     /** Finds if tx is NOT spending other txns which are in the specified confidence type */
@@ -2149,6 +2262,33 @@ public class Wallet extends BaseTaggableObject
         }
     }
 
+    /**
+     * <p>Called after the given transactions were received through {@link #receiveFromBlock} from blocks that are
+     * already buried in the best chain, for example by a {@link org.bitcoinj.core.BlockFilterScanner} rescan. No
+     * {@link #notifyNewBestBlock(StoredBlock)} call follows those blocks, so this sets the depth of the transactions
+     * from the given chain head instead, and makes sure the next new block counts for them.</p>
+     */
+    public void notifyTransactionsRescanned(Collection<Sha256Hash> hashes, StoredBlock chainHead) {
+        lock.lock();
+        try {
+            for (Sha256Hash hash : hashes) {
+                ignoreNextNewBlock.remove(hash);
+                Transaction tx = transactions.get(hash);
+                if (tx == null)
+                    continue;
+                TransactionConfidence confidence = tx.getConfidence();
+                if (confidence.getConfidenceType() != ConfidenceType.BUILDING)
+                    continue;
+                confidence.setDepthInBlocks(chainHead.getHeight() - confidence.getAppearedAtChainHeight() + 1);
+                confidenceChanged.put(tx, TransactionConfidence.Listener.ChangeReason.DEPTH);
+            }
+            informConfidenceListenersIfNotReorganizing();
+            maybeQueueOnWalletChanged();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Handle when a transaction becomes newly active on the best chain, either due to receiving a new block or a
      * re-org. Places the tx into the right pool, handles coinbase transactions, handles double-spends and so on.
@@ -2283,21 +2423,26 @@ public class Wallet extends BaseTaggableObject
         // didn't see arrive on the best chain yet. For instance, because of a chain replay or because of our keys were
         // used by another wallet somewhere else. Also, unconfirmed transactions can arrive from the mempool in more or
         // less random order.
-        for (Transaction pendingTx : pending.values()) {
-            for (TransactionInput input : pendingTx.getInputs()) {
-                TransactionInput.ConnectionResult result = input.connect(tx, TransactionInput.ConnectMode.ABORT_ON_CONFLICT);
-                if (fromChain) {
-                    // This TX is supposed to have just appeared on the best chain, so its outputs should not be marked
-                    // as spent yet. If they are, it means something is happening out of order.
-                    checkState(result != TransactionInput.ConnectionResult.ALREADY_SPENT);
-                }
-                if (result == TransactionInput.ConnectionResult.SUCCESS) {
-                    log.info("Connected pending tx input {}:{}",
-                            pendingTx.getHashAsString(), pendingTx.getInputs().indexOf(input));
-                    // The unspents map might not have it if we never saw this tx until it was included in the chain
-                    // and thus becomes spent the moment we become aware of it.
-                    if (myUnspents.remove(input.getConnectedOutput()))
-                        log.info("Removed from UNSPENTS: {}", input.getConnectedOutput());
+        for (int i = 0; i < tx.getOutputs().size(); i++) {
+            TransactionOutPoint outpoint = new TransactionOutPoint(params, i, tx.getHash());
+            for (Transaction pendingTx : spenders.get(outpoint)) {
+                if (!pending.containsKey(pendingTx.getHash())) continue;
+                for (TransactionInput input : pendingTx.getInputs()) {
+                    if (!input.getOutpoint().equals(outpoint)) continue;
+                    TransactionInput.ConnectionResult result = input.connect(tx, TransactionInput.ConnectMode.ABORT_ON_CONFLICT);
+                    if (fromChain) {
+                        // This TX is supposed to have just appeared on the best chain, so its outputs should not be
+                        // marked as spent yet. If they are, it means something is happening out of order.
+                        checkState(result != TransactionInput.ConnectionResult.ALREADY_SPENT);
+                    }
+                    if (result == TransactionInput.ConnectionResult.SUCCESS) {
+                        log.info("Connected pending tx input {}:{}",
+                                pendingTx.getHashAsString(), pendingTx.getInputs().indexOf(input));
+                        // The unspents map might not have it if we never saw this tx until it was included in the
+                        // chain and thus becomes spent the moment we become aware of it.
+                        if (myUnspents.remove(input.getConnectedOutput()))
+                            log.info("Removed from UNSPENTS: {}", input.getConnectedOutput());
+                    }
                 }
             }
         }
@@ -2435,7 +2580,7 @@ public class Wallet extends BaseTaggableObject
                 log.info("->pending (IN_CONFLICT): {}", tx.getHashAsString());
                 addWalletTransaction(Pool.PENDING, tx);
                 doubleSpendPendingTxns.add(tx);
-                addTransactionsDependingOn(doubleSpendPendingTxns, getTransactions(true));
+                addTransactionsDependingOnLocked(doubleSpendPendingTxns, null);
                 for (Transaction doubleSpendTx : doubleSpendPendingTxns) {
                     doubleSpendTx.getConfidence().setConfidenceType(ConfidenceType.IN_CONFLICT);
                     confidenceChanged.put(doubleSpendTx, TransactionConfidence.Listener.ChangeReason.TYPE);
@@ -2863,7 +3008,12 @@ public class Wallet extends BaseTaggableObject
      */
     private void addWalletTransaction(Pool pool, Transaction tx) {
         checkState(lock.isHeldByCurrentThread());
-        transactions.put(tx.getHash(), tx);
+        Transaction previous = transactions.put(tx.getHash(), tx);
+        if (previous != tx) {
+            if (previous != null)
+                removeSpends(previous);
+            addSpends(tx);
+        }
         switch (pool) {
         case UNSPENT:
             checkState(unspent.put(tx.getHash(), tx) == null);
@@ -3007,9 +3157,36 @@ public class Wallet extends BaseTaggableObject
         pending.clear();
         dead.clear();
         transactions.clear();
+        spenders.clear();
         myUnspents.clear();
     }
 
+    /** Returns the wallet transactions spending the given outpoint, from the spenders index. */
+    @VisibleForTesting
+    Set<Transaction> getSpenders(TransactionOutPoint outpoint) {
+        lock.lock();
+        try {
+            return ImmutableSet.copyOf(spenders.get(outpoint));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Registers the outpoints spent by tx in the spenders index.
+    private void addSpends(Transaction tx) {
+        if (tx.isCoinBase())
+            return;
+        for (TransactionInput input : tx.getInputs())
+            spenders.put(input.getOutpoint(), tx);
+    }
+
+    private void removeSpends(Transaction tx) {
+        if (tx.isCoinBase())
+            return;
+        for (TransactionInput input : tx.getInputs())
+            spenders.remove(input.getOutpoint(), tx);
+    }
+
     /**
      * Returns all the outputs that match addresses or scripts added via {@link #addWatchedAddress(Address)} or
      * {@link #addWatchedScripts(java.util.List)}.
@@ -3066,6 +3243,7 @@ public class Wallet extends BaseTaggableObject
 
                         i.remove();
                         transactions.remove(tx.getHash());
+                        removeSpends(tx);
                         dirty = true;
                         log.info("Removed transaction {} from pending pool during cleanup.", tx.getHashAsString());
                     } else {
@@ -3918,6 +4096,14 @@ public class Wallet extends BaseTaggableObject
         lock.lock();
         try {
             checkArgument(!req.completed, "Given SendRequest has already been completed.");
+            FeeEstimator feeEstimator = vFeeEstimator;
+            if (req.confirmationTarget > 0 && feeEstimator != null) {
+                Coin estimate = feeEstimator.estimateFeePerKb(req.confirmationTarget);
+                if (estimate != null)
+                    req.feePerKb = estimate;
+                else
+                    log.info("No fee estimate for {} blocks yet, using the given fee", req.confirmationTarget);
+            }
             // Calculate the amount of value we need to import.
             Coin value = Coin.ZERO;
             for (TransactionOutput output : req.tx.getOutputs()) {
@@ -4219,13 +4405,11 @@ public class Wallet extends BaseTaggableObject
     protected List<UTXO> getStoredOutputsFromUTXOProvider() throws UTXOProviderException {
         UTXOProvider utxoProvider = checkNotNull(vUTXOProvider, "No UTXO provider has been set");
         List<UTXO> candidates = new ArrayList<UTXO>();
-        List<ECKey> keys = getImportedKeys();
-        keys.addAll(getActiveKeyChain().getLeafKeys());
         List<Address> addresses = new ArrayList<Address>();
-        for (ECKey key : keys) {
-            Address address = new Address(params, key.getPubKeyHash());
-            addresses.add(address);
-        }
+        for (ECKey key : getImportedKeys())
+            addresses.add(new Address(params, key.getPubKeyHash()));
+        for (byte[] hash : getActiveKeyChain().getLeafKeyPubKeyHashes())
+            addresses.add(new Address(params, hash));
         candidates.addAll(utxoProvider.getOpenTransactionOutputs(addresses));
         return candidates;
     }
@@ -4296,6 +4480,20 @@ public class Wallet extends BaseTaggableObject
         }
     }
 
+    /**
+     * Sets the {@link FeeEstimator} that {@link #completeTx(SendRequest)} asks for the fee of requests that set a
+     * {@link SendRequest#confirmationTarget}. Like the UTXO provider, it is not serialized with the wallet.
+     */
+    public void setFeeEstimator(@Nullable FeeEstimator feeEstimator) {
+        this.vFeeEstimator = feeEstimator;
+    }
+
+    /** Returns the fee estimator set with {@link #setFeeEstimator(FeeEstimator)}, or null if there is none. */
+    @Nullable
+    public FeeEstimator getFeeEstimator() {
+        return vFeeEstimator;
+    }
+
     //endregion
 
     // ***************************************************************************************************************
@@ -4667,6 +4865,48 @@ public class Wallet extends BaseTaggableObject
         }
     }
 
+    @Override @GuardedBy("keyChainGroupLock")
+    public List<byte[]> getBloomFilterElements() {
+        beginBloomFilterCalculation();
+        try {
+            List<byte[]> elements = keyChainGroup.getBloomFilterElements();
+            for (Script script : watchedScripts) {
+                for (ScriptChunk chunk : script.getChunks()) {
+                    if (!chunk.isOpCode() && chunk.data.length >= MINIMUM_BLOOM_DATA_LENGTH)
+                        elements.add(chunk.data);
+                }
+            }
+            for (TransactionOutPoint point : bloomOutPoints)
+                elements.add(point.unsafeBitcoinSerialize());
+            return elements;
+        } finally {
+            endBloomFilterCalculation();
+        }
+    }
+
+    /**
+     * Returns the elements that {@link org.bitcoinj.core.BlockFilter}s are matched against to find the blocks that
+     * may contain transactions relevant to this wallet: the programs of all output scripts that pay to the wallet,
+     * lookahead keys included, and of the watched scripts, and the serialized outpoints of the unspent outputs, whose
+     * spends a filter contains. Unlike for Bloom filters, matching happens locally, so the elements never leave the
+     * device and growing the lookahead only means matching the filters again.
+     */
+    public List<byte[]> getBlockFilterElements() {
+        lock.lock();
+        keyChainGroupLock.lock();
+        try {
+            List<byte[]> elements = keyChainGroup.getBlockFilterElements();
+            for (Script script : watchedScripts)
+                elements.add(script.getProgram());
+            for (TransactionOutput output : myUnspents)
+                elements.add(output.getOutPointFor().unsafeBitcoinSerialize());
+            return elements;
+        } finally {
+            keyChainGroupLock.unlock();
+            lock.unlock();
+        }
+    }
+
     // Returns true if the output is one that won't be selected by a data element matching in the scriptSig.
     private boolean isTxOutputBloomFilterable(TransactionOutput out) {
         Script script = out.getScriptPubKey();
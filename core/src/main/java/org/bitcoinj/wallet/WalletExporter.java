@@ -0,0 +1,312 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.wallet;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>Writes the transactions, outputs or keys of a {@link Wallet} to a {@link Writer} as CSV or JSON lines, one row
+ * at a time. Unlike {@link Wallet#toString(boolean, boolean, boolean, org.bitcoinj.core.AbstractBlockChain)} the
+ * output is never accumulated in memory, so wallets of any size can be exported.</p>
+ *
+ * <p>Transactions are exported in order of their update time. The exporter first takes a snapshot of just the
+ * hashes and times under the wallet lock, then formats the rows in pages of {@link #setPageSize(int)} transactions.
+ * The wallet lock is held only whilst a page is being formatted and never whilst writing, so a wallet that is
+ * syncing at the same time keeps making progress. Transactions that disappear from the wallet between the snapshot
+ * and their page are skipped.</p>
+ *
+ * <p>Rows can be restricted to a range of update times via {@link #setTimeRange(long, long)} and/or to a range of
+ * chain heights via {@link #setHeightRange(int, int)}. When a height range is set only transactions that are in
+ * the best chain are exported. Combined with the update time order this allows long exports to be split up and
+ * resumed.</p>
+ */
+public class WalletExporter {
+    public enum Format {
+        CSV,
+        JSON
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final String[] TRANSACTION_COLUMNS = {
+            "txid", "pool", "updateTime", "confidence", "height", "depth", "value", "fee"
+    };
+    private static final String[] OUTPUT_COLUMNS = {
+            "txid", "index", "updateTime", "height", "value", "address", "available", "spentBy"
+    };
+    private static final String[] KEY_COLUMNS = {
+            "type", "path", "address", "pubkey", "creationTime"
+    };
+
+    private final Wallet wallet;
+    private final NetworkParameters params;
+    private final Format format;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private long fromTimeSecs = 0;
+    private long toTimeSecs = Long.MAX_VALUE;
+    private int fromHeight = -1;
+    private int toHeight = -1;
+
+    public WalletExporter(Wallet wallet, Format format) {
+        this.wallet = wallet;
+        this.params = wallet.getParams();
+        this.format = format;
+    }
+
+    /** Sets how many transactions or keys are formatted per acquisition of the wallet lock. */
+    public void setPageSize(int pageSize) {
+        checkArgument(pageSize > 0, "pageSize must be positive");
+        this.pageSize = pageSize;
+    }
+
+    /** Restricts the export to transactions updated within the given range of seconds since the epoch, inclusive. */
+    public void setTimeRange(long fromTimeSecs, long toTimeSecs) {
+        checkArgument(fromTimeSecs <= toTimeSecs, "fromTimeSecs after toTimeSecs");
+        this.fromTimeSecs = fromTimeSecs;
+        this.toTimeSecs = toTimeSecs;
+    }
+
+    /** Restricts the export to transactions that appeared in the best chain within the given heights, inclusive. */
+    public void setHeightRange(int fromHeight, int toHeight) {
+        checkArgument(0 <= fromHeight && fromHeight <= toHeight, "invalid height range");
+        this.fromHeight = fromHeight;
+        this.toHeight = toHeight;
+    }
+
+    /** Writes one row per wallet transaction and returns the number of rows written. */
+    public int exportTransactions(Writer writer) throws IOException {
+        return exportTransactions(writer, false);
+    }
+
+    /** Writes one row per output that is relevant to the wallet and returns the number of rows written. */
+    public int exportOutputs(Writer writer) throws IOException {
+        return exportTransactions(writer, true);
+    }
+
+    /**
+     * Writes one row per imported key and per leaf key of each deterministic key chain (including the lookahead
+     * zone) and returns the number of rows written. Private keys are never exported.
+     */
+    public int exportKeys(Writer writer) throws IOException {
+        writeHeader(writer, KEY_COLUMNS);
+        StringBuilder page = new StringBuilder();
+        int rows = 0;
+        // Imported keys are few and already in memory.
+        for (ECKey key : wallet.getImportedKeys())
+            rows = appendKey(writer, page, rows, "imported", null, key);
+        // Leaf keys are stored packed and built on demand, so they're built one at a time rather than all up front.
+        // Keys are only ever added to a chain, so the count taken here stays valid.
+        for (DeterministicKeyChain chain : wallet.getDeterministicKeyChains()) {
+            int numLeafKeys = chain.numLeafKeys();
+            for (int i = 0; i < numLeafKeys; i++) {
+                DeterministicKey key = chain.getLeafKey(i);
+                rows = appendKey(writer, page, rows, "deterministic", key.getPathAsString(), key);
+            }
+        }
+        flushPage(writer, page);
+        return rows;
+    }
+
+    private int appendKey(Writer writer, StringBuilder page, int rows, String type, @Nullable String path, ECKey key)
+            throws IOException {
+        appendRow(page, KEY_COLUMNS, type, path, key.toAddress(params).toString(), key.getPublicKeyAsHex(),
+                key.getCreationTimeSeconds());
+        if (++rows % pageSize == 0)
+            flushPage(writer, page);
+        return rows;
+    }
+
+    private int exportTransactions(Writer writer, boolean outputs) throws IOException {
+        List<Entry> entries = snapshot();
+        writeHeader(writer, outputs ? OUTPUT_COLUMNS : TRANSACTION_COLUMNS);
+        StringBuilder page = new StringBuilder();
+        int rows = 0;
+        for (int start = 0; start < entries.size(); start += pageSize) {
+            int end = Math.min(entries.size(), start + pageSize);
+            wallet.lock.lock();
+            try {
+                for (Entry entry : entries.subList(start, end)) {
+                    Transaction tx = wallet.getTransaction(entry.hash);
+                    if (tx == null || !isInHeightRange(tx))
+                        continue;
+                    rows += outputs ? appendOutputs(page, tx, entry) : appendTransaction(page, tx, entry);
+                }
+            } finally {
+                wallet.lock.unlock();
+            }
+            flushPage(writer, page);
+        }
+        return rows;
+    }
+
+    private List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<Entry>();
+        wallet.lock.lock();
+        try {
+            for (Pool pool : new Pool[] { Pool.UNSPENT, Pool.SPENT, Pool.PENDING, Pool.DEAD }) {
+                for (Map.Entry<Sha256Hash, Transaction> tx : wallet.getTransactionPool(pool).entrySet()) {
+                    long time = tx.getValue().getUpdateTime().getTime() / 1000;
+                    if (time >= fromTimeSecs && time <= toTimeSecs)
+                        entries.add(new Entry(tx.getKey(), time, pool));
+                }
+            }
+        } finally {
+            wallet.lock.unlock();
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.time != b.time)
+                    return a.time < b.time ? -1 : 1;
+                return a.hash.compareTo(b.hash);
+            }
+        });
+        return entries;
+    }
+
+    private boolean isInHeightRange(Transaction tx) {
+        if (fromHeight < 0)
+            return true;
+        TransactionConfidence confidence = tx.getConfidence();
+        if (confidence.getConfidenceType() != TransactionConfidence.ConfidenceType.BUILDING)
+            return false;
+        int height = confidence.getAppearedAtChainHeight();
+        return height >= fromHeight && height <= toHeight;
+    }
+
+    private int appendTransaction(StringBuilder page, Transaction tx, Entry entry) {
+        TransactionConfidence confidence = tx.getConfidence();
+        boolean building = confidence.getConfidenceType() == TransactionConfidence.ConfidenceType.BUILDING;
+        Coin value;
+        try {
+            value = tx.getValue(wallet);
+        } catch (ScriptException e) {
+            value = null;
+        }
+        Coin fee = tx.getFee();
+        appendRow(page, TRANSACTION_COLUMNS, tx.getHashAsString(), entry.pool.name(), entry.time,
+                confidence.getConfidenceType().name(), building ? confidence.getAppearedAtChainHeight() : null,
+                building ? confidence.getDepthInBlocks() : null, value != null ? value.value : null,
+                fee != null ? fee.value : null);
+        return 1;
+    }
+
+    private int appendOutputs(StringBuilder page, Transaction tx, Entry entry) {
+        TransactionConfidence confidence = tx.getConfidence();
+        Integer height = confidence.getConfidenceType() == TransactionConfidence.ConfidenceType.BUILDING ?
+                confidence.getAppearedAtChainHeight() : null;
+        int rows = 0;
+        for (TransactionOutput output : tx.getOutputs()) {
+            if (!output.isMineOrWatched(wallet))
+                continue;
+            TransactionInput spentBy = output.getSpentBy();
+            Transaction spender = spentBy != null ? spentBy.getParentTransaction() : null;
+            appendRow(page, OUTPUT_COLUMNS, tx.getHashAsString(), output.getIndex(), entry.time, height,
+                    output.getValue().value, toAddress(output), output.isAvailableForSpending(),
+                    spender != null ? spender.getHashAsString() : null);
+            rows++;
+        }
+        return rows;
+    }
+
+    @Nullable
+    private String toAddress(TransactionOutput output) {
+        try {
+            Address address = output.getScriptPubKey().getToAddress(params, true);
+            return address.toString();
+        } catch (ScriptException e) {
+            return null;
+        }
+    }
+
+    private void writeHeader(Writer writer, String[] columns) throws IOException {
+        if (format != Format.CSV)
+            return;
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                header.append(',');
+            header.append(columns[i]);
+        }
+        writer.write(header.append('\n').toString());
+    }
+
+    private void appendRow(StringBuilder page, String[] columns, Object... values) {
+        if (format == Format.JSON)
+            page.append('{');
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (format == Format.CSV) {
+                if (i > 0)
+                    page.append(',');
+                if (value != null)
+                    page.append(value);
+            } else {
+                if (i > 0)
+                    page.append(',');
+                page.append('"').append(columns[i]).append("\":");
+                if (value == null || value instanceof Number || value instanceof Boolean)
+                    page.append(value);
+                else
+                    page.append('"').append(value).append('"');
+            }
+        }
+        if (format == Format.JSON)
+            page.append('}');
+        page.append('\n');
+    }
+
+    private static void flushPage(Writer writer, StringBuilder page) throws IOException {
+        writer.write(page.toString());
+        writer.flush();
+        page.setLength(0);
+    }
+
+    private static class Entry {
+        final Sha256Hash hash;
+        final long time;
+        final Pool pool;
+
+        Entry(Sha256Hash hash, long time, Pool pool) {
+            this.hash = hash;
+            this.time = time;
+            this.pool = pool;
+        }
+    }
+}
@@ -26,9 +26,13 @@ import org.bitcoinj.signers.LocalTransactionSigner;
 import org.bitcoinj.signers.TransactionSigner;
 import org.bitcoinj.utils.ExchangeRate;
 import org.bitcoinj.utils.Fiat;
+import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Protos.Wallet.EncryptionType;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.TextFormat;
@@ -45,7 +49,10 @@ import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -74,10 +81,14 @@ public class WalletProtobufSerializer {
     public static final int CURRENT_WALLET_VERSION = Protos.Wallet.getDefaultInstance().getVersion();
     // 512 MB
     private static final int WALLET_SIZE_LIMIT = 512 * 1024 * 1024;
+    // Wallets with fewer transactions than this are always (de)serialized on the calling thread, as handing the work
+    // out to the thread pool would cost more than it saves.
+    private static final int PARALLEL_TX_THRESHOLD = 500;
     // Used for de-serialization
     protected Map<ByteString, Transaction> txMap;
 
     private boolean requireMandatoryExtensions = true;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
 
     public interface WalletFactory {
         Wallet create(NetworkParameters params, KeyChainGroup keyChainGroup);
@@ -114,6 +125,18 @@ public class WalletProtobufSerializer {
         requireMandatoryExtensions = value;
     }
 
+    /**
+     * Sets the number of threads used to encode and decode transactions. Large wallets are split into this many
+     * contiguous chunks which are processed on {@link Threading#THREAD_POOL}; the results are then merged back in
+     * their original order, so the output does not depend on the number of threads. Pool assignment and connecting
+     * inputs to the outputs they spend always happens on the calling thread. A value of 1 disables parallelism.
+     * Defaults to the number of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
     /**
      * Formats the given wallet (transactions and keys) to the given output stream in protocol buffer format.<p>
      *
@@ -147,10 +170,8 @@ public class WalletProtobufSerializer {
             walletBuilder.setDescription(wallet.getDescription());
         }
 
-        for (WalletTransaction wtx : wallet.getWalletTransactions()) {
-            Protos.Transaction txProto = makeTxProto(wtx);
-            walletBuilder.addTransaction(txProto);
-        }
+        walletBuilder.addAllTransaction(makeTxProtos(wallet.getContext(),
+                Lists.newArrayList(wallet.getWalletTransactions())));
 
         walletBuilder.addAllKey(wallet.serializeKeyChainGroupToProtobuf());
 
@@ -228,6 +249,42 @@ public class WalletProtobufSerializer {
         }
     }
 
+    private List<Protos.Transaction> makeTxProtos(final Context context, List<WalletTransaction> wtxs) {
+        List<Protos.Transaction> txProtos = new ArrayList<Protos.Transaction>(wtxs.size());
+        if (wtxs.size() < PARALLEL_TX_THRESHOLD || parallelism == 1) {
+            for (WalletTransaction wtx : wtxs)
+                txProtos.add(makeTxProto(wtx));
+            return txProtos;
+        }
+        List<ListenableFuture<List<Protos.Transaction>>> futures = Lists.newArrayList();
+        for (final List<WalletTransaction> chunk : Lists.partition(wtxs, chunkSize(wtxs.size()))) {
+            futures.add(Threading.THREAD_POOL.submit(new Callable<List<Protos.Transaction>>() {
+                @Override
+                public List<Protos.Transaction> call() {
+                    // Confidence objects are looked up through the thread local context.
+                    Context.propagate(context);
+                    List<Protos.Transaction> result = new ArrayList<Protos.Transaction>(chunk.size());
+                    for (WalletTransaction wtx : chunk)
+                        result.add(makeTxProto(wtx));
+                    return result;
+                }
+            }));
+        }
+        try {
+            for (List<Protos.Transaction> chunk : Futures.allAsList(futures).get())
+                txProtos.addAll(chunk);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        return txProtos;
+    }
+
+    private int chunkSize(int size) {
+        return (size + parallelism - 1) / parallelism;
+    }
+
     private static Protos.Transaction makeTxProto(WalletTransaction wtx) {
         Transaction tx = wtx.getTransaction();
         Protos.Transaction.Builder txBuilder = Protos.Transaction.newBuilder();
@@ -498,9 +555,15 @@ public class WalletProtobufSerializer {
             wallet.setLastBlockSeenHeight(-1);
             wallet.setLastBlockSeenTimeSecs(0);
         } else {
-            // Read all transactions and insert into the txMap.
-            for (Protos.Transaction txProto : walletProto.getTransactionList()) {
-                readTransaction(txProto, wallet.getParams());
+            // Read all transactions and insert into the txMap. Decoding may happen in parallel, but the map is
+            // filled in file order so duplicate detection is deterministic.
+            List<Protos.Transaction> txProtos = walletProto.getTransactionList();
+            List<Transaction> txns = readTransactions(txProtos, wallet.getParams());
+            for (int i = 0; i < txProtos.size(); i++) {
+                ByteString hash = txProtos.get(i).getHash();
+                if (txMap.containsKey(hash))
+                    throw new UnreadableWalletException("Wallet contained duplicate transaction " + byteStringToHash(hash));
+                txMap.put(hash, txns.get(i));
             }
 
             // Update transaction outputs to point to inputs that spend them
@@ -598,7 +661,39 @@ public class WalletProtobufSerializer {
         return Protos.Wallet.parseFrom(codedInput);
     }
 
-    private void readTransaction(Protos.Transaction txProto, NetworkParameters params) throws UnreadableWalletException {
+    private List<Transaction> readTransactions(List<Protos.Transaction> txProtos,
+                                               final NetworkParameters params) throws UnreadableWalletException {
+        final List<Transaction> txns = new ArrayList<Transaction>(txProtos.size());
+        if (txProtos.size() < PARALLEL_TX_THRESHOLD || parallelism == 1) {
+            for (Protos.Transaction txProto : txProtos)
+                txns.add(readTransaction(txProto, params));
+            return txns;
+        }
+        List<ListenableFuture<List<Transaction>>> futures = Lists.newArrayList();
+        for (final List<Protos.Transaction> chunk : Lists.partition(txProtos, chunkSize(txProtos.size()))) {
+            futures.add(Threading.THREAD_POOL.submit(new Callable<List<Transaction>>() {
+                @Override
+                public List<Transaction> call() throws UnreadableWalletException {
+                    List<Transaction> result = new ArrayList<Transaction>(chunk.size());
+                    for (Protos.Transaction txProto : chunk)
+                        result.add(readTransaction(txProto, params));
+                    return result;
+                }
+            }));
+        }
+        try {
+            for (List<Transaction> chunk : Futures.allAsList(futures).get())
+                txns.addAll(chunk);
+        } catch (InterruptedException e) {
+            throw new UnreadableWalletException("Interrupted whilst reading transactions", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), UnreadableWalletException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+        return txns;
+    }
+
+    private static Transaction readTransaction(Protos.Transaction txProto, NetworkParameters params) throws UnreadableWalletException {
         Transaction tx = new Transaction(params);
 
         tx.setVersion(txProto.getVersion());
@@ -668,9 +763,7 @@ public class WalletProtobufSerializer {
         Sha256Hash protoHash = byteStringToHash(txProto.getHash());
         if (!tx.getHash().equals(protoHash))
             throw new UnreadableWalletException(String.format(Locale.US, "Transaction did not deserialize completely: %s vs %s", tx.getHash(), protoHash));
-        if (txMap.containsKey(txProto.getHash()))
-            throw new UnreadableWalletException("Wallet contained duplicate transaction " + byteStringToHash(txProto.getHash()));
-        txMap.put(txProto.getHash(), tx);
+        return tx;
     }
 
     private WalletTransaction connectTransactionOutputs(final NetworkParameters params,
@@ -28,6 +28,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -205,6 +206,29 @@ public class AddressTest {
         assertEquals(base58, Address.fromBase58(null, base58).toBase58());
     }
 
+    @Test
+    public void batchBase58() throws Exception {
+        List<Address> addresses = new ArrayList<Address>();
+        for (int i = 0; i < 10; i++) {
+            byte[] hash160 = Arrays.copyOf(Sha256Hash.hash(new byte[] { (byte) i }), 20);
+            addresses.add(i % 2 == 0 ? new Address(mainParams, hash160) : Address.fromP2SHHash(mainParams, hash160));
+        }
+        List<String> encoded = Address.toBase58(addresses);
+        List<Address> decoded = Address.fromBase58(mainParams, encoded);
+        assertEquals(addresses, decoded);
+        for (int i = 0; i < addresses.size(); i++) {
+            Address copy = new Address(mainParams, addresses.get(i).getVersion(), addresses.get(i).getHash160());
+            assertEquals(copy.toBase58(), encoded.get(i));
+            assertEquals(encoded.get(i), decoded.get(i).toString());
+        }
+        try {
+            Address.fromBase58(testParams, encoded);
+            fail();
+        } catch (WrongNetworkException e) {
+            // Expected.
+        }
+    }
+
     @Test
     public void comparisonCloneEqualTo() throws Exception {
         Address a = Address.fromBase58(mainParams, "1Dorian4RoXcnBv9hnQ4Y2C1an6NJ4UrjX");
@@ -17,12 +17,16 @@
 
 package org.bitcoinj.core;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -87,6 +91,65 @@ public class Base58Test {
         Base58.decodeChecked("93VYUMzRG9DdbRP72uQXjaWibbQwygnvaCu9DumcqDjGybD864T");
     }
 
+    // Base58 as calculated with BigInteger.
+    private static String simpleEncode(byte[] input) {
+        StringBuilder builder = new StringBuilder();
+        BigInteger value = new BigInteger(1, input);
+        BigInteger base = BigInteger.valueOf(58);
+        while (value.signum() > 0) {
+            BigInteger[] divmod = value.divideAndRemainder(base);
+            builder.append(Base58.ALPHABET[divmod[1].intValue()]);
+            value = divmod[0];
+        }
+        for (int i = 0; i < input.length && input[i] == 0; i++)
+            builder.append(Base58.ALPHABET[0]);
+        return builder.reverse().toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(1);
+        for (int length = 0; length < 80; length++) {
+            for (int i = 0; i < 20; i++) {
+                byte[] bytes = new byte[length];
+                random.nextBytes(bytes);
+                // Some leading zeros.
+                for (int j = 0; j < length && j < i % 4; j++)
+                    bytes[j] = 0;
+                String encoded = Base58.encode(bytes);
+                assertEquals(simpleEncode(bytes), encoded);
+                assertArrayEquals(bytes, Base58.decode(encoded));
+            }
+        }
+        byte[] bytes = "Hello World".getBytes();
+        assertEquals("JxF12TrwUP45BMd", Base58.encode(Arrays.copyOf(bytes, bytes.length + 3), 0, bytes.length));
+    }
+
+    @Test
+    public void testChecked() throws Exception {
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        for (int i = 0; i < 10; i++)
+            payloads.add(Sha256Hash.hash(new byte[] { (byte) i }));
+        payloads.add(new byte[0]);
+        payloads.add(new byte[3]);
+        List<String> encoded = Base58.encodeChecked(128, payloads);
+        List<byte[]> decoded = Base58.decodeChecked(encoded);
+        for (int i = 0; i < payloads.size(); i++) {
+            assertEquals(Base58.encodeChecked(128, payloads.get(i)), encoded.get(i));
+            assertEquals(128, decoded.get(i)[0] & 0xFF);
+            assertArrayEquals(payloads.get(i), Arrays.copyOfRange(decoded.get(i), 1, decoded.get(i).length));
+        }
+        assertEquals("93VYUMzRG9DdbRP72uQXjaWibbQwygnvaCu9DumcqDjGybD864T", Base58.encodeChecked(0xef,
+                Arrays.copyOfRange(Base58.decodeChecked("93VYUMzRG9DdbRP72uQXjaWibbQwygnvaCu9DumcqDjGybD864T"), 1, 33)));
+
+        try {
+            Base58.decodeChecked(Arrays.asList(encoded.get(0), "4stwEBjT6FYyVW"));
+            fail();
+        } catch (AddressFormatException e) {
+            assertTrue(e.getMessage().startsWith("Input 1"));
+        }
+    }
+
     @Test
     public void testDecodeToBigInteger() {
         byte[] input = Base58.decode("129");
@@ -17,6 +17,7 @@
 
 package org.bitcoinj.core;
 
+import org.bitcoinj.core.listeners.ReadOnlyTransactionsReceivedInBlockListener;
 import org.bitcoinj.params.MainNetParams;
 import org.bitcoinj.params.TestNet2Params;
 import org.bitcoinj.params.UnitTestParams;
@@ -24,6 +25,7 @@ import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.MemoryBlockStore;
 import org.bitcoinj.testing.FakeTxBuilder;
 import org.bitcoinj.utils.BriefLogFormatter;
+import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.Wallet.BalanceType;
 
@@ -36,7 +38,12 @@ import org.junit.Test;
 import java.math.BigInteger;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import static org.bitcoinj.core.Coin.*;
 import static org.bitcoinj.testing.FakeTxBuilder.createFakeBlock;
@@ -134,6 +141,47 @@ public class BlockChainTest {
         assertTrue(wallet.getBalance().signum() > 0);
     }
 
+    @Test
+    public void readOnlyListenersShareTransactions() throws Exception {
+        final Map<Sha256Hash, Transaction> received = new HashMap<Sha256Hash, Transaction>();
+        chain.addTransactionReceivedListener(Threading.SAME_THREAD, new ReadOnlyTransactionsReceivedInBlockListener() {
+            @Override
+            public Set<Sha256Hash> receiveFromBlock(List<Sha256Hash> txHashes, Map<Sha256Hash, Transaction> transactions,
+                                                    StoredBlock block, BlockChain.NewBlockType blockType) {
+                received.putAll(transactions);
+                return new HashSet<Sha256Hash>();
+            }
+
+            @Override
+            public void receiveFromBlock(Transaction tx, StoredBlock block, BlockChain.NewBlockType blockType,
+                                         int relativityOffset) {
+            }
+
+            @Override
+            public boolean notifyTransactionIsInBlock(Sha256Hash txHash, StoredBlock block,
+                                                      BlockChain.NewBlockType blockType, int relativityOffset) {
+                return false;
+            }
+        });
+        // A second wallet that is paid by the same transaction.
+        ECKey key = new ECKey();
+        wallet.importKey(key);
+        Wallet wallet2 = new Wallet(PARAMS);
+        wallet2.importKey(key);
+        chain.addWallet(wallet2);
+        Transaction tx1 = createFakeTx(PARAMS, COIN, key.toAddress(PARAMS));
+        Block b1 = createFakeBlock(blockStore, 1, tx1).block;
+        chain.add(b1);
+        // The read only listener was given the original transaction, but the second wallet still got a copy.
+        Transaction original = null;
+        for (Transaction tx : b1.getTransactions())
+            if (tx.getHash().equals(tx1.getHash()))
+                original = tx;
+        assertSame(original, received.get(tx1.getHash()));
+        assertNotSame(original, wallet2.getTransaction(tx1.getHash()));
+        assertEquals(COIN, wallet2.getBalance());
+    }
+
     @Test
     public void unconnectedBlocks() throws Exception {
         Block b1 = PARAMS.getGenesisBlock().createNextBlock(coinbaseTo);
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.testing.FakeTxBuilder;
+import org.bitcoinj.wallet.Wallet;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.bitcoinj.core.Coin.COIN;
+import static org.junit.Assert.*;
+
+public class BlockFilterScannerTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private MemoryBlockStore blockStore;
+    private ExecutorService executor;
+    private final Map<Sha256Hash, Block> blocks = new HashMap<Sha256Hash, Block>();
+    private final Map<Sha256Hash, BlockFilter> filters = new HashMap<Sha256Hash, BlockFilter>();
+    private BlockFilterScanner scanner;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        blockStore = new MemoryBlockStore(PARAMS);
+        executor = Executors.newFixedThreadPool(2);
+        scanner = new BlockFilterScanner(blockStore, new BlockFilterProvider() {
+            @Nullable
+            @Override
+            public BlockFilter getBlockFilter(Sha256Hash blockHash) {
+                return filters.get(blockHash);
+            }
+        }, executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    private Block addBlock(Transaction... transactions) throws Exception {
+        Block block = FakeTxBuilder.createFakeBlock(blockStore, blockStore.getChainHead().getHeight() + 1,
+                transactions).block;
+        blocks.put(block.getHash(), block);
+        filters.put(block.getHash(), BlockFilter.build(block));
+        return block;
+    }
+
+    @Test
+    public void filterMatchesOutputsAndSpends() throws Exception {
+        Address address = new ECKey().toAddress(PARAMS);
+        Transaction tx = FakeTxBuilder.createFakeTx(PARAMS, COIN, address);
+        Block block = addBlock(tx);
+        BlockFilter filter = new BlockFilter(block.getHash(), BlockFilter.build(block).getEncoded());
+        List<byte[]> elements = new ArrayList<byte[]>();
+        elements.add(tx.getOutput(0).getScriptBytes());
+        assertTrue(filter.matchesAny(elements));
+        elements.set(0, tx.getInput(0).getOutpoint().unsafeBitcoinSerialize());
+        assertTrue(filter.matchesAny(elements));
+        elements.set(0, tx.getOutput(0).getOutPointFor().unsafeBitcoinSerialize());
+        assertFalse(filter.matchesAny(elements));
+        assertNotEquals(filter.getHeader(Sha256Hash.ZERO_HASH), filter.getHeader(filter.getFilterHash()));
+    }
+
+    @Test
+    public void rescanDownloadsOnlyMatchingBlocks() throws Exception {
+        Wallet wallet = new Wallet(PARAMS);
+        StoredBlock start = blockStore.getChainHead();
+        addBlock(FakeTxBuilder.createFakeTx(PARAMS, COIN, new ECKey().toAddress(PARAMS)));
+        Transaction received = FakeTxBuilder.createFakeTx(PARAMS, COIN, wallet.currentReceiveAddress());
+        Block receivedIn = addBlock(received);
+        addBlock();
+        // The spend can only be found after the wallet learned about the output it spends.
+        Transaction spend = new Transaction(PARAMS);
+        spend.addInput(received.getOutput(0));
+        spend.addOutput(COIN, new ECKey().toAddress(PARAMS));
+        Block spentIn = addBlock(spend);
+        addBlock();
+
+        final List<Sha256Hash> downloaded = new ArrayList<Sha256Hash>();
+        int count = scanner.rescan(wallet, start, new Function<Sha256Hash, ListenableFuture<Block>>() {
+            @Override
+            public ListenableFuture<Block> apply(Sha256Hash hash) {
+                downloaded.add(hash);
+                return Futures.immediateFuture(blocks.get(hash));
+            }
+        });
+        assertEquals(2, count);
+        assertEquals(receivedIn.getHash(), downloaded.get(0));
+        assertEquals(spentIn.getHash(), downloaded.get(1));
+        assertNotNull(wallet.getTransaction(received.getHash()));
+        assertNotNull(wallet.getTransaction(spend.getHash()));
+        assertEquals(Coin.ZERO, wallet.getBalance());
+        // The depths count from the chain head, and the next block counts for them too.
+        assertEquals(4, wallet.getTransaction(received.getHash()).getConfidence().getDepthInBlocks());
+        assertEquals(2, wallet.getTransaction(spend.getHash()).getConfidence().getDepthInBlocks());
+        addBlock();
+        wallet.notifyNewBestBlock(blockStore.getChainHead());
+        assertEquals(5, wallet.getTransaction(received.getHash()).getConfidence().getDepthInBlocks());
+        assertEquals(3, wallet.getTransaction(spend.getHash()).getConfidence().getDepthInBlocks());
+    }
+}
@@ -70,6 +70,28 @@ public class BlockTest {
         assertEquals("00000000a6e5eb79dcec11897af55e90cd571a4335383a3ccfbc12ec81085935", block.getHashAsString());
     }
     
+    @Test
+    public void headerHasherMatchesBlockHash() throws Exception {
+        Block block = PARAMS.getDefaultSerializer().makeBlock(blockBytes);
+        BlockHeaderHasher hasher = new BlockHeaderHasher(blockBytes, 0);
+        assertEquals(block.getHash(), hasher.getHash());
+        Block header = block.cloneAsHeader();
+        for (long nonce = 0; nonce < 10; nonce++) {
+            header.setNonce(nonce);
+            header.setTime(1000 + nonce);
+            hasher.setNonce(nonce);
+            hasher.setTime(1000 + nonce);
+            assertEquals(header.getHash(), hasher.getHash());
+            assertEquals(header.getHash(), new BlockHeaderHasher(header).getHash());
+        }
+
+        byte[] out = new byte[Sha256Hash.LENGTH + 1];
+        Sha256Hash.hashTwiceInto(blockBytes, 0, Block.HEADER_SIZE, out, 1);
+        assertArrayEquals(block.getHash().getReversedBytes(), Arrays.copyOfRange(out, 1, out.length));
+        Sha256Hash.hashInto(blockBytes, 0, Block.HEADER_SIZE, out, 0);
+        assertArrayEquals(Sha256Hash.hash(blockBytes, 0, Block.HEADER_SIZE), Arrays.copyOf(out, Sha256Hash.LENGTH));
+    }
+
     @SuppressWarnings("deprecation")
     @Test
     public void testDate() throws Exception {
@@ -22,7 +22,9 @@ import org.bitcoinj.wallet.KeyChainGroup;
 import org.bitcoinj.wallet.Wallet;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.bitcoinj.core.Utils.HEX;
 import static org.junit.Assert.*;
@@ -66,6 +68,44 @@ public class BloomFilterTest {
         assertTrue(Arrays.equals(HEX.decode("03ce4299050000000100008002"), filter.unsafeBitcoinSerialize()));
     }
 
+    @Test
+    public void concurrentInserts() throws Exception {
+        final BloomFilter filter = new BloomFilter(4000, 0.001, 12345);
+        final byte[][] objects = new byte[4000][];
+        for (int i = 0; i < objects.length; i++)
+            objects[i] = Arrays.copyOf(Sha256Hash.hash(Utils.HEX.decode(String.format("%08x", i))), 1 + i % 40);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int start = t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = start; i < objects.length; i += 4)
+                        filter.insert(objects[i]);
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        for (byte[] object : objects)
+            assertTrue(filter.contains(object));
+
+        // The bits are the ones Bitcoin Core would set, whatever the object length.
+        byte[] serialized = filter.unsafeBitcoinSerialize();
+        VarInt size = new VarInt(serialized, 0);
+        byte[] data = Arrays.copyOfRange(serialized, size.getOriginalSizeInBytes(),
+                size.getOriginalSizeInBytes() + (int) size.value);
+        byte[] expected = new byte[data.length];
+        int hashFuncs = (int) Utils.readUint32(serialized, size.getOriginalSizeInBytes() + data.length);
+        for (byte[] object : objects)
+            for (int i = 0; i < hashFuncs; i++)
+                Utils.setBitLE(expected, BloomFilter.murmurHash3(expected, 12345, i, object));
+        assertArrayEquals(expected, data);
+        assertEquals(filter, new BloomFilter(MainNetParams.get(), serialized));
+    }
+
     @Test
     public void walletTest() throws Exception {
         NetworkParameters params = MainNetParams.get();
@@ -132,13 +132,14 @@ public class ChainSplitTest {
         Threading.waitForUserCode();
         assertEquals(2, wallet.getTransaction(tHash).getAppearsInHashes().size());
         assertFalse(reorgHappened.get());  // No re-org took place.
-        assertEquals(5, walletChanged.get());
+        // One change event each for b7 (both transactions are ours, but events are coalesced per block) and b8.
+        assertEquals(4, walletChanged.get());
         assertEquals(Coin.valueOf(100, 0), wallet.getBalance());
         // Now we add another block to make the alternative chain longer.
         assertTrue(chain.add(b3.createNextBlock(someOtherGuy)));
         Threading.waitForUserCode();
         assertTrue(reorgHappened.get());  // Re-org took place.
-        assertEquals(6, walletChanged.get());
+        assertEquals(5, walletChanged.get());
         reorgHappened.set(false);
         //
         //     genesis -> b1 -> b2
@@ -157,7 +158,7 @@ public class ChainSplitTest {
         //
         Threading.waitForUserCode();
         assertTrue(reorgHappened.get());
-        assertEquals(9, walletChanged.get());
+        assertEquals(8, walletChanged.get());
         assertEquals(Coin.valueOf(200, 0), wallet.getBalance());
     }
 
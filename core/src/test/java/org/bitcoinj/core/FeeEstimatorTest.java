@@ -0,0 +1,99 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.params.UnitTestParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bitcoinj.core.AbstractBlockChain.NewBlockType.BEST_CHAIN;
+import static org.junit.Assert.*;
+
+public class FeeEstimatorTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private FeeEstimator estimator;
+    private int height = 100;
+    private int nextTx;
+
+    @Before
+    public void setUp() throws Exception {
+        estimator = new FeeEstimator();
+        connectBlock(new ArrayList<Sha256Hash>());
+    }
+
+    private StoredBlock connectBlock(List<Sha256Hash> txns) {
+        StoredBlock block = new StoredBlock(PARAMS.getGenesisBlock(), BigInteger.ONE, ++height);
+        for (int i = 0; i < txns.size(); i++)
+            estimator.notifyTransactionIsInBlock(txns.get(i), block, BEST_CHAIN, i);
+        estimator.notifyNewBestBlock(block);
+        return block;
+    }
+
+    private List<Sha256Hash> track(int count, Coin feePerKb) {
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+        for (int i = 0; i < count; i++) {
+            Sha256Hash hash = Sha256Hash.of(Utils.reverseBytes(BigInteger.valueOf(nextTx++).toByteArray()));
+            estimator.track(hash, feePerKb);
+            hashes.add(hash);
+        }
+        return hashes;
+    }
+
+    @Test
+    public void estimates() throws Exception {
+        assertNull(estimator.estimateFeePerKb(1));
+        // Transactions paying 50 satoshis per byte confirm in the next block, those paying 10 take three blocks and
+        // those paying 1 never confirm.
+        List<List<Sha256Hash>> slow = new ArrayList<List<Sha256Hash>>();
+        for (int i = 0; i < 40; i++) {
+            List<Sha256Hash> fast = track(5, Coin.valueOf(50000));
+            slow.add(track(5, Coin.valueOf(10000)));
+            track(5, Coin.valueOf(1000));
+            List<Sha256Hash> confirmed = new ArrayList<Sha256Hash>(fast);
+            if (slow.size() >= 3)
+                confirmed.addAll(slow.get(slow.size() - 3));
+            connectBlock(confirmed);
+        }
+        long fast = estimator.estimateFeePerKb(1).value;
+        assertTrue(fast > 40000 && fast <= 50000);
+        long slowFee = estimator.estimateFeePerKb(3).value;
+        assertTrue(slowFee > 9000 && slowFee <= 10000);
+        // Nothing cheaper ever confirmed.
+        assertEquals(slowFee, estimator.estimateFeePerKb(FeeEstimator.MAX_TARGET).value);
+        assertEquals(slowFee, estimator.estimateFeePerKb(1000).value);
+    }
+
+    @Test
+    public void saveAndLoad() throws Exception {
+        for (int i = 0; i < 10; i++)
+            connectBlock(track(5, Coin.valueOf(20000)));
+        Coin estimate = estimator.estimateFeePerKb(2);
+        assertNotNull(estimate);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        estimator.save(bytes);
+        FeeEstimator loaded = new FeeEstimator();
+        loaded.load(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(estimate, loaded.estimateFeePerKb(2));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.net.NioClient;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.testing.FakeTxBuilder;
+import org.bitcoinj.testing.InboundMessageQueuer;
+import org.bitcoinj.utils.BlockFileIndex;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.bitcoinj.core.Coin.COIN;
+import static org.junit.Assert.*;
+
+public class FilteredBlockServerTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 2001);
+
+    private MemoryBlockStore blockStore;
+    private File blockFile;
+    private BlockFileIndex blockIndex;
+    private FilteredBlockServer server;
+    private List<NioClient> clients = new ArrayList<NioClient>();
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        blockStore = new MemoryBlockStore(PARAMS);
+        blockFile = File.createTempFile("blk", ".dat");
+        blockFile.deleteOnExit();
+        blockIndex = new BlockFileIndex(PARAMS, Collections.singletonList(blockFile));
+        server = new FilteredBlockServer(PARAMS, blockStore, blockIndex, 2);
+        server.bindAndStart(ADDRESS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (NioClient client : clients)
+            client.closeConnection();
+        server.close();
+        blockFile.delete();
+    }
+
+    private void writeBlock(Block block) throws Exception {
+        byte[] bytes = block.bitcoinSerialize();
+        FileOutputStream out = new FileOutputStream(blockFile, true);
+        try {
+            byte[] header = new byte[8];
+            Utils.uint32ToByteArrayBE(PARAMS.getPacketMagic(), header, 0);
+            Utils.uint32ToByteArrayLE(bytes.length, header, 4);
+            out.write(header);
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private InboundMessageQueuer connect() throws Exception {
+        InboundMessageQueuer client = new InboundMessageQueuer(PARAMS) {
+            @Override
+            public void connectionClosed() {
+            }
+
+            @Override
+            public void connectionOpened() {
+                sendMessage(new VersionMessage(PARAMS, 0));
+            }
+        };
+        clients.add(new NioClient(ADDRESS, client, 1000));
+        VersionMessage ver = (VersionMessage) poll(client);
+        assertEquals(VersionMessage.NODE_NETWORK | VersionMessage.NODE_BLOOM, ver.localServices);
+        assertTrue(poll(client) instanceof VersionAck);
+        return client;
+    }
+
+    private static Message poll(InboundMessageQueuer client) throws Exception {
+        Message m = client.inboundMessages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(m);
+        return m;
+    }
+
+    private static GetDataMessage getFilteredBlock(Sha256Hash hash) {
+        GetDataMessage getdata = new GetDataMessage(PARAMS);
+        getdata.addFilteredBlock(hash);
+        return getdata;
+    }
+
+    @Test
+    public void servesFilteredBlocks() throws Exception {
+        ECKey key1 = new ECKey(), key2 = new ECKey();
+        Transaction tx1 = FakeTxBuilder.createFakeTx(PARAMS, COIN, key1.toAddress(PARAMS));
+        Transaction tx2 = FakeTxBuilder.createFakeTx(PARAMS, COIN, new ECKey().toAddress(PARAMS));
+        Block block = FakeTxBuilder.createFakeBlock(blockStore, 1, tx1, tx2).block;
+        Block unknown = FakeTxBuilder.createFakeBlock(new MemoryBlockStore(PARAMS), 1).block;
+        writeBlock(block);
+        writeBlock(unknown);
+        assertEquals(2, blockIndex.index());
+
+        InboundMessageQueuer client1 = connect(), client2 = connect();
+        assertEquals(2, server.getClientCount());
+        // No filter loaded yet.
+        client1.sendMessage(getFilteredBlock(block.getHash()));
+        assertTrue(poll(client1) instanceof NotFoundMessage);
+
+        BloomFilter filter1 = new BloomFilter(10, 0.000001, 0);
+        filter1.insert(key1.getPubKeyHash());
+        client1.sendMessage(filter1);
+        BloomFilter filter2 = new BloomFilter(10, 0.000001, 0);
+        client2.sendMessage(filter2);
+        client2.sendMessage(new FilterAddMessage(PARAMS, key2.getPubKeyHash()));
+        client1.sendMessage(getFilteredBlock(block.getHash()));
+        client2.sendMessage(getFilteredBlock(block.getHash()));
+
+        FilteredBlock filtered1 = (FilteredBlock) poll(client1);
+        assertEquals(block.getHash(), filtered1.getHash());
+        assertEquals(ImmutableList.of(tx1.getHash()), filtered1.getTransactionHashes());
+        assertEquals(tx1, poll(client1));
+        FilteredBlock filtered2 = (FilteredBlock) poll(client2);
+        assertEquals(0, filtered2.getTransactionHashes().size());
+        assertEquals(block.getTransactions().size(), filtered2.getTransactionCount());
+
+        // The block that isn't in the block store isn't served, even though it's in the block files.
+        GetDataMessage getdata = getFilteredBlock(unknown.getHash());
+        getdata.addBlock(block.getHash());
+        client2.sendMessage(getdata);
+        assertEquals(block, poll(client2));
+        assertEquals(unknown.getHash(), ((NotFoundMessage) poll(client2)).getItems().get(0).hash);
+
+        // After filterclear filtered blocks aren't served anymore.
+        client1.sendMessage(new FilterClearMessage());
+        client1.sendMessage(getFilteredBlock(block.getHash()));
+        assertTrue(poll(client1) instanceof NotFoundMessage);
+    }
+
+    @Test
+    public void indexPicksUpNewBlocks() throws Exception {
+        Block block1 = FakeTxBuilder.createFakeBlock(blockStore, 1).block;
+        writeBlock(block1);
+        assertEquals(1, blockIndex.index());
+        assertEquals(0, blockIndex.index());
+        Block block2 = FakeTxBuilder.createFakeBlock(blockStore, 2).block;
+        writeBlock(block2);
+        assertEquals(1, blockIndex.index());
+        assertEquals(2, blockIndex.size());
+        assertEquals(block1, blockIndex.getBlock(block1.getHash()));
+        assertEquals(block2, blockIndex.getBlock(block2.getHash()));
+        assertNull(blockIndex.getBlock(Sha256Hash.ZERO_HASH));
+    }
+
+    @Test
+    public void partialMerkleTreeFromCompleteTree() throws Exception {
+        Random random = new Random(1);
+        for (int count = 1; count < 40; count++) {
+            List<Sha256Hash> leaves = new ArrayList<Sha256Hash>();
+            for (int i = 0; i < count; i++)
+                leaves.add(Sha256Hash.of(new byte[] { (byte) i }));
+            byte[] bits = new byte[(count + 7) / 8];
+            for (int i = 0; i < count; i++)
+                if (random.nextInt(4) == 0)
+                    Utils.setBitLE(bits, i);
+            MerkleTree tree = MerkleTree.build(leaves);
+            PartialMerkleTree pmt = PartialMerkleTree.buildFromTree(PARAMS, bits, tree);
+            List<Sha256Hash> matched = new ArrayList<Sha256Hash>();
+            assertEquals(tree.getRoot(), pmt.getTxnHashAndMerkleRoot(matched));
+            for (int i = 0; i < count; i++)
+                assertEquals(Utils.checkBitLE(bits, i), matched.contains(leaves.get(i)));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.bitcoinj.core.GolombCodedSet.BASIC_M;
+import static org.bitcoinj.core.GolombCodedSet.BASIC_P;
+import static org.junit.Assert.*;
+
+public class GolombCodedSetTest {
+    private static final byte[] KEY = Utils.HEX.decode("000102030405060708090a0b0c0d0e0f");
+
+    private static List<byte[]> randomElements(Random random, int count) {
+        List<byte[]> elements = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] element = new byte[20 + random.nextInt(20)];
+            random.nextBytes(element);
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    @Test
+    public void matchesElements() throws Exception {
+        Random random = new Random(1);
+        List<byte[]> elements = randomElements(random, 1000);
+        // Duplicates are only counted once.
+        elements.add(elements.get(0).clone());
+        GolombCodedSet set = GolombCodedSet.build(KEY, BASIC_P, BASIC_M, elements);
+        assertEquals(1000, set.size());
+        for (byte[] element : elements)
+            assertTrue(set.match(element));
+        // Around P + 2.5 bits per element.
+        assertTrue(set.getEncoded().length < 1000 * (BASIC_P + 3) / 8);
+
+        GolombCodedSet parsed = new GolombCodedSet(KEY, BASIC_P, BASIC_M, set.getEncoded());
+        assertEquals(set, parsed);
+        assertTrue(parsed.matchAny(elements.subList(500, 501)));
+
+        // Elements that weren't added match with a probability of 1/M.
+        List<byte[]> others = randomElements(new Random(2), 10000);
+        int falsePositives = 0;
+        for (byte[] other : others)
+            if (set.match(other))
+                falsePositives++;
+        assertTrue(falsePositives <= 2);
+        assertEquals(falsePositives > 0, set.matchAny(others));
+
+        // A different key gives a different set.
+        byte[] otherKey = KEY.clone();
+        otherKey[0] = 1;
+        assertFalse(set.equals(GolombCodedSet.build(otherKey, BASIC_P, BASIC_M, elements)));
+    }
+
+    @Test
+    public void empty() throws Exception {
+        GolombCodedSet set = GolombCodedSet.build(KEY, BASIC_P, BASIC_M, Collections.<byte[]>emptyList());
+        assertArrayEquals(new byte[] { 0 }, set.getEncoded());
+        assertFalse(set.match(new byte[] { 1 }));
+        assertEquals(0, new GolombCodedSet(KEY, BASIC_P, BASIC_M, set.getEncoded()).size());
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        byte[] encoded = GolombCodedSet.build(KEY, BASIC_P, BASIC_M, randomElements(new Random(3), 100)).getEncoded();
+        // However much is cut off, it's caught when parsing rather than when matching.
+        for (int length = 0; length < encoded.length; length++) {
+            try {
+                new GolombCodedSet(KEY, BASIC_P, BASIC_M, Arrays.copyOf(encoded, length));
+                fail("Parsed a set truncated to " + length + " bytes");
+            } catch (ProtocolException e) {
+                // Expected.
+            }
+        }
+    }
+}
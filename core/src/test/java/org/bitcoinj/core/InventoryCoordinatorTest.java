@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.testing.FakeTxBuilder;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InventoryCoordinatorTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private Context context;
+    private InventoryCoordinator coordinator;
+    private FakePeer peer1, peer2, peer3;
+
+    @Before
+    public void setUp() throws Exception {
+        BriefLogFormatter.init();
+        Utils.setMockClock();
+        context = new Context(PARAMS);
+        Context.propagate(context);
+        coordinator = new InventoryCoordinator(PARAMS);
+        peer1 = new FakePeer(1);
+        peer2 = new FakePeer(2);
+        peer3 = new FakePeer(3);
+        coordinator.addPeer(peer1);
+        coordinator.addPeer(peer2);
+        coordinator.addPeer(peer3);
+    }
+
+    private static Sha256Hash getDataHash(FakePeer peer) {
+        assertEquals(1, peer.sent.size());
+        GetDataMessage getdata = (GetDataMessage) peer.sent.remove(0);
+        assertEquals(1, getdata.getItems().size());
+        return getdata.getItems().get(0).hash;
+    }
+
+    @Test
+    public void requestsFromOnePeerAtATime() throws Exception {
+        Sha256Hash hash = Sha256Hash.of(new byte[] { 1 });
+        assertTrue(coordinator.onAnnounced(peer1, hash));
+        assertFalse(coordinator.onAnnounced(peer2, hash));
+        assertFalse(coordinator.onAnnounced(peer3, hash));
+        assertEquals(1, coordinator.getRequestsInFlight());
+
+        // Peer 1 sits on it, so peer 2 is asked.
+        coordinator.checkTimeouts();
+        assertTrue(peer2.sent.isEmpty());
+        Utils.rollMockClock((int) (InventoryCoordinator.DEFAULT_REQUEST_TIMEOUT_MSEC / 1000) + 1);
+        coordinator.checkTimeouts();
+        assertEquals(hash, getDataHash(peer2));
+        assertTrue(peer1.sent.isEmpty());
+
+        // Peer 2 doesn't have it after all, so peer 3 is asked and sends it.
+        coordinator.onNotFound(peer2, Collections.singletonList(new InventoryItem(InventoryItem.Type.Transaction, hash)));
+        assertEquals(hash, getDataHash(peer3));
+        coordinator.onReceived(hash);
+        assertEquals(0, coordinator.getRequestsInFlight());
+        // Announcing it again doesn't cause another download.
+        assertFalse(coordinator.onAnnounced(peer1, hash));
+    }
+
+    @Test
+    public void peerDisconnects() throws Exception {
+        Sha256Hash hash1 = Sha256Hash.of(new byte[] { 1 }), hash2 = Sha256Hash.of(new byte[] { 2 });
+        assertTrue(coordinator.onAnnounced(peer1, hash1));
+        assertTrue(coordinator.onAnnounced(peer1, hash2));
+        assertFalse(coordinator.onAnnounced(peer2, hash1));
+        assertFalse(coordinator.onAnnounced(peer3, hash1));
+        // Peer 2 disconnects before anything happens, then peer 1.
+        coordinator.removePeer(peer2);
+        coordinator.removePeer(peer1);
+        assertTrue(peer2.sent.isEmpty());
+        assertEquals(hash1, getDataHash(peer3));
+        // Nobody else announced the second transaction, so it's forgotten and can be requested again.
+        assertEquals(1, coordinator.getRequestsInFlight());
+        assertTrue(coordinator.onAnnounced(peer3, hash2));
+    }
+
+    @Test
+    public void trickle() throws Exception {
+        Transaction tx1 = FakeTxBuilder.createFakeTx(PARAMS, Coin.COIN, new ECKey().toAddress(PARAMS));
+        Transaction tx2 = FakeTxBuilder.createFakeTx(PARAMS, Coin.CENT, new ECKey().toAddress(PARAMS));
+        Transaction tx3 = FakeTxBuilder.createFakeTx(PARAMS, Coin.MILLICOIN, new ECKey().toAddress(PARAMS));
+        // Peer 1 told us about the first one, so it isn't told about it.
+        context.getConfidenceTable().seen(tx1.getHash(), peer1.getAddress());
+        coordinator.announce(tx1);
+        coordinator.trickle();
+        assertTrue(peer1.sent.isEmpty());
+        assertEquals(1, peer2.sent.size());
+        // The next announcements wait for the trickle interval and then go out together.
+        coordinator.announce(tx2);
+        coordinator.announce(tx3);
+        coordinator.trickle();
+        assertEquals(1, peer2.sent.size());
+        Utils.rollMockClock((int) (InventoryCoordinator.DEFAULT_TRICKLE_INTERVAL_MSEC / 1000));
+        coordinator.trickle();
+        for (FakePeer peer : new FakePeer[] { peer1, peer2, peer3 }) {
+            InventoryMessage inv = (InventoryMessage) peer.sent.get(peer.sent.size() - 1);
+            assertEquals(2, inv.getItems().size());
+            assertEquals(tx2.getHash(), inv.getItems().get(0).hash);
+        }
+        assertEquals(1, peer1.sent.size());
+        assertEquals(2, peer2.sent.size());
+
+        GetDataMessage getdata = new GetDataMessage(PARAMS);
+        getdata.addTransaction(tx2.getHash());
+        getdata.addTransaction(Sha256Hash.of(new byte[] { 1 }));
+        assertEquals(Collections.<Message>singletonList(tx2), coordinator.getData(peer2, getdata));
+    }
+
+    private class FakePeer extends Peer {
+        final List<Message> sent = new ArrayList<Message>();
+
+        FakePeer(int id) throws Exception {
+            super(PARAMS, new VersionMessage(PARAMS, 0), null,
+                    new PeerAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, (byte) id }), 8333));
+        }
+
+        @Override
+        public void sendMessage(Message message) {
+            sent.add(message);
+        }
+    }
+}
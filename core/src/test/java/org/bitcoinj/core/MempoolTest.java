@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.bitcoinj.utils.Threading;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bitcoinj.core.Coin.*;
+import static org.junit.Assert.*;
+
+public class MempoolTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private Mempool mempool;
+    private Address to;
+    private Transaction funding;
+    private final List<String> events = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws Exception {
+        BriefLogFormatter.init();
+        Context.propagate(new Context(PARAMS));
+        mempool = new Mempool(PARAMS);
+        mempool.addEventListener(Threading.SAME_THREAD, new Mempool.Listener() {
+            @Override
+            public void onTransactionAdded(Mempool mempool, Mempool.Entry entry) {
+                events.add("added " + entry.getTxId());
+            }
+
+            @Override
+            public void onTransactionRemoved(Mempool mempool, Mempool.Entry entry, Mempool.RemovalReason reason) {
+                events.add(reason + " " + entry.getTxId());
+            }
+        });
+        to = new ECKey().toAddress(PARAMS);
+        // A confirmed transaction that the ones in the pool spend.
+        funding = new Transaction(PARAMS);
+        for (int i = 0; i < 4; i++)
+            funding.addOutput(COIN, to);
+    }
+
+    private Transaction spend(TransactionOutput output, Coin value) {
+        Transaction tx = new Transaction(PARAMS);
+        tx.addInput(output);
+        tx.addOutput(value, to);
+        return tx;
+    }
+
+    @Test
+    public void feeRateIndex() throws Exception {
+        Transaction low = spend(funding.getOutput(0), COIN.subtract(SATOSHI.multiply(1000)));
+        Transaction high = spend(funding.getOutput(1), COIN.subtract(CENT));
+        assertTrue(mempool.add(low));
+        assertTrue(mempool.add(high));
+        assertFalse(mempool.add(high));
+        assertEquals(2, mempool.size());
+        assertEquals(CENT, mempool.get(high.getHash()).getFee());
+        List<Mempool.Entry> snapshot = mempool.getSnapshot();
+        assertEquals(high.getHash(), snapshot.get(0).getTxId());
+        assertEquals(low.getHash(), snapshot.get(1).getTxId());
+        assertEquals(low, snapshot.get(1).getTransaction());
+        assertEquals(mempool.get(low.getHash()), mempool.getSpender(low.getInput(0).getOutpoint()));
+    }
+
+    @Test
+    public void snapshotOrder() throws Exception {
+        // Spends of transactions the pool doesn't know, so their fees are unknown.
+        Transaction unknown1 = spend(new Transaction(PARAMS).addOutput(COIN, to), COIN);
+        Transaction unknown2 = spend(new Transaction(PARAMS).addOutput(COIN, new ECKey().toAddress(PARAMS)), COIN);
+        Transaction same1 = spend(funding.getOutput(0), COIN.subtract(CENT));
+        Transaction same2 = spend(funding.getOutput(1), COIN.subtract(CENT));
+        Transaction high = spend(funding.getOutput(2), COIN.subtract(CENT.multiply(2)));
+        Transaction same3 = spend(funding.getOutput(3), COIN.subtract(CENT));
+        for (Transaction tx : new Transaction[] { unknown1, same1, same2, unknown2, high, same3 })
+            assertTrue(mempool.add(tx));
+        // Highest fee rate first, oldest first within a fee rate and unknown fees last.
+        List<Mempool.Entry> snapshot = mempool.getSnapshot();
+        Transaction[] expected = { high, same1, same2, same3, unknown1, unknown2 };
+        assertEquals(expected.length, snapshot.size());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i].getHash(), snapshot.get(i).getTxId());
+    }
+
+    @Test
+    public void parentsAndChildren() throws Exception {
+        Transaction parent = spend(funding.getOutput(0), COIN.subtract(CENT));
+        Transaction child = new Transaction(PARAMS);
+        child.addInput(new TransactionInput(PARAMS, child, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, parent.getHash())));
+        child.addOutput(COIN.subtract(CENT.multiply(3)), to);
+        // The child arrives first, so the value of its input is not known.
+        mempool.add(child);
+        assertNull(mempool.get(child.getHash()).getFee());
+        assertEquals(child.getHash(), mempool.getSnapshot().get(0).getTxId());
+        mempool.add(parent);
+        assertEquals(CENT.multiply(2), mempool.get(child.getHash()).getFee());
+        assertEquals(ImmutableSet.of(mempool.get(parent.getHash())), mempool.getAncestors(child.getHash()));
+        assertEquals(ImmutableSet.of(mempool.get(child.getHash())), mempool.getDescendants(parent.getHash()));
+        assertEquals(child.getHash(), mempool.getSnapshot().get(0).getTxId());
+    }
+
+    @Test
+    public void blocks() throws Exception {
+        Transaction tx1 = spend(funding.getOutput(0), COIN.subtract(CENT));
+        Transaction tx1Child = spend(tx1.getOutput(0), COIN.subtract(CENT.multiply(2)));
+        Transaction tx2 = spend(funding.getOutput(1), COIN.subtract(CENT));
+        Transaction tx3 = spend(funding.getOutput(2), COIN.subtract(CENT));
+        mempool.add(tx1);
+        mempool.add(tx1Child);
+        mempool.add(tx2);
+        mempool.add(tx3);
+        // A double spend of tx1 is ignored.
+        Transaction doubleSpend = spend(funding.getOutput(0), COIN.subtract(CENT.multiply(5)));
+        assertFalse(mempool.add(doubleSpend));
+        events.clear();
+
+        // A block confirms tx2 and a double spend of tx1, which takes its child with it.
+        Block block = PARAMS.getGenesisBlock().createNextBlock(to);
+        block.addTransaction(tx2);
+        block.addTransaction(doubleSpend);
+        mempool.removeForBlock(block);
+        assertEquals(1, mempool.size());
+        assertTrue(mempool.contains(tx3.getHash()));
+        assertTrue(events.contains("CONFIRMED " + tx2.getHash()));
+        assertTrue(events.contains("CONFLICT " + tx1.getHash()));
+        assertTrue(events.contains("CONFLICT " + tx1Child.getHash()));
+        assertNull(mempool.getSpender(tx1.getInput(0).getOutpoint()));
+    }
+
+    @Test
+    public void evictsLowestFeeRate() throws Exception {
+        Transaction high = spend(funding.getOutput(0), COIN.subtract(CENT));
+        Transaction low = spend(funding.getOutput(1), COIN.subtract(MILLICOIN));
+        Transaction middle = spend(funding.getOutput(2), COIN.subtract(MILLICOIN.multiply(5)));
+        mempool.add(high);
+        mempool.add(low);
+        long limit = mempool.getMemoryUsage();
+        mempool.setMaxMemoryBytes(limit);
+        events.clear();
+        mempool.add(middle);
+        assertEquals(2, mempool.size());
+        assertFalse(mempool.contains(low.getHash()));
+        assertEquals("SIZE_LIMIT " + low.getHash(), events.get(1));
+        // A transaction with a lower fee rate than everything in a full pool doesn't get in.
+        assertFalse(mempool.add(spend(funding.getOutput(3), COIN.subtract(SATOSHI.multiply(1000)))));
+        assertTrue(mempool.getMemoryUsage() <= limit);
+    }
+}
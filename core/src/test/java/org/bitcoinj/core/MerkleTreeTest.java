@@ -0,0 +1,83 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class MerkleTreeTest {
+    private static List<Sha256Hash> leaves(int count) {
+        List<Sha256Hash> leaves = new ArrayList<Sha256Hash>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[4];
+            Utils.uint32ToByteArrayBE(i, bytes, 0);
+            leaves.add(Sha256Hash.of(bytes));
+        }
+        return leaves;
+    }
+
+    // The merkle root as calculated level by level, without any of the tricks of MerkleTree.
+    private static Sha256Hash simpleRoot(List<Sha256Hash> leaves) {
+        List<Sha256Hash> level = leaves;
+        while (level.size() > 1) {
+            List<Sha256Hash> next = new ArrayList<Sha256Hash>();
+            for (int i = 0; i < level.size(); i += 2) {
+                byte[] left = level.get(i).getReversedBytes();
+                byte[] right = level.get(Math.min(i + 1, level.size() - 1)).getReversedBytes();
+                next.add(Sha256Hash.wrapReversed(Sha256Hash.hashTwice(left, 0, 32, right, 0, 32)));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    @Test
+    public void matchesSimpleCalculation() throws Exception {
+        for (int count = 1; count < 70; count++) {
+            List<Sha256Hash> leaves = leaves(count);
+            MerkleTree tree = MerkleTree.build(leaves);
+            assertEquals(simpleRoot(leaves), tree.getRoot());
+            assertEquals(count, tree.getLeafCount());
+            assertEquals(leaves.get(count - 1), tree.getNode(0, count - 1));
+            assertEquals(1, tree.getWidth(tree.getHeight()));
+        }
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int count : new int[] { 1025, 4096, 5000 }) {
+                List<Sha256Hash> leaves = leaves(count);
+                MerkleTree sequential = MerkleTree.build(leaves, null);
+                MerkleTree parallel = MerkleTree.build(leaves, executor);
+                assertEquals(simpleRoot(leaves), parallel.getRoot());
+                for (int level = 0; level <= sequential.getHeight(); level++)
+                    for (int pos = 0; pos < sequential.getWidth(level); pos++)
+                        assertEquals(sequential.getNode(level, pos), parallel.getNode(level, pos));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ParallelBlockDownloaderTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+    private static final int NUM_BLOCKS = 40;
+
+    private BlockChain chain;
+    private ParallelBlockDownloader downloader;
+    private List<Block> headers;
+    private Map<Sha256Hash, Block> blocks;
+
+    @Before
+    public void setUp() throws Exception {
+        BriefLogFormatter.init();
+        Utils.setMockClock();
+        Context.propagate(new Context(PARAMS, 100, Coin.ZERO, false));
+        chain = new BlockChain(PARAMS, new MemoryBlockStore(PARAMS));
+        downloader = new ParallelBlockDownloader(PARAMS, chain, new ArrayList<Wallet>());
+        Address to = new ECKey().toAddress(PARAMS);
+        headers = new ArrayList<Block>();
+        blocks = new HashMap<Sha256Hash, Block>();
+        Block prev = PARAMS.getGenesisBlock();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            prev = prev.createNextBlock(to);
+            headers.add(prev.cloneAsHeader());
+            blocks.put(prev.getHash(), prev);
+        }
+    }
+
+    @Test
+    public void downloadsFromAllPeersInOrder() throws Exception {
+        downloader.setMaxBlocksInFlightPerPeer(8);
+        FakePeer peer1 = new FakePeer(1), peer2 = new FakePeer(2), peer3 = new FakePeer(3);
+        downloader.addPeer(peer2);
+        downloader.addPeer(peer3);
+        downloader.start(peer1);
+        assertTrue(peer1.sent.remove(0) instanceof GetHeadersMessage);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers));
+        assertEquals(NUM_BLOCKS, downloader.getQueuedBlockCount());
+        assertEquals(8, downloader.getBlocksInFlight(peer1));
+        assertEquals(8, downloader.getBlocksInFlight(peer2));
+        assertEquals(8, downloader.getBlocksInFlight(peer3));
+
+        // Peer 2 was added first so it has the first blocks. Blocks that arrive before them wait in the buffer.
+        answer(peer3);
+        answer(peer1);
+        assertEquals(0, chain.getBestChainHeight());
+        answer(peer2);
+        assertEquals(24, chain.getBestChainHeight());
+
+        while (chain.getBestChainHeight() < NUM_BLOCKS) {
+            answer(peer3);
+            answer(peer1);
+            answer(peer2);
+        }
+        assertEquals(headers.get(NUM_BLOCKS - 1).getHash(), chain.getChainHead().getHeader().getHash());
+        assertEquals(0, downloader.getQueuedBlockCount());
+    }
+
+    @Test
+    public void boundsBlocksAhead() throws Exception {
+        downloader.setMaxBlocksInFlightPerPeer(4);
+        downloader.setMaxBlocksAhead(10);
+        FakePeer peer1 = new FakePeer(1), peer2 = new FakePeer(2);
+        downloader.addPeer(peer2);
+        downloader.start(peer1);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers));
+        assertEquals(4, downloader.getBlocksInFlight(peer2));
+        assertEquals(4, downloader.getBlocksInFlight(peer1));
+        // Blocks 5-8 arrive before blocks 1-4.
+        answer(peer1);
+        assertEquals(0, chain.getBestChainHeight());
+        // Only blocks up to 10 beyond the chain head are requested, so peer 1 gets just blocks 9 and 10.
+        assertEquals(2, downloader.getBlocksInFlight(peer1));
+        answer(peer2);
+        assertEquals(8, chain.getBestChainHeight());
+    }
+
+    @Test
+    public void stalledRequestsGoToOtherPeers() throws Exception {
+        downloader.setMaxBlocksInFlightPerPeer(4);
+        FakePeer peer1 = new FakePeer(1), peer2 = new FakePeer(2);
+        downloader.addPeer(peer2);
+        downloader.start(peer1);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers.subList(0, 10)));
+        // Peer 2 has the first blocks but never answers. Peer 1 serves everything it is given, but the chain is
+        // stuck behind peer 2.
+        answer(peer1);
+        answer(peer1);
+        assertEquals(0, chain.getBestChainHeight());
+        assertEquals(4, downloader.getBlocksInFlight(peer2));
+
+        Utils.rollMockClock((int) (ParallelBlockDownloader.DEFAULT_STALL_TIMEOUT_MSEC / 1000));
+        downloader.checkForStalls();
+        assertEquals(0, downloader.getBlocksInFlight(peer2));
+        answer(peer1);
+        assertEquals(10, chain.getBestChainHeight());
+    }
+
+    @Test
+    public void slowHeadOfLineIsRequestedTwice() throws Exception {
+        downloader.setMaxBlocksInFlightPerPeer(2);
+        FakePeer peer1 = new FakePeer(1), peer2 = new FakePeer(2);
+        downloader.addPeer(peer2);
+        downloader.start(peer1);
+        peer1.sent.clear();
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers.subList(0, 3)));
+        // Peer 2 has blocks 1 and 2 but is slow. Peer 1 answers and has room for another request.
+        answer(peer1);
+        Utils.rollMockClock(2);
+        downloader.checkForStalls();
+        GetDataMessage getdata = (GetDataMessage) peer1.sent.get(0);
+        assertEquals(headers.get(0).getHash(), getdata.getItems().get(0).hash);
+        answer(peer1);
+        assertEquals(1, chain.getBestChainHeight());
+        // Peer 2's late answer is still useful for block 2, and harmless for block 1.
+        answer(peer2);
+        assertEquals(3, chain.getBestChainHeight());
+    }
+
+    @Test
+    public void peerDeathRequeuesRequests() throws Exception {
+        FakePeer peer1 = new FakePeer(1), peer2 = new FakePeer(2);
+        downloader.addPeer(peer2);
+        downloader.start(peer1);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers.subList(0, 20)));
+        assertEquals(16, downloader.getBlocksInFlight(peer2));
+        downloader.removePeer(peer2);
+        answer(peer1);
+        answer(peer1);
+        assertEquals(20, chain.getBestChainHeight());
+    }
+
+    @Test
+    public void ignoresPeersWithoutTheBlocks() throws Exception {
+        FakePeer peer1 = new FakePeer(1), shortPeer = new FakePeer(2, 5);
+        downloader.addPeer(shortPeer);
+        downloader.start(peer1);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers.subList(0, 20)));
+        // The short peer only gets blocks up to its height.
+        assertEquals(5, downloader.getBlocksInFlight(shortPeer));
+        while (chain.getBestChainHeight() < 20) {
+            answer(peer1);
+            answer(shortPeer);
+        }
+        assertEquals(0, downloader.getBlocksInFlight(shortPeer));
+    }
+
+    @Test
+    public void headersOnlyBeforeFastCatchupTime() throws Exception {
+        downloader.setFastCatchupTimeSecs(headers.get(20).getTimeSeconds());
+        FakePeer peer1 = new FakePeer(1), peer2 = new FakePeer(2);
+        downloader.addPeer(peer2);
+        downloader.start(peer1);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers));
+        // The first 20 blocks are older than any key, so just their headers were added to the chain.
+        assertEquals(20, chain.getBestChainHeight());
+        assertEquals(NUM_BLOCKS - 20, downloader.getQueuedBlockCount());
+        GetDataMessage getdata = (GetDataMessage) peer2.sent.get(0);
+        assertEquals(headers.get(20).getHash(), getdata.getItems().get(0).hash);
+        while (chain.getBestChainHeight() < NUM_BLOCKS) {
+            answer(peer1);
+            answer(peer2);
+        }
+    }
+
+    @Test
+    public void pipelinesHeaderRequests() throws Exception {
+        downloader.setFastCatchupTimeSecs(Long.MAX_VALUE);
+        Block prev = blocks.get(headers.get(NUM_BLOCKS - 1).getHash());
+        while (headers.size() < HeadersMessage.MAX_HEADERS) {
+            Utils.setMockClock(prev.getTimeSeconds());  // Keep the timestamps from running too far ahead of the clock.
+            prev = prev.createNextBlock(null);
+            headers.add(prev.cloneAsHeader());
+        }
+        FakePeer peer1 = new FakePeer(1);
+        downloader.start(peer1);
+        peer1.sent.clear();
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers));
+        assertEquals(HeadersMessage.MAX_HEADERS, chain.getBestChainHeight());
+        // The next batch was asked for as soon as this one arrived.
+        GetHeadersMessage getheaders = (GetHeadersMessage) peer1.sent.get(0);
+        assertEquals(prev.getHash(), getheaders.getLocator().get(0));
+        // An empty batch means we're done.
+        peer1.sent.clear();
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, new ArrayList<Block>()));
+        assertTrue(peer1.sent.isEmpty());
+        assertEquals(0, downloader.getQueuedBlockCount());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void badHeaderProofOfWork() throws Exception {
+        FakePeer peer1 = new FakePeer(1);
+        downloader.start(peer1);
+        Block bad = headers.get(0).cloneAsHeader();
+        bad.setDifficultyTarget(0x1d00ffffL);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, bad));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void unconnectedHeaders() throws Exception {
+        FakePeer peer1 = new FakePeer(1);
+        downloader.start(peer1);
+        downloader.onHeaders(peer1, new HeadersMessage(PARAMS, headers.subList(1, 5)));
+    }
+
+    /** Answers all the getdatas the peer received since the last call. */
+    private void answer(FakePeer peer) {
+        List<Message> sent = new ArrayList<Message>(peer.sent);
+        peer.sent.clear();
+        for (Message message : sent) {
+            if (!(message instanceof GetDataMessage))
+                continue;
+            for (InventoryItem item : ((GetDataMessage) message).getItems())
+                downloader.onBlock(peer, blocks.get(item.hash), null);
+        }
+    }
+
+    private class FakePeer extends Peer {
+        final List<Message> sent = new ArrayList<Message>();
+        final VersionMessage peerVersion;
+
+        FakePeer(int id) throws Exception {
+            this(id, NUM_BLOCKS);
+        }
+
+        FakePeer(int id, int bestHeight) throws Exception {
+            super(PARAMS, new VersionMessage(PARAMS, 0), chain,
+                    new PeerAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, (byte) id }), 8333));
+            peerVersion = new VersionMessage(PARAMS, bestHeight);
+        }
+
+        @Override
+        public void sendMessage(Message message) {
+            sent.add(message);
+        }
+
+        @Override
+        public VersionMessage getPeerVersionMessage() {
+            return peerVersion;
+        }
+
+        @Override
+        public long getBestHeight() {
+            return peerVersion.bestHeight;
+        }
+    }
+}
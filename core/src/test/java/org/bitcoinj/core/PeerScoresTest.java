@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.params.UnitTestParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PeerScoresTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private PeerScores scores;
+    private Peer peer1, peer2, peer3;
+
+    @Before
+    public void setUp() throws Exception {
+        Utils.setMockClock();
+        Context.propagate(new Context(PARAMS));
+        scores = new PeerScores();
+        peer1 = newPeer(1);
+        peer2 = newPeer(2);
+        peer3 = newPeer(3);
+    }
+
+    private static Peer newPeer(int id) throws Exception {
+        return new Peer(PARAMS, new VersionMessage(PARAMS, 0), null,
+                new PeerAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, (byte) id }), 8333));
+    }
+
+    @Test
+    public void quality() throws Exception {
+        assertEquals(0, scores.getQuality(peer1.getAddress()), 0);
+        scores.recordPing(peer1.getAddress(), 50);
+        scores.recordPing(peer2.getAddress(), 500);
+        assertTrue(scores.getQuality(peer1.getAddress()) > scores.getQuality(peer2.getAddress()));
+        assertEquals(peer1, scores.selectBest(Arrays.asList(peer2, peer1)));
+        // Unknown peers beat slow ones, a peer that sent us garbage is worst of all.
+        scores.recordInvalid(peer1.getAddress());
+        List<Peer> peers = new ArrayList<Peer>(Arrays.asList(peer1, peer2, peer3));
+        scores.sortByQuality(peers);
+        assertEquals(Arrays.asList(peer3, peer2, peer1), peers);
+        assertNull(scores.selectBest(new ArrayList<Peer>()));
+    }
+
+    @Test
+    public void penaltiesDecay() throws Exception {
+        scores.recordStall(peer1.getAddress());
+        double penalised = scores.getQuality(peer1.getAddress());
+        assertTrue(penalised < 0);
+        Utils.rollMockClock(24 * 60 * 60);
+        double decayed = scores.getQuality(peer1.getAddress());
+        assertEquals(penalised / 2, decayed, 1);
+    }
+
+    @Test
+    public void saveAndLoad() throws Exception {
+        scores.recordConnected(peer1.getAddress());
+        scores.recordPing(peer1.getAddress(), 100);
+        scores.recordBytes(peer1.getAddress(), 1000000);
+        Utils.rollMockClock(60 * 60);
+        scores.recordDisconnected(peer1.getAddress());
+        scores.recordStall(peer2.getAddress());
+        scores.recordConnectFailure(peer3.getAddress());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        scores.save(bytes);
+        PeerScores loaded = new PeerScores();
+        loaded.load(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(3, loaded.size());
+        for (Peer peer : Arrays.asList(peer1, peer2, peer3))
+            assertEquals(scores.getQuality(peer.getAddress()), loaded.getQuality(peer.getAddress()), 0.001);
+
+        File file = File.createTempFile("peerscores", null);
+        file.deleteOnExit();
+        scores.saveToFile(file);
+        loaded = new PeerScores();
+        loaded.loadFromFile(file);
+        assertEquals(3, loaded.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void loadBadAddressLength() throws Exception {
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        scores.save(empty);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(empty.toByteArray(), 0, 4);  // The version.
+        out.writeInt(1);
+        out.writeByte(0);  // An IP address, of a length that doesn't fit in a signed byte.
+        out.writeByte(200);
+        scores.load(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -233,6 +233,50 @@ public class PeerTest extends TestWithNetworkConnections {
         assertNull(outbound(writeTarget));
     }
 
+    @Test
+    public void pipelinedGetBlocks() throws Exception {
+        peer.setMaxGetBlocksBatches(2);
+        connect();
+        // Each full inv immediately triggers a getblocks for the batch after it.
+        InventoryMessage inv1 = makeBlockInv(500);
+        inbound(writeTarget, inv1);
+        GetBlocksMessage getblocks = findOutbound(GetBlocksMessage.class);
+        assertNotNull(getblocks);
+        assertEquals(inv1.getItems().get(499).hash, getblocks.getLocator().get(0));
+        assertEquals(Sha256Hash.ZERO_HASH, getblocks.getStopHash());
+        // The blocks of both batches are now being downloaded, so the next getblocks waits for them to arrive.
+        inbound(writeTarget, makeBlockInv(500));
+        assertNull(findOutbound(GetBlocksMessage.class));
+        // A short inv is the end of the chain.
+        inbound(writeTarget, makeBlockInv(10));
+        assertNull(findOutbound(GetBlocksMessage.class));
+    }
+
+    private int fakeBlockInvCounter;
+
+    private InventoryMessage makeBlockInv(int size) {
+        InventoryMessage inv = new InventoryMessage(PARAMS);
+        for (int i = 0; i < size; i++) {
+            byte[] bits = new byte[4];
+            Utils.uint32ToByteArrayBE(fakeBlockInvCounter++, bits, 0);
+            Sha256Hash hash = Sha256Hash.of(bits);
+            inv.addItem(new InventoryItem(InventoryItem.Type.Block, hash));
+        }
+        return inv;
+    }
+
+    /** Drains the outbound messages and returns the first of the given type, or null. */
+    @Nullable
+    private <T extends Message> T findOutbound(Class<T> type) throws Exception {
+        T found = null;
+        Message message;
+        while ((message = outbound(writeTarget)) != null) {
+            if (found == null && type.isInstance(message))
+                found = type.cast(message);
+        }
+        return found;
+    }
+
     // Check that an inv to a peer that is not set to download missing blocks does nothing.
     @Test
     public void invNoDownload() throws Exception {
@@ -376,6 +420,75 @@ public class PeerTest extends TestWithNetworkConnections {
         assertEquals(InventoryItem.Type.Block, items.get(0).type);
     }
 
+    @Test
+    public void compactBlock() throws Exception {
+        Mempool mempool = new Mempool(PARAMS);
+        peer.setMempool(mempool);
+        connectWithVersion(SendCompactBlocksMessage.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+        SendCompactBlocksMessage sendcmpct = findOutbound(SendCompactBlocksMessage.class);
+        assertNotNull(sendcmpct);
+        assertFalse(sendcmpct.getAnnounce());
+        inbound(writeTarget, new SendCompactBlocksMessage(PARAMS, false, SendCompactBlocksMessage.VERSION));
+
+        // Two of the three transactions in the next block were relayed already.
+        Address to = new ECKey().toAddress(PARAMS);
+        Transaction tx1 = createFakeTx(PARAMS, COIN, to);
+        Transaction tx2 = createFakeTx(PARAMS, CENT, to);
+        Transaction tx3 = createFakeTx(PARAMS, MILLICOIN, to);
+        mempool.add(tx1);
+        mempool.add(tx2);
+        Block b1 = createFakeBlock(blockStore, Block.BLOCK_HEIGHT_GENESIS).block;
+        blockChain.add(b1);
+        Block b2 = makeSolvedTestBlock(b1, tx1, tx2, tx3);
+
+        InventoryMessage inv = new InventoryMessage(PARAMS);
+        inv.addBlock(b2);
+        inbound(writeTarget, inv);
+        GetDataMessage getdata = (GetDataMessage) outbound(writeTarget);
+        assertEquals(new InventoryItem(InventoryItem.Type.CompactBlock, b2.getHash()), getdata.getItems().get(0));
+        inbound(writeTarget, new CompactBlockMessage(PARAMS, b2, 42));
+        GetBlockTransactionsMessage getblocktxn = (GetBlockTransactionsMessage) outbound(writeTarget);
+        assertEquals(b2.getHash(), getblocktxn.getBlockHash());
+        // Only the transactions we don't have are requested: tx3 and the one the test block comes with.
+        List<Transaction> txns = b2.getTransactions();
+        assertEquals(5, txns.size());
+        assertArrayEquals(new int[] { 1, 4 }, getblocktxn.getIndexes());
+        assertEquals(tx3, txns.get(4));
+        inbound(writeTarget, new BlockTransactionsMessage(PARAMS, b2.getHash(), Arrays.asList(txns.get(1), tx3)));
+        pingAndWait(writeTarget);
+        assertEquals(b2.getHash(), blockChain.getChainHead().getHeader().getHash());
+    }
+
+    @Test
+    public void compactBlockTimeout() throws Exception {
+        Utils.setMockClock();
+        peer.setMempool(new Mempool(PARAMS));
+        connectWithVersion(SendCompactBlocksMessage.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+        assertNotNull(findOutbound(SendCompactBlocksMessage.class));
+        inbound(writeTarget, new SendCompactBlocksMessage(PARAMS, false, SendCompactBlocksMessage.VERSION));
+
+        Block b1 = createFakeBlock(blockStore, Block.BLOCK_HEIGHT_GENESIS).block;
+        blockChain.add(b1);
+        Block b2 = makeSolvedTestBlock(b1, createFakeTx(PARAMS, COIN, new ECKey().toAddress(PARAMS)));
+        InventoryMessage inv = new InventoryMessage(PARAMS);
+        inv.addBlock(b2);
+        inbound(writeTarget, inv);
+        assertTrue(outbound(writeTarget) instanceof GetDataMessage);
+        inbound(writeTarget, new CompactBlockMessage(PARAMS, b2, 42));
+        assertTrue(outbound(writeTarget) instanceof GetBlockTransactionsMessage);
+
+        // The peer never sends the missing transactions, so after a while the block is downloaded in full.
+        peer.checkCompactBlockTimeouts();
+        assertNull(outbound(writeTarget));
+        Utils.rollMockClock((int) (Peer.COMPACT_BLOCK_TIMEOUT_MSEC / 1000));
+        peer.checkCompactBlockTimeouts();
+        GetDataMessage getdata = (GetDataMessage) outbound(writeTarget);
+        assertEquals(new InventoryItem(InventoryItem.Type.Block, b2.getHash()), getdata.getItems().get(0));
+        inbound(writeTarget, b2);
+        pingAndWait(writeTarget);
+        assertEquals(b2.getHash(), blockChain.getChainHead().getHeader().getHash());
+    }
+
     // Check that it starts downloading the block chain correctly on request.
     @Test
     public void startBlockChainDownload() throws Exception {
@@ -22,6 +22,7 @@ import org.bitcoinj.utils.*;
 import org.junit.*;
 
 import java.net.*;
+import java.util.*;
 
 import static org.bitcoinj.core.Coin.*;
 import static org.junit.Assert.*;
@@ -99,4 +100,83 @@ public class TxConfidenceTableTest {
         assertEquals(3, tx2.getConfidence().numBroadcastPeers());
         assertEquals(3, table.numBroadcastPeers(tx1.getHash()));
     }
+
+    @Test
+    public void announcementsOutliveConfidence() throws Exception {
+        Sha256Hash hash = Sha256Hash.of(new byte[] { 1 });
+        table.seen(hash, address1);
+        table.seen(hash, address2);
+        // Once the confidence is collected the table still knows who announced the transaction.
+        table.forgetConfidence(hash);
+        assertNull(table.get(hash));
+        assertEquals(2, table.numBroadcastPeers(hash));
+        TransactionConfidence confidence = table.getOrCreate(hash);
+        assertEquals(2, confidence.numBroadcastPeers());
+        assertTrue(confidence.wasBroadcastBy(address1));
+        assertTrue(confidence.wasBroadcastBy(address2));
+    }
+
+    @Test
+    public void sizeLimitAndMetrics() throws Exception {
+        table = new TxConfidenceTable(4, 1);
+        List<TransactionConfidence> pinned = new ArrayList<TransactionConfidence>();
+        for (int i = 0; i < 6; i++)
+            pinned.add(table.seen(Sha256Hash.of(new byte[] { (byte) i }), address1));
+        assertEquals(4, table.size());
+        assertEquals(2, table.getEvictions());
+        assertEquals(6, table.getAnnouncements());
+        // The oldest were evicted.
+        assertNull(table.get(Sha256Hash.of(new byte[] { 0 })));
+        assertEquals(pinned.get(5), table.get(Sha256Hash.of(new byte[] { 5 })));
+        assertEquals(1, table.getHits());
+        assertEquals(7, table.getMisses());
+    }
+
+    @Test
+    public void manyPeers() throws Exception {
+        table = new TxConfidenceTable(100, 4);
+        Sha256Hash hash = Sha256Hash.of(new byte[] { 1 });
+        TransactionConfidence confidence = table.seen(hash, address1);
+        // Far more peers than there are announcement bits. The confidence object still counts them all.
+        for (int i = 0; i < 100; i++)
+            table.seen(hash, new PeerAddress(PARAMS, InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) i })));
+        assertEquals(101, confidence.numBroadcastPeers());
+        assertEquals(101, table.numBroadcastPeers(hash));
+    }
+
+    @Test
+    public void leastRecentlySeenSlotReused() throws Exception {
+        Sha256Hash hash = Sha256Hash.of(new byte[] { 1 });
+        List<PeerAddress> peers = new ArrayList<PeerAddress>();
+        for (int i = 0; i < 64; i++) {
+            peers.add(new PeerAddress(PARAMS, InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) i })));
+            table.seen(hash, peers.get(i));
+        }
+        // The first peer is still announcing, so the second one's slot is the least recently seen.
+        table.seen(Sha256Hash.of(new byte[] { 2 }), peers.get(0));
+        table.seen(Sha256Hash.of(new byte[] { 3 }), address1);
+        table.forgetConfidence(hash);
+        assertEquals(63, table.numBroadcastPeers(hash));
+        TransactionConfidence confidence = table.getOrCreate(hash);
+        assertTrue(confidence.wasBroadcastBy(peers.get(0)));
+        assertFalse(confidence.wasBroadcastBy(peers.get(1)));
+        assertFalse(confidence.wasBroadcastBy(address1));
+    }
+
+    @Test
+    public void disconnectedPeerSlotReused() throws Exception {
+        Sha256Hash hash = Sha256Hash.of(new byte[] { 1 });
+        table.seen(hash, address1);
+        table.seen(hash, address2);
+        table.forgetConfidence(hash);
+        // What a disconnected peer announced counts until a new peer takes its slot.
+        table.peerDisconnected(address1);
+        assertEquals(2, table.numBroadcastPeers(hash));
+        table.seen(Sha256Hash.of(new byte[] { 2 }), address3);
+        assertEquals(1, table.numBroadcastPeers(hash));
+        TransactionConfidence confidence = table.getOrCreate(hash);
+        assertFalse(confidence.wasBroadcastBy(address1));
+        assertTrue(confidence.wasBroadcastBy(address2));
+        assertFalse(confidence.wasBroadcastBy(address3));
+    }
 }
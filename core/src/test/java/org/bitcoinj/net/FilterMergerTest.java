@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.net;
+
+import org.bitcoinj.core.BloomFilter;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.PeerFilterProvider;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.wallet.KeyChainGroup;
+import org.bitcoinj.wallet.Wallet;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FilterMergerTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private FilterMerger merger;
+    private Wallet wallet;
+    private ImmutableList<PeerFilterProvider> providers;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        merger = new FilterMerger(0.0001);
+        KeyChainGroup group = new KeyChainGroup(PARAMS);
+        for (int i = 0; i < 10; i++)
+            group.importKeys(new ECKey());
+        wallet = new Wallet(PARAMS, group);
+        providers = ImmutableList.<PeerFilterProvider>of(wallet);
+    }
+
+    @Test
+    public void growsCopyOfLastFilter() throws Exception {
+        FilterMerger.Result result = merger.calculate(providers);
+        assertTrue(result.changed);
+        assertNull(result.addedElements);
+        BloomFilter filter = result.filter;
+
+        // Nothing changed.
+        result = merger.calculate(providers);
+        assertFalse(result.changed);
+        assertSame(filter, result.filter);
+        assertEquals(0, result.addedElements.size());
+
+        // A new key only adds its two elements, to a copy of the filter as peers may still be using the old one.
+        ECKey key = new ECKey();
+        wallet.importKey(key);
+        result = merger.calculate(providers);
+        assertTrue(result.changed);
+        assertNotSame(filter, result.filter);
+        assertEquals(2, result.addedElements.size());
+        assertTrue(Arrays.equals(key.getPubKey(), result.addedElements.get(0)));
+        assertFalse(filter.contains(key.getPubKeyHash()));
+        filter = result.filter;
+        assertTrue(filter.contains(key.getPubKeyHash()));
+
+        // Building it again from scratch gives a new filter with the same bits.
+        result = merger.calculate(providers, true);
+        assertNull(result.addedElements);
+        assertFalse(result.changed);
+        assertNotSame(filter, result.filter);
+        assertEquals(filter, result.filter);
+    }
+
+    @Test
+    public void rebuildsWhenFalsePositiveRateDrifts() throws Exception {
+        BloomFilter filter = merger.calculate(providers).filter;
+        // Far more keys than the filter was sized for.
+        for (int i = 0; i < 500; i++)
+            wallet.importKey(new ECKey());
+        FilterMerger.Result result = merger.calculate(providers);
+        assertTrue(result.changed);
+        assertNull(result.addedElements);
+        assertNotSame(filter, result.filter);
+        for (ECKey key : wallet.getImportedKeys())
+            assertTrue(result.filter.contains(key.getPubKey()));
+    }
+
+    @Test
+    public void rebuildsForProvidersThatCannotGrow() throws Exception {
+        // A provider that doesn't list its elements, so the filter can't tell which ones it lacks.
+        providers = ImmutableList.<PeerFilterProvider>of(new PeerFilterProvider() {
+            @Override
+            public long getEarliestKeyCreationTime() {
+                return wallet.getEarliestKeyCreationTime();
+            }
+
+            @Override
+            public void beginBloomFilterCalculation() {
+                wallet.beginBloomFilterCalculation();
+            }
+
+            @Override
+            public int getBloomFilterElementCount() {
+                return wallet.getBloomFilterElementCount();
+            }
+
+            @Override
+            public BloomFilter getBloomFilter(int size, double falsePositiveRate, long nTweak) {
+                return wallet.getBloomFilter(size, falsePositiveRate, nTweak);
+            }
+
+            @Override
+            public boolean isRequiringUpdateAllBloomFilter() {
+                return wallet.isRequiringUpdateAllBloomFilter();
+            }
+
+            @Override
+            public void endBloomFilterCalculation() {
+                wallet.endBloomFilterCalculation();
+            }
+        });
+        BloomFilter filter = merger.calculate(providers).filter;
+        ECKey key = new ECKey();
+        wallet.importKey(key);
+        FilterMerger.Result result = merger.calculate(providers);
+        assertTrue(result.changed);
+        assertNull(result.addedElements);
+        assertNotSame(filter, result.filter);
+        assertTrue(result.filter.contains(key.getPubKeyHash()));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.net.discovery;
+
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VersionMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AddressBookTest {
+    private static final PeerAddress SOURCE = address(1, 2, 3, 4);
+
+    private AddressBook book;
+
+    @Before
+    public void setUp() throws Exception {
+        Utils.setMockClock();
+        book = new AddressBook();
+    }
+
+    private static PeerAddress address(int a, int b, int c, int d) {
+        try {
+            PeerAddress address = new PeerAddress(InetAddress.getByAddress(new byte[] { (byte) a, (byte) b, (byte) c, (byte) d }), 8333);
+            address.setServices(BigInteger.valueOf(VersionMessage.NODE_NETWORK));
+            address.setTime(Utils.currentTimeSeconds() - 60);
+            return address;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private InetSocketAddress[] getPeers() {
+        return book.getPeers(VersionMessage.NODE_NETWORK, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void triedFirst() throws Exception {
+        PeerAddress a = address(10, 0, 0, 1), b = address(10, 1, 0, 1), c = address(10, 2, 0, 1);
+        book.add(Arrays.asList(a, b, c), SOURCE);
+        assertEquals(3, book.size());
+        assertEquals(0, book.getTriedCount());
+        Utils.rollMockClock(60);
+        book.markGood(c, VersionMessage.NODE_NETWORK);
+        assertEquals(1, book.getTriedCount());
+        InetSocketAddress[] peers = getPeers();
+        assertEquals(3, peers.length);
+        assertEquals(c.getSocketAddress(), peers[0]);
+        // Peers without the required services aren't returned.
+        assertEquals(0, book.getPeers(VersionMessage.NODE_NETWORK | 2, 0, TimeUnit.MILLISECONDS).length);
+    }
+
+    @Test
+    public void failingAddressesAreDropped() throws Exception {
+        PeerAddress a = address(10, 0, 0, 1);
+        book.add(Collections.singletonList(a), SOURCE);
+        for (int i = 0; i < 3; i++)
+            book.markFailed(a);
+        // Recent attempts are allowed a little time.
+        assertEquals(1, getPeers().length);
+        Utils.rollMockClock(120);
+        assertEquals(0, getPeers().length);
+    }
+
+    @Test
+    public void boundedPerSource() throws Exception {
+        // A single source can only fill a few buckets, however many addresses it sends.
+        List<PeerAddress> addresses = new ArrayList<PeerAddress>();
+        for (int i = 0; i < 10000; i++)
+            addresses.add(address(20 + i / 65536, (i / 256) % 256, i % 256, 1));
+        book.add(addresses, SOURCE);
+        assertTrue(book.size() <= 32 * AddressBook.BUCKET_SIZE);
+        assertTrue(book.size() > AddressBook.BUCKET_SIZE);
+    }
+
+    @Test
+    public void saveAndLoad() throws Exception {
+        PeerAddress a = address(10, 0, 0, 1), b = address(10, 1, 0, 1);
+        book.add(Arrays.asList(a, b), SOURCE);
+        book.markGood(b, VersionMessage.NODE_NETWORK);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        book.save(bytes);
+        // A short header and 42 bytes per address.
+        assertEquals(24 + 2 * 42, bytes.size());
+        AddressBook loaded = new AddressBook();
+        loaded.load(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(2, loaded.size());
+        assertEquals(1, loaded.getTriedCount());
+        assertArrayEquals(getPeers(), loaded.getPeers(VersionMessage.NODE_NETWORK, 0, TimeUnit.MILLISECONDS));
+    }
+}
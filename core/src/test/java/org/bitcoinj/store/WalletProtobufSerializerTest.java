@@ -51,6 +51,7 @@ import java.net.InetAddress;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -172,6 +173,29 @@ public class WalletProtobufSerializerTest {
         // assertEquals(doubleSpends.t2, t1.getConfidence().getOverridingTransaction());
     }
     
+    @Test
+    public void parallelRoundTrip() throws Exception {
+        // Enough transactions to be split across worker threads.
+        for (int i = 0; i < 600; i++)
+            myWallet.addWalletTransaction(new WalletTransaction(Pool.PENDING, createFakeTx(PARAMS, COIN, myAddress)));
+        WalletProtobufSerializer serial = new WalletProtobufSerializer();
+        serial.setParallelism(1);
+        WalletProtobufSerializer parallel = new WalletProtobufSerializer();
+        parallel.setParallelism(4);
+        Protos.Wallet serialProto = serial.walletToProto(myWallet);
+        Protos.Wallet parallelProto = parallel.walletToProto(myWallet);
+        assertEquals(600, parallelProto.getTransactionCount());
+        // The wallet hands out its transactions in no particular order, so compare as sets.
+        assertEquals(new HashSet<Protos.Transaction>(serialProto.getTransactionList()),
+                new HashSet<Protos.Transaction>(parallelProto.getTransactionList()));
+
+        Wallet wallet1 = parallel.readWallet(PARAMS, null, parallelProto);
+        assertEquals(600, wallet1.getTransactions(true).size());
+        assertEquals(myWallet.getBalance(Wallet.BalanceType.ESTIMATED), wallet1.getBalance(Wallet.BalanceType.ESTIMATED));
+        assertEquals(new HashSet<Protos.Transaction>(parallelProto.getTransactionList()),
+                new HashSet<Protos.Transaction>(serial.walletToProto(wallet1).getTransactionList()));
+    }
+
     @Test
     public void testKeys() throws Exception {
         for (int i = 0 ; i < 20 ; i++) {
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.utils;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Sha256HashMapTest {
+    private static Sha256Hash hash(int i) {
+        byte[] bytes = new byte[4];
+        org.bitcoinj.core.Utils.uint32ToByteArrayBE(i, bytes, 0);
+        return Sha256Hash.of(bytes);
+    }
+
+    @Test
+    public void behavesLikeHashMap() throws Exception {
+        Sha256HashMap<Integer> map = new Sha256HashMap<Integer>();
+        Map<Sha256Hash, Integer> expected = new HashMap<Sha256Hash, Integer>();
+        Random random = new Random(1);
+        // Enough operations to grow the map several times and to leave many removed slots behind.
+        for (int i = 0; i < 20000; i++) {
+            Sha256Hash key = hash(random.nextInt(2000));
+            switch (random.nextInt(3)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                default:
+                    assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(expected.keySet(), map.keySet());
+        assertEquals(new HashSet<Integer>(expected.values()), new HashSet<Integer>(map.values()));
+        for (Sha256Hash key : expected.keySet()) {
+            assertTrue(map.containsKey(key.getBytes(), 0));
+            assertEquals(expected.get(key), map.get(key.getBytes(), 0));
+        }
+        assertNull(map.get(Sha256Hash.ZERO_HASH));
+        assertNull(map.get("not a hash"));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    public void iteratorRemove() throws Exception {
+        Sha256HashMap<Integer> map = new Sha256HashMap<Integer>(100);
+        for (int i = 0; i < 100; i++)
+            map.put(hash(i), i);
+        int seen = 0;
+        for (Iterator<Map.Entry<Sha256Hash, Integer>> it = map.entrySet().iterator(); it.hasNext(); seen++) {
+            Map.Entry<Sha256Hash, Integer> entry = it.next();
+            assertEquals(hash(entry.getValue()), entry.getKey());
+            if (entry.getValue() % 2 == 0)
+                it.remove();
+            else
+                entry.setValue(-entry.getValue());
+        }
+        assertEquals(100, seen);
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(-i), map.get(hash(i)));
+    }
+
+    @Test
+    public void set() throws Exception {
+        Sha256HashSet set = new Sha256HashSet();
+        assertTrue(set.add(hash(1)));
+        assertFalse(set.add(hash(1)));
+        assertTrue(set.add(hash(2)));
+        assertTrue(set.contains(hash(2)));
+        assertTrue(set.contains(hash(2).getBytes(), 0));
+        assertTrue(set.remove(hash(2)));
+        assertFalse(set.contains(hash(2)));
+        assertEquals(1, set.size());
+        assertEquals(hash(1), set.iterator().next());
+    }
+}
@@ -201,6 +201,43 @@ public class DeterministicKeyChainTest {
         assertEquals(1, listenerKeys.get(0).size());  // 1 key.
     }
 
+    @Test
+    public void bulkIssuance() throws Exception {
+        final List<List<ECKey>> listenerKeys = Lists.newArrayList();
+        chain.addEventListener(new AbstractKeyChainEventListener() {
+            @Override
+            public void onKeysAdded(List<ECKey> keys) {
+                listenerKeys.add(keys);
+            }
+        }, Threading.SAME_THREAD);
+        int epoch = chain.getKeyLookaheadEpoch();
+        List<DeterministicKey> keys = chain.getKeys(KeyChain.KeyPurpose.RECEIVE_FUNDS, 500);
+        assertEquals(500, keys.size());
+        // The keys and the lookahead zone after them were added in one event.
+        assertEquals(1, listenerKeys.size());
+        assertEquals(500 + chain.getLookaheadSize() + chain.getLookaheadThreshold(), listenerKeys.get(0).size());
+        assertTrue(listenerKeys.get(0).containsAll(keys));
+        assertEquals(epoch + 1, chain.getKeyLookaheadEpoch());
+        assertEquals(500, chain.getIssuedExternalKeys());
+
+        // The same keys as when deriving them one by one.
+        DeterministicKeyChain other = new DeterministicKeyChain(ENTROPY, "", 1389353062L);
+        for (int i = 0; i < keys.size(); i++) {
+            DeterministicKey key = other.getKey(KeyChain.KeyPurpose.RECEIVE_FUNDS);
+            assertEquals(key.getPath(), keys.get(i).getPath());
+            assertArrayEquals(key.getPubKey(), keys.get(i).getPubKey());
+        }
+        assertEquals(keys.get(499), chain.findKeyFromPubHash(keys.get(499).getPubKeyHash()));
+        List<DeterministicKey> leafKeys = chain.getLeafKeys();
+        assertEquals(leafKeys.size(), chain.numLeafKeys());
+        List<byte[]> hashes = chain.getLeafKeyPubKeyHashes();
+        assertEquals(leafKeys.size(), hashes.size());
+        for (int i = 0; i < leafKeys.size(); i++) {
+            assertEquals(leafKeys.get(i), chain.getLeafKey(i));
+            assertArrayEquals(leafKeys.get(i).getPubKeyHash(), hashes.get(i));
+        }
+    }
+
     @Test
     public void random() {
         // Can't test much here but verify the constructor worked and the class is functional. The other tests rely on
@@ -166,6 +166,34 @@ public class KeyChainGroupTest {
         assertNull(group.findKeyFromPubHash(d.getPubKeyHash()));
     }
 
+    @Test
+    public void findKeyAcrossChains() throws Exception {
+        ECKey a = group.freshKey(KeyChain.KeyPurpose.RECEIVE_FUNDS);
+        group.createAndActivateNewHDChain();
+        group.setLookaheadSize(LOOKAHEAD_SIZE);
+        ECKey b = group.freshKey(KeyChain.KeyPurpose.RECEIVE_FUNDS);
+        // Issuing enough keys extends the lookahead zone; the new keys must be found without a rebuild.
+        List<DeterministicKey> many = group.freshKeys(KeyChain.KeyPurpose.RECEIVE_FUNDS, LOOKAHEAD_SIZE * 3);
+        ECKey c = new ECKey();
+        group.importKeys(c);
+        for (ECKey key : ImmutableList.of(a, b, c, many.get(many.size() - 1))) {
+            assertEquals(key, group.findKeyFromPubKey(key.getPubKey()));
+            assertEquals(key, group.findKeyFromPubHash(key.getPubKeyHash()));
+        }
+        assertTrue(group.removeImportedKey(c));
+        assertNull(group.findKeyFromPubKey(c.getPubKey()));
+        assertNull(group.findKeyFromPubHash(c.getPubKeyHash()));
+        assertEquals(a, group.findKeyFromPubHash(a.getPubKeyHash()));
+
+        // Encryption swaps all the chains out, the index must follow.
+        KeyCrypterScrypt scrypt = new KeyCrypterScrypt(2);
+        group.encrypt(scrypt, scrypt.deriveKey("password"));
+        ECKey encrypted = group.findKeyFromPubHash(b.getPubKeyHash());
+        assertNotNull(encrypted);
+        assertTrue(encrypted.isEncrypted());
+        assertArrayEquals(b.getPubKey(), encrypted.getPubKey());
+    }
+
     @Test
     public void currentP2SHAddress() throws Exception {
         group = createMarriedKeyChainGroup();
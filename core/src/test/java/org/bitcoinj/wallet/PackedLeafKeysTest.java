@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.wallet;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicHierarchy;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.HDUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PackedLeafKeysTest {
+    private DeterministicHierarchy hierarchy;
+    private DeterministicKey external, internal;
+    private List<DeterministicKey> keys;
+    private PackedLeafKeys leafKeys;
+
+    @Before
+    public void setUp() {
+        DeterministicKey root = HDKeyDerivation.createMasterPrivateKey(Sha256Hash.hash("packed".getBytes()));
+        hierarchy = new DeterministicHierarchy(root);
+        external = hierarchy.deriveChild(DeterministicKeyChain.ACCOUNT_ZERO_PATH, false, true, ChildNumber.ZERO);
+        internal = hierarchy.deriveChild(DeterministicKeyChain.ACCOUNT_ZERO_PATH, false, true, ChildNumber.ONE);
+        keys = new ArrayList<DeterministicKey>();
+        leafKeys = new PackedLeafKeys();
+        // Enough keys to grow the arrays a few times, interleaving the branches.
+        for (int i = 0; i < 150; i++) {
+            for (DeterministicKey parent : new DeterministicKey[] { external, internal }) {
+                DeterministicKey key = HDKeyDerivation.deriveChildKey(parent, new ChildNumber(i)).dropPrivateBytes();
+                assertTrue(leafKeys.add(key));
+                keys.add(key);
+            }
+        }
+    }
+
+    @Test
+    public void lookups() {
+        assertEquals(keys.size(), leafKeys.size());
+        assertEquals(150, leafKeys.getNumChildren(external));
+        assertEquals(150, leafKeys.getNumChildren(internal));
+        for (int i = 0; i < keys.size(); i++) {
+            DeterministicKey key = keys.get(i);
+            assertEquals(i, leafKeys.indexOfPubKey(key.getPubKey()));
+            assertEquals(i, leafKeys.indexOfPubKeyHash(key.getPubKeyHash()));
+            assertEquals(i, leafKeys.indexOf(key.getPath()));
+            DeterministicKey built = leafKeys.get(i);
+            assertEquals(key, built);
+            assertSame(key.getParent(), built.getParent());
+            assertEquals(key.getChildNumber().num(), leafKeys.getChildNumber(i));
+        }
+        assertEquals(keys.get(7), leafKeys.findKeyFromPubHash(keys.get(7).getPubKeyHash()));
+        assertEquals(keys.get(8), leafKeys.findKeyFromPubKey(keys.get(8).getPubKey()));
+        // The built keys can still sign, with the private key rederived from the parent.
+        leafKeys.get(9).sign(Sha256Hash.ZERO_HASH);
+
+        ECKey other = new ECKey();
+        assertNull(leafKeys.findKeyFromPubKey(other.getPubKey()));
+        assertNull(leafKeys.findKeyFromPubHash(other.getPubKeyHash()));
+        assertEquals(-1, leafKeys.indexOf(HDUtils.append(external.getPath(), new ChildNumber(150))));
+        assertEquals(-1, leafKeys.indexOf(HDUtils.append(external.getPath(), new ChildNumber(3, true))));
+        assertEquals(-1, leafKeys.indexOf(external.getPath()));
+        assertFalse(leafKeys.add(keys.get(0)));
+        assertEquals(keys.size(), leafKeys.size());
+    }
+
+    @Test
+    public void copy() {
+        DeterministicHierarchy other = new DeterministicHierarchy(hierarchy.getRootKey());
+        DeterministicKey otherExternal = other.deriveChild(DeterministicKeyChain.ACCOUNT_ZERO_PATH, false, true, ChildNumber.ZERO);
+        other.deriveChild(DeterministicKeyChain.ACCOUNT_ZERO_PATH, false, true, ChildNumber.ONE);
+        PackedLeafKeys copy = leafKeys.copy(other);
+        assertEquals(leafKeys.size(), copy.size());
+        assertSame(otherExternal, copy.getParent(0));
+        assertEquals(keys.get(0), copy.get(0));
+
+        // The copy is independent of the original.
+        DeterministicKey next = HDKeyDerivation.deriveChildKey(otherExternal, new ChildNumber(150));
+        assertTrue(copy.add(next));
+        assertEquals(151, copy.getNumChildren(otherExternal));
+        assertEquals(150, leafKeys.getNumChildren(external));
+        assertEquals(-1, leafKeys.indexOfPubKey(next.getPubKey()));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 the goldcoinj authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.wallet;
+
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.testing.TestWithWallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class WalletExporterTest extends TestWithWallet {
+    private Transaction confirmed1, confirmed2, pending;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Utils.setMockClock();
+        confirmed1 = sendMoneyToWallet(AbstractBlockChain.NewBlockType.BEST_CHAIN, Coin.COIN);
+        Utils.rollMockClock(60);
+        confirmed2 = sendMoneyToWallet(AbstractBlockChain.NewBlockType.BEST_CHAIN, Coin.CENT);
+        Utils.rollMockClock(60);
+        pending = sendMoneyToWallet(null, Coin.MILLICOIN);
+    }
+
+    @Test
+    public void transactionsAsCsv() throws Exception {
+        WalletExporter exporter = new WalletExporter(wallet, WalletExporter.Format.CSV);
+        exporter.setPageSize(1);
+        StringWriter writer = new StringWriter();
+        assertEquals(3, exporter.exportTransactions(writer));
+        String[] lines = writer.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("txid,pool,"));
+        // Ordered by update time.
+        assertTrue(lines[1].startsWith(confirmed1.getHashAsString() + ",UNSPENT,"));
+        assertTrue(lines[2].startsWith(confirmed2.getHashAsString() + ",UNSPENT,"));
+        assertTrue(lines[3].startsWith(pending.getHashAsString() + ",PENDING,"));
+    }
+
+    @Test
+    public void outputsAsJson() throws Exception {
+        WalletExporter exporter = new WalletExporter(wallet, WalletExporter.Format.JSON);
+        StringWriter writer = new StringWriter();
+        assertEquals(3, exporter.exportOutputs(writer));
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"txid\":\"" + confirmed1.getHashAsString() + "\",\"index\":0,"));
+        assertTrue(lines[0].contains("\"value\":" + Coin.COIN.value + ","));
+        assertTrue(lines[0].contains("\"address\":\"" + myAddress + "\""));
+        assertTrue(lines[0].endsWith("\"available\":true,\"spentBy\":null}"));
+    }
+
+    @Test
+    public void pagination() throws Exception {
+        long start = confirmed2.getUpdateTime().getTime() / 1000;
+        WalletExporter exporter = new WalletExporter(wallet, WalletExporter.Format.JSON);
+        exporter.setTimeRange(start, Long.MAX_VALUE);
+        StringWriter writer = new StringWriter();
+        assertEquals(2, exporter.exportTransactions(writer));
+        assertTrue(writer.toString().startsWith("{\"txid\":\"" + confirmed2.getHashAsString()));
+
+        // Selecting by height excludes the pending transaction.
+        exporter.setHeightRange(0, Integer.MAX_VALUE);
+        writer = new StringWriter();
+        assertEquals(1, exporter.exportTransactions(writer));
+        assertFalse(writer.toString().contains(pending.getHashAsString()));
+    }
+
+    @Test
+    public void keys() throws Exception {
+        wallet.importKey(new ECKey());
+        WalletExporter exporter = new WalletExporter(wallet, WalletExporter.Format.CSV);
+        StringWriter writer = new StringWriter();
+        int rows = exporter.exportKeys(writer);
+        String output = writer.toString();
+        assertEquals(rows + 1, output.split("\n").length);
+        assertTrue(output.contains("imported,,"));
+        assertTrue(output.contains("deterministic,M/0H/0/0," + myAddress + "," + myKey.getPublicKeyAsHex()));
+        assertFalse(output.contains(myKey.getPrivateKeyAsHex()));
+    }
+}
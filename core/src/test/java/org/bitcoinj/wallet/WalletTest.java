@@ -56,6 +56,7 @@ import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
 import org.easymock.EasyMock;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
@@ -261,6 +262,9 @@ public class WalletTest extends TestWithWallet {
         assertEquals("Wrong number of UNSPENT", 0, wallet.getPoolSize(WalletTransaction.Pool.UNSPENT));
         assertEquals("Wrong number of ALL", 2, wallet.getTransactions(true).size());
         assertEquals(valueOf(0, 50), wallet.getBalance(Wallet.BalanceType.ESTIMATED));
+        // The removed transaction is gone from the spenders index too.
+        for (TransactionInput input : t.getInputs())
+            assertFalse(wallet.getSpenders(input.getOutpoint()).contains(t));
     }
 
     @Test
@@ -294,6 +298,29 @@ public class WalletTest extends TestWithWallet {
         assertEquals(ZERO, wallet.getBalance(Wallet.BalanceType.ESTIMATED));
     }
 
+    @Test
+    public void spendersIndex() throws Exception {
+        // A pending transaction paying us, which spends an output that isn't ours.
+        Transaction t = sendMoneyToWallet(null, COIN, myAddress);
+        TransactionOutPoint outpoint = t.getInput(0).getOutpoint();
+        assertEquals(ImmutableSet.of(t), wallet.getSpenders(outpoint));
+        // Spending that output elsewhere is only relevant as a double spend of the pending transaction.
+        Transaction doubleSpend = new Transaction(PARAMS);
+        doubleSpend.addInput(new TransactionInput(PARAMS, doubleSpend, new byte[0], outpoint));
+        doubleSpend.addOutput(COIN, OTHER_ADDRESS);
+        assertTrue(wallet.isTransactionRelevant(doubleSpend));
+        Transaction unrelated = new Transaction(PARAMS);
+        unrelated.addInput(new TransactionInput(PARAMS, unrelated, new byte[0],
+                new TransactionOutPoint(PARAMS, outpoint.getIndex() + 1, outpoint.getHash())));
+        unrelated.addOutput(COIN, OTHER_ADDRESS);
+        assertFalse(wallet.isTransactionRelevant(unrelated));
+
+        wallet.clearTransactions(0);
+        assertTrue(wallet.isConsistent());
+        assertTrue(wallet.getSpenders(outpoint).isEmpty());
+        assertFalse(wallet.isTransactionRelevant(doubleSpend));
+    }
+
     private void basicSpendingCommon(Wallet wallet, Address toAddress, Address destination, Wallet encryptedWallet) throws Exception {
         // We'll set up a wallet that receives a coin, then sends a coin of lesser value and keeps the change. We
         // will attach a small fee. Because the Bitcoin protocol makes it difficult to determine the fee of an
@@ -898,6 +925,56 @@ public class WalletTest extends TestWithWallet {
         assertEquals(5, eventWalletChanged[0]);
     }
 
+    @Test
+    public void receiveManyFromBlock() throws Exception {
+        final AtomicInteger walletChanged = new AtomicInteger();
+        final AtomicInteger coinsReceived = new AtomicInteger();
+        wallet.addChangeEventListener(Threading.SAME_THREAD, new WalletChangeEventListener() {
+            @Override
+            public void onWalletChanged(Wallet wallet) {
+                walletChanged.incrementAndGet();
+            }
+        });
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, new WalletCoinsReceivedEventListener() {
+            @Override
+            public void onCoinsReceived(Wallet wallet, Transaction tx, Coin prevBalance, Coin newBalance) {
+                assertEquals(tx.getValueSentToMe(wallet), newBalance.subtract(prevBalance));
+                coinsReceived.incrementAndGet();
+            }
+        });
+        // A pending payment that gets confirmed by the block is only reported when it was first seen.
+        Transaction pendingTx = createFakeTx(PARAMS, CENT, myAddress);
+        wallet.receivePending(pendingTx, null);
+        assertEquals(1, coinsReceived.getAndSet(0));
+        walletChanged.set(0);
+
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+        Map<Sha256Hash, Transaction> txns = new HashMap<Sha256Hash, Transaction>();
+        for (int i = 0; i < 50; i++) {
+            Transaction tx = createFakeTx(PARAMS, COIN, myAddress);
+            hashes.add(tx.getHash());
+            txns.put(tx.getHash(), tx);
+        }
+        // An irrelevant transaction, and one known only by its hash.
+        Transaction irrelevant = createFakeTx(PARAMS, COIN, OTHER_ADDRESS);
+        hashes.add(irrelevant.getHash());
+        txns.put(irrelevant.getHash(), irrelevant);
+        hashes.add(pendingTx.getHash());
+
+        FakeTxBuilder.BlockPair bp = createFakeBlock(blockStore, Block.BLOCK_HEIGHT_GENESIS);
+        Set<Sha256Hash> received = wallet.receiveFromBlock(hashes, txns, bp.storedBlock,
+                AbstractBlockChain.NewBlockType.BEST_CHAIN);
+        wallet.notifyNewBestBlock(bp.storedBlock);
+        assertEquals(51, received.size());
+        assertFalse(received.contains(irrelevant.getHash()));
+        assertEquals(50, coinsReceived.get());
+        assertEquals(1, walletChanged.get());
+        assertEquals(COIN.multiply(50).add(CENT), wallet.getBalance());
+        assertEquals(TransactionConfidence.ConfidenceType.BUILDING,
+                wallet.getTransaction(pendingTx.getHash()).getConfidence().getConfidenceType());
+        assertEquals(51, wallet.getPoolSize(Pool.UNSPENT));
+    }
+
     @Test
     public void doubleSpendWeCreate() throws Exception {
         // Test we keep pending double spends in IN_CONFLICT until one of them is included in a block
@@ -1086,6 +1163,11 @@ public class WalletTest extends TestWithWallet {
             assertDead(txC2);
             assertDead(txD1);
             assertDead(txD2);
+
+            // The spenders index still has every transaction, whichever pool the reorgs moved it to.
+            assertTrue(wallet.isConsistent());
+            assertEquals(ImmutableSet.of(txA1, txA2, txA3), wallet.getSpenders(txARoot.getOutput(0).getOutPointFor()));
+            assertEquals(ImmutableSet.of(txB1, txB2), wallet.getSpenders(txBRoot.getOutput(0).getOutPointFor()));
         } finally {
             wallet.setCoinSelector(originalCoinSelector);
         }
@@ -53,6 +53,7 @@ import org.bitcoinj.wallet.MarriedKeyChain;
 import org.bitcoinj.wallet.Protos;
 import org.bitcoinj.wallet.SendRequest;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletExporter;
 import org.bitcoinj.wallet.WalletExtension;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
 import org.bitcoinj.wallet.Wallet.BalanceType;
@@ -109,6 +110,10 @@ public class WalletTool {
     private static String password;
     private static org.bitcoin.protocols.payments.Protos.PaymentRequest paymentRequest;
     private static OptionSpec<Integer> lookaheadSize;
+    private static OptionSpec<WalletExporter.Format> formatFlag;
+    private static OptionSpec<String> exportFileFlag;
+    private static OptionSpec<Long> fromTimeFlag, toTimeFlag;
+    private static OptionSpec<Integer> fromHeightFlag, toHeightFlag;
 
     public static class Condition {
         public enum Type {
@@ -186,6 +191,9 @@ public class WalletTool {
         MARRY,
         ROTATE,
         SET_CREATION_TIME,
+        EXPORT_TRANSACTIONS,
+        EXPORT_OUTPUTS,
+        EXPORT_KEYS,
     }
 
     public enum WaitForEnum {
@@ -238,6 +246,14 @@ public class WalletTool {
         parser.accepts("dump-privkeys");
         OptionSpec<String> refundFlag = parser.accepts("refund-to").withRequiredArg();
         OptionSpec<String> txHashFlag = parser.accepts("txhash").withRequiredArg();
+        // For the export actions.
+        formatFlag = parser.accepts("format").withRequiredArg().ofType(WalletExporter.Format.class)
+                .defaultsTo(WalletExporter.Format.CSV);
+        exportFileFlag = parser.accepts("export-file").withRequiredArg();
+        fromTimeFlag = parser.accepts("from-time").withRequiredArg().ofType(Long.class);
+        toTimeFlag = parser.accepts("to-time").withRequiredArg().ofType(Long.class);
+        fromHeightFlag = parser.accepts("from-height").withRequiredArg().ofType(Integer.class);
+        toHeightFlag = parser.accepts("to-height").withRequiredArg().ofType(Integer.class);
         options = parser.parse(args);
 
         if (args.length == 0 || options.has("help") ||
@@ -432,6 +448,10 @@ public class WalletTool {
             case MARRY: marry(); break;
             case ROTATE: rotate(); break;
             case SET_CREATION_TIME: setCreationTime(); break;
+            case EXPORT_TRANSACTIONS:
+            case EXPORT_OUTPUTS:
+            case EXPORT_KEYS:
+                exportWallet(action); break;
         }
 
         if (!wallet.isConsistent()) {
@@ -1461,6 +1481,39 @@ public class WalletTool {
         System.out.println(wallet.toString(options.has("dump-privkeys"), true, true, chain));
     }
 
+    private static void exportWallet(ActionEnum action) throws IOException {
+        WalletExporter exporter = new WalletExporter(wallet, formatFlag.value(options));
+        if (options.has(fromTimeFlag) || options.has(toTimeFlag)) {
+            long from = options.has(fromTimeFlag) ? fromTimeFlag.value(options) : 0;
+            long to = options.has(toTimeFlag) ? toTimeFlag.value(options) : Long.MAX_VALUE;
+            exporter.setTimeRange(from, to);
+        }
+        if (options.has(fromHeightFlag) || options.has(toHeightFlag)) {
+            int from = options.has(fromHeightFlag) ? fromHeightFlag.value(options) : 0;
+            int to = options.has(toHeightFlag) ? toHeightFlag.value(options) : Integer.MAX_VALUE;
+            exporter.setHeightRange(from, to);
+        }
+        Writer writer;
+        if (options.has(exportFileFlag))
+            writer = new OutputStreamWriter(new FileOutputStream(exportFileFlag.value(options)), Charsets.UTF_8);
+        else
+            writer = new OutputStreamWriter(System.out, Charsets.UTF_8);
+        writer = new BufferedWriter(writer);
+        try {
+            switch (action) {
+                case EXPORT_TRANSACTIONS: exporter.exportTransactions(writer); break;
+                case EXPORT_OUTPUTS: exporter.exportOutputs(writer); break;
+                case EXPORT_KEYS: exporter.exportKeys(writer); break;
+                default: throw new RuntimeException("Unreachable");
+            }
+        } finally {
+            if (options.has(exportFileFlag))
+                writer.close();
+            else
+                writer.flush();
+        }
+    }
+
     private static void setCreationTime() {
         DeterministicSeed seed = wallet.getActiveKeyChain().getSeed();
         if (seed == null) {
@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.bitcoinj.core.listeners.*;
+import org.bitcoinj.core.Mempool;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.Peer;
 import org.bitcoinj.core.PeerGroup;
@@ -43,12 +44,14 @@ public class WatchMempool {
     private static final String TOTAL_KEY = "TOTAL";
     private static final long START_MS = System.currentTimeMillis();
     private static final long STATISTICS_FREQUENCY_MS = 1000 * 5;
+    private static final Mempool mempool = new Mempool(PARAMS);
 
     public static void main(String[] args) throws InterruptedException {
         BriefLogFormatter.init();
         PeerGroup peerGroup = new PeerGroup(PARAMS);
         peerGroup.setMaxConnections(32);
         peerGroup.addPeerDiscovery(new DnsDiscovery(PARAMS));
+        peerGroup.setMempool(mempool);
         peerGroup.addOnTransactionBroadcastListener(new OnTransactionBroadcastListener() {
             @Override
             public void onTransaction(Peer peer, Transaction tx) {
@@ -78,6 +81,7 @@ public class WatchMempool {
 
     private static synchronized void printCounters() {
         System.out.printf("Runtime: %d minutes\n", (System.currentTimeMillis() - START_MS) / 1000 / 60);
+        System.out.printf("Mempool: %d transactions, %d KB\n", mempool.size(), mempool.getMemoryUsage() / 1024);
         Integer total = counters.get(TOTAL_KEY);
         if (total == null)
             return;